@@ -0,0 +1,52 @@
+package com.poorknight.tpmtoolsbackend.api.entity;
+
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlan;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+	Mapping between the API entities and the domain objects, which happens on every project plan read and patch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class APIEntityMappingBenchmark {
+
+	@Param({"10", "100"})
+	private int rows;
+
+	@Param({"10", "50"})
+	private int tasksPerRow;
+
+	private ProjectPlan projectPlan;
+	private Row row;
+	private APIProjectPlanPatch projectPlanPatch;
+
+	@Setup
+	public void buildProjectPlan() {
+		projectPlan = BenchmarkProjectPlans.buildProjectPlan(rows, tasksPerRow);
+		row = projectPlan.getRowList().get(0);
+		projectPlanPatch = BenchmarkProjectPlans.buildPatchMovingEveryTask(projectPlan);
+	}
+
+	@Benchmark
+	public APIProjectPlan projectPlanFromDomainObject() {
+		return APIProjectPlan.fromDomainObject(projectPlan);
+	}
+
+	@Benchmark
+	public APIRow rowFromDomainObject() {
+		return APIRow.fromDomainObject(row);
+	}
+
+	@Benchmark
+	public ProjectPlanPatchTemplate projectPlanPatchToDomainObject() {
+		return projectPlanPatch.toDomainObject();
+	}
+}
@@ -0,0 +1,58 @@
+package com.poorknight.tpmtoolsbackend.api.entity;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+	Jackson reading and writing of large plans, using a mapper set up the same way Spring Boot sets up the application's one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class APIJsonBenchmark {
+
+	@Param({"10", "100"})
+	private int rows;
+
+	@Param({"10", "50"})
+	private int tasksPerRow;
+
+	private ObjectMapper objectMapper;
+	private APIProjectPlan projectPlan;
+	private byte[] projectPlanJson;
+	private byte[] projectPlanPatchJson;
+
+	@Setup
+	public void buildJson() throws IOException {
+		objectMapper = Jackson2ObjectMapperBuilder.json()
+				.featuresToEnable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+				.build();
+		projectPlan = APIProjectPlan.fromDomainObject(BenchmarkProjectPlans.buildProjectPlan(rows, tasksPerRow));
+		projectPlanJson = objectMapper.writeValueAsBytes(projectPlan);
+		projectPlanPatchJson = objectMapper.writeValueAsBytes(BenchmarkProjectPlans.buildPatchMovingEveryTask(
+				BenchmarkProjectPlans.buildProjectPlan(rows, tasksPerRow)));
+	}
+
+	@Benchmark
+	public byte[] writeProjectPlan() throws IOException {
+		return objectMapper.writeValueAsBytes(projectPlan);
+	}
+
+	@Benchmark
+	public APIProjectPlan readProjectPlan() throws IOException {
+		return objectMapper.readValue(projectPlanJson, APIProjectPlan.class);
+	}
+
+	@Benchmark
+	public APIProjectPlanPatch readProjectPlanPatch() throws IOException {
+		return objectMapper.readValue(projectPlanPatchJson, APIProjectPlanPatch.class);
+	}
+}
@@ -0,0 +1,40 @@
+package com.poorknight.tpmtoolsbackend.api.entity;
+
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlan;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+	Builds plans shaped like the real ones - every row full of tasks laid end to end, with titles of a realistic length.
+ */
+class BenchmarkProjectPlans {
+
+	static ProjectPlan buildProjectPlan(int rows, int tasksPerRow) {
+		List<Row> rowList = new ArrayList<>(rows);
+		long taskId = 1;
+		for (long rowId = 1; rowId <= rows; rowId++) {
+			List<Task> tasks = new ArrayList<>(tasksPerRow);
+			for (int i = 0; i < tasksPerRow; i++) {
+				tasks.add(new Task(taskId, rowId, "Task " + taskId + " - update the deployment pipeline", 2, i * 2));
+				taskId++;
+			}
+			rowList.add(new Row(rowId, 1L, "Row " + rowId + " - platform team", tasks));
+		}
+		return new ProjectPlan(1L, "Benchmark project plan", rowList);
+	}
+
+	static APIProjectPlanPatch buildPatchMovingEveryTask(ProjectPlan projectPlan) {
+		List<APIProjectPlanPatchRow> rows = new ArrayList<>();
+		for (Row row : projectPlan.getRowList()) {
+			List<APIProjectPlanPatchTask> tasks = new ArrayList<>();
+			for (Task task : row.getTaskList()) {
+				tasks.add(new APIProjectPlanPatchTask(task.getId(), row.getId(), task.getPosition() + 1));
+			}
+			rows.add(new APIProjectPlanPatchRow(row.getId(), tasks));
+		}
+		return new APIProjectPlanPatch(projectPlan.getId(), rows);
+	}
+}
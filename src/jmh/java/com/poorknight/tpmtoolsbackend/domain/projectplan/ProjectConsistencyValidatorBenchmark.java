@@ -0,0 +1,71 @@
+package com.poorknight.tpmtoolsbackend.domain.projectplan;
+
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlan;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+	Validates a patch that reverses the order of every task in every row, against both the current validator and the
+	legacy one.  Run with ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectConsistencyValidatorBenchmark {
+
+	@Param({"1", "10", "50"})
+	private int rows;
+
+	@Param({"10", "100"})
+	private int tasksPerRow;
+
+	@Param({"1", "50", "500"})
+	private int taskSize;
+
+	private ProjectPlan projectPlan;
+	private ProjectPlanPatchTemplate patchTemplate;
+
+	private final ProjectConsistencyValidator validator = new ProjectConsistencyValidator();
+	private final LegacyProjectConsistencyValidator legacyValidator = new LegacyProjectConsistencyValidator();
+
+	@Setup
+	public void buildProjectPlanAndPatch() {
+		List<Row> rowList = new ArrayList<>();
+		List<RowPatchTemplate> rowPatchList = new ArrayList<>();
+		long taskId = 1;
+		for (long rowId = 1; rowId <= rows; rowId++) {
+			List<Task> tasks = new ArrayList<>();
+			List<TaskPatchTemplate> taskPatches = new ArrayList<>();
+			for (int i = 0; i < tasksPerRow; i++) {
+				tasks.add(new Task(taskId, rowId, "task " + taskId, taskSize, i * taskSize));
+				taskPatches.add(TaskPatchTemplate.builder().id(taskId).position((tasksPerRow - 1 - i) * taskSize).build());
+				taskId++;
+			}
+			rowList.add(new Row(rowId, 1L, "row " + rowId, tasks));
+			rowPatchList.add(new RowPatchTemplate(rowId, null, taskPatches));
+		}
+		projectPlan = new ProjectPlan(1L, "benchmark plan", rowList);
+		patchTemplate = new ProjectPlanPatchTemplate(1L, null, rowPatchList);
+	}
+
+	@Benchmark
+	public void sortAndSweep() {
+		validator.validateProjectPlanChangeSetThrowingExceptions(projectPlan, patchTemplate);
+	}
+
+	@Benchmark
+	public void legacyCellSets() {
+		legacyValidator.validateProjectPlanChangeSetThrowingExceptions(projectPlan, patchTemplate);
+	}
+}
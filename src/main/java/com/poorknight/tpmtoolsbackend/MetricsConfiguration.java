@@ -0,0 +1,20 @@
+package com.poorknight.tpmtoolsbackend;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+	Makes @Timed work on any bean, not just on controllers.  The domain services are annotated at the class level, which
+	times every public method they have under tpm.domain.calls, tagged with the class and method names (and the exception,
+	if one was thrown).
+ */
+@Configuration
+public class MetricsConfiguration {
+
+	@Bean
+	public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+		return new TimedAspect(meterRegistry);
+	}
+}
@@ -0,0 +1,98 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+	PATCH requests can send back what they were based on as an If-Match header.  The change is then only made if nobody else
+	has changed the same thing in the meantime.  Either of two things can be sent back:
+
+	- the "version" of the plan, row, or task in the response body, like "3" - the version of what is being changed is checked
+	- the ETag of a GET or PATCH response for the plan, its rows, or its tasks - the plan's revision is checked, so any change
+	  to the plan since that response fails the precondition
+
+	An ETag handed out by another run of the service (or another replica), or for another plan, is never the current one.
+ */
+/*package private*/ final class IfMatchVersions {
+
+	private IfMatchVersions() {
+	}
+
+	// no header (or "*") means the client does not care which version it is changing, so nothing is expected
+	static IfMatch parse(String ifMatch, Long projectPlanId, ProjectPlanRevisions projectPlanRevisions) {
+		if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+			return IfMatch.ANYTHING;
+		}
+
+		String value = ifMatch.trim();
+		if (value.startsWith("W/")) {
+			value = value.substring(2);
+		}
+		if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+			value = value.substring(1, value.length() - 1);
+		}
+
+		try {
+			return new IfMatch(Long.parseLong(value), null);
+		} catch (NumberFormatException e) {
+			return new IfMatch(null, parseRevision(value, ifMatch, projectPlanId, projectPlanRevisions));
+		}
+	}
+
+	// "instanceId-projectPlanId-revision", with "-gzip" or "-deflate" after it for a compressed GET of the plan
+	private static long parseRevision(String eTag, String ifMatch, Long projectPlanId, ProjectPlanRevisions projectPlanRevisions) {
+		String[] parts = eTag.split("-");
+		if (parts.length == 4 && isContentCoding(parts[3])) {
+			parts = new String[] {parts[0], parts[1], parts[2]};
+		}
+		if (parts.length != 3) {
+			throw notAVersionOrETag(ifMatch);
+		}
+
+		long eTagProjectPlanId;
+		long revision;
+		try {
+			eTagProjectPlanId = Long.parseLong(parts[1]);
+			revision = Long.parseLong(parts[2]);
+		} catch (NumberFormatException e) {
+			throw notAVersionOrETag(ifMatch);
+		}
+
+		if (!parts[0].equals(projectPlanRevisions.getInstanceId()) || eTagProjectPlanId != projectPlanId) {
+			throw planChangedSince();
+		}
+		return revision;
+	}
+
+	private static boolean isContentCoding(String token) {
+		for (ResponseCompression.ContentCoding coding : ResponseCompression.ContentCoding.values()) {
+			if (coding.getToken().equals(token)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static ResponseStatusException notAVersionOrETag(String ifMatch) {
+		return new ResponseStatusException(HttpStatus.BAD_REQUEST, "The If-Match header must hold the version being changed, like \"3\", or an ETag from this project plan, but was: " + ifMatch);
+	}
+
+	private static ResponseStatusException planChangedSince() {
+		return new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "The project plan has changed since the ETag in the If-Match header was handed out.  No changes were made - reload the plan and try again.");
+	}
+
+	/**
+		What an If-Match header expects: a version of what is being changed, or a revision of the whole plan - or, when there
+		is no header, nothing at all.
+	 */
+	record IfMatch(Long expectedVersion, Long expectedRevision) {
+
+		static final IfMatch ANYTHING = new IfMatch(null, null);
+
+		void checkRevision(long currentRevision) {
+			if (expectedRevision != null && expectedRevision != currentRevision) {
+				throw planChangedSince();
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+	Listens for the NOTIFYs sent by ProjectPlanChangeNotifier in every replica, and moves this replica's cached plans and
+	ETags on when another replica changes a plan.  Uses its own connection outside of the pool, since a LISTEN only lasts
+	as long as its connection.
+
+	Notifications sent while the connection is down are lost, so after every (re)connect everything is treated as changed.
+
+	This is what keeps caches right while an old and a new replica overlap in a rolling deploy - it does not make more than
+	one replica work.  Only the plan id is passed on, so change streams only reach the subscribers of the replica that made
+	the change, and an ETag from one replica (see ProjectPlanRevisions) never matches on another.  The service runs as a
+	single replica.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "tpm.cache.cross-replica-invalidation.enabled", havingValue = "true", matchIfMissing = true)
+public class ProjectPlanChangeNotificationListener implements SmartLifecycle {
+
+	private static final int POLL_TIMEOUT_MILLIS = 1_000;
+
+	private final DataSourceProperties dataSourceProperties;
+	private final ProjectPlanRevisions projectPlanRevisions;
+	private final ProjectPlanResponseCache projectPlanResponseCache;
+	private final Duration reconnectDelay;
+
+	private volatile boolean running;
+	private Thread listenerThread;
+
+	public ProjectPlanChangeNotificationListener(DataSourceProperties dataSourceProperties,
+												 ProjectPlanRevisions projectPlanRevisions,
+												 ProjectPlanResponseCache projectPlanResponseCache,
+												 @Value("${tpm.cache.cross-replica-invalidation.reconnect-delay:PT5S}") Duration reconnectDelay) {
+		this.dataSourceProperties = dataSourceProperties;
+		this.projectPlanRevisions = projectPlanRevisions;
+		this.projectPlanResponseCache = projectPlanResponseCache;
+		this.reconnectDelay = reconnectDelay;
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		listenerThread = Thread.ofPlatform()
+				.name("project-plan-change-listener")
+				.daemon()
+				.start(this::listenUntilStopped);
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		listenerThread.interrupt();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	private void listenUntilStopped() {
+		while (running) {
+			try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+					dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+				try (Statement statement = connection.createStatement()) {
+					statement.execute("LISTEN " + ProjectPlanChangeNotifier.CHANNEL);
+				}
+				projectPlanRevisions.markAllChanged();
+				projectPlanResponseCache.invalidateAll();
+
+				PGConnection pgConnection = connection.unwrap(PGConnection.class);
+				while (running) {
+					PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+					if (notifications != null) {
+						for (PGNotification notification : notifications) {
+							handleNotification(notification.getParameter());
+						}
+					}
+				}
+
+			} catch (SQLException e) {
+				if (!running) {
+					return;
+				}
+				log.warn("Lost the connection listening for project plan changes - reconnecting in {}", reconnectDelay, e);
+				try {
+					Thread.sleep(reconnectDelay.toMillis());
+				} catch (InterruptedException interrupted) {
+					return;
+				}
+			}
+		}
+	}
+
+	void handleNotification(String payload) {
+		int separator = payload.lastIndexOf(':');
+		if (separator < 0) {
+			return;
+		}
+		if (payload.substring(0, separator).equals(projectPlanRevisions.getInstanceId())) {
+			return; // sent by this replica, which has already handled the change itself
+		}
+
+		Long projectPlanId;
+		try {
+			projectPlanId = Long.valueOf(payload.substring(separator + 1));
+		} catch (NumberFormatException e) {
+			return;
+		}
+		projectPlanRevisions.markChanged(projectPlanId);
+		projectPlanResponseCache.invalidate(projectPlanId);
+	}
+}
@@ -0,0 +1,37 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+	Tells the other replicas about every project plan change with a Postgres NOTIFY, so they can drop what they have cached
+	for the plan.  The NOTIFY is sent inside the transaction making the change - Postgres only delivers it if that
+	transaction commits, and only once it has.
+ */
+@Component
+@ConditionalOnProperty(name = "tpm.cache.cross-replica-invalidation.enabled", havingValue = "true", matchIfMissing = true)
+public class ProjectPlanChangeNotifier {
+
+	static final String CHANNEL = "project_plan_changed";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final ProjectPlanRevisions projectPlanRevisions;
+
+	public ProjectPlanChangeNotifier(JdbcTemplate jdbcTemplate, ProjectPlanRevisions projectPlanRevisions) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.projectPlanRevisions = projectPlanRevisions;
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+	public void onProjectPlanChanged(ProjectPlanChangedEvent event) {
+		jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, buildPayload(projectPlanRevisions.getInstanceId(), event.getProjectPlanId()));
+	}
+
+	static String buildPayload(String instanceId, Long projectPlanId) {
+		return instanceId + ":" + projectPlanId;
+	}
+}
@@ -1,19 +1,43 @@
 package com.poorknight.tpmtoolsbackend.api;
 
+import com.poorknight.tpmtoolsbackend.api.IfMatchVersions.IfMatch;
+import com.poorknight.tpmtoolsbackend.api.ProjectPlanImporter.ProjectPlanImportException;
+import com.poorknight.tpmtoolsbackend.api.ProjectPlanResponseCache.CachedProjectPlan;
+import com.poorknight.tpmtoolsbackend.api.ProjectPlanRevisions.Written;
+import com.poorknight.tpmtoolsbackend.api.ResponseCompression.ContentCoding;
 import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlan;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanDelta;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanImport;
 import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanPatch;
 import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanPatchRow;
 import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanPatchTask;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanView;
+import com.poorknight.tpmtoolsbackend.api.entity.APIRow;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService.ProjectPlanNotFoundException;
-import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlan;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService.ProjectPlanVersionMismatchException;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanUpdate;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
 
 import static com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator.*;
 
@@ -22,31 +46,218 @@ import static com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsisten
 @RequestMapping("/api/v1/project-plans")
 public class ProjectPlanController {
 
+    private static final int MAX_VIEW_ROW_LIMIT = 500;
+
     private ProjectPlanService projectPlanService;
+    private ProjectPlanResponseCache projectPlanResponseCache;
+    private ProjectPlanRevisions projectPlanRevisions;
+    private ProjectPlanEventStream projectPlanEventStream;
+    private ProjectPlanReadModel projectPlanReadModel;
+    private ProjectPlanExporter projectPlanExporter;
+    private ProjectPlanImporter projectPlanImporter;
+    private ResponseCompression responseCompression;
 
+    // large plans go out gzip or deflate compressed when the client accepts it, compressed once per revision and kept in the cache
     @GetMapping("/{projectPlanId}")
-    public APIProjectPlan getProjectPlan(@PathVariable Long projectPlanId) {
+    public APIProjectPlan getProjectPlan(@PathVariable Long projectPlanId, WebRequest webRequest) {
+        ContentCoding coding = responseCompression.negotiate(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        HttpServletResponse response = webRequest.getNativeResponse(HttpServletResponse.class);
+        if (response != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        if (coding == null || response == null) {
+            if (webRequest.checkNotModified(projectPlanRevisions.currentETag(projectPlanId))) {
+                return null;
+            }
+            return getCachedProjectPlan(projectPlanId).getProjectPlan();
+        }
+
+        // whether the plan is big enough to compress is only known once it is loaded (usually from the cache), and the
+        // ETag has to name the body that is really sent - a small plan goes out as it is, under the plain ETag
+        CachedProjectPlan cached = getCachedProjectPlan(projectPlanId);
+        byte[] compressedBody = cached.getCompressedBody(coding, responseCompression);
+        if (webRequest.checkNotModified(eTagFor(projectPlanId, cached.getRevision(), compressedBody == null ? null : coding))) {
+            return null;
+        }
+        if (compressedBody == null) {
+            return cached.getProjectPlan();
+        }
+        responseCompression.writeCompressedJson(response, compressedBody, coding);
+        return null;
+    }
+
+    private CachedProjectPlan getCachedProjectPlan(Long projectPlanId) {
         try {
-            ProjectPlan projectPlan = projectPlanService.getProjectPlan(projectPlanId);
-            return APIProjectPlan.fromDomainObject(projectPlan);
+            return projectPlanResponseCache.getEntry(projectPlanId,
+                    () -> projectPlanReadModel.findProjectPlan(projectPlanId)
+                            .orElseThrow(() -> new ProjectPlanNotFoundException("No project plan found for the given id: " + projectPlanId)));
 
         } catch(ProjectPlanNotFoundException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Either the projectPlanId does not point to an existing project plan, or you do not have access to it.");
         }
     }
 
+    // each coding is a different representation, so it needs its own strong ETag
+    private String eTagFor(Long projectPlanId, long revision, ContentCoding coding) {
+        String eTag = projectPlanRevisions.eTagFor(projectPlanId, revision);
+        if (coding == null) {
+            return eTag;
+        }
+        return eTag.substring(0, eTag.length() - 1) + "-" + coding.getToken() + "\"";
+    }
+
+    // a window of a (possibly huge) plan - some of its rows, with only the tasks that reach into a range of positions
+    @GetMapping("/{projectPlanId}/view")
+    public APIProjectPlanView getProjectPlanView(@PathVariable Long projectPlanId,
+                                                 @RequestParam(defaultValue = "0") int rowOffset,
+                                                 @RequestParam(defaultValue = "50") int rowLimit,
+                                                 @RequestParam(defaultValue = "0") int fromPosition,
+                                                 @RequestParam(defaultValue = "2147483647") int toPosition,
+                                                 @RequestParam(required = false) String pageToken,
+                                                 WebRequest webRequest) {
+        validateViewRequestThrowingExceptions(rowOffset, rowLimit, fromPosition, toPosition, pageToken);
+        long afterRowId = pageToken == null ? 0 : ViewPageTokens.decodeAfterRowId(pageToken);
+
+        if (webRequest.checkNotModified(projectPlanRevisions.currentETag(projectPlanId))) {
+            return null;
+        }
+
+        return projectPlanReadModel.findProjectPlanView(projectPlanId, afterRowId, rowOffset, rowLimit, fromPosition, toPosition)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Either the projectPlanId does not point to an existing project plan, or you do not have access to it."));
+    }
+
+    private void validateViewRequestThrowingExceptions(int rowOffset, int rowLimit, int fromPosition, int toPosition, String pageToken) {
+        if (rowLimit < 1 || rowLimit > MAX_VIEW_ROW_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The rowLimit must be between 1 and " + MAX_VIEW_ROW_LIMIT + ".");
+        }
+        if (rowOffset < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The rowOffset cannot be negative.");
+        }
+        if (pageToken != null && rowOffset != 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Pass either a rowOffset or a pageToken, not both.  The pageToken already says where the page starts.");
+        }
+        if (fromPosition < 0 || toPosition <= fromPosition) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The fromPosition cannot be negative, and the toPosition must be greater than the fromPosition.");
+        }
+    }
+
+    // what changed since the client's revision of the plan - or, when that is too far behind, a note to fetch the whole plan again
+    @GetMapping("/{projectPlanId}/changes")
+    public APIProjectPlanDelta getProjectPlanChanges(@PathVariable Long projectPlanId, @RequestParam long since) {
+        if (since < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The since revision cannot be negative.");
+        }
+
+        return projectPlanReadModel.findChangesSince(projectPlanId, since)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Either the projectPlanId does not point to an existing project plan, or you do not have access to it."));
+    }
+
+    // every plan, with its rows and tasks, as newline-delimited JSON - for backups and migrations
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody exportAllProjectPlans() {
+        return projectPlanExporter::exportAllProjectPlans;
+    }
+
+    @GetMapping(value = "/{projectPlanId}/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody exportProjectPlan(@PathVariable Long projectPlanId) {
+        if (!projectPlanExporter.projectPlanExists(projectPlanId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Either the projectPlanId does not point to an existing project plan, or you do not have access to it.");
+        }
+        return outputStream -> projectPlanExporter.exportProjectPlan(projectPlanId, outputStream);
+    }
+
+    // loads plans in the same newline-delimited JSON the export writes - the imported plans, rows and tasks all get new ids
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public APIProjectPlanImport importProjectPlans(InputStream requestBody) throws IOException {
+        try {
+            return projectPlanImporter.importProjectPlans(requestBody);
+
+        } catch(ProjectPlanImportException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // streams the changes made to the plan from now on, so clients can apply them instead of refetching the whole plan
+    @GetMapping(value = "/{projectPlanId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamProjectPlanChanges(@PathVariable Long projectPlanId) {
+        return projectPlanEventStream.subscribe(projectPlanId);
+    }
+
+    // If-Match can hold the plan's version, or an ETag of the plan, its rows or tasks.  The response has the patched plan's ETag,
+    // unless something else changed the plan at the same time - then no revision holds exactly what is in the response
     @PatchMapping("/{projectPlanId}")
-    public APIProjectPlan patchProjectPlan(@PathVariable Long projectPlanId, @RequestBody APIProjectPlanPatch patchRequest) {
+    public APIProjectPlan patchProjectPlan(@PathVariable Long projectPlanId, @RequestBody APIProjectPlanPatch patchRequest,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                           HttpServletResponse response) {
         validatePatchRequestThrowingExceptions(projectPlanId, patchRequest);
         ProjectPlanPatchTemplate patchTemplate = patchRequest.toDomainObject();
+        IfMatch ifMatchExpects = IfMatchVersions.parse(ifMatch, projectPlanId, projectPlanRevisions);
 
+        // the whole plan as it was before the patch, if it is in the cache - the update only hands back the rows it changed.
+        // On a miss the plan is not read before the write: only its version is, and only for an ETag
+        CachedProjectPlan cached = projectPlanResponseCache.getEntryIfCurrent(projectPlanId);
+        // for an ETag, the plan must still be at the version it had at that revision when the patch is written - read before
+        // the revision is checked, so that two patches sent with the same ETag cannot both be written
+        Optional<Long> planVersion = ifMatchExpects.expectedRevision() == null ? Optional.empty() : versionBeforePatch(projectPlanId, cached);
+        long revisionBefore = cached == null ? projectPlanRevisions.currentRevision(projectPlanId) : cached.getRevision();
+        ifMatchExpects.checkRevision(revisionBefore);
+        if (ifMatchExpects.expectedRevision() != null && planVersion.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Either the projectPlanId does not point to an existing project plan, or you do not have access to it.");
+        }
+        Long expectedVersion = planVersion.orElse(ifMatchExpects.expectedVersion());
+
+        Written<ProjectPlanUpdate> written;
         try {
-            ProjectPlan projectPlan = projectPlanService.updateProjectPlan(patchTemplate);
-            return APIProjectPlan.fromDomainObject(projectPlan);
+            written = projectPlanRevisions.write(projectPlanId, revisionBefore,
+                    () -> projectPlanService.updateProjectPlan(patchTemplate, expectedVersion));
+
+        } catch(ProjectPlanNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Either the projectPlanId does not point to an existing project plan, or you do not have access to it.");
 
         } catch(ProjectPlanUpdateConsistencyException e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+
+        } catch(ProjectPlanVersionMismatchException e) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, e.getMessage());
+
+        } catch(OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "The project plan was changed by someone else while this change was being made.  No changes were made - reload the plan and try again.");
+        }
+
+        if (cached == null) {
+            // the response is the whole plan, so a miss reads it once the patch is written - loaded through the cache, it is
+            // also what the next GET is served from.  Only a plan loaded at the patch's own revision gets its ETag
+            CachedProjectPlan loaded = getCachedProjectPlan(projectPlanId);
+            if (written.revision() != null && written.revision() == loaded.getRevision()) {
+                response.setHeader(HttpHeaders.ETAG, projectPlanRevisions.eTagFor(projectPlanId, written.revision()));
+            }
+            return loaded.getProjectPlan();
+        }
+
+        APIProjectPlan updatedProjectPlan = mergeUpdate(cached.getProjectPlan(), written.result());
+        if (written.revision() != null) {
+            response.setHeader(HttpHeaders.ETAG, projectPlanRevisions.eTagFor(projectPlanId, written.revision()));
+            // ready for the next GET
+            projectPlanResponseCache.putIfCurrent(projectPlanId, written.revision(), updatedProjectPlan);
+        }
+        return updatedProjectPlan;
+    }
+
+    private Optional<Long> versionBeforePatch(Long projectPlanId, CachedProjectPlan cached) {
+        return cached == null ? projectPlanReadModel.findProjectPlanVersion(projectPlanId) : Optional.of(cached.getProjectPlan().getVersion());
+    }
+
+    // the changed rows replace the same rows of the plan, which stay in id order - the rest of the plan is left as it was
+    private static APIProjectPlan mergeUpdate(APIProjectPlan projectPlan, ProjectPlanUpdate update) {
+        Map<Long, APIRow> rowsById = new TreeMap<>();
+        for (APIRow row : projectPlan.getRows()) {
+            rowsById.put(row.getId(), row);
+        }
+        for (Row changedRow : update.getChangedRows()) {
+            rowsById.put(changedRow.getId(), APIRow.fromDomainObject(changedRow));
         }
+        return new APIProjectPlan(update.getId(), update.getTitle(), new ArrayList<>(rowsById.values()), update.getVersion());
     }
 
     private void validatePatchRequestThrowingExceptions(Long projectPlanId, APIProjectPlanPatch patchRequest) {
@@ -0,0 +1,165 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanChanges;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+	Fans committed project plan changes out to the Server-Sent Event subscribers of that plan.
+
+	Publishing never blocks: every subscriber has its own bounded queue, drained by its own delivery task.  A subscriber
+	that falls so far behind that its queue fills up is disconnected rather than buffered - it can reconnect and refetch
+	the plan.
+
+	On shutdown every subscription is completed, so clients see the stream end (and can reconnect once the service is back)
+	instead of being cut off, and the delivery threads are stopped.
+ */
+@Component
+public class ProjectPlanEventStream {
+
+	static final String EVENT_NAME = "project-plan-changes";
+	// how long deliveries already running get to finish on shutdown, before they are interrupted
+	private static final Duration DELIVERY_SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
+
+	private final ConcurrentMap<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+	private final int maxQueuedEventsPerSubscriber;
+	private final Duration subscriptionTimeout;
+	private final Executor deliveryExecutor;
+
+	@Autowired
+	public ProjectPlanEventStream(@Value("${tpm.events.max-queued-per-subscriber:100}") int maxQueuedEventsPerSubscriber,
+								  @Value("${tpm.events.subscription-timeout:PT30M}") Duration subscriptionTimeout) {
+		this(maxQueuedEventsPerSubscriber, subscriptionTimeout, Executors.newVirtualThreadPerTaskExecutor());
+	}
+
+	ProjectPlanEventStream(int maxQueuedEventsPerSubscriber, Duration subscriptionTimeout, Executor deliveryExecutor) {
+		this.maxQueuedEventsPerSubscriber = maxQueuedEventsPerSubscriber;
+		this.subscriptionTimeout = subscriptionTimeout;
+		this.deliveryExecutor = deliveryExecutor;
+	}
+
+	public SseEmitter subscribe(Long projectPlanId) {
+		Subscriber subscriber = new Subscriber(projectPlanId, new SseEmitter(subscriptionTimeout.toMillis()));
+		subscriber.emitter.onCompletion(() -> unsubscribe(subscriber));
+		subscriber.emitter.onTimeout(() -> unsubscribe(subscriber));
+		subscriber.emitter.onError(e -> unsubscribe(subscriber));
+
+		subscribers.compute(projectPlanId, (id, planSubscribers) -> {
+			Set<Subscriber> updatedSubscribers = planSubscribers == null ? ConcurrentHashMap.newKeySet() : planSubscribers;
+			updatedSubscribers.add(subscriber);
+			return updatedSubscribers;
+		});
+		return subscriber.emitter;
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onProjectPlanChanged(ProjectPlanChangedEvent event) {
+		if (event.getChanges().isEmpty()) {
+			return;
+		}
+		Set<Subscriber> planSubscribers = subscribers.get(event.getProjectPlanId());
+		if (planSubscribers == null) {
+			return;
+		}
+
+		APIProjectPlanChanges changes = APIProjectPlanChanges.fromDomainObject(event);
+		for (Subscriber subscriber : planSubscribers) {
+			subscriber.offer(changes);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		for (Long projectPlanId : subscribers.keySet()) {
+			Set<Subscriber> planSubscribers = subscribers.remove(projectPlanId);
+			if (planSubscribers != null) {
+				planSubscribers.forEach(Subscriber::close);
+			}
+		}
+
+		if (deliveryExecutor instanceof ExecutorService executorService) {
+			executorService.shutdown();
+			if (!executorService.awaitTermination(DELIVERY_SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+				executorService.shutdownNow();
+			}
+		}
+	}
+
+	int subscriberCount(Long projectPlanId) {
+		Set<Subscriber> planSubscribers = subscribers.get(projectPlanId);
+		return planSubscribers == null ? 0 : planSubscribers.size();
+	}
+
+	private void unsubscribe(Subscriber subscriber) {
+		subscribers.computeIfPresent(subscriber.projectPlanId, (id, planSubscribers) -> {
+			planSubscribers.remove(subscriber);
+			return planSubscribers.isEmpty() ? null : planSubscribers;
+		});
+	}
+
+	private class Subscriber {
+
+		private final Long projectPlanId;
+		private final SseEmitter emitter;
+		private final BlockingQueue<APIProjectPlanChanges> queue = new ArrayBlockingQueue<>(maxQueuedEventsPerSubscriber);
+		private final AtomicBoolean delivering = new AtomicBoolean();
+
+		private Subscriber(Long projectPlanId, SseEmitter emitter) {
+			this.projectPlanId = projectPlanId;
+			this.emitter = emitter;
+		}
+
+		private void offer(APIProjectPlanChanges changes) {
+			if (!queue.offer(changes)) {
+				unsubscribe(this);
+				close();
+				return;
+			}
+			scheduleDelivery();
+		}
+
+		// a delivery still running fails on its next send, and stops
+		private void close() {
+			queue.clear();
+			emitter.complete();
+		}
+
+		private void scheduleDelivery() {
+			if (delivering.compareAndSet(false, true)) {
+				deliveryExecutor.execute(this::deliver);
+			}
+		}
+
+		private void deliver() {
+			try {
+				APIProjectPlanChanges changes;
+				while ((changes = queue.poll()) != null) {
+					emitter.send(SseEmitter.event().name(EVENT_NAME).data(changes, MediaType.APPLICATION_JSON));
+				}
+			} catch (IOException | IllegalStateException e) {
+				// the client has gone away (or the emitter was already completed) - nothing more to send
+				unsubscribe(this);
+				queue.clear();
+				return;
+			}
+
+			delivering.set(false);
+			// something may have been queued after the last poll, but before delivering was cleared
+			if (!queue.isEmpty()) {
+				scheduleDelivery();
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+	Writes project plans out as newline-delimited JSON - one line per plan, then one per row of that plan, each followed by
+	its tasks:
+
+		{"type":"projectPlan","id":1,"title":"...","version":0}
+		{"type":"row","id":2,"projectPlanId":1,"title":"...","version":0}
+		{"type":"task","id":3,"rowId":2,"title":"...","size":1,"position":1,"version":0}
+
+	The records are read through a server-side cursor (Postgres only uses one inside a transaction, with a fetch size set)
+	and written as they arrive, so memory use stays the same no matter how big the export is.  The whole export is read in
+	one read-only transaction, so it is a consistent snapshot even while plans are being changed.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class ProjectPlanExporter {
+
+	private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+			.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+			.rootValueSeparator((String) null)
+			.build();
+
+	private static final String EXPORT_QUERY = """
+			SELECT p.id AS project_plan_id, p.title AS project_plan_title, p.version AS project_plan_version,
+				r.id AS row_id, r.title AS row_title, r.version AS row_version,
+				t.id AS task_id, t.title AS task_title, t.size AS task_size, t.position AS task_position, t.version AS task_version
+			FROM p0_project_plan p
+			LEFT JOIN p1_row r ON r.p0_project_plan_fk = p.id
+			LEFT JOIN task t ON t.p0_project_plan_fk = p.id AND t.p1_row_fk = r.id
+			""";
+
+	private static final String ORDER_BY = "ORDER BY p.id, r.id, t.position, t.id";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final int fetchSize;
+
+	public ProjectPlanExporter(JdbcTemplate jdbcTemplate, @Value("${tpm.export.fetch-size:1000}") int fetchSize) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.fetchSize = fetchSize;
+	}
+
+	public boolean projectPlanExists(Long projectPlanId) {
+		return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM p0_project_plan WHERE id = ?)", Boolean.class, projectPlanId));
+	}
+
+	public void exportProjectPlan(Long projectPlanId, OutputStream outputStream) throws IOException {
+		export(EXPORT_QUERY + "WHERE p.id = ?\n" + ORDER_BY, projectPlanId, outputStream);
+	}
+
+	public void exportAllProjectPlans(OutputStream outputStream) throws IOException {
+		export(EXPORT_QUERY + ORDER_BY, null, outputStream);
+	}
+
+	private void export(String query, Long projectPlanId, OutputStream outputStream) throws IOException {
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+			jdbcTemplate.query(connection -> {
+				PreparedStatement statement = connection.prepareStatement(query);
+				statement.setFetchSize(fetchSize);
+				if (projectPlanId != null) {
+					statement.setLong(1, projectPlanId);
+				}
+				return statement;
+			}, new NdjsonWriter(generator));
+
+		} catch (UncheckedIOException e) {
+			// most likely the client went away part way through
+			throw e.getCause();
+		}
+	}
+
+	// the records arrive ordered by plan, then row, so a plan (or row) line is written the first time its id shows up
+	private static class NdjsonWriter implements RowCallbackHandler {
+
+		private final JsonGenerator generator;
+		private Long lastProjectPlanId;
+		private Long lastRowId;
+
+		private NdjsonWriter(JsonGenerator generator) {
+			this.generator = generator;
+		}
+
+		@Override
+		public void processRow(ResultSet resultSet) throws SQLException {
+			try {
+				long projectPlanId = resultSet.getLong("project_plan_id");
+				if (lastProjectPlanId == null || lastProjectPlanId != projectPlanId) {
+					writeProjectPlan(projectPlanId, resultSet);
+					lastProjectPlanId = projectPlanId;
+					lastRowId = null;
+				}
+
+				long rowId = resultSet.getLong("row_id");
+				if (resultSet.wasNull()) {
+					return;
+				}
+				if (lastRowId == null || lastRowId != rowId) {
+					writeRow(rowId, projectPlanId, resultSet);
+					lastRowId = rowId;
+				}
+
+				long taskId = resultSet.getLong("task_id");
+				if (!resultSet.wasNull()) {
+					writeTask(taskId, rowId, resultSet);
+				}
+
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void writeProjectPlan(long projectPlanId, ResultSet resultSet) throws IOException, SQLException {
+			generator.writeStartObject();
+			generator.writeStringField("type", "projectPlan");
+			generator.writeNumberField("id", projectPlanId);
+			generator.writeStringField("title", resultSet.getString("project_plan_title"));
+			generator.writeNumberField("version", resultSet.getLong("project_plan_version"));
+			endLine();
+		}
+
+		private void writeRow(long rowId, long projectPlanId, ResultSet resultSet) throws IOException, SQLException {
+			generator.writeStartObject();
+			generator.writeStringField("type", "row");
+			generator.writeNumberField("id", rowId);
+			generator.writeNumberField("projectPlanId", projectPlanId);
+			generator.writeStringField("title", resultSet.getString("row_title"));
+			generator.writeNumberField("version", resultSet.getLong("row_version"));
+			endLine();
+		}
+
+		private void writeTask(long taskId, long rowId, ResultSet resultSet) throws IOException, SQLException {
+			generator.writeStartObject();
+			generator.writeStringField("type", "task");
+			generator.writeNumberField("id", taskId);
+			generator.writeNumberField("rowId", rowId);
+			generator.writeStringField("title", resultSet.getString("task_title"));
+			generator.writeNumberField("size", resultSet.getInt("task_size"));
+			generator.writeNumberField("position", resultSet.getInt("task_position"));
+			generator.writeNumberField("version", resultSet.getLong("task_version"));
+			endLine();
+		}
+
+		private void endLine() throws IOException {
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+		}
+	}
+}
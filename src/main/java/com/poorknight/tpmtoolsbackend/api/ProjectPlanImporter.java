@@ -0,0 +1,398 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanImport;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+	Loads project plans from the newline-delimited JSON that ProjectPlanExporter writes, all in one transaction.
+
+	The records are streamed through COPY into a temporary staging table as they are parsed, so memory use stays the same
+	however big the import is.  Everything else happens in the database: checking that every row and task has a parent in
+	the import, and that no two tasks in a row take up the same space (the same rule ProjectConsistencyValidator applies),
+	then handing out new ids and copying the records into the real tables.
+
+	The ids in the import only link records to each other - the imported plans, rows and tasks all get new ids, and start
+	again at version 0.
+ */
+@Repository
+@Transactional(rollbackFor = IOException.class)
+public class ProjectPlanImporter {
+
+	private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+			.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+			.build();
+
+	private static final int MAX_TITLE_LENGTH = 255;
+
+	// matches the sequences' INCREMENT BY - Hibernate (pooled-lo) treats each value as the first of a block of this many ids
+	private static final int IDS_PER_SEQUENCE_VALUE = 50;
+
+	private static final char PROJECT_PLAN = 'P';
+	private static final char ROW = 'R';
+	private static final char TASK = 'T';
+
+	private static final String CREATE_STAGING_TABLE = """
+			CREATE TEMPORARY TABLE import_staging (
+				line_number bigint NOT NULL,
+				record_type char(1) NOT NULL,
+				source_id bigint NOT NULL,
+				parent_source_id bigint,
+				title text,
+				size int,
+				position int,
+				new_id bigint
+			) ON COMMIT DROP
+			""";
+
+	private static final String COPY_INTO_STAGING_TABLE =
+			"COPY import_staging (line_number, record_type, source_id, parent_source_id, title, size, position) FROM STDIN";
+
+	private static final String FIRST_DUPLICATE_ID = """
+			SELECT line_number FROM (
+				SELECT line_number, count(*) OVER (PARTITION BY record_type, source_id) AS records_with_id
+				FROM import_staging
+			) counted
+			WHERE records_with_id > 1
+			ORDER BY line_number
+			LIMIT 1
+			""";
+
+	private static final String FIRST_RECORD_WITHOUT_PARENT = """
+			SELECT child.line_number
+			FROM import_staging child
+			WHERE child.record_type = ?
+			AND NOT EXISTS (SELECT 1 FROM import_staging parent WHERE parent.record_type = ? AND parent.source_id = child.parent_source_id)
+			ORDER BY child.line_number
+			LIMIT 1
+			""";
+
+	// the same sweep as ProjectConsistencyValidator: sorted by position, a task overlaps if it starts before the furthest
+	// point reached by any task before it in the row.  Every task has a size of at least 1 by now - readRecord checks it.
+	private static final String FIRST_OVERLAPPING_TASK = """
+			SELECT line_number FROM (
+				SELECT line_number, position,
+					max(position::bigint + size) OVER (PARTITION BY parent_source_id ORDER BY position, size, line_number
+						ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING) AS furthest_occupied
+				FROM import_staging
+				WHERE record_type = 'T'
+			) swept
+			WHERE position < furthest_occupied
+			ORDER BY line_number
+			LIMIT 1
+			""";
+
+	private static final String ASSIGN_NEW_IDS = """
+			WITH blocks AS MATERIALIZED (
+				SELECT block_number - 1 AS block_index, nextval('%s') AS first_id
+				FROM generate_series(1, ?) AS block_number
+			), numbered AS (
+				SELECT line_number, row_number() OVER (ORDER BY line_number) - 1 AS record_index
+				FROM import_staging
+				WHERE record_type = ?
+			)
+			UPDATE import_staging staged
+			SET new_id = blocks.first_id + numbered.record_index %% ?
+			FROM numbered
+			JOIN blocks ON blocks.block_index = numbered.record_index / ?
+			WHERE staged.line_number = numbered.line_number
+			""";
+
+	private static final String INSERT_PROJECT_PLANS = """
+			INSERT INTO p0_project_plan (id, title)
+			SELECT new_id, title FROM import_staging WHERE record_type = 'P'
+			""";
+
+	private static final String INSERT_ROWS = """
+			INSERT INTO p1_row (id, p0_project_plan_fk, title)
+			SELECT r.new_id, p.new_id, r.title
+			FROM import_staging r
+			JOIN import_staging p ON p.record_type = 'P' AND p.source_id = r.parent_source_id
+			WHERE r.record_type = 'R'
+			""";
+
+	private static final String INSERT_TASKS = """
+			INSERT INTO task (id, p0_project_plan_fk, p1_row_fk, title, size, position)
+			SELECT t.new_id, p.new_id, r.new_id, t.title, t.size, t.position
+			FROM import_staging t
+			JOIN import_staging r ON r.record_type = 'R' AND r.source_id = t.parent_source_id
+			JOIN import_staging p ON p.record_type = 'P' AND p.source_id = r.parent_source_id
+			WHERE t.record_type = 'T'
+			""";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final DataSource dataSource;
+
+	public ProjectPlanImporter(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.dataSource = dataSource;
+	}
+
+	public APIProjectPlanImport importProjectPlans(InputStream inputStream) throws IOException {
+		jdbcTemplate.execute(CREATE_STAGING_TABLE);
+		RecordCounts counts = copyIntoStagingTable(inputStream);
+		if (counts.projectPlans == 0) {
+			throw new ProjectPlanImportException("The import does not contain any project plans.");
+		}
+
+		jdbcTemplate.execute("CREATE INDEX ON import_staging (record_type, source_id)");
+		jdbcTemplate.execute("ANALYZE import_staging");
+		validateStagedRecordsThrowingExceptions();
+
+		assignNewIds(PROJECT_PLAN, "p0_project_plan_id_seq", counts.projectPlans);
+		assignNewIds(ROW, "p1_row_id_seq", counts.rows);
+		assignNewIds(TASK, "task_id_seq", counts.tasks);
+		jdbcTemplate.update(INSERT_PROJECT_PLANS);
+		jdbcTemplate.update(INSERT_ROWS);
+		jdbcTemplate.update(INSERT_TASKS);
+
+		List<Long> projectPlanIds = jdbcTemplate.queryForList(
+				"SELECT new_id FROM import_staging WHERE record_type = 'P' ORDER BY line_number", Long.class);
+		return new APIProjectPlanImport(projectPlanIds, counts.rows, counts.tasks);
+	}
+
+	private RecordCounts copyIntoStagingTable(InputStream inputStream) throws IOException {
+		Connection connection = DataSourceUtils.getConnection(dataSource);
+		try {
+			PGCopyOutputStream copyStream = new PGCopyOutputStream(connection.unwrap(PGConnection.class), COPY_INTO_STAGING_TABLE, 1 << 16);
+			try {
+				Writer copyWriter = new OutputStreamWriter(copyStream, StandardCharsets.UTF_8);
+				RecordCounts counts = parseRecords(inputStream, copyWriter);
+				copyWriter.close(); // ends the COPY
+				return counts;
+
+			} catch (RuntimeException | IOException e) {
+				if (copyStream.isActive()) {
+					copyStream.cancelCopy();
+				}
+				throw e;
+			}
+		} catch (SQLException e) {
+			throw new IOException("Could not copy the import into the database.", e);
+		} finally {
+			DataSourceUtils.releaseConnection(connection, dataSource);
+		}
+	}
+
+	private static RecordCounts parseRecords(InputStream inputStream, Writer copyWriter) throws IOException {
+		RecordCounts counts = new RecordCounts();
+		try (JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			JsonToken token;
+			long previousLineNumber = 0;
+			while ((token = parser.nextToken()) != null) {
+				long lineNumber = parser.currentTokenLocation().getLineNr();
+				if (token != JsonToken.START_OBJECT || lineNumber == previousLineNumber) {
+					throw new ProjectPlanImportException(lineNumber, "each line must hold one JSON object.");
+				}
+				StagedRecord record = readRecord(parser, lineNumber);
+				writeCopyLine(copyWriter, lineNumber, record);
+				counts.add(record.type());
+				previousLineNumber = lineNumber;
+			}
+		} catch (JsonProcessingException e) {
+			throw new ProjectPlanImportException(e.getLocation() == null ? 0 : e.getLocation().getLineNr(), "not valid JSON - " + e.getOriginalMessage());
+		}
+		return counts;
+	}
+
+	private static StagedRecord readRecord(JsonParser parser, long lineNumber) throws IOException {
+		String type = null;
+		Long id = null;
+		Long projectPlanId = null;
+		Long rowId = null;
+		String title = null;
+		Long size = null;
+		Long position = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.currentName();
+			JsonToken value = parser.nextToken();
+			switch (fieldName) {
+				case "type" -> type = readString(parser, value, lineNumber, fieldName);
+				case "id" -> id = readNumber(parser, value, lineNumber, fieldName);
+				case "projectPlanId" -> projectPlanId = readNumber(parser, value, lineNumber, fieldName);
+				case "rowId" -> rowId = readNumber(parser, value, lineNumber, fieldName);
+				case "title" -> title = readString(parser, value, lineNumber, fieldName);
+				case "size" -> size = readNumber(parser, value, lineNumber, fieldName);
+				case "position" -> position = readNumber(parser, value, lineNumber, fieldName);
+				case "version" -> readNumber(parser, value, lineNumber, fieldName); // imported records start again at version 0
+				default -> throw new ProjectPlanImportException(lineNumber, "unknown field \"" + fieldName + "\".");
+			}
+		}
+
+		if (title != null && title.length() > MAX_TITLE_LENGTH) {
+			throw new ProjectPlanImportException(lineNumber, "titles can be at most " + MAX_TITLE_LENGTH + " characters long.");
+		}
+		requireField(id, "id", lineNumber);
+		if ("projectPlan".equals(type)) {
+			return new StagedRecord(PROJECT_PLAN, id, null, title, null, null);
+		}
+		if ("row".equals(type)) {
+			requireField(projectPlanId, "projectPlanId", lineNumber);
+			return new StagedRecord(ROW, id, projectPlanId, title, null, null);
+		}
+		if ("task".equals(type)) {
+			requireField(rowId, "rowId", lineNumber);
+			requireField(size, "size", lineNumber);
+			requireField(position, "position", lineNumber);
+			// the same rules as for a task that is POSTed
+			if (size < 1) {
+				throw new ProjectPlanImportException(lineNumber, "a task's size must be a positive integer.");
+			}
+			if (position < 0) {
+				throw new ProjectPlanImportException(lineNumber, "a task's position must be a non-negative integer.");
+			}
+			if (title == null) {
+				throw new ProjectPlanImportException(lineNumber, "a task's title is mandatory.  An empty string is valid.");
+			}
+			return new StagedRecord(TASK, id, rowId, title, toInt(size, "size", lineNumber), toInt(position, "position", lineNumber));
+		}
+		throw new ProjectPlanImportException(lineNumber, "\"type\" must be one of \"projectPlan\", \"row\" or \"task\".");
+	}
+
+	private static String readString(JsonParser parser, JsonToken value, long lineNumber, String fieldName) throws IOException {
+		if (value == JsonToken.VALUE_NULL) {
+			return null;
+		}
+		if (value != JsonToken.VALUE_STRING) {
+			throw new ProjectPlanImportException(lineNumber, "\"" + fieldName + "\" must be a string.");
+		}
+		return parser.getText();
+	}
+
+	private static Long readNumber(JsonParser parser, JsonToken value, long lineNumber, String fieldName) throws IOException {
+		if (value == JsonToken.VALUE_NULL) {
+			return null;
+		}
+		if (value != JsonToken.VALUE_NUMBER_INT || parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+			throw new ProjectPlanImportException(lineNumber, "\"" + fieldName + "\" must be a whole number.");
+		}
+		return parser.getLongValue();
+	}
+
+	private static void requireField(Object value, String fieldName, long lineNumber) {
+		if (value == null) {
+			throw new ProjectPlanImportException(lineNumber, "\"" + fieldName + "\" is required.");
+		}
+	}
+
+	private static int toInt(long value, String fieldName, long lineNumber) {
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new ProjectPlanImportException(lineNumber, "\"" + fieldName + "\" is too big.");
+		}
+		return (int) value;
+	}
+
+	// one line of COPY's text format: tab separated, \N for null
+	private static void writeCopyLine(Writer copyWriter, long lineNumber, StagedRecord record) throws IOException {
+		copyWriter.write(Long.toString(lineNumber));
+		copyWriter.write('\t');
+		copyWriter.write(record.type());
+		copyWriter.write('\t');
+		copyWriter.write(Long.toString(record.id()));
+		copyWriter.write('\t');
+		copyWriter.write(record.parentId() == null ? "\\N" : Long.toString(record.parentId()));
+		copyWriter.write('\t');
+		writeCopyText(copyWriter, record.title());
+		copyWriter.write('\t');
+		copyWriter.write(record.size() == null ? "\\N" : Integer.toString(record.size()));
+		copyWriter.write('\t');
+		copyWriter.write(record.position() == null ? "\\N" : Integer.toString(record.position()));
+		copyWriter.write('\n');
+	}
+
+	private static void writeCopyText(Writer copyWriter, String text) throws IOException {
+		if (text == null) {
+			copyWriter.write("\\N");
+			return;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '\\' -> copyWriter.write("\\\\");
+				case '\t' -> copyWriter.write("\\t");
+				case '\n' -> copyWriter.write("\\n");
+				case '\r' -> copyWriter.write("\\r");
+				default -> copyWriter.write(c);
+			}
+		}
+	}
+
+	private void validateStagedRecordsThrowingExceptions() {
+		Long lineNumber = firstLineNumber(FIRST_DUPLICATE_ID);
+		if (lineNumber != null) {
+			throw new ProjectPlanImportException(lineNumber, "another record of the same type has the same id.");
+		}
+
+		lineNumber = firstLineNumber(FIRST_RECORD_WITHOUT_PARENT, String.valueOf(ROW), String.valueOf(PROJECT_PLAN));
+		if (lineNumber != null) {
+			throw new ProjectPlanImportException(lineNumber, "the row's project plan is not part of the import.");
+		}
+
+		lineNumber = firstLineNumber(FIRST_RECORD_WITHOUT_PARENT, String.valueOf(TASK), String.valueOf(ROW));
+		if (lineNumber != null) {
+			throw new ProjectPlanImportException(lineNumber, "the task's row is not part of the import.");
+		}
+
+		lineNumber = firstLineNumber(FIRST_OVERLAPPING_TASK);
+		if (lineNumber != null) {
+			throw new ProjectPlanImportException(lineNumber, "the task occupies the same space as another task in its row.");
+		}
+	}
+
+	private Long firstLineNumber(String query, Object... parameters) {
+		List<Long> lineNumbers = jdbcTemplate.queryForList(query, Long.class, parameters);
+		return lineNumbers.isEmpty() ? null : lineNumbers.get(0);
+	}
+
+	private void assignNewIds(char recordType, String sequenceName, long recordCount) {
+		long blockCount = (recordCount + IDS_PER_SEQUENCE_VALUE - 1) / IDS_PER_SEQUENCE_VALUE;
+		jdbcTemplate.update(ASSIGN_NEW_IDS.formatted(sequenceName), blockCount, String.valueOf(recordType), IDS_PER_SEQUENCE_VALUE, IDS_PER_SEQUENCE_VALUE);
+	}
+
+	private record StagedRecord(char type, Long id, Long parentId, String title, Integer size, Integer position) {
+	}
+
+	private static class RecordCounts {
+
+		private long projectPlans;
+		private long rows;
+		private long tasks;
+
+		private void add(char recordType) {
+			switch (recordType) {
+				case PROJECT_PLAN -> projectPlans++;
+				case ROW -> rows++;
+				default -> tasks++;
+			}
+		}
+	}
+
+	public static class ProjectPlanImportException extends RuntimeException {
+		public ProjectPlanImportException(String message) {
+			super(message);
+		}
+
+		public ProjectPlanImportException(long lineNumber, String message) {
+			super("Line " + lineNumber + " of the import is not valid: " + message);
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlan;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanChange;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanDelta;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanView;
+import com.poorknight.tpmtoolsbackend.api.entity.APIRow;
+import com.poorknight.tpmtoolsbackend.api.entity.APITask;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+	The GET endpoints never change anything, so they read straight from the result set into the API types - no entities are
+	hydrated, and nothing is added to (or snapshotted by) the persistence context.  Changes still go through the services.
+
+	Tasks come back ordered the same way APIRow.fromDomainObject orders them: by position, and by id between equal positions.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class ProjectPlanReadModel {
+
+	private static final String ROWS_AND_TASKS_COLUMNS = """
+			r.id AS row_id, r.title AS row_title, r.version AS row_version,
+			t.id AS task_id, t.title AS task_title, t.size AS task_size, t.position AS task_position, t.version AS task_version
+			""";
+
+	private static final String PROJECT_PLAN_QUERY = "SELECT p.title AS project_plan_title, p.version AS project_plan_version, "
+			+ ROWS_AND_TASKS_COLUMNS + """
+			FROM p0_project_plan p
+			LEFT JOIN p1_row r ON r.p0_project_plan_fk = p.id
+			LEFT JOIN task t ON t.p0_project_plan_fk = ? AND t.p1_row_fk = r.id
+			WHERE p.id = ?
+			ORDER BY r.id, t.position, t.id
+			""";
+
+	private static final String ROWS_QUERY = "SELECT " + ROWS_AND_TASKS_COLUMNS + """
+			FROM p1_row r
+			LEFT JOIN task t ON t.p0_project_plan_fk = ? AND t.p1_row_fk = r.id
+			WHERE r.p0_project_plan_fk = ?
+			ORDER BY r.id, t.position, t.id
+			""";
+
+	private static final String TASKS_QUERY = """
+			SELECT id AS task_id, title AS task_title, size AS task_size, position AS task_position, version AS task_version
+			FROM task
+			WHERE p0_project_plan_fk = ? AND p1_row_fk = ?
+			ORDER BY position, id
+			""";
+
+	private static final String PROJECT_PLAN_HEADER_QUERY = "SELECT title, version FROM p0_project_plan WHERE id = ?";
+
+	private static final String PROJECT_PLAN_VERSION_QUERY = "SELECT version FROM p0_project_plan WHERE id = ?";
+	private static final String ROW_VERSION_QUERY = "SELECT version FROM p1_row WHERE p0_project_plan_fk = ? AND id = ?";
+	// by plan as well as id, so only the plan's partition is checked
+	private static final String TASK_VERSION_QUERY = "SELECT version FROM task WHERE p0_project_plan_fk = ? AND id = ?";
+
+	// pages through the plan's rows by id - with a page token, the rows after its row id, and without one, by offset
+	private static final String VIEW_ROWS_QUERY = """
+			SELECT id, title, version
+			FROM p1_row
+			WHERE p0_project_plan_fk = ? AND id > ?
+			ORDER BY id
+			OFFSET ? LIMIT ?
+			""";
+
+	/*
+		Tasks in a row never overlap, so only one task that starts before fromPosition can reach into the window - the last
+		one before it that takes up any space (a zero-size task overlaps nothing, so it can sit inside a longer task that
+		starts earlier, and must not hide it).  Both halves are then ranges on the (p0_project_plan_fk, p1_row_fk, position) index of the plan's
+		partition, however many tasks the row has.
+	 */
+	private static final String VIEW_TASKS_QUERY = """
+			SELECT t.p1_row_fk AS row_id, t.id AS task_id, t.title AS task_title, t.size AS task_size, t.position AS task_position, t.version AS task_version
+			FROM unnest(?) AS r(id)
+			CROSS JOIN LATERAL (
+				(SELECT id, p1_row_fk, title, size, position, version FROM task
+				WHERE p0_project_plan_fk = ? AND p1_row_fk = r.id AND position < ? AND size > 0
+				ORDER BY position DESC LIMIT 1)
+				UNION ALL
+				(SELECT id, p1_row_fk, title, size, position, version FROM task
+				WHERE p0_project_plan_fk = ? AND p1_row_fk = r.id AND position >= ? AND position < ?)
+			) t
+			WHERE t.position + t.size > ?
+			ORDER BY t.p1_row_fk, t.position, t.id
+			""";
+
+	private static final String PROJECT_PLAN_REVISION_QUERY = "SELECT revision FROM p0_project_plan WHERE id = ?";
+
+	private static final String CHANGES_QUERY = """
+			SELECT revision, type, row_id, task_id, title, size, position
+			FROM p0_project_plan_change
+			WHERE p0_project_plan_fk = ? AND revision > ? AND revision <= ?
+			ORDER BY revision, change_index
+			LIMIT ?
+			""";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final ProjectPlanMetrics projectPlanMetrics;
+	private final int maxDeltaSize;
+
+	public ProjectPlanReadModel(JdbcTemplate jdbcTemplate, ProjectPlanMetrics projectPlanMetrics,
+								@Value("${tpm.changes.max-delta-size:1000}") int maxDeltaSize) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.projectPlanMetrics = projectPlanMetrics;
+		this.maxDeltaSize = maxDeltaSize;
+	}
+
+	public Optional<APIProjectPlan> findProjectPlan(Long projectPlanId) {
+		return jdbcTemplate.query(PROJECT_PLAN_QUERY, resultSet -> {
+			if (!resultSet.next()) {
+				return Optional.empty();
+			}
+			String title = resultSet.getString("project_plan_title");
+			Long version = resultSet.getLong("project_plan_version");
+			List<APIRow> rows = readRows(projectPlanId, resultSet);
+			projectPlanMetrics.recordLoadedProjectPlan(rows.size(), rows.stream().mapToInt(row -> row.getTasks().size()).sum());
+			return Optional.of(new APIProjectPlan(projectPlanId, title, rows, version));
+		}, projectPlanId, projectPlanId);
+	}
+
+	public List<APIRow> findRowsForProjectPlan(Long projectPlanId) {
+		return jdbcTemplate.query(ROWS_QUERY, resultSet -> resultSet.next() ? readRows(projectPlanId, resultSet) : List.<APIRow>of(), projectPlanId, projectPlanId);
+	}
+
+	// a row that is not in the plan has no tasks here, as if it did not exist
+	public List<APITask> findTasksForRow(Long projectPlanId, Long rowId) {
+		return jdbcTemplate.query(TASKS_QUERY, (resultSet, rowNumber) -> readTask(rowId, resultSet), projectPlanId, rowId);
+	}
+
+	public Optional<Long> findProjectPlanVersion(Long projectPlanId) {
+		return jdbcTemplate.queryForList(PROJECT_PLAN_VERSION_QUERY, Long.class, projectPlanId).stream().findFirst();
+	}
+
+	// a row or task that is not in the plan has no version here, as if it did not exist
+	public Optional<Long> findRowVersion(Long projectPlanId, Long rowId) {
+		return jdbcTemplate.queryForList(ROW_VERSION_QUERY, Long.class, projectPlanId, rowId).stream().findFirst();
+	}
+
+	public Optional<Long> findTaskVersion(Long projectPlanId, Long taskId) {
+		return jdbcTemplate.queryForList(TASK_VERSION_QUERY, Long.class, projectPlanId, taskId).stream().findFirst();
+	}
+
+	/**
+		One window of a plan: up to rowLimit rows (after the afterRowId, or skipping rowOffset rows), each with only the
+		tasks that cover some part of the positions from fromPosition up to (but not including) toPosition.
+	 */
+	public Optional<APIProjectPlanView> findProjectPlanView(Long projectPlanId, long afterRowId, int rowOffset, int rowLimit, int fromPosition, int toPosition) {
+		List<APIProjectPlanView> header = jdbcTemplate.query(PROJECT_PLAN_HEADER_QUERY, (resultSet, rowNumber) ->
+				new APIProjectPlanView(projectPlanId, resultSet.getString("title"), null, resultSet.getLong("version"), null), projectPlanId);
+		if (header.isEmpty()) {
+			return Optional.empty();
+		}
+
+		// one extra row is read to find out whether there is another page
+		List<APIRow> rows = jdbcTemplate.query(VIEW_ROWS_QUERY, (resultSet, rowNumber) ->
+				new APIRow(resultSet.getLong("id"), projectPlanId, resultSet.getString("title"), new ArrayList<>(), resultSet.getLong("version")),
+				projectPlanId, afterRowId, rowOffset, rowLimit + 1);
+		String nextPageToken = null;
+		if (rows.size() > rowLimit) {
+			rows = rows.subList(0, rowLimit);
+			nextPageToken = ViewPageTokens.encode(rows.get(rowLimit - 1).getId());
+		}
+
+		addTasksInWindow(projectPlanId, rows, fromPosition, toPosition);
+		return Optional.of(new APIProjectPlanView(projectPlanId, header.get(0).getTitle(), rows, header.get(0).getVersion(), nextPageToken));
+	}
+
+	/**
+		The changes made to a plan after sinceRevision, up to its current revision.  When they cannot all be listed - some
+		have been pruned already, there are more than tpm.changes.max-delta-size of them, or the plan has never been at
+		sinceRevision - the delta says a full fetch is required instead.
+	 */
+	public Optional<APIProjectPlanDelta> findChangesSince(Long projectPlanId, long sinceRevision) {
+		List<Long> revisions = jdbcTemplate.queryForList(PROJECT_PLAN_REVISION_QUERY, Long.class, projectPlanId);
+		if (revisions.isEmpty()) {
+			return Optional.empty();
+		}
+		long revision = revisions.get(0);
+		if (sinceRevision > revision) {
+			return Optional.of(APIProjectPlanDelta.fullFetchRequired(projectPlanId, sinceRevision, revision));
+		}
+		if (sinceRevision == revision) {
+			return Optional.of(new APIProjectPlanDelta(projectPlanId, sinceRevision, revision, false, List.of()));
+		}
+
+		// bounded by the revision read above, so changes committed in between are left for the next delta.  One extra change is read to find out whether there are too many
+		List<Long> changeRevisions = new ArrayList<>();
+		List<APIProjectPlanChange> changes = jdbcTemplate.query(CHANGES_QUERY, (resultSet, rowNumber) -> {
+			changeRevisions.add(resultSet.getLong("revision"));
+			return new APIProjectPlanChange(resultSet.getString("type"), resultSet.getObject("row_id", Long.class), resultSet.getObject("task_id", Long.class),
+					resultSet.getString("title"), resultSet.getObject("size", Integer.class), resultSet.getObject("position", Integer.class));
+		}, projectPlanId, sinceRevision, revision, maxDeltaSize + 1);
+
+		if (changes.size() > maxDeltaSize || changes.isEmpty() || changeRevisions.get(0) != sinceRevision + 1) {
+			return Optional.of(APIProjectPlanDelta.fullFetchRequired(projectPlanId, sinceRevision, revision));
+		}
+		return Optional.of(new APIProjectPlanDelta(projectPlanId, sinceRevision, revision, false, changes));
+	}
+
+	private void addTasksInWindow(Long projectPlanId, List<APIRow> rows, int fromPosition, int toPosition) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		Map<Long, List<APITask>> tasksByRowId = new HashMap<>();
+		for (APIRow row : rows) {
+			tasksByRowId.put(row.getId(), row.getTasks());
+		}
+
+		jdbcTemplate.query(connection -> {
+			PreparedStatement statement = connection.prepareStatement(VIEW_TASKS_QUERY);
+			statement.setArray(1, connection.createArrayOf("bigint", tasksByRowId.keySet().toArray()));
+			statement.setLong(2, projectPlanId);
+			statement.setInt(3, fromPosition);
+			statement.setLong(4, projectPlanId);
+			statement.setInt(5, fromPosition);
+			statement.setInt(6, toPosition);
+			statement.setInt(7, fromPosition);
+			return statement;
+		}, (RowCallbackHandler) resultSet -> {
+			long rowId = resultSet.getLong("row_id");
+			tasksByRowId.get(rowId).add(readTask(rowId, resultSet));
+		});
+	}
+
+	// expects the result set to be on its first record already, and reads it to the end
+	private static List<APIRow> readRows(Long projectPlanId, ResultSet resultSet) throws SQLException {
+		List<APIRow> rows = new ArrayList<>();
+		boolean hasRecord = true;
+		while (hasRecord && resultSet.getObject("row_id") != null) {
+			long rowId = resultSet.getLong("row_id");
+			String title = resultSet.getString("row_title");
+			Long version = resultSet.getLong("row_version");
+
+			List<APITask> tasks = new ArrayList<>();
+			do {
+				if (resultSet.getObject("task_id") != null) {
+					tasks.add(readTask(rowId, resultSet));
+				}
+				hasRecord = resultSet.next();
+			} while (hasRecord && resultSet.getLong("row_id") == rowId);
+
+			rows.add(new APIRow(rowId, projectPlanId, title, tasks, version));
+		}
+		return rows;
+	}
+
+	private static APITask readTask(Long rowId, ResultSet resultSet) throws SQLException {
+		return new APITask(resultSet.getLong("task_id"), rowId, resultSet.getString("task_title"),
+				resultSet.getInt("task_size"), resultSet.getInt("task_position"), resultSet.getLong("task_version"));
+	}
+}
@@ -0,0 +1,126 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.poorknight.tpmtoolsbackend.api.ResponseCompression.ContentCoding;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlan;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+	Read-through cache of fully built project plan responses, keyed by project plan id.
+
+	Each entry remembers the plan revision it was loaded at, and is only served while that is still the current revision.
+	A response is only cached if no change happened while it was being loaded, so a slow read can never put a stale plan
+	back into the cache after the change that invalidated it.
+
+	Entries also keep the compressed forms of the response, made the first time a client asks for each coding, so a plan
+	is only compressed once per revision no matter how many times it is served.
+ */
+@Component
+public class ProjectPlanResponseCache {
+
+	private final Cache<Long, CachedProjectPlan> cache;
+	private final ProjectPlanRevisions projectPlanRevisions;
+
+	public ProjectPlanResponseCache(@Value("${tpm.cache.project-plans.maximum-size:500}") long maximumSize,
+									@Value("${tpm.cache.project-plans.expire-after-write:PT5M}") Duration expireAfterWrite,
+									MeterRegistry meterRegistry,
+									ProjectPlanRevisions projectPlanRevisions) {
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(expireAfterWrite)
+				.recordStats()
+				.build();
+		this.projectPlanRevisions = projectPlanRevisions;
+		GuavaCacheMetrics.monitor(meterRegistry, cache, "projectPlanResponses");
+	}
+
+	public APIProjectPlan get(Long projectPlanId, Supplier<APIProjectPlan> loader) {
+		return getEntry(projectPlanId, loader).getProjectPlan();
+	}
+
+	// the entry is still returned (just not kept) when the plan changed while it was being loaded
+	public CachedProjectPlan getEntry(Long projectPlanId, Supplier<APIProjectPlan> loader) {
+		long revision = projectPlanRevisions.currentRevision(projectPlanId);
+
+		CachedProjectPlan cached = cache.getIfPresent(projectPlanId);
+		if (cached != null && cached.revision == revision) {
+			return cached;
+		}
+
+		CachedProjectPlan loaded = new CachedProjectPlan(revision, loader.get());
+		if (projectPlanRevisions.currentRevision(projectPlanId) == revision) {
+			cache.put(projectPlanId, loaded);
+		}
+		return loaded;
+	}
+
+	// the entry only if it is at the plan's current revision - nothing is loaded
+	public CachedProjectPlan getEntryIfCurrent(Long projectPlanId) {
+		CachedProjectPlan cached = cache.getIfPresent(projectPlanId);
+		return cached != null && cached.revision == projectPlanRevisions.currentRevision(projectPlanId) ? cached : null;
+	}
+
+	// for a plan built from what a write left it as - it is only kept if that is still the plan's current revision
+	public void putIfCurrent(Long projectPlanId, long revision, APIProjectPlan projectPlan) {
+		if (projectPlanRevisions.currentRevision(projectPlanId) == revision) {
+			cache.put(projectPlanId, new CachedProjectPlan(revision, projectPlan));
+		}
+	}
+
+	public void invalidate(Long projectPlanId) {
+		cache.invalidate(projectPlanId);
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	// entries from older revisions are never served anyway - this just frees them up right away
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onProjectPlanChanged(ProjectPlanChangedEvent event) {
+		invalidate(event.getProjectPlanId());
+	}
+
+	public static class CachedProjectPlan {
+
+		// stands in for "too small to be worth compressing", since the map cannot hold nulls
+		private static final byte[] NOT_COMPRESSED = new byte[0];
+
+		private final long revision;
+		private final APIProjectPlan projectPlan;
+		private final ConcurrentMap<ContentCoding, byte[]> compressedBodies = new ConcurrentHashMap<>();
+
+		private CachedProjectPlan(long revision, APIProjectPlan projectPlan) {
+			this.revision = revision;
+			this.projectPlan = projectPlan;
+		}
+
+		public long getRevision() {
+			return revision;
+		}
+
+		public APIProjectPlan getProjectPlan() {
+			return projectPlan;
+		}
+
+		// the compressed plan, or null if it is too small to bother compressing
+		public byte[] getCompressedBody(ContentCoding coding, ResponseCompression responseCompression) {
+			byte[] body = compressedBodies.computeIfAbsent(coding, c -> {
+				byte[] compressed = responseCompression.compressIfLargeEnough(projectPlan, c);
+				return compressed == null ? NOT_COMPRESSED : compressed;
+			});
+			return body == NOT_COMPRESSED ? null : body;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+	Keeps an in-memory revision number for every project plan, bumped once each change to the plan has been committed.
+
+	Reads that capture the revision *before* loading a plan can safely label what they loaded with it - the data is never older
+	than the revision.  That is what lets the response cache and the ETags of the plan, row, and task reads be checked without
+	touching the database.  The instance id keeps revisions from a previous run (or another replica) from ever matching.
+
+	A write run through write() also learns the revision that holds exactly what it left the plan as, so PATCH responses can
+	carry an ETag too.
+
+	Only changed plans are kept track of, up to tpm.revisions.max-tracked-plans of them.  Past that, a quarter of them - the
+	ones with the lowest revisions - are forgotten, and the highest revision forgotten becomes the revision of every plan
+	that is not tracked.  So a plan's revision never goes back, the plans still tracked keep theirs,
+	and only the ETags and cached responses of untracked plans go stale.
+ */
+@Component
+public class ProjectPlanRevisions {
+
+	private final String instanceId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+	private final ConcurrentMap<Long, Long> revisions = new ConcurrentHashMap<>();
+	// the revision of every plan that is not tracked - never lower than the revision of a plan that has been forgotten
+	private final AtomicLong untrackedPlansRevision = new AtomicLong();
+	// added to every plan's revision, so that all of them can be moved on at once
+	private final AtomicLong allPlansRevision = new AtomicLong();
+	private final int maxTrackedPlans;
+	private final ReentrantLock forgetLock = new ReentrantLock();
+	// how many changes to each plan were committed by the write running on this thread - only set inside write()
+	private final ThreadLocal<Map<Long, Long>> changesByWrite = new ThreadLocal<>();
+
+	public ProjectPlanRevisions() {
+		this(10_000);
+	}
+
+	@Autowired
+	public ProjectPlanRevisions(@Value("${tpm.revisions.max-tracked-plans:10000}") int maxTrackedPlans) {
+		this.maxTrackedPlans = maxTrackedPlans;
+	}
+
+	// the plan's own revision is read first - a plan is only forgotten after the untracked revision has caught up with it
+	public long currentRevision(Long projectPlanId) {
+		Long revision = revisions.get(projectPlanId);
+		long untrackedRevision = untrackedPlansRevision.get();
+		return allPlansRevision.get() + Math.max(untrackedRevision, revision == null ? 0 : revision);
+	}
+
+	public void markChanged(Long projectPlanId) {
+		revisions.compute(projectPlanId, (id, revision) -> Math.max(untrackedPlansRevision.get(), revision == null ? 0 : revision) + 1);
+		if (revisions.size() > maxTrackedPlans) {
+			forgetLeastChangedPlans();
+		}
+	}
+
+	// for when changes may have been missed, and there is no telling which plans they were in
+	public void markAllChanged() {
+		allPlansRevision.incrementAndGet();
+	}
+
+	int trackedPlanCount() {
+		return revisions.size();
+	}
+
+	/*
+		Raises the untracked revision to the highest revision being forgotten before anything is removed, so a plan's
+		revision does not drop while it is forgotten.  A plan changed in the meantime is not at the revision that was
+		read any more, so it is left alone.
+	 */
+	private void forgetLeastChangedPlans() {
+		if (!forgetLock.tryLock()) {
+			return; // someone else is already at it
+		}
+		try {
+			List<Map.Entry<Long, Long>> trackedPlans = revisions.entrySet().stream()
+					.map(plan -> Map.entry(plan.getKey(), plan.getValue()))
+					.sorted(Map.Entry.comparingByValue())
+					.toList();
+			List<Map.Entry<Long, Long>> plansToForget = trackedPlans.subList(0, Math.max(1, trackedPlans.size() / 4));
+			untrackedPlansRevision.accumulateAndGet(plansToForget.get(plansToForget.size() - 1).getValue(), Math::max);
+			for (Map.Entry<Long, Long> plan : plansToForget) {
+				revisions.remove(plan.getKey(), plan.getValue());
+			}
+		} finally {
+			forgetLock.unlock();
+		}
+	}
+
+	public String getInstanceId() {
+		return instanceId;
+	}
+
+	public String currentETag(Long projectPlanId) {
+		return eTagFor(projectPlanId, currentRevision(projectPlanId));
+	}
+
+	public String eTagFor(Long projectPlanId, long revision) {
+		return "\"" + instanceId + "-" + projectPlanId + "-" + revision + "\"";
+	}
+
+	/**
+		Runs a write, and works out the revision that holds exactly what the write left the plan as: the revision the caller
+		read the plan at, moved on once for each change the write committed (the changes are marked on this thread, straight
+		after the commit).  If anything else moved the plan's revision on in the meantime, no revision holds exactly that,
+		and the revision of the result is null.
+	 */
+	public <T> Written<T> write(Long projectPlanId, long revisionBefore, Supplier<T> write) {
+		changesByWrite.set(new HashMap<>());
+		try {
+			T result = write.get();
+			long revision = revisionBefore + changesByWrite.get().getOrDefault(projectPlanId, 0L);
+			return new Written<>(result, currentRevision(projectPlanId) == revision ? revision : null);
+		} finally {
+			changesByWrite.remove();
+		}
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onProjectPlanChanged(ProjectPlanChangedEvent event) {
+		markChanged(event.getProjectPlanId());
+		Map<Long, Long> changes = changesByWrite.get();
+		if (changes != null) {
+			changes.merge(event.getProjectPlanId(), 1L, Long::sum);
+		}
+	}
+
+	public record Written<T>(T result, Long revision) {
+	}
+}
@@ -0,0 +1,174 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+	Compresses JSON response bodies for clients that accept gzip or deflate.  Bodies smaller than
+	tpm.compression.min-response-size are not worth it, and are sent as they are.
+
+	Compressing is where the CPU goes, so callers that serve the same body over and over (like the project plan response
+	cache) keep the compressed bytes and only compress once.  The compression ratio and CPU time of every compression are
+	recorded, as is the size of every compressed response served - comparing the two counts shows how often a stored
+	body was reused.
+ */
+@Component
+public class ResponseCompression {
+
+	public enum ContentCoding {
+		GZIP("gzip"),
+		DEFLATE("deflate");
+
+		private final String token;
+
+		ContentCoding(String token) {
+			this.token = token;
+		}
+
+		public String getToken() {
+			return token;
+		}
+	}
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final ObjectMapper objectMapper;
+	private final int minResponseSize;
+	private final Map<ContentCoding, Timer> compressionCpuTimers = new EnumMap<>(ContentCoding.class);
+	private final Map<ContentCoding, DistributionSummary> compressionRatios = new EnumMap<>(ContentCoding.class);
+	private final Map<ContentCoding, DistributionSummary> servedResponseSizes = new EnumMap<>(ContentCoding.class);
+
+	public ResponseCompression(ObjectMapper objectMapper,
+							   @Value("${tpm.compression.min-response-size:2048}") int minResponseSize,
+							   MeterRegistry meterRegistry) {
+		this.objectMapper = objectMapper;
+		this.minResponseSize = minResponseSize;
+		for (ContentCoding coding : ContentCoding.values()) {
+			compressionCpuTimers.put(coding, Timer.builder("tpm.responses.compression.cpu")
+					.description("CPU time spent compressing one response body")
+					.tag("coding", coding.token)
+					.register(meterRegistry));
+			compressionRatios.put(coding, DistributionSummary.builder("tpm.responses.compression.ratio")
+					.description("Uncompressed size divided by compressed size")
+					.tag("coding", coding.token)
+					.register(meterRegistry));
+			servedResponseSizes.put(coding, DistributionSummary.builder("tpm.responses.compressed.served")
+					.description("Compressed responses served, and their size")
+					.baseUnit("bytes")
+					.tag("coding", coding.token)
+					.register(meterRegistry));
+		}
+	}
+
+	/**
+		Picks the coding to use from an Accept-Encoding header - whichever of gzip and deflate has the higher q value (gzip
+		if they are equal), or null if the client accepts neither.
+	 */
+	public ContentCoding negotiate(String acceptEncoding) {
+		if (acceptEncoding == null || acceptEncoding.isBlank()) {
+			return null;
+		}
+
+		double gzipQuality = -1;
+		double deflateQuality = -1;
+		double anyQuality = -1;
+		for (String part : acceptEncoding.split(",")) {
+			String[] tokenAndParameters = part.trim().split(";");
+			String token = tokenAndParameters[0].trim().toLowerCase();
+			double quality = parseQuality(tokenAndParameters);
+			switch (token) {
+				case "gzip", "x-gzip" -> gzipQuality = Math.max(gzipQuality, quality);
+				case "deflate" -> deflateQuality = Math.max(deflateQuality, quality);
+				case "*" -> anyQuality = quality;
+				default -> { }
+			}
+		}
+		gzipQuality = gzipQuality < 0 ? anyQuality : gzipQuality;
+		deflateQuality = deflateQuality < 0 ? anyQuality : deflateQuality;
+
+		if (gzipQuality <= 0 && deflateQuality <= 0) {
+			return null;
+		}
+		return gzipQuality >= deflateQuality ? ContentCoding.GZIP : ContentCoding.DEFLATE;
+	}
+
+	// the compressed JSON for the body, or null if it is too small to be worth compressing
+	public byte[] compressIfLargeEnough(Object body, ContentCoding coding) {
+		byte[] json;
+		try {
+			json = objectMapper.writeValueAsBytes(body);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Could not write the response body as JSON.", e);
+		}
+		if (json.length < minResponseSize) {
+			return null;
+		}
+
+		long cpuStart = currentThreadCpuTime();
+		byte[] compressed = compress(json, coding);
+		compressionCpuTimers.get(coding).record(currentThreadCpuTime() - cpuStart, TimeUnit.NANOSECONDS);
+		compressionRatios.get(coding).record((double) json.length / compressed.length);
+		return compressed;
+	}
+
+	public void writeCompressedJson(HttpServletResponse response, byte[] compressedBody, ContentCoding coding) {
+		servedResponseSizes.get(coding).record(compressedBody.length);
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setHeader(HttpHeaders.CONTENT_ENCODING, coding.token);
+		response.setContentLength(compressedBody.length);
+		try {
+			response.getOutputStream().write(compressedBody);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static byte[] compress(byte[] body, ContentCoding coding) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+		try (OutputStream compressing = coding == ContentCoding.GZIP ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed)) {
+			compressing.write(body);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // never happens when writing to memory
+		}
+		return compressed.toByteArray();
+	}
+
+	private static double parseQuality(String[] tokenAndParameters) {
+		for (int i = 1; i < tokenAndParameters.length; i++) {
+			String parameter = tokenAndParameters[i].trim();
+			if (parameter.startsWith("q=")) {
+				try {
+					return Double.parseDouble(parameter.substring(2));
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+	// falls back to wall clock time on JVMs that cannot measure thread CPU time
+	private static long currentThreadCpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+}
@@ -1,5 +1,7 @@
 package com.poorknight.tpmtoolsbackend.api;
 
+import com.poorknight.tpmtoolsbackend.api.IfMatchVersions.IfMatch;
+import com.poorknight.tpmtoolsbackend.api.ProjectPlanRevisions.Written;
 import com.poorknight.tpmtoolsbackend.api.entity.APIRow;
 import com.poorknight.tpmtoolsbackend.api.entity.APIRowPatch;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator;
@@ -7,14 +9,18 @@ import com.poorknight.tpmtoolsbackend.domain.row.RowServiceValidator;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.row.RowService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 import static com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator.*;
 
@@ -25,11 +31,19 @@ public class RowController {
 	@Autowired
 	private RowService rowService;
 
+	@Autowired
+	private ProjectPlanRevisions projectPlanRevisions;
+
+	@Autowired
+	private ProjectPlanReadModel projectPlanReadModel;
+
 	@GetMapping
-	public List<APIRow> getAllRows(@PathVariable Long projectPlanId) {
-		return rowService.getAllRowsForProjectPlan(projectPlanId).stream()
-				.map(APIRow::fromDomainObject)
-				.collect(Collectors.toList());
+	public List<APIRow> getAllRows(@PathVariable Long projectPlanId, WebRequest webRequest) {
+		if (webRequest.checkNotModified(projectPlanRevisions.currentETag(projectPlanId))) {
+			return null;
+		}
+
+		return projectPlanReadModel.findRowsForProjectPlan(projectPlanId);
 	}
 
 	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -48,23 +62,50 @@ public class RowController {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Do not include an id when saving a new row.");
 		}
 
+		if (row.getVersion() != null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Do not include a version when saving a new row.");
+		}
+
 		if (row.getTasks() != null && row.getTasks().size() > 0) {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Do not include tasks when saving a new Row.  Save the row with an empty task list, and then update each task with the row's id.");
 		}
 	}
 
+	// If-Match can hold the row's version, or an ETag of the plan, its rows or tasks - the response has the plan's new ETag
 	@PatchMapping(value = "/{rowId}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-	public APIRow patchRow(@PathVariable Long rowId, @RequestBody APIRowPatch rowPatch) {
+	public APIRow patchRow(@PathVariable Long projectPlanId, @PathVariable Long rowId, @RequestBody APIRowPatch rowPatch,
+						   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+						   HttpServletResponse response) {
 		RowPatchTemplate row = rowPatch.toDomainObject(rowId);
+		IfMatch ifMatchExpects = IfMatchVersions.parse(ifMatch, projectPlanId, projectPlanRevisions);
+		// for an ETag, the row must still be at the version it had at that revision when the patch is written - read before
+		// the revision is checked, so that two patches sent with the same ETag cannot both be written
+		Optional<Long> rowVersion = ifMatchExpects.expectedRevision() == null ? Optional.empty() : projectPlanReadModel.findRowVersion(projectPlanId, rowId);
+		long revision = projectPlanRevisions.currentRevision(projectPlanId);
+		ifMatchExpects.checkRevision(revision);
+		if (ifMatchExpects.expectedRevision() != null && rowVersion.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unable to complete operation.  Either the rowId does not point to an existing row, or you do not have access to it.");
+		}
+		Long expectedVersion = rowVersion.orElse(ifMatchExpects.expectedVersion());
+
 		try {
-			Row updatedRow = rowService.patchRow(row);
-			return APIRow.fromDomainObject(updatedRow);
+			Written<Row> written = projectPlanRevisions.write(projectPlanId, revision, () -> rowService.patchRow(row, expectedVersion));
+			if (written.revision() != null) {
+				response.setHeader(HttpHeaders.ETAG, projectPlanRevisions.eTagFor(projectPlanId, written.revision()));
+			}
+			return APIRow.fromDomainObject(written.result());
 
 		} catch(RowServiceValidator.RowNotFoundException e) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unable to complete operation.  Either the rowId does not point to an existing row, or you do not have access to it.");
 
 		} catch(RowUpdateConsistencyException e) {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+
+		} catch(RowServiceValidator.RowVersionMismatchException e) {
+			throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, e.getMessage());
+
+		} catch(OptimisticLockingFailureException e) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, "The row was changed by someone else while this change was being made.  No changes were made - reload the row and try again.");
 		}
 	}
 
@@ -77,6 +118,8 @@ public class RowController {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unable to complete operation.  Either the rowId does not point to an existing row, or you do not have access to it.");
 		} catch (RowServiceValidator.CannotDeleteNonEmptyRowException e) {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unable to complete operation.  Delete can only be performed on a row that has zero tasks associated with it.  No changes made.");
+		} catch (OptimisticLockingFailureException e) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, "The row was changed by someone else while it was being deleted.  No changes were made - reload the row and try again.");
 		}
 	}
 }
@@ -1,44 +1,89 @@
 package com.poorknight.tpmtoolsbackend.api;
 
+import com.poorknight.tpmtoolsbackend.api.IfMatchVersions.IfMatch;
+import com.poorknight.tpmtoolsbackend.api.ProjectPlanRevisions.Written;
 import com.poorknight.tpmtoolsbackend.api.entity.APITask;
 import com.poorknight.tpmtoolsbackend.api.entity.APITaskPatch;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator.RowUpdateConsistencyException;
+import com.poorknight.tpmtoolsbackend.domain.row.RowService;
+import com.poorknight.tpmtoolsbackend.domain.row.RowServiceValidator;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
 import com.poorknight.tpmtoolsbackend.domain.tasks.TaskService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
-@RequestMapping("/api/v1/project-plans/{projectPlanId}/rows/{rowId}/tasks")
+@RequestMapping("/api/v1/project-plans/{projectPlanId}/rows/{rowId}")
 public class TaskController {
 
 	@Autowired
 	private TaskService taskService;
 
-	@GetMapping
-	public List<APITask> getTasks(@PathVariable Long rowId) {
-		List<Task> allTasks = taskService.getAllTasksForRow(rowId);
+	@Autowired
+	private RowService rowService;
+
+	@Autowired
+	private ProjectPlanRevisions projectPlanRevisions;
+
+	@Autowired
+	private ProjectPlanReadModel projectPlanReadModel;
 
-		List<APITask> responseTasks = new ArrayList<>(allTasks.size());
-		for (Task task: allTasks) {
-			responseTasks.add(APITask.fromDomainObject(task));
+	@GetMapping("/tasks")
+	public List<APITask> getTasks(@PathVariable Long projectPlanId, @PathVariable Long rowId, WebRequest webRequest) {
+		if (webRequest.checkNotModified(projectPlanRevisions.currentETag(projectPlanId))) {
+			return null;
 		}
-		return responseTasks;
+
+		return projectPlanReadModel.findTasksForRow(projectPlanId, rowId);
 	}
 
-	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@PostMapping(value = "/tasks", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
 	public APITask postTask(@PathVariable Long rowId, @RequestBody APITask task) {
 		validateTaskToPostThrowingExceptions(rowId, task);
 
 		Task taskToSave = task.toDomainObject();
-		Task savedTask = taskService.saveNewTask(taskToSave);
-		return task.fromDomainObject(savedTask);
+		try {
+			Task savedTask = taskService.saveNewTask(taskToSave);
+			return task.fromDomainObject(savedTask);
+
+		} catch (RowUpdateConsistencyException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+		}
+	}
+
+	// creates all the tasks in one transaction, or none of them - they come back with their ids, in the order they were sent
+	@PostMapping(value = "/tasks:batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	public List<APITask> postTasks(@PathVariable Long rowId, @RequestBody List<APITask> tasks) {
+		if (tasks == null || tasks.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "When POSTing a batch of Tasks, include at least one task.");
+		}
+		tasks.forEach(task -> validateTaskToPostThrowingExceptions(rowId, task));
+
+		try {
+			List<Task> savedTasks = rowService.addTasksToRow(rowId, tasks.stream().map(APITask::toDomainObject).toList());
+			return savedTasks.stream().map(APITask::fromDomainObject).toList();
 
+		} catch (RowServiceValidator.RowNotFoundException e) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+					"Unable to complete operation.  Either the rowId does not point to an existing row, or you do not have access to it.");
+
+		} catch (RowUpdateConsistencyException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+
+		} catch (OptimisticLockingFailureException e) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT,
+					"Row " + rowId + " was changed by someone else while these tasks were being added.  No tasks were added - reload the row and try again.");
+		}
 	}
 
 	private void validateTaskToPostThrowingExceptions(Long rowId, APITask task) {
@@ -46,6 +91,10 @@ public class TaskController {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
 					"When POSTing a new Task, do not provide an id.  Maybe you intended to use a PUT.");
 		}
+		if (task.getVersion() != null) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"When POSTing a new Task, do not provide a version.  It is assigned when the task is saved.");
+		}
 		if (task.getRowId() == null) {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
 					"When POSTing a new Task, a rowId is mandatory.");
@@ -69,19 +118,46 @@ public class TaskController {
 	}
 
 
-	@PatchMapping(value = "/{taskId}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-	public APITask patchTask(@PathVariable long taskId, @RequestBody APITaskPatch patchBody) {
+	// If-Match can hold the task's version, or an ETag of the plan, its rows or tasks - the response has the plan's new ETag
+	@PatchMapping(value = "/tasks/{taskId}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	public APITask patchTask(@PathVariable Long projectPlanId, @PathVariable long taskId, @RequestBody APITaskPatch patchBody,
+							 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+							 HttpServletResponse response) {
 		validateTaskToPatchThrowingExceptions(taskId, patchBody);
+		IfMatch ifMatchExpects = IfMatchVersions.parse(ifMatch, projectPlanId, projectPlanRevisions);
+		// for an ETag, the task must still be at the version it had at that revision when the patch is written - read before
+		// the revision is checked, so that two patches sent with the same ETag cannot both be written
+		Optional<Long> taskVersion = ifMatchExpects.expectedRevision() == null ? Optional.empty() : projectPlanReadModel.findTaskVersion(projectPlanId, taskId);
+		long revision = projectPlanRevisions.currentRevision(projectPlanId);
+		ifMatchExpects.checkRevision(revision);
+		if (ifMatchExpects.expectedRevision() != null && taskVersion.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+					"Cannot PATCH the task.  No task exists with the passed id: " + taskId);
+		}
+		Long expectedVersion = taskVersion.orElse(ifMatchExpects.expectedVersion());
 
 		try {
 			Task taskToUpdate = patchBody.toDomainObject();
-			Task updatedTask = taskService.patchTask(taskToUpdate);
-			return APITask.fromDomainObject(updatedTask);
+			Written<Task> written = projectPlanRevisions.write(projectPlanId, revision, () -> taskService.patchTask(taskToUpdate, expectedVersion));
+			if (written.revision() != null) {
+				response.setHeader(HttpHeaders.ETAG, projectPlanRevisions.eTagFor(projectPlanId, written.revision()));
+			}
+			return APITask.fromDomainObject(written.result());
 
 		} catch (TaskService.TaskNotFoundException e) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
 					"Cannot PATCH the task.  No task exists with the passed id: " + taskId);
 
+		} catch (TaskService.TaskVersionMismatchException e) {
+			throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, e.getMessage());
+
+		} catch (RowUpdateConsistencyException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+
+		} catch (OptimisticLockingFailureException e) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT,
+					"Task with id " + taskId + " was changed by someone else while this change was being made.  No changes were made - reload the task and try again.");
+
 		} catch (ResponseStatusException e) {
 			throw e;
 
@@ -107,32 +183,23 @@ public class TaskController {
 	}
 
 
-	@DeleteMapping(value = "/{taskId}")
+	@DeleteMapping(value = "/tasks/{taskId}")
 	public APITask deleteTask(@PathVariable Long rowId, @PathVariable Long taskId) {
 		try {
-			checkTaskIdBelongsToRowIDInURLThrowingException(rowId, taskId);
-
-			Task deletedTask = taskService.deleteTask(taskId);
+			Task deletedTask = taskService.deleteTaskFromRow(taskId, rowId);
 			return APITask.fromDomainObject(deletedTask);
 
 		} catch (TaskService.TaskNotFoundException e) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
 					"Task with id " + taskId + " does not exist.");
 
-		} catch (ResponseStatusException e) {
-			throw e;
+		} catch (TaskService.TaskNotInRowException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"In order to perform this operation, the row id of the currently saved task must match the value passed in the url for rowId.");
 
 		} catch (RuntimeException e) {
 			throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
 					"Unexpected error encountered while attempting to delete task with id " + taskId + ".  Please try again, until a 404 message is returned.");
 		}
 	}
-
-	private void checkTaskIdBelongsToRowIDInURLThrowingException(Long rowId, Long taskId) {
-		Task task = taskService.findTaskWithId(taskId);
-		if (!task.getRowId().equals(rowId)){
-			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-					"In order to perform this operation, the row id of the currently saved task must match the value passed in the url for rowId.");
-		}
-	}
 }
@@ -0,0 +1,35 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+	Page tokens for the project plan view hold the id of the last row a page ended on, so the next page starts right after
+	it (a keyset) instead of skipping an ever growing number of rows with an offset.  Clients should treat them as opaque.
+ */
+/*package private*/ final class ViewPageTokens {
+
+	private static final String PREFIX = "afterRow:";
+
+	private ViewPageTokens() {
+	}
+
+	static String encode(long afterRowId) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + afterRowId).getBytes(StandardCharsets.UTF_8));
+	}
+
+	static long decodeAfterRowId(String pageToken) {
+		try {
+			String decoded = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+			if (decoded.startsWith(PREFIX)) {
+				return Long.parseLong(decoded.substring(PREFIX.length()));
+			}
+		} catch (IllegalArgumentException e) {
+			// falls through to the error below - NumberFormatException is an IllegalArgumentException too
+		}
+		throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The pageToken is not one this API handed out: " + pageToken);
+	}
+}
@@ -0,0 +1,65 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+	With virtual threads there is no thread pool limiting how many requests run at once, so every request would go
+	straight to the connection pool and wait there.  This caps the API requests in flight - anything that cannot get a
+	permit in time is turned away with a 503 instead of piling up behind the database.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConcurrencyLimitFilter extends OncePerRequestFilter {
+
+	private final Semaphore permits;
+	private final Duration permitTimeout;
+
+	public VirtualThreadConcurrencyLimitFilter(@Value("${tpm.virtual-threads.max-concurrent-api-requests:20}") int maxConcurrentRequests,
+											   @Value("${tpm.virtual-threads.permit-timeout:PT2S}") Duration permitTimeout) {
+		this.permits = new Semaphore(maxConcurrentRequests, true);
+		this.permitTimeout = permitTimeout;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !request.getRequestURI().startsWith("/api/");
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+		if (!tryAcquirePermit()) {
+			response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+			response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "The server is busy - please try again shortly.");
+			return;
+		}
+
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private boolean tryAcquirePermit() {
+		try {
+			return permits.tryAcquire(permitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
@@ -19,10 +19,11 @@ public class APIProjectPlan {
     private Long id;
     private String title;
     private List<APIRow> rows;
+    private Long version;
 
     public static APIProjectPlan fromDomainObject(ProjectPlan projectPlan) {
         List<APIRow> rows = buildAPIRowsFromDomainObject(projectPlan.getRowList());
-        return new APIProjectPlan(projectPlan.getId(), projectPlan.getTitle(), rows);
+        return new APIProjectPlan(projectPlan.getId(), projectPlan.getTitle(), rows, projectPlan.getVersion());
     }
 
     private static List<APIRow> buildAPIRowsFromDomainObject(List<Row> rowList) {
@@ -0,0 +1,25 @@
+package com.poorknight.tpmtoolsbackend.api.entity;
+
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class APIProjectPlanChange {
+
+	private final String type;
+	private final Long rowId;
+	private final Long taskId;
+	private final String title;
+	private final Integer size;
+	private final Integer position;
+
+	public static APIProjectPlanChange fromDomainObject(ProjectPlanChange change) {
+		return new APIProjectPlanChange(change.getType().name(), change.getRowId(), change.getTaskId(), change.getTitle(), change.getSize(), change.getPosition());
+	}
+}
@@ -0,0 +1,26 @@
+package com.poorknight.tpmtoolsbackend.api.entity;
+
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class APIProjectPlanChanges {
+
+	private final Long projectPlanId;
+	private final List<APIProjectPlanChange> changes;
+
+	public static APIProjectPlanChanges fromDomainObject(ProjectPlanChangedEvent event) {
+		return new APIProjectPlanChanges(event.getProjectPlanId(), event.getChanges().stream()
+				.map(APIProjectPlanChange::fromDomainObject)
+				.collect(Collectors.toList()));
+	}
+}
@@ -0,0 +1,28 @@
+package com.poorknight.tpmtoolsbackend.api.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class APIProjectPlanDelta {
+
+	private final Long projectPlanId;
+	private final Long sinceRevision;
+	// the plan's current revision - pass it as since next time
+	private final Long revision;
+	// the changes since sinceRevision can no longer all be listed, so the whole plan has to be fetched again (changes is then empty)
+	private final boolean fullFetchRequired;
+	// in the order they were made, each with the new state of what changed
+	private final List<APIProjectPlanChange> changes;
+
+	public static APIProjectPlanDelta fullFetchRequired(Long projectPlanId, Long sinceRevision, Long revision) {
+		return new APIProjectPlanDelta(projectPlanId, sinceRevision, revision, true, List.of());
+	}
+}
@@ -0,0 +1,20 @@
+package com.poorknight.tpmtoolsbackend.api.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class APIProjectPlanImport {
+
+	// the ids the imported plans were given, in the order they appeared in the import
+	private final List<Long> projectPlanIds;
+	private final long rowCount;
+	private final long taskCount;
+}
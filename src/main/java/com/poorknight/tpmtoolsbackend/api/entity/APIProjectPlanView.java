@@ -0,0 +1,23 @@
+package com.poorknight.tpmtoolsbackend.api.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class APIProjectPlanView {
+
+	private final Long id;
+	private final String title;
+	// only the rows in the window, each with only the tasks that reach into the window's positions
+	private final List<APIRow> rows;
+	private final Long version;
+	// pass back as pageToken to get the rows after these ones - null once there are no more rows
+	private final String nextPageToken;
+}
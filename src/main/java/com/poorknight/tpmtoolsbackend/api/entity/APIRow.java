@@ -22,15 +22,16 @@ public class APIRow {
 	private final Long projectPlanId;
 	private final String title;
 	private final List<APITask> tasks;
+	private final Long version;
 
 	public static APIRow fromDomainObject(Row row) {
 		List<APITask> taskList = transformToAPITasks(row.getTaskList());
-		return new APIRow(row.getId(), row.getProjectPlanId(), row.getTitle(), taskList);
+		return new APIRow(row.getId(), row.getProjectPlanId(), row.getTitle(), taskList, row.getVersion());
 	}
 
 	public Row toDomainObject() {
 		List<Task> taskList = transformToDomainTasks();
-		return new Row(this.id, this.projectPlanId, this.title, taskList);
+		return new Row(this.id, this.projectPlanId, this.title, taskList, this.version);
 	}
 
 	private static List<APITask> transformToAPITasks(List<Task> taskList) {
@@ -17,12 +17,13 @@ public class APITask {
 	private final String title;
 	private final Integer size;
 	private final Integer position;
+	private final Long version;
 
 	public static APITask fromDomainObject(Task task) {
-		return new APITask(task.getId(), task.getRowId(), task.getTitle(), task.getSize(), task.getPosition());
+		return new APITask(task.getId(), task.getRowId(), task.getTitle(), task.getSize(), task.getPosition(), task.getVersion());
 	}
 
 	public Task toDomainObject() {
-		return new Task(this.id, this.rowId, this.title, this.size, this.position);
+		return new Task(this.id, this.rowId, this.title, this.size, this.position, this.version);
 	}
 }
@@ -11,7 +11,8 @@ import jakarta.persistence.*;
 public class HelloMessage {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "hello_id_seq")
+	@SequenceGenerator(name = "hello_id_seq", sequenceName = "hello_id_seq", allocationSize = 50)
 	private Long id;
 
 	@NonNull
@@ -0,0 +1,81 @@
+package com.poorknight.tpmtoolsbackend.domain.hello;
+
+import com.google.common.collect.ImmutableList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+	Keeps every hello message in memory, so picking a random one does no database work.  The pool is replaced (never changed
+	in place) after every save or delete through HelloService, and reloaded periodically to pick up changes made anywhere
+	else - by another replica, for example.
+
+	If the table grows past tpm.hello.max-pooled-messages, nothing is kept in memory and a random message is sampled in SQL
+	instead.
+
+	Refreshes run one at a time.  Otherwise a slow periodic reload that read the table before a save could finish after the
+	reload for that save, and put the older messages back.
+ */
+@Service
+/*package private*/ class HelloMessagePool {
+
+	// null until first loaded - and also whenever there are too many messages to keep in memory
+	private volatile List<HelloMessage> messages;
+	private volatile boolean sampling;
+
+	// a ReentrantLock rather than synchronized, so a virtual thread waiting on the database does not pin its carrier
+	private final ReentrantLock refreshLock = new ReentrantLock();
+
+	private final HelloRepository helloRepository;
+	private final long maxPooledMessages;
+
+	@Autowired
+	HelloMessagePool(HelloRepository helloRepository, @Value("${tpm.hello.max-pooled-messages:10000}") long maxPooledMessages) {
+		this.helloRepository = helloRepository;
+		this.maxPooledMessages = maxPooledMessages;
+	}
+
+	HelloMessage randomMessage() {
+		List<HelloMessage> pooledMessages = messages;
+		if (pooledMessages == null && !sampling) {
+			refresh();
+			pooledMessages = messages;
+		}
+
+		if (pooledMessages == null) {
+			return helloRepository.findRandomMessage().orElseThrow(() -> new NoSuchElementException("There are no hello messages."));
+		}
+		if (pooledMessages.isEmpty()) {
+			throw new NoSuchElementException("There are no hello messages.");
+		}
+		return pooledMessages.get(ThreadLocalRandom.current().nextInt(pooledMessages.size()));
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	void onHelloMessagesChanged(HelloMessagesChangedEvent event) {
+		refresh();
+	}
+
+	@Scheduled(fixedDelayString = "${tpm.hello.pool-refresh-interval:PT1M}", initialDelayString = "${tpm.hello.pool-refresh-interval:PT1M}")
+	void refresh() {
+		refreshLock.lock();
+		try {
+			if (helloRepository.count() > maxPooledMessages) {
+				sampling = true;
+				messages = null;
+				return;
+			}
+			messages = ImmutableList.copyOf(helloRepository.findAll());
+			sampling = false;
+		} finally {
+			refreshLock.unlock();
+		}
+	}
+}
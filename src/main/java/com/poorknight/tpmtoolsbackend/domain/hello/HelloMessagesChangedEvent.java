@@ -0,0 +1,8 @@
+package com.poorknight.tpmtoolsbackend.domain.hello;
+
+/**
+	Published by HelloService whenever a hello message is saved or deleted, so the message pool can be reloaded once the
+	change is committed.
+ */
+/*package private*/ record HelloMessagesChangedEvent() {
+}
@@ -1,9 +1,24 @@
 package com.poorknight.tpmtoolsbackend.domain.hello;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 /*package private*/ interface HelloRepository extends CrudRepository<HelloMessage, Long> {
-	//empty for spring magic
+
+	/*
+		One index lookup from a random point in the id range - ids after a gap are a little more likely to be picked.  The
+		point is cast back to the id's integer type, since an integer id compared with floor()'s double precision result
+		cannot use the primary key index, and every row would be read instead.
+	 */
+	@Query(value = """
+			SELECT * FROM hello
+			WHERE id >= (SELECT CAST(min(id) + floor(random() * (max(id) - min(id) + 1)) AS integer) FROM hello)
+			ORDER BY id
+			LIMIT 1
+			""", nativeQuery = true)
+	Optional<HelloMessage> findRandomMessage();
 }
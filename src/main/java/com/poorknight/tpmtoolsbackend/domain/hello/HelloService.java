@@ -1,13 +1,13 @@
 package com.poorknight.tpmtoolsbackend.domain.hello;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 
 @Service
@@ -17,13 +17,22 @@ public class HelloService {
 	@Autowired
 	private HelloRepository helloRepository;
 
+	@Autowired
+	private HelloMessagePool helloMessagePool;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
 
 	public HelloMessage saveNewMessage(HelloMessage messageToSave) {
-		return helloRepository.save(messageToSave);
+		HelloMessage savedMessage = helloRepository.save(messageToSave);
+		eventPublisher.publishEvent(new HelloMessagesChangedEvent());
+		return savedMessage;
 	}
 
 	public void deleteMessageById(Long id) {
 		helloRepository.deleteById(id);
+		eventPublisher.publishEvent(new HelloMessagesChangedEvent());
 	}
 
 	public List<HelloMessage> getAllMessages() {
@@ -36,9 +45,9 @@ public class HelloService {
 		return messageList;
 	}
 
+	// served from memory, so no transaction (or connection) is needed unless the pool has to sample the table instead
+	@Transactional(propagation = Propagation.SUPPORTS)
 	public HelloMessage getRandomHelloMessage() {
-		List<HelloMessage> allMessages = this.getAllMessages();
-		int index = new Random().nextInt(0, allMessages.size());
-		return allMessages.get(index);
+		return helloMessagePool.randomMessage();
 	}
 }
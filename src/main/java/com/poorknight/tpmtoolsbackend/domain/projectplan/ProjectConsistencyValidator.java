@@ -6,16 +6,38 @@ import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.sql.SQLException;
 import java.util.*;
 
 /**
 	In charge of making sure any proposed changes to a row or project plan does not result in 2 tasks (or rows) sharing the same space.
+
+	The task table's exclusion constraint has the last word: it also catches changes that were each fine on their own, but
+	were made at the same time.  So changes that would need whole rows loaded just to be checked here (like new tasks) are
+	left to the constraint, and its violations are turned into the same exceptions as the checks below.
  */
+@Timed("tpm.domain.calls")
 @Service
 public class ProjectConsistencyValidator {
 
+	public static final String OVERLAPPING_TASKS_MESSAGE = "The proposed change results in more than one task occupying the same space.";
+
+	// postgres' exclusion_violation - the task table's only exclusion constraint is the one against overlapping tasks
+	private static final String EXCLUSION_VIOLATION = "23P01";
+
+	public static boolean isOverlappingTasksViolation(DataIntegrityViolationException e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException sqlException && EXCLUSION_VIOLATION.equals(sqlException.getSQLState())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public void validateProjectPlanChangeSetThrowingExceptions(ProjectPlan projectPlan, ProjectPlanPatchTemplate projectPlanPatchTemplate) {
 		if (projectPlanPatchTemplate.getRowList() == null) {
 			return;
@@ -33,38 +55,144 @@ public class ProjectConsistencyValidator {
 				new ProjectPlanPatchTemplate(row.getProjectPlanId(), null, List.of(rowPatchTemplate)));
 	}
 
+	/**
+		Checks that the new tasks all belong to the row, and that none of them overlap each other - in one sort and sweep,
+		however many tasks are being added.  Overlaps with the tasks already in the row are left to the database, so the row
+		does not have to be loaded.
+	 */
+	public void validateNewTasksForRowThrowingExceptions(Long rowId, List<Task> newTasks) {
+		long[] taskSpaces = new long[newTasks.size()];
+		int taskIndex = 0;
+		for (Task task : newTasks) {
+			if (!Objects.equals(task.getRowId(), rowId)) {
+				throw new RowUpdateConsistencyException("Every new task must belong to row " + rowId + ", but one belongs to row " + task.getRowId() + ".");
+			}
+			taskSpaces[taskIndex++] = packSpace(task.getPosition(), task.getSize());
+		}
+
+		validateThatNoOverlapsExistThrowingExceptions(taskSpaces, new int[] { taskSpaces.length });
+	}
+
 	private void validateProjectPlanChangeSetForRows(List<Row> rows, ProjectPlanPatchTemplate projectPlanPatchTemplate) {
-		Map<Long, Task> originalTasks = buildOriginalTaskMap(rows);
 		Map<Long, TaskPatchTemplate> changedTasks = buildChangedTaskMap(projectPlanPatchTemplate.getRowList());
-		Map<Long, TaskPatchTemplate> combinedTasks = buildCombinedTasks(originalTasks, changedTasks);
+		Map<Long, Integer> rowIndexes = buildRowIndexMap(rows);
 
-		validateThatNoOverlapsExistThrowingExceptions(rows, combinedTasks);
-	}
+		int taskCount = 0;
+		for (Row row : rows) {
+			taskCount += row.getTaskList().size();
+		}
+
+		// for every task, after the change is applied: the index of the row it ends up in, and its packed position / size
+		int[] taskRowIndexes = new int[taskCount];
+		long[] taskSpaces = new long[taskCount];
+		int[] tasksPerRow = new int[rows.size()];
 
-	private static void validateThatNoOverlapsExistThrowingExceptions(List<Row> rows, Map<Long, TaskPatchTemplate> combinedTasks) {
-		Map<Long, Set<Integer>> occupiedSpaces = new HashMap<>();
+		int taskIndex = 0;
+		int matchedChanges = 0;
 		for (Row row : rows) {
-			occupiedSpaces.put(row.getId(), new HashSet<>());
-		}
-		for (TaskPatchTemplate taskPatchTemplate : combinedTasks.values()) {
-			for (int i = 1; i <= taskPatchTemplate.getSize(); i++) {
-				Integer location = i + taskPatchTemplate.getPosition();
-				boolean wasBlank = occupiedSpaces.get(taskPatchTemplate.getRowId()).add(location);
-				if (!wasBlank) {
-					throw new RowUpdateConsistencyException("The proposed change results in more than one task occupying the same space.");
+			for (Task task : row.getTaskList()) {
+				TaskPatchTemplate change = changedTasks.get(task.getId());
+				Long rowId = task.getRowId();
+				int size = task.getSize();
+				int position = task.getPosition();
+				if (change != null) {
+					matchedChanges++;
+					rowId = change.getRowId() != null ? change.getRowId() : rowId;
+					size = change.getSize() != null ? change.getSize() : size;
+					position = change.getPosition() != null ? change.getPosition() : position;
 				}
+
+				Integer rowIndex = rowIndexes.get(rowId);
+				if (rowIndex == null) {
+					throw new RowUpdateConsistencyException("The proposed change moves a task to a row that is not part of the change set: " + rowId);
+				}
+				taskRowIndexes[taskIndex] = rowIndex;
+				taskSpaces[taskIndex] = packSpace(position, size);
+				tasksPerRow[rowIndex]++;
+				taskIndex++;
 			}
 		}
+
+		if (matchedChanges != changedTasks.size()) {
+			throwExceptionForFirstTaskThatDoesNotExist(rows, changedTasks);
+		}
+
+		validateThatNoOverlapsExistThrowingExceptions(groupSpacesByRow(taskRowIndexes, taskSpaces, tasksPerRow), tasksPerRow);
 	}
 
-	private Map<Long, Task> buildOriginalTaskMap(List<Row> rows) {
-		Map<Long, Task> taskMap = new HashMap<>();
+	/**
+		Each row's tasks are sorted by position, and then swept once - a task overlaps if it starts before the furthest
+		point reached by any task before it.  No per-cell bookkeeping, so big tasks cost the same as small ones.
+	 */
+	private static void validateThatNoOverlapsExistThrowingExceptions(long[] spacesGroupedByRow, int[] tasksPerRow) {
+		int rowStart = 0;
+		for (int rowTaskCount : tasksPerRow) {
+			int rowEnd = rowStart + rowTaskCount;
+			Arrays.sort(spacesGroupedByRow, rowStart, rowEnd);
+
+			long furthestOccupied = Long.MIN_VALUE;
+			for (int i = rowStart; i < rowEnd; i++) {
+				int position = unpackPosition(spacesGroupedByRow[i]);
+				int size = unpackSize(spacesGroupedByRow[i]);
+				if (size <= 0) {
+					continue; // takes up no space, so it cannot overlap anything
+				}
+				if (position < furthestOccupied) {
+					throw new RowUpdateConsistencyException(OVERLAPPING_TASKS_MESSAGE);
+				}
+				furthestOccupied = Math.max(furthestOccupied, (long) position + size);
+			}
+			rowStart = rowEnd;
+		}
+	}
+
+	// counting sort on the row index, so every row's tasks sit next to each other in one array
+	private static long[] groupSpacesByRow(int[] taskRowIndexes, long[] taskSpaces, int[] tasksPerRow) {
+		int[] nextSlotForRow = new int[tasksPerRow.length];
+		for (int rowIndex = 1; rowIndex < tasksPerRow.length; rowIndex++) {
+			nextSlotForRow[rowIndex] = nextSlotForRow[rowIndex - 1] + tasksPerRow[rowIndex - 1];
+		}
+
+		long[] spacesGroupedByRow = new long[taskSpaces.length];
+		for (int i = 0; i < taskSpaces.length; i++) {
+			spacesGroupedByRow[nextSlotForRow[taskRowIndexes[i]]++] = taskSpaces[i];
+		}
+		return spacesGroupedByRow;
+	}
+
+	// position in the high bits so that sorting the packed values sorts by position
+	private static long packSpace(int position, int size) {
+		return ((long) position << 32) | (size & 0xFFFFFFFFL);
+	}
+
+	private static int unpackPosition(long space) {
+		return (int) (space >> 32);
+	}
+
+	private static int unpackSize(long space) {
+		return (int) space;
+	}
+
+	private void throwExceptionForFirstTaskThatDoesNotExist(List<Row> rows, Map<Long, TaskPatchTemplate> changedTasks) {
+		Set<Long> originalTaskIds = new HashSet<>();
 		for (Row row : rows) {
 			for (Task task : row.getTaskList()) {
-				taskMap.put(task.getId(), task);
+				originalTaskIds.add(task.getId());
+			}
+		}
+		for (Long taskId : changedTasks.keySet()) {
+			if (!originalTaskIds.contains(taskId)) {
+				throw new RowUpdateConsistencyException("The patch request refers to a task ID that does not exist: " + taskId);
 			}
 		}
-		return taskMap;
+	}
+
+	private Map<Long, Integer> buildRowIndexMap(List<Row> rows) {
+		Map<Long, Integer> rowIndexes = new HashMap<>();
+		for (int i = 0; i < rows.size(); i++) {
+			rowIndexes.put(rows.get(i).getId(), i);
+		}
+		return rowIndexes;
 	}
 
 	private Map<Long, TaskPatchTemplate> buildChangedTaskMap(List<RowPatchTemplate> rows) {
@@ -77,36 +205,6 @@ public class ProjectConsistencyValidator {
 		return taskMap;
 	}
 
-	private Map<Long, TaskPatchTemplate> buildCombinedTasks(Map<Long, Task> originalTasks, Map<Long, TaskPatchTemplate> changedTasks) {
-		Map<Long, TaskPatchTemplate> combinedTaskMap = new HashMap<>();
-		for (Task task : originalTasks.values()) {
-			combinedTaskMap.put(task.getId(), TaskPatchTemplate.builder()
-					.id(task.getId())
-					.rowId(task.getRowId())
-					.size(task.getSize())
-					.position(task.getPosition()).build());
-		}
-
-		for (TaskPatchTemplate task : changedTasks.values()) {
-			Task original = originalTasks.get(task.getId());
-			if (original == null) {
-				throw new RowUpdateConsistencyException("The patch request refers to a task ID that does not exist: " + task.getId());
-			}
-			TaskPatchTemplate newTask = hydrateTaskPatchTemplate(original, task);
-			combinedTaskMap.put(task.getId(), newTask);
-		}
-		return combinedTaskMap;
-	}
-
-	private TaskPatchTemplate hydrateTaskPatchTemplate(Task original, TaskPatchTemplate task) {
-		return TaskPatchTemplate.builder()
-				.id(task.getId())
-				.rowId(task.getRowId() != null ? task.getRowId() : original.getRowId())
-				.size(task.getSize() != null ? task.getSize() : original.getSize())
-				.position(task.getPosition() != null ? task.getPosition() : original.getPosition())
-				.build();
-	}
-
 	public static class RowUpdateConsistencyException extends RuntimeException {
 		public RowUpdateConsistencyException(String message) {
 			super(message);
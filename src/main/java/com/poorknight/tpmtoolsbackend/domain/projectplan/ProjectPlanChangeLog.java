@@ -0,0 +1,107 @@
+package com.poorknight.tpmtoolsbackend.domain.projectplan;
+
+import com.google.common.collect.Lists;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+	Gives every change to a plan the next revision of that plan, and keeps what changed under that revision in
+	p0_project_plan_change - so a client that knows which revision it has can catch up on just the changes after it.
+
+	It listens to the same events the services publish for the caches and the event stream, but synchronously: the revision
+	is moved on and the changes are written inside the transaction that made them, and are rolled back with it.  Moving the
+	revision on locks the plan's record until that transaction ends, so revisions are committed in order - a reader that sees
+	revision N also sees every change up to N.  A write that changes more than one plan has to publish their events in plan
+	id order, so that two of them can never each hold a plan's lock the other is waiting for.
+
+	Changes older than tpm.changes.retention are pruned.  Clients asking for changes since a pruned revision are told to
+	fetch the whole plan again.
+ */
+@Service
+/*package private*/ class ProjectPlanChangeLog {
+
+	// postgres allows at most 32767 bind parameters per statement, and each change takes 7 (plus the plan id, twice)
+	private static final int MAX_CHANGES_PER_STATEMENT = 4_000;
+
+	private static final String NEXT_REVISION = "UPDATE p0_project_plan SET revision = revision + 1 WHERE id = CAST(? AS integer) RETURNING revision";
+	private static final String CURRENT_REVISION = "SELECT revision FROM p0_project_plan WHERE id = CAST(? AS integer)";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final Duration retention;
+
+	ProjectPlanChangeLog(@Value("${tpm.changes.retention:PT24H}") Duration retention) {
+		this.retention = retention;
+	}
+
+	// events without changes say that something happened, but not what - there is nothing to record
+	@EventListener
+	@Transactional
+	void onProjectPlanChanged(ProjectPlanChangedEvent event) {
+		if (event.getChanges().isEmpty()) {
+			return;
+		}
+
+		// one statement moves the revision on and records the first changes - any further changes are recorded under the same revision
+		List<List<ProjectPlanChange>> changeChunks = Lists.partition(event.getChanges(), MAX_CHANGES_PER_STATEMENT);
+		for (int i = 0; i < changeChunks.size(); i++) {
+			recordChanges(event.getProjectPlanId(), i == 0 ? NEXT_REVISION : CURRENT_REVISION, changeChunks.get(i), i * MAX_CHANGES_PER_STATEMENT);
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${tpm.changes.prune-interval:PT10M}", initialDelayString = "${tpm.changes.prune-interval:PT10M}")
+	@Transactional
+	void pruneOldChanges() {
+		pruneChangesRecordedBefore(Instant.now().minus(retention));
+	}
+
+	@Transactional
+	int pruneChangesRecordedBefore(Instant cutoff) {
+		return entityManager.createNativeQuery("DELETE FROM p0_project_plan_change WHERE recorded_at < ?")
+				.setParameter(1, cutoff)
+				.executeUpdate();
+	}
+
+	private void recordChanges(Long projectPlanId, String revisionQuery, List<ProjectPlanChange> changes, int firstChangeIndex) {
+		StringBuilder sql = new StringBuilder("WITH plan_revision AS (").append(revisionQuery).append(") ")
+				.append("INSERT INTO p0_project_plan_change (p0_project_plan_fk, revision, change_index, type, row_id, task_id, title, size, position) ")
+				.append("SELECT CAST(? AS integer), plan_revision.revision, changes.change_index, changes.type, changes.row_id, changes.task_id, changes.title, changes.size, changes.position ")
+				.append("FROM plan_revision CROSS JOIN (VALUES ");
+		for (int i = 0; i < changes.size(); i++) {
+			sql.append(i == 0 ? "" : ", ")
+					.append("(CAST(? AS integer), CAST(? AS varchar), CAST(? AS bigint), CAST(? AS bigint), CAST(? AS varchar), CAST(? AS integer), CAST(? AS integer))");
+		}
+		sql.append(") AS changes (change_index, type, row_id, task_id, title, size, position)");
+
+		// typed, so that nulls are bound as nulls of the right type
+		NativeQuery<?> query = entityManager.createNativeQuery(sql.toString()).unwrap(NativeQuery.class);
+		query.setParameter(1, projectPlanId, StandardBasicTypes.LONG);
+		query.setParameter(2, projectPlanId, StandardBasicTypes.LONG);
+		int parameterIndex = 3;
+		int changeIndex = firstChangeIndex;
+		for (ProjectPlanChange change : changes) {
+			query.setParameter(parameterIndex++, changeIndex++, StandardBasicTypes.INTEGER);
+			query.setParameter(parameterIndex++, change.getType().name(), StandardBasicTypes.STRING);
+			query.setParameter(parameterIndex++, change.getRowId(), StandardBasicTypes.LONG);
+			query.setParameter(parameterIndex++, change.getTaskId(), StandardBasicTypes.LONG);
+			query.setParameter(parameterIndex++, change.getTitle(), StandardBasicTypes.STRING);
+			query.setParameter(parameterIndex++, change.getSize(), StandardBasicTypes.INTEGER);
+			query.setParameter(parameterIndex++, change.getPosition(), StandardBasicTypes.INTEGER);
+		}
+		query.executeUpdate();
+	}
+}
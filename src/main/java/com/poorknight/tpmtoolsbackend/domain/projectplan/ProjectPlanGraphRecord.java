@@ -0,0 +1,29 @@
+package com.poorknight.tpmtoolsbackend.domain.projectplan;
+
+/**
+	One flattened row of the plan -> rows -> tasks join.  Row and task columns are null when a plan has no rows, or a row has no tasks.
+ */
+/*package private*/ interface ProjectPlanGraphRecord {
+
+	Long getProjectPlanId();
+
+	String getProjectPlanTitle();
+
+	Long getProjectPlanVersion();
+
+	Long getRowId();
+
+	String getRowTitle();
+
+	Long getRowVersion();
+
+	Long getTaskId();
+
+	String getTaskTitle();
+
+	Integer getTaskSize();
+
+	Integer getTaskPosition();
+
+	Long getTaskVersion();
+}
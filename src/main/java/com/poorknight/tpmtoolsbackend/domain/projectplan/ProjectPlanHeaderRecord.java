@@ -0,0 +1,13 @@
+package com.poorknight.tpmtoolsbackend.domain.projectplan;
+
+/**
+	A plan's own columns, without its rows.
+ */
+/*package private*/ interface ProjectPlanHeaderRecord {
+
+	Long getProjectPlanId();
+
+	String getProjectPlanTitle();
+
+	Long getProjectPlanVersion();
+}
@@ -0,0 +1,49 @@
+package com.poorknight.tpmtoolsbackend.domain.projectplan;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+	How big the plans being loaded are, and how much of a plan each patch touches - so the time spent on a request (see
+	tpm.domain.calls) can be put next to the size of the plan it worked on.  Only the size of the work is tagged, never a
+	plan id, to keep the number of series down.
+ */
+@Component
+public class ProjectPlanMetrics {
+
+	private final DistributionSummary loadedRows;
+	private final DistributionSummary loadedTasks;
+	private final DistributionSummary patchedTasks;
+	private final DistributionSummary patchLoadedRows;
+
+	public ProjectPlanMetrics(MeterRegistry meterRegistry) {
+		loadedRows = DistributionSummary.builder("tpm.plans.loaded.rows")
+				.description("Rows in each whole project plan that was loaded")
+				.baseUnit("rows")
+				.register(meterRegistry);
+		loadedTasks = DistributionSummary.builder("tpm.plans.loaded.tasks")
+				.description("Tasks in each whole project plan that was loaded")
+				.baseUnit("tasks")
+				.register(meterRegistry);
+		patchedTasks = DistributionSummary.builder("tpm.plans.patch.tasks")
+				.description("Tasks moved by each project plan patch")
+				.baseUnit("tasks")
+				.register(meterRegistry);
+		patchLoadedRows = DistributionSummary.builder("tpm.plans.patch.rows")
+				.description("Rows each project plan patch had to load - the rows its tasks were moved out of and into")
+				.baseUnit("rows")
+				.register(meterRegistry);
+	}
+
+	public void recordLoadedProjectPlan(int rowCount, int taskCount) {
+		loadedRows.record(rowCount);
+		loadedTasks.record(taskCount);
+	}
+
+	// a patch that only changes the title moves no tasks, and loads no rows
+	/*package private*/ void recordPatch(int taskCount, int loadedRowCount) {
+		patchedTasks.record(taskCount);
+		patchLoadedRows.record(loadedRowCount);
+	}
+}
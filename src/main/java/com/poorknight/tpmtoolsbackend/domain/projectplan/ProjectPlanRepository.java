@@ -1,8 +1,59 @@
 package com.poorknight.tpmtoolsbackend.domain.projectplan;
 
 import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlan;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 /*package private*/ interface ProjectPlanRepository extends CrudRepository<ProjectPlan, Long> {
-	//empty for spring magic
-}
\ No newline at end of file
+
+	// loads the plan, its rows, and their tasks in a single round trip - rows and tasks are in id order
+	@Query(nativeQuery = true, value = """
+			SELECT CAST(p.id AS bigint) AS "projectPlanId", p.title AS "projectPlanTitle", p.version AS "projectPlanVersion",
+			       CAST(r.id AS bigint) AS "rowId", r.title AS "rowTitle", r.version AS "rowVersion",
+			       CAST(t.id AS bigint) AS "taskId", t.title AS "taskTitle", t.size AS "taskSize", t.position AS "taskPosition", t.version AS "taskVersion"
+			FROM p0_project_plan p
+			LEFT JOIN p1_row r ON r.p0_project_plan_fk = p.id
+			LEFT JOIN task t ON t.p0_project_plan_fk = ?1 AND t.p1_row_fk = r.id
+			WHERE p.id = ?1
+			ORDER BY r.id, t.id
+			""")
+	List<ProjectPlanGraphRecord> findProjectPlanGraph(Long projectPlanId);
+
+	/*
+		The same graph, but with only the rows a patch touches: the rows it names, and the rows its tasks are in now.  Rows
+		of other plans are never loaded, even if they are named.
+	 */
+	@Query(nativeQuery = true, value = """
+			SELECT CAST(p.id AS bigint) AS "projectPlanId", p.title AS "projectPlanTitle", p.version AS "projectPlanVersion",
+			       CAST(r.id AS bigint) AS "rowId", r.title AS "rowTitle", r.version AS "rowVersion",
+			       CAST(t.id AS bigint) AS "taskId", t.title AS "taskTitle", t.size AS "taskSize", t.position AS "taskPosition", t.version AS "taskVersion"
+			FROM p0_project_plan p
+			LEFT JOIN p1_row r ON r.p0_project_plan_fk = p.id
+			                  AND (r.id IN (?2) OR r.id IN (SELECT moved.p1_row_fk FROM task moved WHERE moved.p0_project_plan_fk = ?1 AND moved.id IN (?3)))
+			LEFT JOIN task t ON t.p0_project_plan_fk = ?1 AND t.p1_row_fk = r.id
+			WHERE p.id = ?1
+			ORDER BY r.id, t.id
+			""")
+	List<ProjectPlanGraphRecord> findProjectPlanGraphForRows(Long projectPlanId, Collection<Long> rowIds, Collection<Long> taskIds);
+
+	// moves the version on (and changes the title, if one is given) only if nobody else has moved it on first - returns 0 if they have
+	@Modifying
+	@Query(nativeQuery = true, value = "UPDATE p0_project_plan SET version = version + 1, title = COALESCE(?3, title) WHERE id = ?1 AND version = ?2")
+	int incrementVersionAndUpdateTitle(Long projectPlanId, Long expectedVersion, String title);
+
+	// the same, for a patch that only changes the title - returns the plan as it now is, or nothing if the plan does not exist or (when an expected version is given) is not at it
+	@Query(nativeQuery = true, value = """
+			UPDATE p0_project_plan SET version = version + 1, title = ?2
+			WHERE id = ?1 AND (CAST(?3 AS bigint) IS NULL OR version = CAST(?3 AS bigint))
+			RETURNING CAST(id AS bigint) AS "projectPlanId", title AS "projectPlanTitle", version AS "projectPlanVersion"
+			""")
+	Optional<ProjectPlanHeaderRecord> updateTitleReturningPlan(Long projectPlanId, String title, Long expectedVersion);
+
+	@Query(nativeQuery = true, value = "SELECT version FROM p0_project_plan WHERE id = ?1")
+	Optional<Long> findVersion(Long projectPlanId);
+}
@@ -2,18 +2,24 @@ package com.poorknight.tpmtoolsbackend.domain.projectplan;
 
 import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlan;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanUpdate;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.tasks.TaskService;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
-import jakarta.persistence.EntityManager;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.*;
 
+@Timed("tpm.domain.calls")
 @Service
 public class ProjectPlanService  {
 
@@ -27,22 +33,143 @@ public class ProjectPlanService  {
 	private ProjectConsistencyValidator projectConsistencyValidator;
 
 	@Autowired
-	EntityManager entityManager;
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private ProjectPlanMetrics projectPlanMetrics;
 
 	public ProjectPlan getProjectPlan(Long projectPlanId) {
-		Optional<ProjectPlan> projectPlan = projectPlanRepository.findById(projectPlanId);
-		if (projectPlan.isEmpty()) {
+		List<ProjectPlanGraphRecord> records = projectPlanRepository.findProjectPlanGraph(projectPlanId);
+		if (records.isEmpty()) {
 			throw new ProjectPlanNotFoundException("No project plan found for the given id: " + projectPlanId);
 		}
-		return projectPlan.get();
+		ProjectPlan projectPlan = assembleProjectPlan(records);
+		projectPlanMetrics.recordLoadedProjectPlan(projectPlan.getRowList().size(), countTasks(projectPlan));
+		return projectPlan;
+	}
+
+	private static int countTasks(ProjectPlan projectPlan) {
+		int taskCount = 0;
+		for (Row row : projectPlan.getRowList()) {
+			taskCount += row.getTaskList().size();
+		}
+		return taskCount;
 	}
 
-	public ProjectPlan updateProjectPlan(ProjectPlanPatchTemplate patchTemplate) {
+	private ProjectPlan assembleProjectPlan(List<ProjectPlanGraphRecord> records) {
+		ProjectPlanGraphRecord planRecord = records.get(0);
+		List<Row> rows = new ArrayList<>();
+
+		int rowStart = 0;
+		while (rowStart < records.size() && records.get(rowStart).getRowId() != null) {
+			int rowEnd = rowStart;
+			while (rowEnd < records.size() && records.get(rowEnd).getRowId().equals(records.get(rowStart).getRowId())) {
+				rowEnd++;
+			}
+			rows.add(assembleRow(planRecord.getProjectPlanId(), records.subList(rowStart, rowEnd)));
+			rowStart = rowEnd;
+		}
+		return new ProjectPlan(planRecord.getProjectPlanId(), planRecord.getProjectPlanTitle(), rows, planRecord.getProjectPlanVersion());
+	}
+
+	private Row assembleRow(Long projectPlanId, List<ProjectPlanGraphRecord> rowRecords) {
+		ProjectPlanGraphRecord rowRecord = rowRecords.get(0);
+		List<Task> tasks = new ArrayList<>(rowRecords.size());
+		for (ProjectPlanGraphRecord taskRecord : rowRecords) {
+			if (taskRecord.getTaskId() != null) {
+				tasks.add(new Task(taskRecord.getTaskId(), rowRecord.getRowId(), taskRecord.getTaskTitle(), taskRecord.getTaskSize(), taskRecord.getTaskPosition(), taskRecord.getTaskVersion()));
+			}
+		}
+		return new Row(rowRecord.getRowId(), projectPlanId, rowRecord.getRowTitle(), tasks, rowRecord.getRowVersion());
+	}
+
+	@Transactional
+	public ProjectPlanUpdate updateProjectPlan(ProjectPlanPatchTemplate patchTemplate) {
+		return updateProjectPlan(patchTemplate, null);
+	}
+
+	/**
+		Applies the patch only if the plan is still at the expected version (pass null to skip that check).  The plan's
+		version is moved on by a conditional UPDATE, so of two concurrent patches against the same version only one can
+		win - the other fails with an ObjectOptimisticLockingFailureException and nothing it changed is kept.
+
+		Only the rows the patch touches are loaded (the rows it names, and the rows its tasks are moved out of), and only
+		those rows are handed back - as changed rows, for the caller to merge into the whole plan if it has it.  A patch that
+		only changes the title loads no rows at all.
+	 */
+	@Transactional
+	public ProjectPlanUpdate updateProjectPlan(ProjectPlanPatchTemplate patchTemplate, Long expectedVersion) {
 		validateUpdateTemplateThrowingException(patchTemplate);
+		if (patchTemplate.getRowList() == null || patchTemplate.getRowList().isEmpty()) {
+			projectPlanMetrics.recordPatch(0, 0);
+			return updateProjectPlanTitle(patchTemplate.getId(), patchTemplate.getTitle(), expectedVersion);
+		}
+
+		ProjectPlan projectPlan = getProjectPlanWithRowsTouchedBy(patchTemplate);
+		projectPlanMetrics.recordPatch(countTaskPatches(patchTemplate), projectPlan.getRowList().size());
+		if (expectedVersion != null && !expectedVersion.equals(projectPlan.getVersion())) {
+			throw new ProjectPlanVersionMismatchException("Project plan " + projectPlan.getId() + " is at version " + projectPlan.getVersion() + ", not the expected version " + expectedVersion + ".  No changes were made.");
+		}
+		projectConsistencyValidator.validateProjectPlanChangeSetThrowingExceptions(projectPlan, patchTemplate);
+
+		if (projectPlanRepository.incrementVersionAndUpdateTitle(projectPlan.getId(), projectPlan.getVersion(), patchTemplate.getTitle()) == 0) {
+			throw new ObjectOptimisticLockingFailureException(ProjectPlan.class, projectPlan.getId());
+		}
+		List<Task> updatedTasks = performTaskUpdates(patchTemplate);
+
+		// task moves are published by the TaskService
+		List<ProjectPlanChange> changes = patchTemplate.getTitle() == null ? List.of() : List.of(ProjectPlanChange.projectPlanRetitled(patchTemplate.getTitle()));
+		eventPublisher.publishEvent(new ProjectPlanChangedEvent(patchTemplate.getId(), changes));
+		return applyUpdates(projectPlan, patchTemplate.getTitle(), updatedTasks);
+	}
+
+	// one UPDATE - the plan is only looked up when nothing was updated, to find out why
+	private ProjectPlanUpdate updateProjectPlanTitle(Long projectPlanId, String title, Long expectedVersion) {
+		ProjectPlanHeaderRecord updatedPlan = projectPlanRepository.updateTitleReturningPlan(projectPlanId, title, expectedVersion)
+				.orElseThrow(() -> exceptionForFailedTitleUpdate(projectPlanId, expectedVersion));
+
+		eventPublisher.publishEvent(new ProjectPlanChangedEvent(projectPlanId, List.of(ProjectPlanChange.projectPlanRetitled(title))));
+		return new ProjectPlanUpdate(updatedPlan.getProjectPlanId(), updatedPlan.getProjectPlanTitle(), updatedPlan.getProjectPlanVersion(), List.of());
+	}
+
+	private RuntimeException exceptionForFailedTitleUpdate(Long projectPlanId, Long expectedVersion) {
+		Optional<Long> version = projectPlanRepository.findVersion(projectPlanId);
+		if (version.isEmpty()) {
+			return new ProjectPlanNotFoundException("No project plan found for the given id: " + projectPlanId);
+		}
+		if (expectedVersion != null && !expectedVersion.equals(version.get())) {
+			return new ProjectPlanVersionMismatchException("Project plan " + projectPlanId + " is at version " + version.get() + ", not the expected version " + expectedVersion + ".  No changes were made.");
+		}
+		// the plan was moved on to the expected version after the update missed it
+		return new ObjectOptimisticLockingFailureException(ProjectPlan.class, projectPlanId);
+	}
 
-		performProjectPlanUpdate(patchTemplate);
-		entityManager.clear();
-		return this.getProjectPlan(patchTemplate.getId());
+	private static int countTaskPatches(ProjectPlanPatchTemplate patchTemplate) {
+		int taskCount = 0;
+		for (RowPatchTemplate rowPatchTemplate : patchTemplate.getRowList()) {
+			taskCount += rowPatchTemplate.getTaskList().size();
+		}
+		return taskCount;
+	}
+
+	private ProjectPlan getProjectPlanWithRowsTouchedBy(ProjectPlanPatchTemplate patchTemplate) {
+		Set<Long> rowIds = new HashSet<>();
+		Set<Long> taskIds = new HashSet<>();
+		for (RowPatchTemplate rowPatchTemplate : patchTemplate.getRowList()) {
+			rowIds.add(rowPatchTemplate.getId());
+			for (TaskPatchTemplate taskPatchTemplate : rowPatchTemplate.getTaskList()) {
+				taskIds.add(taskPatchTemplate.getId());
+				if (taskPatchTemplate.getRowId() != null) {
+					rowIds.add(taskPatchTemplate.getRowId());
+				}
+			}
+		}
+
+		List<ProjectPlanGraphRecord> records = projectPlanRepository.findProjectPlanGraphForRows(patchTemplate.getId(), rowIds, taskIds);
+		if (records.isEmpty()) {
+			throw new ProjectPlanNotFoundException("No project plan found for the given id: " + patchTemplate.getId());
+		}
+		return assembleProjectPlan(records);
 	}
 
 	private void validateUpdateTemplateThrowingException(ProjectPlanPatchTemplate patchTemplate) {
@@ -67,39 +194,47 @@ public class ProjectPlanService  {
 		}
 	}
 
-	@Transactional(propagation = Propagation.REQUIRES_NEW)
-	private void performProjectPlanUpdate(ProjectPlanPatchTemplate patchTemplate) {
-		ProjectPlan projectPlan = this.getProjectPlan(patchTemplate.getId());
-		projectConsistencyValidator.validateProjectPlanChangeSetThrowingExceptions(projectPlan, patchTemplate);
-
-		if (patchTemplate.getTitle() != null) {
-			projectPlan.setTitle(patchTemplate.getTitle());
-			projectPlanRepository.save(projectPlan);
-		}
-
+	private List<Task> performTaskUpdates(ProjectPlanPatchTemplate patchTemplate) {
 		if (patchTemplate.getRowList() == null) {
-			return;
+			return List.of();
 		}
 
+		List<TaskPatchTemplate> taskPatchTemplates = new ArrayList<>();
 		for(RowPatchTemplate rowPatchTemplate : patchTemplate.getRowList()) {
-			this.updateTasksInRow(rowPatchTemplate);
+			taskPatchTemplates.addAll(rowPatchTemplate.getTaskList());
+		}
+		try {
+			return taskService.patchTaskRowIdsAndPositions(patchTemplate.getId(), taskPatchTemplates);
+		} catch (ProjectConsistencyValidator.RowUpdateConsistencyException e) {
+			// the database found tasks overlapping that the validator did not - they were moved while this patch was being made
+			throw new ProjectConsistencyValidator.ProjectPlanUpdateConsistencyException(e.getMessage());
 		}
 	}
 
-	private void updateTasksInRow(RowPatchTemplate rowPatchTemplate) {
-		for (TaskPatchTemplate taskPatchTemplate : rowPatchTemplate.getTaskList()) {
-			Task taskBeingUpdated = taskService.findTaskWithId(taskPatchTemplate.getId());
-
-			if (taskPatchTemplate.getPosition() != null) {
-				taskBeingUpdated.setPosition(taskPatchTemplate.getPosition());
-			}
+	// everything that was written is known at this point, so the changed rows are built in memory instead of being reloaded
+	private ProjectPlanUpdate applyUpdates(ProjectPlan projectPlan, String newTitle, List<Task> updatedTasks) {
+		Map<Long, Task> updatedTasksById = new HashMap<>();
+		Map<Long, List<Task>> updatedTasksByRowId = new HashMap<>();
+		for (Task updatedTask : updatedTasks) {
+			updatedTasksById.put(updatedTask.getId(), updatedTask);
+			updatedTasksByRowId.computeIfAbsent(updatedTask.getRowId(), rowId -> new ArrayList<>()).add(updatedTask);
+		}
 
-			if (taskPatchTemplate.getRowId() != null) {
-				taskBeingUpdated.setRowId(taskPatchTemplate.getRowId());
+		List<Row> rows = new ArrayList<>(projectPlan.getRowList().size());
+		for (Row row : projectPlan.getRowList()) {
+			List<Task> tasks = new ArrayList<>();
+			for (Task task : row.getTaskList()) {
+				if (!updatedTasksById.containsKey(task.getId())) {
+					tasks.add(task);
+				}
 			}
-
-			taskService.patchTask(taskBeingUpdated);
+			tasks.addAll(updatedTasksByRowId.getOrDefault(row.getId(), List.of()));
+			tasks.sort(Comparator.comparing(Task::getId));
+			rows.add(new Row(row.getId(), row.getProjectPlanId(), row.getTitle(), tasks, row.getVersion()));
 		}
+
+		String title = newTitle == null ? projectPlan.getTitle() : newTitle;
+		return new ProjectPlanUpdate(projectPlan.getId(), title, projectPlan.getVersion() + 1, rows);
 	}
 
 	public static class ProjectPlanNotFoundException extends RuntimeException {
@@ -115,5 +250,11 @@ public class ProjectPlanService  {
 			super(message);
 		}
 	}
-}
 
+	public static class ProjectPlanVersionMismatchException extends RuntimeException {
+
+		public ProjectPlanVersionMismatchException(String message) {
+			super(message);
+		}
+	}
+}
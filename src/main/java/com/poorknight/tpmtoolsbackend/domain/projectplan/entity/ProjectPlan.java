@@ -16,7 +16,8 @@ import java.util.List;
 public class ProjectPlan {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "p0_project_plan_id_seq")
+	@SequenceGenerator(name = "p0_project_plan_id_seq", sequenceName = "p0_project_plan_id_seq", allocationSize = 50)
 	private Long id;
 
 	@Column(nullable = true)
@@ -24,4 +25,11 @@ public class ProjectPlan {
 
 	@OneToMany(mappedBy = "projectPlanId", fetch = FetchType.EAGER)
 	private List<Row> rowList;
+
+	@Version
+	private Long version;
+
+	public ProjectPlan(Long id, String title, List<Row> rowList) {
+		this(id, title, rowList, null);
+	}
 }
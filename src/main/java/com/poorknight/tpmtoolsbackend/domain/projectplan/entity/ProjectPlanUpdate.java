@@ -0,0 +1,29 @@
+package com.poorknight.tpmtoolsbackend.domain.projectplan.entity;
+
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+	What a project plan patch left the plan as: its title and version, and the rows the patch touched - each with all of its
+	tasks.  The rows the patch did not touch were never loaded, so they are not here, and a patch that only changes the
+	title has no changed rows at all.
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@ToString
+public class ProjectPlanUpdate {
+
+	private Long id;
+
+	private String title;
+
+	private Long version;
+
+	private List<Row> changedRows;
+}
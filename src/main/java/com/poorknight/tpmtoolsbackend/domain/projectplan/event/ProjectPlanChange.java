@@ -0,0 +1,50 @@
+package com.poorknight.tpmtoolsbackend.domain.projectplan.event;
+
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+	One change inside a project plan.  Carries the new state of whatever changed (null for fields that do not apply), so
+	that a client holding the plan can apply it without fetching anything.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class ProjectPlanChange {
+
+	public enum Type {
+		PROJECT_PLAN_RETITLED,
+		ROW_ADDED,
+		ROW_RETITLED,
+		ROW_DELETED,
+		TASK_ADDED,
+		TASK_MOVED,
+		TASK_RESIZED,
+		TASK_RETITLED,
+		TASK_DELETED
+	}
+
+	private final Type type;
+	private final Long rowId;
+	private final Long taskId;
+	private final String title;
+	private final Integer size;
+	private final Integer position;
+
+	public static ProjectPlanChange projectPlanRetitled(String title) {
+		return new ProjectPlanChange(Type.PROJECT_PLAN_RETITLED, null, null, title, null, null);
+	}
+
+	public static ProjectPlanChange forRow(Type type, Row row) {
+		return new ProjectPlanChange(type, row.getId(), null, row.getTitle(), null, null);
+	}
+
+	public static ProjectPlanChange forTask(Type type, Task task) {
+		return new ProjectPlanChange(type, task.getRowId(), task.getId(), task.getTitle(), task.getSize(), task.getPosition());
+	}
+}
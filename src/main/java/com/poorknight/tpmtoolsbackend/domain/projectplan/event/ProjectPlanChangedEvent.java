@@ -0,0 +1,31 @@
+package com.poorknight.tpmtoolsbackend.domain.projectplan.event;
+
+import com.google.common.collect.ImmutableList;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+	Published by the domain services whenever something inside a project plan (the plan itself, one of its rows, or one of their tasks) is changed.
+	The changes describe exactly what happened, so listeners can pass them on as deltas - they may be empty when only the
+	fact that the plan changed is known.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class ProjectPlanChangedEvent {
+
+	private final Long projectPlanId;
+	private final List<ProjectPlanChange> changes;
+
+	public ProjectPlanChangedEvent(Long projectPlanId) {
+		this(projectPlanId, List.of());
+	}
+
+	public ProjectPlanChangedEvent(Long projectPlanId, List<ProjectPlanChange> changes) {
+		this.projectPlanId = projectPlanId;
+		this.changes = ImmutableList.copyOf(changes);
+	}
+}
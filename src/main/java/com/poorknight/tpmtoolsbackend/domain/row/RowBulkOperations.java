@@ -0,0 +1,20 @@
+package com.poorknight.tpmtoolsbackend.domain.row;
+
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+
+import java.util.Optional;
+
+/*package private*/ interface RowBulkOperations {
+
+	/**
+		Deletes the row with a single DELETE ... RETURNING, but only if no tasks belong to it.  Returns the deleted row (which
+		has no tasks), or nothing if the row does not exist or still has tasks.
+	 */
+	Optional<Row> deleteRowIfEmpty(Long rowId);
+
+	/**
+		Moves the row's version on without loading it (or its tasks).  Returns the number of rows updated - 0 if the row does
+		not exist.
+	 */
+	int incrementVersion(Long rowId);
+}
@@ -0,0 +1,36 @@
+package com.poorknight.tpmtoolsbackend.domain.row;
+
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+/*package private*/ class RowBulkOperationsImpl implements RowBulkOperations {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public Optional<Row> deleteRowIfEmpty(Long rowId) {
+		Query query = entityManager.createNativeQuery("DELETE FROM p1_row WHERE id = ? AND NOT EXISTS (SELECT 1 FROM task WHERE task.p0_project_plan_fk = p1_row.p0_project_plan_fk AND task.p1_row_fk = p1_row.id)"
+				+ " RETURNING id, p0_project_plan_fk, title, version");
+		query.setParameter(1, rowId);
+
+		List<?> deletedRecords = query.getResultList();
+		if (deletedRecords.isEmpty()) {
+			return Optional.empty();
+		}
+		Object[] deleted = (Object[]) deletedRecords.get(0);
+		return Optional.of(new Row(((Number) deleted[0]).longValue(), ((Number) deleted[1]).longValue(), (String) deleted[2], List.of(), ((Number) deleted[3]).longValue()));
+	}
+
+	@Override
+	public int incrementVersion(Long rowId) {
+		return entityManager.createNativeQuery("UPDATE p1_row SET version = version + 1 WHERE id = ?")
+				.setParameter(1, rowId)
+				.executeUpdate();
+	}
+}
@@ -1,11 +1,18 @@
 package com.poorknight.tpmtoolsbackend.domain.row;
 
 import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.repository.CrudRepository;
 
 import java.util.List;
+import java.util.Optional;
 
-/*package private*/ interface RowRepository extends CrudRepository<Row, Long> {
+/*package private*/ interface RowRepository extends CrudRepository<Row, Long>, RowBulkOperations {
 
 	List<Row> findByProjectPlanId(Long projectPlanId);
+
+	// the row's version is moved on at commit even if only its tasks change, so that concurrent task edits in a row conflict
+	@Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+	Optional<Row> findWithVersionIncrementById(Long id);
 }
\ No newline at end of file
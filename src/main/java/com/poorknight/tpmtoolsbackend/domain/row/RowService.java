@@ -1,12 +1,18 @@
 package com.poorknight.tpmtoolsbackend.domain.row;
 
 import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange.Type;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
 import com.poorknight.tpmtoolsbackend.domain.tasks.TaskService;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,6 +21,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 
+@Timed("tpm.domain.calls")
 @Service
 @Transactional(propagation = Propagation.REQUIRED)
 @RequiredArgsConstructor
@@ -24,11 +31,13 @@ public class RowService {
 	private final TaskService taskService;
 	private final ProjectConsistencyValidator projectConsistencyValidator;
 	private final RowServiceValidator rowServiceValidator;
-
+	private final ApplicationEventPublisher eventPublisher;
 
 	public Row saveNewRow(Row newRow) {
 		rowServiceValidator.validateRowToSaveThrowingExceptions(newRow);
-		return rowRepository.save(newRow);
+		Row savedRow = rowRepository.save(newRow);
+		eventPublisher.publishEvent(new ProjectPlanChangedEvent(savedRow.getProjectPlanId(), List.of(ProjectPlanChange.forRow(Type.ROW_ADDED, savedRow))));
+		return savedRow;
 	}
 
 	public List<Row> getAllRowsForProjectPlan(Long projectPlanId) {
@@ -40,21 +49,35 @@ public class RowService {
 		return results;
 	}
 
+	/**
+		Deletes the row in a single round trip, if it has no tasks.  The row is only loaded when nothing was deleted, to find
+		out why.
+	 */
 	public Row deleteEmptyRowById(Long rowId) {
-		Optional<Row> maybeRow = rowRepository.findById(rowId);
-		rowServiceValidator.validateRowDelete(rowId, maybeRow);
+		Optional<Row> deletedRow = rowRepository.deleteRowIfEmpty(rowId);
+		if (deletedRow.isEmpty()) {
+			rowServiceValidator.validateRowDelete(rowId, rowRepository.findById(rowId));
+			// the row exists and is empty now, so its last task was removed after the delete was tried
+			throw new ObjectOptimisticLockingFailureException(Row.class, rowId);
+		}
 
-		Row row = maybeRow.get();
-		rowRepository.deleteById(rowId);
+		Row row = deletedRow.get();
+		eventPublisher.publishEvent(new ProjectPlanChangedEvent(row.getProjectPlanId(), List.of(ProjectPlanChange.forRow(Type.ROW_DELETED, row))));
 		return row;
 	}
 
 	public Row patchRow(RowPatchTemplate rowPatchTemplate) {
-		Optional<Row> maybeRow = (rowPatchTemplate.getId() == null) ?
-				Optional.empty() :
-				rowRepository.findById(rowPatchTemplate.getId());
+		return patchRow(rowPatchTemplate, null);
+	}
+
+	/**
+		Patches the row only if it is still at the expected version (pass null to skip that check).
+	 */
+	public Row patchRow(RowPatchTemplate rowPatchTemplate, Long expectedVersion) {
+		Optional<Row> maybeRow = findRowToPatch(rowPatchTemplate);
 
 		rowServiceValidator.validateRowPatch(rowPatchTemplate, maybeRow);
+		rowServiceValidator.validateRowVersion(maybeRow.get(), expectedVersion);
 		Row rowToUpdate = maybeRow.get();
 
 		if (rowPatchTemplate.getTitle() != null) {
@@ -63,24 +86,50 @@ public class RowService {
 
 		if (rowPatchTemplate.getTaskList() != null) {
 			projectConsistencyValidator.validateRowChangeSetThrowingExceptions(rowToUpdate, rowPatchTemplate);
+			// the tasks are patched one at a time, so on the way two of them may overlap (swapping places, say)
+			taskService.deferOverlapChecks();
 			updateTasksInRow(rowPatchTemplate);
+			taskService.checkDeferredOverlaps();
 		}
 
-		return rowRepository.save(rowToUpdate);
+		Row updatedRow = rowRepository.save(rowToUpdate);
+		// task changes are published by the TaskService as each task is patched
+		List<ProjectPlanChange> changes = rowPatchTemplate.getTitle() == null ? List.of() : List.of(ProjectPlanChange.forRow(Type.ROW_RETITLED, updatedRow));
+		eventPublisher.publishEvent(new ProjectPlanChangedEvent(updatedRow.getProjectPlanId(), changes));
+		return updatedRow;
 	}
 
-	private void updateTasksInRow(RowPatchTemplate rowPatchTemplate) {
-		for (TaskPatchTemplate tastPatchTemplate : rowPatchTemplate.getTaskList()) {
-			Task taskBeingUpdated = taskService.findTaskWithId(tastPatchTemplate.getId());
+	/**
+		Adds all the tasks to the row in one go - they are checked against each other in one pass, and saved with batched
+		multi-row inserts.  The row and its tasks are never loaded: the row's version is moved on with a single UPDATE, and
+		the database rejects any new task that overlaps one already in the row.  The saved tasks are returned in the order
+		they were passed.
+	 */
+	public List<Task> addTasksToRow(Long rowId, List<Task> newTasks) {
+		if (rowRepository.incrementVersion(rowId) == 0) {
+			throw new RowServiceValidator.RowNotFoundException("No row exists with id " + rowId + ".  No tasks were added.");
+		}
 
-			if (tastPatchTemplate.getSize() != null) {
-				taskBeingUpdated.setSize(tastPatchTemplate.getSize());
-			}
-			if (tastPatchTemplate.getPosition() != null) {
-				taskBeingUpdated.setPosition(tastPatchTemplate.getPosition());
-			}
+		projectConsistencyValidator.validateNewTasksForRowThrowingExceptions(rowId, newTasks);
+		return taskService.saveNewTasks(newTasks);
+	}
 
-			taskService.patchTask(taskBeingUpdated);
+	private Optional<Row> findRowToPatch(RowPatchTemplate rowPatchTemplate) {
+		if (rowPatchTemplate.getId() == null) {
+			return Optional.empty();
+		}
+		// a title change moves the version on by itself - a change to only the tasks has to ask for it
+		return rowPatchTemplate.getTitle() == null && rowPatchTemplate.getTaskList() != null ?
+				rowRepository.findWithVersionIncrementById(rowPatchTemplate.getId()) :
+				rowRepository.findById(rowPatchTemplate.getId());
+	}
+
+	private void updateTasksInRow(RowPatchTemplate rowPatchTemplate) {
+		for (TaskPatchTemplate tastPatchTemplate : rowPatchTemplate.getTaskList()) {
+			// a detached template (nulls are left as they are) - setting them on the managed task would change it before the
+			// TaskService could see how it looked, and it would find nothing to publish
+			Task taskUpdateTemplate = new Task(tastPatchTemplate.getId(), null, null, tastPatchTemplate.getSize(), tastPatchTemplate.getPosition());
+			taskService.patchTask(taskUpdateTemplate);
 		}
 	}
 }
@@ -33,6 +33,12 @@ public class RowServiceValidator {
 		}
 	}
 
+	protected void validateRowVersion(Row rowBeingUpdated, Long expectedVersion) {
+		if (expectedVersion != null && !expectedVersion.equals(rowBeingUpdated.getVersion())) {
+			throw new RowVersionMismatchException("Row " + rowBeingUpdated.getId() + " is at version " + rowBeingUpdated.getVersion() + ", not the expected version " + expectedVersion + ".  No changes were made.");
+		}
+	}
+
 	protected void validateRowDelete(Long rowId, Optional<Row> maybeRow) {
 		if(maybeRow.isEmpty()) {
 			throw new RowNotFoundException("No row exists to be deleted.  No changes were made.");
@@ -62,6 +68,12 @@ public class RowServiceValidator {
 		}
 	}
 
+	public static class RowVersionMismatchException extends RuntimeException {
+		public RowVersionMismatchException(String message) {
+			super(message);
+		}
+	}
+
 	public class MismatchedIdsException extends RuntimeException {
 		public MismatchedIdsException(String message) {
 			super(message);
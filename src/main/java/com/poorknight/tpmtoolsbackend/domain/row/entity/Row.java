@@ -29,14 +29,20 @@ public class Row {
 	}
 
 	public Row(Long id, Long projectPlanId, String title, List<Task> taskList) {
+		this(id, projectPlanId, title, taskList, null);
+	}
+
+	public Row(Long id, Long projectPlanId, String title, List<Task> taskList, Long version) {
 		this.id = id;
 		this.projectPlanId = projectPlanId;
 		this.title = title;
 		this.taskList = taskList == null ? ImmutableList.<Task>builder().build() : ImmutableList.copyOf(taskList);
+		this.version = version;
 	}
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "p1_row_id_seq")
+	@SequenceGenerator(name = "p1_row_id_seq", sequenceName = "p1_row_id_seq", allocationSize = 50)
 	private Long id;
 
 	@Column(name = "p0_project_plan_fk", nullable = false)
@@ -48,4 +54,7 @@ public class Row {
 	@OneToMany(mappedBy = "rowId", fetch = FetchType.EAGER)
 	@OrderBy("id")
 	private List<Task> taskList;
+
+	@Version
+	private Long version;
 }
@@ -0,0 +1,38 @@
+package com.poorknight.tpmtoolsbackend.domain.tasks;
+
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+
+import java.util.List;
+import java.util.Optional;
+
+/*package private*/ interface TaskBulkOperations {
+
+	/**
+		Writes the rowId and position of every passed task with a single UPDATE statement, without going through the
+		persistence context.  The tasks all belong to the passed plan, and stay in it - so only that plan's partition of the
+		task table is touched.  A task is only updated (and its version moved on) if it is still at the version of the passed
+		task.  Returns the number of tasks that were updated.
+	 */
+	int updateRowIdsAndPositions(Long projectPlanId, List<Task> tasks);
+
+	/**
+		Deletes the task with a single DELETE ... RETURNING, but only if it belongs to the passed row (pass null to skip that
+		check).  Returns the deleted task along with the id of its project plan, or nothing if no task was deleted.
+	 */
+	Optional<DeletedTask> deleteTaskReturningIt(Long taskId, Long rowId);
+
+	/**
+		Until checkOverlapsNow is called, tasks are only checked against overlapping each other at the end of the
+		transaction - so a change made one task at a time can pass through states where tasks overlap.
+	 */
+	void deferOverlapChecks();
+
+	/**
+		Flushes the persistence context, and checks every change since deferOverlapChecks against overlapping tasks
+		straight away.
+	 */
+	void checkOverlapsNow();
+
+	record DeletedTask(Task task, Long projectPlanId) {
+	}
+}
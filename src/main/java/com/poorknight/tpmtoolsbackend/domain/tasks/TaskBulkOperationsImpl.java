@@ -0,0 +1,90 @@
+package com.poorknight.tpmtoolsbackend.domain.tasks;
+
+import com.google.common.collect.Lists;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+/*package private*/ class TaskBulkOperationsImpl implements TaskBulkOperations {
+
+	// postgres allows at most 32767 bind parameters per statement, and each task takes 4 (plus the plan id)
+	private static final int MAX_TASKS_PER_STATEMENT = 8_000;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public int updateRowIdsAndPositions(Long projectPlanId, List<Task> tasks) {
+		int updatedCount = 0;
+		for (List<Task> taskChunk : Lists.partition(tasks, MAX_TASKS_PER_STATEMENT)) {
+			updatedCount += updateRowIdsAndPositionsInOneStatement(projectPlanId, taskChunk);
+		}
+		return updatedCount;
+	}
+
+	@Override
+	public Optional<DeletedTask> deleteTaskReturningIt(Long taskId, Long rowId) {
+		String sql = "DELETE FROM task WHERE id = ?"
+				+ (rowId == null ? "" : " AND p1_row_fk = ?")
+				+ " RETURNING id, p1_row_fk, title, size, position, version, p0_project_plan_fk";
+
+		Query query = entityManager.createNativeQuery(sql);
+		query.setParameter(1, taskId);
+		if (rowId != null) {
+			query.setParameter(2, rowId);
+		}
+
+		List<?> deletedRecords = query.getResultList();
+		if (deletedRecords.isEmpty()) {
+			return Optional.empty();
+		}
+		Object[] deleted = (Object[]) deletedRecords.get(0);
+		Task task = new Task(toLong(deleted[0]), toLong(deleted[1]), (String) deleted[2], toInteger(deleted[3]), toInteger(deleted[4]), toLong(deleted[5]));
+		return Optional.of(new DeletedTask(task, toLong(deleted[6])));
+	}
+
+	// each partition of the task table has its own overlap constraint - they are the only deferrable constraints there are
+	@Override
+	public void deferOverlapChecks() {
+		entityManager.createNativeQuery("SET CONSTRAINTS ALL DEFERRED").executeUpdate();
+	}
+
+	// switching back to IMMEDIATE checks everything that was deferred, right then
+	@Override
+	public void checkOverlapsNow() {
+		entityManager.flush();
+		entityManager.createNativeQuery("SET CONSTRAINTS ALL IMMEDIATE").executeUpdate();
+	}
+
+	private static Long toLong(Object number) {
+		return number == null ? null : ((Number) number).longValue();
+	}
+
+	private static Integer toInteger(Object number) {
+		return number == null ? null : ((Number) number).intValue();
+	}
+
+	private int updateRowIdsAndPositionsInOneStatement(Long projectPlanId, List<Task> tasks) {
+		StringBuilder sql = new StringBuilder("UPDATE task SET p1_row_fk = changes.row_id, position = changes.position, version = task.version + 1 FROM (VALUES ");
+		for (int i = 0; i < tasks.size(); i++) {
+			sql.append(i == 0 ? "" : ", ").append("(CAST(? AS integer), CAST(? AS integer), CAST(? AS integer), CAST(? AS bigint))");
+		}
+		sql.append(") AS changes (id, row_id, position, version)")
+				.append(" WHERE task.p0_project_plan_fk = CAST(? AS integer) AND task.id = changes.id AND task.version = changes.version");
+
+		Query query = entityManager.createNativeQuery(sql.toString());
+		int parameterIndex = 1;
+		for (Task task : tasks) {
+			query.setParameter(parameterIndex++, task.getId());
+			query.setParameter(parameterIndex++, task.getRowId());
+			query.setParameter(parameterIndex++, task.getPosition());
+			query.setParameter(parameterIndex++, task.getVersion());
+		}
+		query.setParameter(parameterIndex, projectPlanId);
+		return query.executeUpdate();
+	}
+}
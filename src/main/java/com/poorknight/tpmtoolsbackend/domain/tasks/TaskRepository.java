@@ -5,9 +5,24 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
 import java.util.Collection;
+import java.util.List;
 
-public interface TaskRepository extends CrudRepository<Task, Long> {
+public interface TaskRepository extends CrudRepository<Task, Long>, TaskBulkOperations {
+
+	// from SimpleJpaRepository - writes pending changes now, so that constraint violations show up where they were caused
+	void flush();
 
 	@Query("SELECT t FROM Task t WHERE t.rowId = ?1")
 	Collection<Task> findAllTasksForRow(Long rowId);
+
+	@Query(nativeQuery = true, value = "SELECT CAST(p0_project_plan_fk AS bigint) FROM p1_row WHERE id = ?1")
+	Long findProjectPlanIdForRow(Long rowId);
+
+	// each record is a row id, and the id of the plan it belongs to
+	@Query(nativeQuery = true, value = "SELECT CAST(id AS bigint), CAST(p0_project_plan_fk AS bigint) FROM p1_row WHERE id IN (?1)")
+	List<Object[]> findProjectPlanIdsByRowId(Collection<Long> rowIds);
+
+	// returns plain copies that are not tracked by the persistence context, for changes that are written with bulk statements
+	@Query("SELECT new com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task(t.id, t.rowId, t.title, t.size, t.position, t.version) FROM Task t WHERE t.projectPlanId = ?1 AND t.id IN ?2")
+	List<Task> findUntrackedTasksWithIds(Long projectPlanId, Collection<Long> taskIds);
 }
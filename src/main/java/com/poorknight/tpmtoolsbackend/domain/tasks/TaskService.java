@@ -1,15 +1,27 @@
 package com.poorknight.tpmtoolsbackend.domain.tasks;
 
+import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator.RowUpdateConsistencyException;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange.Type;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import com.poorknight.tpmtoolsbackend.domain.tasks.TaskBulkOperations.DeletedTask;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+@Timed("tpm.domain.calls")
 @Service
 @Transactional(propagation = Propagation.REQUIRED)
 public class TaskService {
@@ -17,9 +29,45 @@ public class TaskService {
 	@Autowired
 	private TaskRepository repository;
 
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	// a task for a row that does not exist gets no plan, and is turned down by the database
 	public Task saveNewTask(Task task) {
 		throwExceptionIfInvalidTaskForSaving(task);
-		return repository.save(task);
+		task.setProjectPlanId(repository.findProjectPlanIdForRow(task.getRowId()));
+		Task savedTask = writeTranslatingOverlaps(() -> repository.save(task));
+		publishProjectPlanChanged(savedTask.getProjectPlanId(), List.of(ProjectPlanChange.forTask(Type.TASK_ADDED, savedTask)));
+		return savedTask;
+	}
+
+	/**
+		Saves all the tasks in batched inserts (see the hibernate.jdbc.batch_size setting), instead of a round trip per task.
+		The plans of all their rows are looked up with one query.
+	 */
+	public List<Task> saveNewTasks(List<Task> tasks) {
+		tasks.forEach(this::throwExceptionIfInvalidTaskForSaving);
+		Map<Long, Long> projectPlanIdsByRowId = findProjectPlanIdsByRowId(tasks.stream().map(Task::getRowId).collect(Collectors.toSet()));
+		tasks.forEach(task -> task.setProjectPlanId(projectPlanIdsByRowId.get(task.getRowId())));
+
+		List<Task> savedTasks = new ArrayList<>(tasks.size());
+		writeTranslatingOverlaps(() -> repository.saveAll(tasks)).forEach(savedTasks::add);
+
+		Map<Long, List<ProjectPlanChange>> changesByProjectPlanId = new LinkedHashMap<>();
+		for (Task savedTask : savedTasks) {
+			changesByProjectPlanId.computeIfAbsent(savedTask.getProjectPlanId(), projectPlanId -> new ArrayList<>())
+					.add(ProjectPlanChange.forTask(Type.TASK_ADDED, savedTask));
+		}
+		publishInProjectPlanOrder(changesByProjectPlanId);
+		return savedTasks;
+	}
+
+	private Map<Long, Long> findProjectPlanIdsByRowId(Set<Long> rowIds) {
+		Map<Long, Long> projectPlanIdsByRowId = new HashMap<>();
+		for (Object[] record : repository.findProjectPlanIdsByRowId(rowIds)) {
+			projectPlanIdsByRowId.put(((Number) record[0]).longValue(), ((Number) record[1]).longValue());
+		}
+		return projectPlanIdsByRowId;
 	}
 
 	private void throwExceptionIfInvalidTaskForSaving(Task task) {
@@ -41,11 +89,35 @@ public class TaskService {
 	}
 
 	public Task patchTask(Task taskUpdateTemplate) {
-		Task taskToUpdate = buildTaskToUpdateFromTemplateThrowingExceptionIfInvalid(taskUpdateTemplate);
-		return repository.save(taskToUpdate);
+		return patchTask(taskUpdateTemplate, null);
+	}
+
+	/**
+		Patches the task only if it is still at the expected version (pass null to skip that check).
+	 */
+	public Task patchTask(Task taskUpdateTemplate, Long expectedVersion) {
+		Task originalTask = findTaskToUpdateThrowingExceptionIfInvalid(taskUpdateTemplate);
+		if (expectedVersion != null && !expectedVersion.equals(originalTask.getVersion())) {
+			throw new TaskVersionMismatchException("Task " + originalTask.getId() + " is at version " + originalTask.getVersion() + ", not the expected version " + expectedVersion + ".  No changes were made.");
+		}
+		// the save below merges into the managed original, so keep a copy of how it looked
+		Task taskBeforeUpdate = new Task(originalTask.getId(), originalTask.getRowId(), originalTask.getTitle(), originalTask.getSize(), originalTask.getPosition());
+		taskBeforeUpdate.setProjectPlanId(originalTask.getProjectPlanId());
+
+		Task updatedTask = writeTranslatingOverlaps(() -> repository.save(mergeTaskAndTemplateForUpdate(originalTask, taskUpdateTemplate)));
+
+		if (taskBeforeUpdate.getProjectPlanId().equals(updatedTask.getProjectPlanId())) {
+			publishProjectPlanChanged(updatedTask.getProjectPlanId(), describeTaskChanges(taskBeforeUpdate, updatedTask));
+		} else {
+			// to each plan on its own, a task moved between plans is one that left it, or one that was added to it
+			publishInProjectPlanOrder(Map.of(
+					taskBeforeUpdate.getProjectPlanId(), List.of(ProjectPlanChange.forTask(Type.TASK_DELETED, taskBeforeUpdate)),
+					updatedTask.getProjectPlanId(), List.of(ProjectPlanChange.forTask(Type.TASK_ADDED, updatedTask))));
+		}
+		return updatedTask;
 	}
 
-	private Task buildTaskToUpdateFromTemplateThrowingExceptionIfInvalid(Task taskUpdateTemplate) {
+	private Task findTaskToUpdateThrowingExceptionIfInvalid(Task taskUpdateTemplate) {
 		if (taskUpdateTemplate.getId() == null) {
 			throw new RuntimeException("Must specify an ID to update a Task - that is how we know what Task to update! Try the saveNewTask method instead :)");
 		}
@@ -55,7 +127,21 @@ public class TaskService {
 			throw new TaskNotFoundException("Cannot update task with id " + taskUpdateTemplate.getId() + ". It does not exist.");
 		}
 
-		return mergeTaskAndTemplateForUpdate(task.get(), taskUpdateTemplate);
+		return task.get();
+	}
+
+	private List<ProjectPlanChange> describeTaskChanges(Task before, Task after) {
+		List<ProjectPlanChange> changes = new ArrayList<>();
+		if (!Objects.equals(before.getRowId(), after.getRowId()) || !Objects.equals(before.getPosition(), after.getPosition())) {
+			changes.add(ProjectPlanChange.forTask(Type.TASK_MOVED, after));
+		}
+		if (!Objects.equals(before.getSize(), after.getSize())) {
+			changes.add(ProjectPlanChange.forTask(Type.TASK_RESIZED, after));
+		}
+		if (!Objects.equals(before.getTitle(), after.getTitle())) {
+			changes.add(ProjectPlanChange.forTask(Type.TASK_RETITLED, after));
+		}
+		return changes;
 	}
 
 	private Task mergeTaskAndTemplateForUpdate(Task task, Task taskUpdateTemplate) {
@@ -63,7 +149,70 @@ public class TaskService {
 		String title = taskUpdateTemplate.getTitle() == null ? task.getTitle() : taskUpdateTemplate.getTitle();
 		Integer size = taskUpdateTemplate.getSize() == null ? task.getSize() : taskUpdateTemplate.getSize();
 		Integer position = taskUpdateTemplate.getPosition() == null ? task.getPosition() : taskUpdateTemplate.getPosition();
-		return new Task(task.getId(), rowId, title, size, position);
+		// the version is carried over so that the save is treated as an update of this version, and not as a new task
+		Task mergedTask = new Task(task.getId(), rowId, title, size, position, task.getVersion());
+		// a task moved to another row may be moving to another plan (and so to another partition of the task table)
+		mergedTask.setProjectPlanId(rowId.equals(task.getRowId()) ? task.getProjectPlanId() : repository.findProjectPlanIdForRow(rowId));
+		return mergedTask;
+	}
+
+	/**
+		Applies the rowId and position changes of all the templates at once - the current tasks are read with one query, and
+		the changes are written with one statement, both against only the plan's partition of the task table.  The tasks
+		must all belong to the plan, and may only be moved to its rows.  Size and title are not changed by this method.
+	 */
+	public List<Task> patchTaskRowIdsAndPositions(Long projectPlanId, List<TaskPatchTemplate> taskPatchTemplates) {
+		Map<Long, TaskPatchTemplate> templatesByTaskId = mapTemplatesByTaskIdThrowingExceptionIfAnyIdIsMissing(taskPatchTemplates);
+		if (templatesByTaskId.isEmpty()) {
+			return List.of();
+		}
+		Map<Long, Task> originalTasks = findOriginalTasksThrowingExceptionIfAnyDoNotExist(projectPlanId, templatesByTaskId.keySet());
+
+		List<Task> updatedTasks = new ArrayList<>(templatesByTaskId.size());
+		List<ProjectPlanChange> changes = new ArrayList<>();
+		for (TaskPatchTemplate taskPatchTemplate : templatesByTaskId.values()) {
+			Task original = originalTasks.get(taskPatchTemplate.getId());
+			Long rowId = taskPatchTemplate.getRowId() == null ? original.getRowId() : taskPatchTemplate.getRowId();
+			Integer position = taskPatchTemplate.getPosition() == null ? original.getPosition() : taskPatchTemplate.getPosition();
+			Task updatedTask = new Task(original.getId(), rowId, original.getTitle(), original.getSize(), position, original.getVersion());
+			updatedTask.setProjectPlanId(projectPlanId);
+			updatedTasks.add(updatedTask);
+			changes.addAll(describeTaskChanges(original, updatedTask));
+		}
+
+		if (writeTranslatingOverlaps(() -> repository.updateRowIdsAndPositions(projectPlanId, updatedTasks)) != updatedTasks.size()) {
+			// at least one of the tasks was changed by someone else since it was read
+			throw new ObjectOptimisticLockingFailureException(Task.class, templatesByTaskId.keySet());
+		}
+		updatedTasks.forEach(updatedTask -> updatedTask.setVersion(updatedTask.getVersion() + 1));
+		eventPublisher.publishEvent(new ProjectPlanChangedEvent(projectPlanId, changes));
+		return updatedTasks;
+	}
+
+	// when a task shows up more than once, the last template wins - the same as in the ProjectConsistencyValidator
+	private Map<Long, TaskPatchTemplate> mapTemplatesByTaskIdThrowingExceptionIfAnyIdIsMissing(List<TaskPatchTemplate> taskPatchTemplates) {
+		Map<Long, TaskPatchTemplate> templatesByTaskId = new LinkedHashMap<>();
+		for (TaskPatchTemplate taskPatchTemplate : taskPatchTemplates) {
+			if (taskPatchTemplate.getId() == null) {
+				throw new RuntimeException("Must specify an ID for every Task to update - that is how we know what Task to update!");
+			}
+			templatesByTaskId.put(taskPatchTemplate.getId(), taskPatchTemplate);
+		}
+		return templatesByTaskId;
+	}
+
+	// a task of another plan is not found
+	private Map<Long, Task> findOriginalTasksThrowingExceptionIfAnyDoNotExist(Long projectPlanId, Set<Long> taskIds) {
+		Map<Long, Task> originalTasks = new HashMap<>();
+		for (Task task : repository.findUntrackedTasksWithIds(projectPlanId, taskIds)) {
+			originalTasks.put(task.getId(), task);
+		}
+		for (Long taskId : taskIds) {
+			if (!originalTasks.containsKey(taskId)) {
+				throw new TaskNotFoundException("Cannot update task with id " + taskId + ". It does not exist.");
+			}
+		}
+		return originalTasks;
 	}
 
 	public List<Task> getAllTasksForRow(Long rowId) {
@@ -77,12 +226,25 @@ public class TaskService {
 	}
 
 	public Task deleteTask(Long taskId) {
-		Optional<Task> task = repository.findById(taskId);
-		if (task.isEmpty()) {
-			throw new TaskNotFoundException("Cannot delete task with id " + taskId + ". It does not exist.");
+		return deleteTaskFromRow(taskId, null);
+	}
+
+	/**
+		Deletes the task only if it belongs to the passed row (pass null to skip that check), in a single round trip.  The
+		task is only looked up when nothing was deleted, to find out why.
+	 */
+	public Task deleteTaskFromRow(Long taskId, Long rowId) {
+		Optional<DeletedTask> deletedTask = repository.deleteTaskReturningIt(taskId, rowId);
+		if (deletedTask.isEmpty()) {
+			if (!repository.existsById(taskId)) {
+				throw new TaskNotFoundException("Cannot delete task with id " + taskId + ". It does not exist.");
+			}
+			throw new TaskNotInRowException("Task " + taskId + " does not belong to row " + rowId + ".  No changes were made.");
 		}
-		repository.deleteById(taskId);
-		return task.get();
+
+		Task task = deletedTask.get().task();
+		eventPublisher.publishEvent(new ProjectPlanChangedEvent(deletedTask.get().projectPlanId(), List.of(ProjectPlanChange.forTask(Type.TASK_DELETED, task))));
+		return task;
 	}
 
 	public Task findTaskWithId(Long taskId) {
@@ -93,10 +255,71 @@ public class TaskService {
 		return task.get();
 	}
 
+	/**
+		Until checkDeferredOverlaps is called, tasks may overlap - for changes made one task at a time, that only have to
+		leave no overlaps once they are all made.
+	 */
+	public void deferOverlapChecks() {
+		repository.deferOverlapChecks();
+	}
+
+	public void checkDeferredOverlaps() {
+		try {
+			repository.checkOverlapsNow();
+		} catch (DataIntegrityViolationException e) {
+			throw translateOverlapViolation(e);
+		}
+	}
+
+	// flushed straight away, so that tasks overlapping each other are reported here - and not as a failed commit
+	private <T> T writeTranslatingOverlaps(Supplier<T> write) {
+		try {
+			T written = write.get();
+			repository.flush();
+			return written;
+		} catch (DataIntegrityViolationException e) {
+			throw translateOverlapViolation(e);
+		}
+	}
+
+	private static RuntimeException translateOverlapViolation(DataIntegrityViolationException e) {
+		if (ProjectConsistencyValidator.isOverlappingTasksViolation(e)) {
+			return new RowUpdateConsistencyException(ProjectConsistencyValidator.OVERLAPPING_TASKS_MESSAGE);
+		}
+		return e;
+	}
+
+	private void publishProjectPlanChanged(Long projectPlanId, List<ProjectPlanChange> changes) {
+		eventPublisher.publishEvent(new ProjectPlanChangedEvent(projectPlanId, changes));
+	}
+
+	/*
+		The change log locks each plan's record as it handles the plan's event, until the transaction ends.  Two writes that
+		change the same plans (two tasks moved past each other between two plans, say) could each be holding the lock the
+		other one is waiting for, unless every write takes them in the same order - lowest plan id first.
+	 */
+	private void publishInProjectPlanOrder(Map<Long, List<ProjectPlanChange>> changesByProjectPlanId) {
+		new TreeMap<>(changesByProjectPlanId).forEach(this::publishProjectPlanChanged);
+	}
+
 	public static class TaskNotFoundException extends RuntimeException {
 
 		public TaskNotFoundException(String message) {
 			super(message);
 		}
 	}
+
+	public static class TaskNotInRowException extends RuntimeException {
+
+		public TaskNotInRowException(String message) {
+			super(message);
+		}
+	}
+
+	public static class TaskVersionMismatchException extends RuntimeException {
+
+		public TaskVersionMismatchException(String message) {
+			super(message);
+		}
+	}
 }
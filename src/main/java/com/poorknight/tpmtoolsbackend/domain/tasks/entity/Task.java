@@ -18,20 +18,39 @@ public class Task {
 	}
 
 	public Task(Long id, Long rowId, String title, Integer size, Integer position) {
+		this(id, rowId, title, size, position, null);
+	}
+
+	public Task(Long id, Long rowId, String title, Integer size, Integer position, Long version) {
 		this.id = id;
 		this.rowId = rowId;
 		this.title = title;
 		this.size = size;
 		this.position = position;
+		this.version = version;
 	}
 
+	/*
+		The task table is partitioned by plan, so its primary key is (id, p0_project_plan_fk) - ids stay unique only because
+		every one of them comes from task_id_seq.  Anything by id alone (findById, and the update and delete statements
+		Hibernate writes) checks the primary key index of all 8 partitions; reads of a plan's tasks go by plan instead.
+	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "task_id_seq")
+	@SequenceGenerator(name = "task_id_seq", sequenceName = "task_id_seq", allocationSize = 50)
 	private Long id;
 
 	@Column(name = "p1_row_fk", nullable = false)
 	private Long rowId;
 
+	/*
+		The plan of the task's row, kept on the task so that a plan's tasks can be read from the one partition of the task
+		table that holds them.  It follows from the row, so the TaskService sets it, and it is left out of equals.
+	 */
+	@Column(name = "p0_project_plan_fk", nullable = false)
+	@EqualsAndHashCode.Exclude
+	private Long projectPlanId;
+
 	@Column(nullable = false)
 	private String title;
 
@@ -40,4 +59,7 @@ public class Task {
 
 	@Column(nullable = false)
 	private Integer position;
+
+	@Version
+	private Long version;
 }
@@ -0,0 +1,5 @@
+-- the plan view pages through a plan's rows in id order, after the last row id of the previous page.  This index covers
+-- those keyset reads, as well as every lookup the project plan fk index was used for
+CREATE INDEX p1_row_p0_project_plan_fk_id_idx ON p1_row (p0_project_plan_fk, id);
+
+DROP INDEX p1_row_p0_project_plan_fk_idx;
@@ -0,0 +1,22 @@
+-- every change to a plan moves its revision on by one, and what changed is kept in the change log under that revision -
+-- clients that missed a few changes can then catch up on just those, instead of fetching the whole plan again
+ALTER TABLE p0_project_plan
+    ADD COLUMN revision bigint NOT NULL DEFAULT 0;
+
+CREATE TABLE p0_project_plan_change (
+    p0_project_plan_fk int NOT NULL REFERENCES p0_project_plan (id) ON DELETE CASCADE,
+    revision bigint NOT NULL,
+    change_index int NOT NULL,
+    type varchar(32) NOT NULL,
+    row_id bigint NULL,
+    task_id bigint NULL,
+    title varchar(255) NULL,
+    size int NULL,
+    position int NULL,
+    recorded_at timestamptz NOT NULL DEFAULT now(),
+
+    PRIMARY KEY (p0_project_plan_fk, revision, change_index)
+);
+
+-- old changes are pruned by age
+CREATE INDEX p0_project_plan_change_recorded_at_idx ON p0_project_plan_change (recorded_at);
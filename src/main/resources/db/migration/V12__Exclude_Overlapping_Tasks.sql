@@ -0,0 +1,13 @@
+-- btree_gist lets the row id (a plain int) take part in a GiST exclusion constraint next to the range
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
+-- no two tasks in a row may occupy the same space: [position, position + size), where tasks with no size take up no space
+-- (the same rule as the ProjectConsistencyValidator).  This fails if overlapping tasks already exist - they have to be
+-- moved apart by hand first.
+--
+-- Checked at the end of every statement, so one statement can swap tasks around.  Changes made in several statements
+-- (like a row patch, one task at a time) defer the check to the end of the change with SET CONSTRAINTS.
+ALTER TABLE task
+    ADD CONSTRAINT task_no_overlapping_tasks
+    EXCLUDE USING gist (p1_row_fk WITH =, int4range(position, position + greatest(size, 0)) WITH &&)
+    DEFERRABLE INITIALLY IMMEDIATE;
@@ -0,0 +1,5 @@
+-- every task carries the plan of its row, so that a plan's tasks can be read without going through its rows (and, once
+-- the task table is partitioned by plan, from the one partition that holds them).  Nullable for now - adding it does not
+-- rewrite the table, and V14 fills it in for the tasks that already exist, a chunk at a time.
+ALTER TABLE task
+    ADD COLUMN p0_project_plan_fk int NULL;
@@ -0,0 +1,24 @@
+-- fills in the plan of every existing task, 10000 tasks (in id order) per transaction - so no lock is held for longer
+-- than one chunk takes, and a failure part of the way through keeps the chunks that were done.  Run outside of a
+-- transaction (see the .conf file next to this script), which is what lets the block commit as it goes.
+DO $$
+DECLARE
+    chunk_start int := 0;
+    chunk_end int;
+BEGIN
+    LOOP
+        SELECT max(id) INTO chunk_end FROM (SELECT id FROM task WHERE id > chunk_start ORDER BY id LIMIT 10000) AS chunk;
+        EXIT WHEN chunk_end IS NULL;
+
+        UPDATE task
+        SET p0_project_plan_fk = p1_row.p0_project_plan_fk
+        FROM p1_row
+        WHERE p1_row.id = task.p1_row_fk
+          AND task.id > chunk_start AND task.id <= chunk_end
+          AND task.p0_project_plan_fk IS NULL;
+        COMMIT;
+
+        chunk_start := chunk_end;
+    END LOOP;
+END
+$$;
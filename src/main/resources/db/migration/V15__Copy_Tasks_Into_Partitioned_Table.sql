@@ -0,0 +1,128 @@
+-- builds the task table, hash partitioned by plan, next to the one in use and copies the tasks over while the service
+-- keeps running: nothing here holds a lock on task for longer than one chunk takes.  V16 then swaps it in.  Run outside
+-- of a transaction (see the .conf file next to this script), which is what lets the indexes be built concurrently and the
+-- copy commit as it goes.
+
+-- lets a task's (row, plan) pair reference its row, so the plan kept on the task can never disagree with the row's.
+-- It also covers every lookup p1_row_p0_project_plan_fk_id_idx was used for
+CREATE UNIQUE INDEX CONCURRENTLY p1_row_p0_project_plan_fk_id_key ON p1_row (p0_project_plan_fk, id);
+ALTER TABLE p1_row
+    ADD CONSTRAINT p1_row_p0_project_plan_fk_id_key UNIQUE USING INDEX p1_row_p0_project_plan_fk_id_key;
+DROP INDEX CONCURRENTLY p1_row_p0_project_plan_fk_id_idx;
+
+-- all of a plan's tasks (and so all of a row's) are in one partition.  The primary key has to include the partition key,
+-- so postgres no longer keeps task ids unique on its own - they stay unique because every one of them comes from
+-- task_id_seq (the importer takes its ids from it too).  Never insert a task with an id of your own
+CREATE TABLE task_partitioned (
+    id int NOT NULL DEFAULT nextval('task_id_seq'),
+    p0_project_plan_fk int NOT NULL,
+    p1_row_fk int NOT NULL,
+    title varchar(255) NULL,
+    size int NOT NULL,
+    position int NOT NULL,
+    version bigint NOT NULL DEFAULT 0,
+
+    PRIMARY KEY (id, p0_project_plan_fk),
+    FOREIGN KEY (p0_project_plan_fk, p1_row_fk) REFERENCES p1_row (p0_project_plan_fk, id)
+) PARTITION BY HASH (p0_project_plan_fk);
+
+CREATE TABLE task_p0 PARTITION OF task_partitioned FOR VALUES WITH (MODULUS 8, REMAINDER 0);
+CREATE TABLE task_p1 PARTITION OF task_partitioned FOR VALUES WITH (MODULUS 8, REMAINDER 1);
+CREATE TABLE task_p2 PARTITION OF task_partitioned FOR VALUES WITH (MODULUS 8, REMAINDER 2);
+CREATE TABLE task_p3 PARTITION OF task_partitioned FOR VALUES WITH (MODULUS 8, REMAINDER 3);
+CREATE TABLE task_p4 PARTITION OF task_partitioned FOR VALUES WITH (MODULUS 8, REMAINDER 4);
+CREATE TABLE task_p5 PARTITION OF task_partitioned FOR VALUES WITH (MODULUS 8, REMAINDER 5);
+CREATE TABLE task_p6 PARTITION OF task_partitioned FOR VALUES WITH (MODULUS 8, REMAINDER 6);
+CREATE TABLE task_p7 PARTITION OF task_partitioned FOR VALUES WITH (MODULUS 8, REMAINDER 7);
+
+-- the indexes and constraints go on while the table is empty, so none of them has to be built over the copied tasks
+
+-- a plan's tasks, in row and position order, with one index scan of its partition
+CREATE INDEX task_p0_project_plan_fk_p1_row_fk_position_idx ON task_partitioned (p0_project_plan_fk, p1_row_fk, position) INCLUDE (size, title);
+-- reads of a single row, by row id alone
+CREATE INDEX task_p1_row_fk_position_idx ON task_partitioned (p1_row_fk, position) INCLUDE (size, title);
+
+-- postgres 16 has no exclusion constraints on partitioned tables, so each partition gets its own (the same one V12 put
+-- on the whole table).  A row's tasks are all in one partition, so together they still keep every row free of overlaps
+ALTER TABLE task_p0 ADD CONSTRAINT task_p0_no_overlapping_tasks
+    EXCLUDE USING gist (p1_row_fk WITH =, int4range(position, position + greatest(size, 0)) WITH &&) DEFERRABLE INITIALLY IMMEDIATE;
+ALTER TABLE task_p1 ADD CONSTRAINT task_p1_no_overlapping_tasks
+    EXCLUDE USING gist (p1_row_fk WITH =, int4range(position, position + greatest(size, 0)) WITH &&) DEFERRABLE INITIALLY IMMEDIATE;
+ALTER TABLE task_p2 ADD CONSTRAINT task_p2_no_overlapping_tasks
+    EXCLUDE USING gist (p1_row_fk WITH =, int4range(position, position + greatest(size, 0)) WITH &&) DEFERRABLE INITIALLY IMMEDIATE;
+ALTER TABLE task_p3 ADD CONSTRAINT task_p3_no_overlapping_tasks
+    EXCLUDE USING gist (p1_row_fk WITH =, int4range(position, position + greatest(size, 0)) WITH &&) DEFERRABLE INITIALLY IMMEDIATE;
+ALTER TABLE task_p4 ADD CONSTRAINT task_p4_no_overlapping_tasks
+    EXCLUDE USING gist (p1_row_fk WITH =, int4range(position, position + greatest(size, 0)) WITH &&) DEFERRABLE INITIALLY IMMEDIATE;
+ALTER TABLE task_p5 ADD CONSTRAINT task_p5_no_overlapping_tasks
+    EXCLUDE USING gist (p1_row_fk WITH =, int4range(position, position + greatest(size, 0)) WITH &&) DEFERRABLE INITIALLY IMMEDIATE;
+ALTER TABLE task_p6 ADD CONSTRAINT task_p6_no_overlapping_tasks
+    EXCLUDE USING gist (p1_row_fk WITH =, int4range(position, position + greatest(size, 0)) WITH &&) DEFERRABLE INITIALLY IMMEDIATE;
+ALTER TABLE task_p7 ADD CONSTRAINT task_p7_no_overlapping_tasks
+    EXCLUDE USING gist (p1_row_fk WITH =, int4range(position, position + greatest(size, 0)) WITH &&) DEFERRABLE INITIALLY IMMEDIATE;
+
+-- from here on, every change to task is made to task_partitioned too, in the same transaction.  Each statement's changes
+-- are copied with one statement (from its transition tables), so the overlap constraints are checked against the same
+-- end-of-statement state as V12's was - and deferring them defers both.  The plan comes from the row, because a replica
+-- that does not set it yet may still be writing tasks without one
+CREATE FUNCTION task_partitioned_mirror() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        DELETE FROM task_partitioned
+        USING old_tasks
+        WHERE task_partitioned.id = old_tasks.id;
+    END IF;
+
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        INSERT INTO task_partitioned (id, p0_project_plan_fk, p1_row_fk, title, size, position, version)
+        SELECT new_tasks.id, p1_row.p0_project_plan_fk, new_tasks.p1_row_fk, new_tasks.title, new_tasks.size, new_tasks.position, new_tasks.version
+        FROM new_tasks
+        JOIN p1_row ON p1_row.id = new_tasks.p1_row_fk
+        -- a copy of the task by the chunks below that was not committed yet when the delete ran
+        ON CONFLICT (id, p0_project_plan_fk) DO UPDATE
+        SET p1_row_fk = excluded.p1_row_fk, title = excluded.title, size = excluded.size, position = excluded.position, version = excluded.version;
+    END IF;
+
+    RETURN NULL;
+END
+$$;
+
+-- a trigger with transition tables can only be for one kind of change
+CREATE TRIGGER task_partitioned_mirror_inserts AFTER INSERT ON task
+    REFERENCING NEW TABLE AS new_tasks
+    FOR EACH STATEMENT EXECUTE FUNCTION task_partitioned_mirror();
+CREATE TRIGGER task_partitioned_mirror_updates AFTER UPDATE ON task
+    REFERENCING OLD TABLE AS old_tasks NEW TABLE AS new_tasks
+    FOR EACH STATEMENT EXECUTE FUNCTION task_partitioned_mirror();
+CREATE TRIGGER task_partitioned_mirror_deletes AFTER DELETE ON task
+    REFERENCING OLD TABLE AS old_tasks
+    FOR EACH STATEMENT EXECUTE FUNCTION task_partitioned_mirror();
+
+-- copies the tasks that were there before the triggers, 10000 tasks (in id order) per transaction.  FOR SHARE holds off
+-- changes to a chunk's tasks until it is committed, and takes the latest version of a task that was changed while the
+-- chunk waited - so a copy can never land after (and overwrite) the trigger's copy of a newer version.  A task the
+-- trigger already copied is left alone
+DO $$
+DECLARE
+    chunk_start int := 0;
+    chunk_end int;
+BEGIN
+    LOOP
+        SELECT max(id) INTO chunk_end FROM (SELECT id FROM task WHERE id > chunk_start ORDER BY id LIMIT 10000) AS chunk;
+        EXIT WHEN chunk_end IS NULL;
+
+        INSERT INTO task_partitioned (id, p0_project_plan_fk, p1_row_fk, title, size, position, version)
+        SELECT task.id, p1_row.p0_project_plan_fk, task.p1_row_fk, task.title, task.size, task.position, task.version
+        FROM task
+        JOIN p1_row ON p1_row.id = task.p1_row_fk
+        WHERE task.id > chunk_start AND task.id <= chunk_end
+        FOR SHARE OF task
+        ON CONFLICT (id, p0_project_plan_fk) DO NOTHING;
+        COMMIT;
+
+        chunk_start := chunk_end;
+    END LOOP;
+END
+$$;
+
+ANALYZE task_partitioned;
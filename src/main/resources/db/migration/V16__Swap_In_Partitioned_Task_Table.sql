@@ -0,0 +1,13 @@
+-- swaps the partitioned copy V15 made in for the task table.  The triggers kept the copy up to date, so there is nothing
+-- left to copy: the only time task is locked is for the drop and renames.  Rather than queue every request behind a long
+-- running transaction that still has task open, the swap gives up (and is rolled back, to be run again when the migrations next run)
+SET LOCAL lock_timeout = '5s';
+LOCK TABLE task IN ACCESS EXCLUSIVE MODE;
+
+-- the id sequence belonged to the old table, and would be dropped with it
+ALTER SEQUENCE task_id_seq OWNED BY task_partitioned.id;
+DROP TABLE task;
+DROP FUNCTION task_partitioned_mirror();
+
+ALTER TABLE task_partitioned RENAME TO task;
+ALTER INDEX task_partitioned_pkey RENAME TO task_pkey;
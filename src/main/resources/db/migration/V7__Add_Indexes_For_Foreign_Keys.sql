@@ -0,0 +1,4 @@
+-- tasks are always read by row, in position order, and the plan / row reads only need these columns
+CREATE INDEX task_p1_row_fk_position_idx ON task (p1_row_fk, position) INCLUDE (size, title);
+
+CREATE INDEX p1_row_p0_project_plan_fk_idx ON p1_row (p0_project_plan_fk);
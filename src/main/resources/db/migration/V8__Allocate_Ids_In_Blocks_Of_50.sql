@@ -0,0 +1,6 @@
+-- Hibernate now takes ids 50 at a time (pooled-lo: each nextval is the first id of a block of 50), so that inserts can be
+-- batched.  Inserts that still use the column defaults just take one id from a block - the rest of it is never handed out.
+ALTER SEQUENCE task_id_seq INCREMENT BY 50;
+ALTER SEQUENCE p1_row_id_seq INCREMENT BY 50;
+ALTER SEQUENCE p0_project_plan_id_seq INCREMENT BY 50;
+ALTER SEQUENCE hello_id_seq INCREMENT BY 50;
@@ -0,0 +1,8 @@
+ALTER TABLE p0_project_plan
+    ADD COLUMN version bigint NOT NULL DEFAULT 0;
+
+ALTER TABLE p1_row
+    ADD COLUMN version bigint NOT NULL DEFAULT 0;
+
+ALTER TABLE task
+    ADD COLUMN version bigint NOT NULL DEFAULT 0;
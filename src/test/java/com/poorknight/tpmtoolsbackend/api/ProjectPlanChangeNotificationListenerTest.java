@@ -0,0 +1,42 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProjectPlanChangeNotificationListenerTest {
+
+	private final ProjectPlanRevisions projectPlanRevisions = new ProjectPlanRevisions();
+	private final ProjectPlanResponseCache projectPlanResponseCache = new ProjectPlanResponseCache(10, Duration.ofMinutes(1), new SimpleMeterRegistry(), projectPlanRevisions);
+	private final ProjectPlanChangeNotificationListener listener = new ProjectPlanChangeNotificationListener(
+			new DataSourceProperties(), projectPlanRevisions, projectPlanResponseCache, Duration.ofSeconds(1));
+
+	@Test
+	void aChangeFromAnotherReplicaMovesThePlanRevisionOn() {
+		String etag = projectPlanRevisions.currentETag(55L);
+
+		listener.handleNotification(ProjectPlanChangeNotifier.buildPayload("someOtherReplica", 55L));
+
+		assertThat(projectPlanRevisions.currentETag(55L)).isNotEqualTo(etag);
+		assertThat(projectPlanRevisions.currentRevision(56L)).isEqualTo(0);
+	}
+
+	@Test
+	void aChangeFromThisReplicaIsIgnored() {
+		listener.handleNotification(ProjectPlanChangeNotifier.buildPayload(projectPlanRevisions.getInstanceId(), 55L));
+
+		assertThat(projectPlanRevisions.currentRevision(55L)).isEqualTo(0);
+	}
+
+	@Test
+	void malformedNotificationsAreIgnored() {
+		listener.handleNotification("no separator");
+		listener.handleNotification("someOtherReplica:not-a-number");
+
+		assertThat(projectPlanRevisions.currentRevision(55L)).isEqualTo(0);
+	}
+}
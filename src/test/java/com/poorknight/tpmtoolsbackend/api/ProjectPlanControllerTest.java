@@ -4,25 +4,50 @@ import com.poorknight.tpmtoolsbackend.api.entity.*;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlan;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanUpdate;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.function.Executable;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
-
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator.*;
 import static com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,121 +59,450 @@ class ProjectPlanControllerTest {
     @Mock
     ProjectPlanService projectPlanService;
 
+    @Spy
+    ProjectPlanRevisions projectPlanRevisions = new ProjectPlanRevisions();
+
+    @Mock
+    ProjectPlanEventStream projectPlanEventStream;
+
+    @Mock
+    ProjectPlanReadModel projectPlanReadModel;
+
+    @Mock
+    ProjectPlanExporter projectPlanExporter;
+
+    @Mock
+    ProjectPlanImporter projectPlanImporter;
+
+    @Spy
+    ProjectPlanResponseCache projectPlanResponseCache = new ProjectPlanResponseCache(10, Duration.ofMinutes(1), new SimpleMeterRegistry(), projectPlanRevisions);
+
+    SimpleMeterRegistry compressionMeterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    ResponseCompression responseCompression = new ResponseCompression(new ObjectMapper(), 200, compressionMeterRegistry);
+
+    @Test
+    void canGetAProjectPlanFromTheReadModel() {
+        APITask apiTask1 = new APITask(11L, 1L, "task 1 title", 1, 2, 0L);
+        APITask apiTask2 = new APITask(12L, 1L, "task 2 title", 2, 3, 0L);
+        APITask apiTask3 = new APITask(13L, 2L, "task 3 title", 3, 1, 0L);
+        APIRow apiRow1 = new APIRow(1L, 55L, "row1 title", List.of(apiTask1, apiTask2), 0L);
+        APIRow apiRow2 = new APIRow(2L, 55L, "row2 title", List.of(apiTask3), 0L);
+        APIProjectPlan projectPlan = new APIProjectPlan(55L, "a title", List.of(apiRow1, apiRow2), 0L);
+
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(projectPlan));
+
+        APIProjectPlan response = projectPlanController.getProjectPlan(55L, aWebRequest());
+
+        assertThat(response).isEqualTo(projectPlan);
+        verifyNoInteractions(projectPlanService);
+    }
+
+    @Test
+    void getProjectPlanServesRepeatedReadsFromTheCacheUntilThePlanIsInvalidated() {
+        APIProjectPlan projectPlan = new APIProjectPlan(55L, "a title", List.of(new APIRow(1L, 55L, "row1 title", List.of(), 0L)), 0L);
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(projectPlan));
+
+        APIProjectPlan firstResponse = projectPlanController.getProjectPlan(55L, aWebRequest());
+        APIProjectPlan secondResponse = projectPlanController.getProjectPlan(55L, aWebRequest());
+
+        assertThat(secondResponse).isSameAs(firstResponse);
+        verify(projectPlanReadModel, times(1)).findProjectPlan(55L);
+
+        projectPlanRevisions.markChanged(55L);
+        APIProjectPlan thirdResponse = projectPlanController.getProjectPlan(55L, aWebRequest());
+
+        assertThat(thirdResponse).isEqualTo(firstResponse);
+        verify(projectPlanReadModel, times(2)).findProjectPlan(55L);
+    }
+
+    @Test
+    void getProjectPlanDoesNotCacheAPlanThatChangedWhileItWasBeingLoaded() {
+        APIProjectPlan projectPlan = new APIProjectPlan(55L, "a title", List.of(), 0L);
+        when(projectPlanReadModel.findProjectPlan(55L)).thenAnswer(invocation -> {
+            projectPlanRevisions.markChanged(55L);
+            return Optional.of(projectPlan);
+        });
+
+        projectPlanController.getProjectPlan(55L, aWebRequest());
+        projectPlanController.getProjectPlan(55L, aWebRequest());
+
+        verify(projectPlanReadModel, times(2)).findProjectPlan(55L);
+    }
+
+    @Test
+    void getProjectPlanSetsAnETagAndAnswers304WithoutLoadingWhenTheClientAlreadyHasTheCurrentRevision() {
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(new APIProjectPlan(55L, "a title", List.of(), 0L)));
+        projectPlanController.getProjectPlan(55L, new ServletWebRequest(new MockHttpServletRequest("GET", "/api/v1/project-plans/55"), firstResponse));
+        String etag = firstResponse.getHeader("ETag");
+        assertThat(etag).isNotBlank();
+
+        projectPlanResponseCache.invalidate(55L);
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/api/v1/project-plans/55");
+        conditionalRequest.addHeader("If-None-Match", etag);
+        MockHttpServletResponse conditionalResponse = new MockHttpServletResponse();
+
+        APIProjectPlan result = projectPlanController.getProjectPlan(55L, new ServletWebRequest(conditionalRequest, conditionalResponse));
+
+        assertThat(result).isNull();
+        assertThat(conditionalResponse.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        verify(projectPlanReadModel, times(1)).findProjectPlan(55L);
+    }
+
+    @Test
+    void getProjectPlanETagChangesOnceThePlanIsChanged() {
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/api/v1/project-plans/55");
+        conditionalRequest.addHeader("If-None-Match", projectPlanRevisions.currentETag(55L));
+        projectPlanRevisions.markChanged(55L);
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(new APIProjectPlan(55L, "a title", List.of(), 0L)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        APIProjectPlan result = projectPlanController.getProjectPlan(55L, new ServletWebRequest(conditionalRequest, response));
+
+        assertThat(result).isEqualTo(new APIProjectPlan(55L, "a title", List.of(), 0L));
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getHeader("ETag")).isEqualTo(projectPlanRevisions.currentETag(55L));
+    }
+
+    @Test
+    void getProjectPlanSendsLargePlansGzippedWhenTheClientAcceptsIt() throws Exception {
+        APIProjectPlan projectPlan = aLargeProjectPlan();
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(projectPlan));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        APIProjectPlan result = projectPlanController.getProjectPlan(55L, new ServletWebRequest(aRequestAccepting("gzip, deflate"), response));
+
+        assertThat(result).isNull();
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(response.getHeader("Vary")).isEqualTo("Accept-Encoding");
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
+        try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            ObjectMapper objectMapper = new ObjectMapper();
+            assertThat(objectMapper.readTree(body)).isEqualTo(objectMapper.valueToTree(projectPlan));
+        }
+    }
+
+    @Test
+    void getProjectPlanOnlyCompressesACachedPlanOnce() {
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(aLargeProjectPlan()));
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+
+        projectPlanController.getProjectPlan(55L, new ServletWebRequest(aRequestAccepting("gzip"), firstResponse));
+        projectPlanController.getProjectPlan(55L, new ServletWebRequest(aRequestAccepting("gzip"), secondResponse));
+
+        assertThat(secondResponse.getContentAsByteArray()).isEqualTo(firstResponse.getContentAsByteArray());
+        assertThat(compressionMeterRegistry.get("tpm.responses.compression.cpu").tag("coding", "gzip").timer().count()).isEqualTo(1);
+        assertThat(compressionMeterRegistry.get("tpm.responses.compressed.served").tag("coding", "gzip").summary().count()).isEqualTo(2);
+        verify(projectPlanReadModel, times(1)).findProjectPlan(55L);
+    }
+
     @Test
-    void canGetAProjectPlanFromTheServiceLayer() {
-        Task task1 = new Task(11L, 1L, "task 1 title", 1, 2);
-        Task task2 = new Task(12L, 1L, "task 2 title", 2, 3);
-        Task task3 = new Task(13L, 2L, "task 3 title", 3, 1);
-        Row row1 = new Row(1L, 55L, "row1 title", List.of(task1, task2));
-        Row row2 = new Row(2L, 55L, "row2 title", List.of(task3));
-        ProjectPlan projectPlan = new ProjectPlan(55L, "a title", List.of(row1, row2));
+    void getProjectPlanSendsSmallPlansUncompressed() {
+        APIProjectPlan projectPlan = new APIProjectPlan(55L, "a title", List.of(), 0L);
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(projectPlan));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        APIProjectPlan result = projectPlanController.getProjectPlan(55L, new ServletWebRequest(aRequestAccepting("gzip"), response));
+
+        assertThat(result).isEqualTo(projectPlan);
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getHeader("Vary")).isEqualTo("Accept-Encoding");
+    }
+
+    @Test
+    void getProjectPlanGivesASmallPlanSentToAGzipClientThePlainETag() {
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(new APIProjectPlan(55L, "a title", List.of(), 0L)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        projectPlanController.getProjectPlan(55L, new ServletWebRequest(aRequestAccepting("gzip"), response));
 
-        when(projectPlanService.getProjectPlan(55L)).thenReturn(projectPlan);
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getHeader("ETag")).isEqualTo(projectPlanRevisions.currentETag(55L));
 
-        APIProjectPlan response = projectPlanController.getProjectPlan(55L);
+        MockHttpServletRequest conditionalRequest = aRequestAccepting("gzip");
+        conditionalRequest.addHeader("If-None-Match", response.getHeader("ETag"));
+        MockHttpServletResponse conditionalResponse = new MockHttpServletResponse();
 
-        APITask apiTask1 = new APITask(11L, 1L, "task 1 title", 1, 2);
-        APITask apiTask2 = new APITask(12L, 1L, "task 2 title", 2, 3);
-        APITask apiTask3 = new APITask(13L, 2L, "task 3 title", 3, 1);
-        APIRow apiRow1 = new APIRow(1L, 55L, "row1 title", List.of(apiTask1, apiTask2));
-        APIRow apiRow2 = new APIRow(2L, 55L, "row2 title", List.of(apiTask3));
-        APIProjectPlan expectedResponse = new APIProjectPlan(55L, "a title", List.of(apiRow1, apiRow2));
+        APIProjectPlan result = projectPlanController.getProjectPlan(55L, new ServletWebRequest(conditionalRequest, conditionalResponse));
 
-        assertThat(response).isEqualTo(expectedResponse);
+        assertThat(result).isNull();
+        assertThat(conditionalResponse.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
     }
 
     @Test
-    void getProjectPlanThrows404IfServiceThrowsProjectPlanNotFoundException() {
-        when(projectPlanService.getProjectPlan(55L)).thenThrow(new ProjectPlanNotFoundException("hi"));
+    void getProjectPlanGivesEachContentCodingItsOwnETag() {
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(aLargeProjectPlan()));
+        MockHttpServletResponse gzipResponse = new MockHttpServletResponse();
+        MockHttpServletResponse deflateResponse = new MockHttpServletResponse();
+        MockHttpServletResponse identityResponse = new MockHttpServletResponse();
+
+        projectPlanController.getProjectPlan(55L, new ServletWebRequest(aRequestAccepting("gzip"), gzipResponse));
+        projectPlanController.getProjectPlan(55L, new ServletWebRequest(aRequestAccepting("deflate"), deflateResponse));
+        projectPlanController.getProjectPlan(55L, aWebRequestWithResponse(identityResponse));
+
+        assertThat(deflateResponse.getHeader("Content-Encoding")).isEqualTo("deflate");
+        assertThat(List.of(gzipResponse.getHeader("ETag"), deflateResponse.getHeader("ETag"), identityResponse.getHeader("ETag"))).doesNotHaveDuplicates();
+        assertThat(identityResponse.getHeader("ETag")).isEqualTo(projectPlanRevisions.currentETag(55L));
+    }
+
+    @Test
+    void getProjectPlanThrows404IfTheReadModelFindsNoProjectPlan() {
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.empty());
 
-        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> projectPlanController.getProjectPlan(55L));
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> projectPlanController.getProjectPlan(55L, aWebRequest()));
 
         assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
         assertThat(e.getMessage()).contains("Either the projectPlanId does not point to an existing project plan, or you do not have access to it.");
     }
 
     @Test
-    void patchTranslatesRequestIntoDomainObjectThenCallsServiceAndReturnsItsTranslatedResponse() {
+    void patchTranslatesRequestIntoDomainObjectThenCallsServiceAndMergesTheChangedRowsIntoTheWholePlan() {
 
         APIProjectPlanPatchTask task = new APIProjectPlanPatchTask(11L, 1L, 2);
         APIProjectPlanPatchRow rowPatch = new APIProjectPlanPatchRow(1L, List.of(task));
         List<APIProjectPlanPatchRow> rows = List.of(rowPatch);
         APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, rows);
 
-        Task task1 = new Task(11L, 1L, "task 1 title", 1, 2);
-        Row row1 = new Row(1L, 55L, "row1 title", List.of(task1));
-        Row row2 = new Row(2L, 55L, "row2 title", List.of());
-        ProjectPlan projectPlan = new ProjectPlan(55L, "a title", List.of(row1, row2));
-
-
         TaskPatchTemplate taskPatchTemplate = TaskPatchTemplate.builder().id(11L).rowId(1L).position(2).build();
         RowPatchTemplate rowPatchTemplate = new RowPatchTemplate(1L, null, List.of(taskPatchTemplate));
         ProjectPlanPatchTemplate patchTemplate = new ProjectPlanPatchTemplate(55L, null, List.of(rowPatchTemplate));
 
-        when(projectPlanService.updateProjectPlan(patchTemplate)).thenReturn(projectPlan);
+        APIRow apiRow1 = new APIRow(1L, 55L, "row1 title", List.of(new APITask(11L, 1L, "task 1 title", 1, 5, 0L)), 0L);
+        APIRow apiRow2 = new APIRow(2L, 55L, "row2 title", List.of(), 0L);
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(new APIProjectPlan(55L, "a title", List.of(apiRow1, apiRow2), 0L)));
+        projectPlanController.getProjectPlan(55L, aWebRequest());
 
-        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, patchRequest);
+        // the service only hands back the rows the patch touched
+        Row row1 = new Row(1L, 55L, "row1 title", List.of(new Task(11L, 1L, "task 1 title", 1, 2, 1L)), 0L);
+        when(projectPlanService.updateProjectPlan(patchTemplate, null)).thenReturn(new ProjectPlanUpdate(55L, "a title", 1L, List.of(row1)));
 
-        APITask apiTask = new APITask(11L, 1L, "task 1 title", 1, 2);
-        APIRow apiRow1 = new APIRow(1L, 55L, "row1 title", List.of(apiTask));
-        APIRow apiRow2 = new APIRow(2L, 55L, "row2 title", List.of());
-        APIProjectPlan expectedResult = new APIProjectPlan(55L, "a title", List.of(apiRow1, apiRow2));
-        assertThat(result).isEqualTo(expectedResult);
-    }
-    @Test
-    void patchReturnsTasksSortedByTheirPositionInResponse() {
+        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, patchRequest, null, new MockHttpServletResponse());
 
-        APIProjectPlanPatchTask task = new APIProjectPlanPatchTask(11L, 1L, 5);
-        APIProjectPlanPatchRow rowPatch = new APIProjectPlanPatchRow(1L, List.of(task));
-        List<APIProjectPlanPatchRow> rows = List.of(rowPatch);
-        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, rows);
+        APIRow movedApiRow1 = new APIRow(1L, 55L, "row1 title", List.of(new APITask(11L, 1L, "task 1 title", 1, 2, 1L)), 0L);
+        assertThat(result).isEqualTo(new APIProjectPlan(55L, "a title", List.of(movedApiRow1, apiRow2), 1L));
+        verify(projectPlanService).updateProjectPlan(patchTemplate, null);
+    }
 
-        Task task1 = new Task(11L, 1L, "task 1", 1, 1);
-        Task task2 = new Task(12L, 1L, "task 2", 1, 5);
-        Task task3 = new Task(13L, 1L, "task 3", 1, 8);
-        Row row1 = new Row(1L, 55L, "row1 title", List.of(task3, task2, task1));
-        ProjectPlan projectPlan = new ProjectPlan(55L, "a title", List.of(row1));
+    @Test
+    void patchDoesNotReadThePlanAgainAfterTheUpdate() {
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(new APIProjectPlan(55L, "a title", List.of(), 0L)));
+        when(projectPlanService.updateProjectPlan(any(), any())).thenReturn(new ProjectPlanUpdate(55L, "a new title", 1L, List.of()));
+        projectPlanController.getProjectPlan(55L, aWebRequest());
 
+        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, new APIProjectPlanPatch(55L, List.of()), null, new MockHttpServletResponse());
 
-        TaskPatchTemplate taskPatchTemplate = TaskPatchTemplate.builder().id(11L).rowId(1L).position(5).build();
-        RowPatchTemplate rowPatchTemplate = new RowPatchTemplate(1L, null, List.of(taskPatchTemplate));
-        ProjectPlanPatchTemplate patchTemplate = new ProjectPlanPatchTemplate(55L, null, List.of(rowPatchTemplate));
+        assertThat(result).isEqualTo(new APIProjectPlan(55L, "a new title", List.of(), 1L));
+        verify(projectPlanReadModel, times(1)).findProjectPlan(55L);
+    }
 
-        when(projectPlanService.updateProjectPlan(patchTemplate)).thenReturn(projectPlan);
+    @Test
+    void patchWithAnETagThrows404ErrorWithoutCallingTheServiceIfTheProjectPlanDoesNotExist() {
+        when(projectPlanReadModel.findProjectPlanVersion(55L)).thenReturn(Optional.empty());
 
-        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, patchRequest);
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        String eTag = projectPlanRevisions.currentETag(55L);
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> projectPlanController.patchProjectPlan(55L, patchRequest, eTag, new MockHttpServletResponse()));
 
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        verifyNoInteractions(projectPlanService);
+    }
 
-        List<APITask> tasksFromResponse = result.getRows().get(0).getTasks();
-        assertThat(tasksFromResponse.get(0).getTitle()).isEqualTo("task 1");
-        assertThat(tasksFromResponse.get(0).getPosition()).isEqualTo(1);
+    @Test
+    void patchThrows404ErrorIfTheProjectPlanIsDeletedWhileItIsBeingPatched() {
+        when(projectPlanService.updateProjectPlan(any(), any())).thenThrow(new ProjectPlanNotFoundException("a message"));
 
-        assertThat(tasksFromResponse.get(1).getTitle()).isEqualTo("task 2");
-        assertThat(tasksFromResponse.get(1).getPosition()).isEqualTo(5);
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> projectPlanController.patchProjectPlan(55L, patchRequest, null, new MockHttpServletResponse()));
 
-        assertThat(tasksFromResponse.get(2).getTitle()).isEqualTo("task 3");
-        assertThat(tasksFromResponse.get(2).getPosition()).isEqualTo(8);
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
     }
 
     @Test
     void patchThrows400ErrorIfServiceThrowsAProjectPlanUpdateConsistencyExceptionPassingSameMessage() {
-        when(projectPlanService.updateProjectPlan(any())).thenThrow(new ProjectPlanUpdateConsistencyException("a message"));
+        when(projectPlanService.updateProjectPlan(any(), any())).thenThrow(new ProjectPlanUpdateConsistencyException("a message"));
 
         APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
         ResponseStatusException e = assertThrows(ResponseStatusException.class,
-                () -> projectPlanController.patchProjectPlan(55L, patchRequest));
+                () -> projectPlanController.patchProjectPlan(55L, patchRequest, null, new MockHttpServletResponse()));
 
         assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
         assertThat(e.getMessage()).contains("a message");
     }
 
+    @Test
+    void patchPassesTheVersionFromTheIfMatchHeaderToTheService() {
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        givenAPlanInTheReadModel();
+        projectPlanController.getProjectPlan(55L, aWebRequest());
+        when(projectPlanService.updateProjectPlan(patchRequest.toDomainObject(), 3L)).thenReturn(new ProjectPlanUpdate(55L, "a title", 4L, List.of()));
+
+        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, patchRequest, "\"3\"", new MockHttpServletResponse());
+
+        assertThat(result.getVersion()).isEqualTo(4L);
+    }
+
+    @Test
+    void patchThrows412ExceptionIfThePlanIsNotAtTheVersionInTheIfMatchHeader() {
+        when(projectPlanService.updateProjectPlan(any(), any())).thenThrow(new ProjectPlanVersionMismatchException("a message"));
+
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> projectPlanController.patchProjectPlan(55L, patchRequest, "\"3\"", new MockHttpServletResponse()));
+
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        assertThat(e.getMessage()).contains("a message");
+    }
+
+    @Test
+    void patchThrows409ExceptionIfThePlanWasChangedConcurrently() {
+        when(projectPlanService.updateProjectPlan(any(), any())).thenThrow(new ObjectOptimisticLockingFailureException(ProjectPlan.class, 55L));
+
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> projectPlanController.patchProjectPlan(55L, patchRequest, null, new MockHttpServletResponse()));
+
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    void patchThrows400ExceptionIfTheIfMatchHeaderIsNotAVersion() {
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> projectPlanController.patchProjectPlan(55L, patchRequest, "\"not-a-version\"", new MockHttpServletResponse()));
+
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void patchAcceptsTheETagOfTheCurrentPlanAndPassesTheVersionItWasAtToTheService() {
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(new APIProjectPlan(55L, "a title", List.of(), 3L)));
+        when(projectPlanService.updateProjectPlan(patchRequest.toDomainObject(), 3L)).thenReturn(new ProjectPlanUpdate(55L, "a title", 4L, List.of()));
+        MockHttpServletResponse getResponse = new MockHttpServletResponse();
+        projectPlanController.getProjectPlan(55L, new ServletWebRequest(new MockHttpServletRequest("GET", "/api/v1/project-plans/55"), getResponse));
+
+        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, patchRequest, getResponse.getHeader("ETag"), new MockHttpServletResponse());
+
+        assertThat(result.getVersion()).isEqualTo(4L);
+    }
+
+    @Test
+    void patchAcceptsTheETagOfACompressedGetOfThePlan() {
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        givenAPlanInTheReadModel();
+        projectPlanController.getProjectPlan(55L, aWebRequest());
+        when(projectPlanService.updateProjectPlan(patchRequest.toDomainObject(), 0L)).thenReturn(new ProjectPlanUpdate(55L, "a title", 1L, List.of()));
+        String eTag = projectPlanRevisions.currentETag(55L);
+        String gzipETag = eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+
+        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, patchRequest, "W/" + gzipETag, new MockHttpServletResponse());
+
+        assertThat(result.getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    void patchThrows412ExceptionWithoutChangingAnythingIfThePlanChangedSinceTheETagInTheIfMatchHeader() {
+        String staleETag = projectPlanRevisions.currentETag(55L);
+        projectPlanRevisions.markChanged(55L);
+
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> projectPlanController.patchProjectPlan(55L, patchRequest, staleETag, new MockHttpServletResponse()));
+
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        verifyNoInteractions(projectPlanService);
+    }
+
+    @Test
+    void patchThrows412ExceptionForAnETagOfAnotherPlanOrAnotherRunOfTheService() {
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        String otherPlansETag = projectPlanRevisions.currentETag(56L);
+        String otherRunsETag = "\"0123abcd-55-0\"";
+
+        for (String eTag : List.of(otherPlansETag, otherRunsETag)) {
+            ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                    () -> projectPlanController.patchProjectPlan(55L, patchRequest, eTag, new MockHttpServletResponse()));
+            assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        }
+        verifyNoInteractions(projectPlanService);
+    }
+
+    @Test
+    void patchOfAPlanThatIsNotInTheCacheOnlyReadsTheWholePlanOnceItIsWritten() {
+        APIProjectPlan patchedProjectPlan = new APIProjectPlan(55L, "a new title", List.of(), 1L);
+        when(projectPlanService.updateProjectPlan(any(), any())).thenReturn(new ProjectPlanUpdate(55L, "a new title", 1L, List.of()));
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(patchedProjectPlan));
+
+        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, new APIProjectPlanPatch(55L, List.of()), null, new MockHttpServletResponse());
+
+        assertThat(result).isEqualTo(patchedProjectPlan);
+        InOrder inOrder = inOrder(projectPlanService, projectPlanReadModel);
+        inOrder.verify(projectPlanService).updateProjectPlan(any(), any());
+        inOrder.verify(projectPlanReadModel).findProjectPlan(55L);
+    }
+
+    @Test
+    void patchWithAnETagOfAPlanThatIsNotInTheCacheOnlyReadsThePlansVersionBeforeItIsWritten() {
+        APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
+        when(projectPlanReadModel.findProjectPlanVersion(55L)).thenReturn(Optional.of(3L));
+        when(projectPlanService.updateProjectPlan(patchRequest.toDomainObject(), 3L)).thenReturn(new ProjectPlanUpdate(55L, "a title", 4L, List.of()));
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(new APIProjectPlan(55L, "a title", List.of(), 4L)));
+
+        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, patchRequest, projectPlanRevisions.currentETag(55L), new MockHttpServletResponse());
+
+        assertThat(result.getVersion()).isEqualTo(4L);
+        InOrder inOrder = inOrder(projectPlanReadModel, projectPlanService);
+        inOrder.verify(projectPlanReadModel).findProjectPlanVersion(55L);
+        inOrder.verify(projectPlanService).updateProjectPlan(patchRequest.toDomainObject(), 3L);
+        inOrder.verify(projectPlanReadModel).findProjectPlan(55L);
+    }
+
+    @Test
+    void patchRespondsWithTheETagOfThePatchedPlanAndCachesItForTheNextGet() {
+        givenAPlanInTheReadModel();
+        // the patch commits one change to the plan
+        when(projectPlanService.updateProjectPlan(any(), any())).thenAnswer(invocation -> {
+            projectPlanRevisions.onProjectPlanChanged(new ProjectPlanChangedEvent(55L, List.of()));
+            return new ProjectPlanUpdate(55L, "a new title", 1L, List.of());
+        });
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        APIProjectPlan result = projectPlanController.patchProjectPlan(55L, new APIProjectPlanPatch(55L, List.of()), null, response);
+
+        assertThat(response.getHeader("ETag")).isEqualTo(projectPlanRevisions.currentETag(55L));
+        APIProjectPlan next = projectPlanController.getProjectPlan(55L, aWebRequest());
+        assertThat(next).isEqualTo(result);
+        verify(projectPlanReadModel, times(1)).findProjectPlan(55L);
+    }
+
+    @Test
+    void patchRespondsWithoutAnETagIfThePlanWasChangedByAnotherWriteAtTheSameTime() {
+        givenAPlanInTheReadModel();
+        when(projectPlanService.updateProjectPlan(any(), any())).thenAnswer(invocation -> {
+            projectPlanRevisions.onProjectPlanChanged(new ProjectPlanChangedEvent(55L, List.of()));
+            // committed by another request - not part of this patch's result
+            projectPlanRevisions.markChanged(55L);
+            return new ProjectPlanUpdate(55L, "a new title", 1L, List.of());
+        });
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        projectPlanController.patchProjectPlan(55L, new APIProjectPlanPatch(55L, List.of()), null, response);
+
+        assertThat(response.getHeader("ETag")).isNull();
+    }
+
     @Test
     void patchThrows400ExceptionIfATasksRowIdDoesNotMatchTheRowItIsPartOf() {
         APIProjectPlanPatchTask task = new APIProjectPlanPatchTask(11L, 2L, null);
         APIProjectPlanPatchRow row = new APIProjectPlanPatchRow(1L, List.of(task));
         APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of(row));
         ResponseStatusException e = assertThrows(ResponseStatusException.class,
-                () -> projectPlanController.patchProjectPlan(55L, patchRequest));
+                () -> projectPlanController.patchProjectPlan(55L, patchRequest, null, new MockHttpServletResponse()));
 
         assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
         assertThat(e.getMessage()).contains("Tasks much have a rowId that matches the id of the row that contains the task in it's list of tasks.");
@@ -158,10 +512,171 @@ class ProjectPlanControllerTest {
     void patchThrows400ExceptionIfAProjectPlanIdDoesNotMatchPathParam() {
         APIProjectPlanPatch patchRequest = new APIProjectPlanPatch(55L, List.of());
         ResponseStatusException e = assertThrows(ResponseStatusException.class,
-                () -> projectPlanController.patchProjectPlan(77L, patchRequest));
+                () -> projectPlanController.patchProjectPlan(77L, patchRequest, null, new MockHttpServletResponse()));
 
         assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
         assertThat(e.getMessage()).contains("The project plan id must match the id in the url.");
     }
 
-}
\ No newline at end of file
+    @Test
+    void streamingChangesSubscribesToTheEventStreamForThePlan() {
+        SseEmitter emitter = new SseEmitter();
+        when(projectPlanEventStream.subscribe(55L)).thenReturn(emitter);
+
+        SseEmitter response = projectPlanController.streamProjectPlanChanges(55L);
+
+        assertThat(response).isSameAs(emitter);
+    }
+
+    @Test
+    void getProjectPlanViewReturnsTheWindowFromTheReadModel() {
+        APIProjectPlanView view = new APIProjectPlanView(55L, "a title", List.of(), 0L, null);
+        when(projectPlanReadModel.findProjectPlanView(55L, 0, 10, 20, 5, 15)).thenReturn(Optional.of(view));
+
+        APIProjectPlanView response = projectPlanController.getProjectPlanView(55L, 10, 20, 5, 15, null, aWebRequest());
+
+        assertThat(response).isSameAs(view);
+    }
+
+    @Test
+    void getProjectPlanViewStartsAfterTheRowInThePageToken() {
+        APIProjectPlanView view = new APIProjectPlanView(55L, "a title", List.of(), 0L, null);
+        when(projectPlanReadModel.findProjectPlanView(55L, 77L, 0, 20, 0, 15)).thenReturn(Optional.of(view));
+
+        APIProjectPlanView response = projectPlanController.getProjectPlanView(55L, 0, 20, 0, 15, ViewPageTokens.encode(77L), aWebRequest());
+
+        assertThat(response).isSameAs(view);
+    }
+
+    @Test
+    void getProjectPlanViewRejectsBadWindowsAndTokens() {
+        assertBadViewRequest(() -> projectPlanController.getProjectPlanView(55L, 0, 0, 0, 10, null, aWebRequest()));
+        assertBadViewRequest(() -> projectPlanController.getProjectPlanView(55L, 0, 501, 0, 10, null, aWebRequest()));
+        assertBadViewRequest(() -> projectPlanController.getProjectPlanView(55L, -1, 10, 0, 10, null, aWebRequest()));
+        assertBadViewRequest(() -> projectPlanController.getProjectPlanView(55L, 0, 10, 10, 10, null, aWebRequest()));
+        assertBadViewRequest(() -> projectPlanController.getProjectPlanView(55L, 5, 10, 0, 10, ViewPageTokens.encode(77L), aWebRequest()));
+        assertBadViewRequest(() -> projectPlanController.getProjectPlanView(55L, 0, 10, 0, 10, "not a token", aWebRequest()));
+        verifyNoInteractions(projectPlanReadModel);
+    }
+
+    @Test
+    void getProjectPlanViewThrows404IfThePlanDoesNotExist() {
+        when(projectPlanReadModel.findProjectPlanView(55L, 0, 0, 20, 0, 15)).thenReturn(Optional.empty());
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> projectPlanController.getProjectPlanView(55L, 0, 20, 0, 15, null, aWebRequest()));
+
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    private void givenAPlanInTheReadModel() {
+        when(projectPlanReadModel.findProjectPlan(55L)).thenReturn(Optional.of(new APIProjectPlan(55L, "a title", List.of(), 0L)));
+    }
+
+    private void assertBadViewRequest(Executable request) {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, request);
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void getProjectPlanChangesReturnsTheDeltaFromTheReadModel() {
+        APIProjectPlanDelta delta = new APIProjectPlanDelta(55L, 3L, 4L, false,
+                List.of(new APIProjectPlanChange("TASK_RETITLED", 7L, 8L, "new title", 1, 2)));
+        when(projectPlanReadModel.findChangesSince(55L, 3L)).thenReturn(Optional.of(delta));
+
+        APIProjectPlanDelta response = projectPlanController.getProjectPlanChanges(55L, 3L);
+
+        assertThat(response).isSameAs(delta);
+    }
+
+    @Test
+    void getProjectPlanChangesThrows404IfThePlanDoesNotExist() {
+        when(projectPlanReadModel.findChangesSince(55L, 3L)).thenReturn(Optional.empty());
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> projectPlanController.getProjectPlanChanges(55L, 3L));
+
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void getProjectPlanChangesRejectsNegativeRevisions() {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> projectPlanController.getProjectPlanChanges(55L, -1L));
+
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verifyNoInteractions(projectPlanReadModel);
+    }
+
+    @Test
+    void exportingAPlanStreamsItFromTheExporter() throws Exception {
+        when(projectPlanExporter.projectPlanExists(55L)).thenReturn(true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        StreamingResponseBody body = projectPlanController.exportProjectPlan(55L);
+        verify(projectPlanExporter, never()).exportProjectPlan(any(), any());
+        body.writeTo(outputStream);
+
+        verify(projectPlanExporter).exportProjectPlan(55L, outputStream);
+    }
+
+    @Test
+    void exportingAPlanThrows404IfThePlanDoesNotExist() {
+        when(projectPlanExporter.projectPlanExists(55L)).thenReturn(false);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> projectPlanController.exportProjectPlan(55L));
+
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void exportingAllPlansStreamsThemFromTheExporter() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        projectPlanController.exportAllProjectPlans().writeTo(outputStream);
+
+        verify(projectPlanExporter).exportAllProjectPlans(outputStream);
+    }
+
+    @Test
+    void importingPlansReturnsTheImportersSummary() throws Exception {
+        InputStream requestBody = new ByteArrayInputStream(new byte[0]);
+        APIProjectPlanImport summary = new APIProjectPlanImport(List.of(100L, 150L), 3, 7);
+        when(projectPlanImporter.importProjectPlans(requestBody)).thenReturn(summary);
+
+        APIProjectPlanImport result = projectPlanController.importProjectPlans(requestBody);
+
+        assertThat(result).isEqualTo(summary);
+    }
+
+    @Test
+    void importingPlansThrows400IfTheImportIsNotValid() throws Exception {
+        when(projectPlanImporter.importProjectPlans(any())).thenThrow(new ProjectPlanImporter.ProjectPlanImportException(3, "a message"));
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> projectPlanController.importProjectPlans(new ByteArrayInputStream(new byte[0])));
+
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(e.getMessage()).contains("Line 3 of the import is not valid: a message");
+    }
+
+    private ServletWebRequest aWebRequest() {
+        return aWebRequestWithResponse(new MockHttpServletResponse());
+    }
+
+    private ServletWebRequest aWebRequestWithResponse(MockHttpServletResponse response) {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/v1/project-plans/55"), response);
+    }
+
+    private MockHttpServletRequest aRequestAccepting(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/project-plans/55");
+        request.addHeader("Accept-Encoding", acceptEncoding);
+        return request;
+    }
+
+    private APIProjectPlan aLargeProjectPlan() {
+        List<APITask> tasks = new ArrayList<>();
+        for (long i = 1; i <= 20; i++) {
+            tasks.add(new APITask(i, 1L, "task " + i + " title", 1, (int) i, 0L));
+        }
+        return new APIProjectPlan(55L, "a title", List.of(new APIRow(1L, 55L, "row1 title", tasks, 0L)), 0L);
+    }
+}
@@ -0,0 +1,98 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProjectPlanEventStreamTest {
+
+	// collects delivery tasks without running them, like a subscriber that is not keeping up
+	private final List<Runnable> pendingDeliveries = new ArrayList<>();
+	private final Executor stalledExecutor = pendingDeliveries::add;
+
+	@Test
+	void subscribersAreTrackedPerProjectPlan() {
+		ProjectPlanEventStream eventStream = new ProjectPlanEventStream(10, Duration.ofMinutes(1), stalledExecutor);
+
+		eventStream.subscribe(1L);
+		eventStream.subscribe(1L);
+		eventStream.subscribe(2L);
+
+		assertThat(eventStream.subscriberCount(1L)).isEqualTo(2);
+		assertThat(eventStream.subscriberCount(2L)).isEqualTo(1);
+		assertThat(eventStream.subscriberCount(3L)).isEqualTo(0);
+	}
+
+	@Test
+	void onlySubscribersOfTheChangedPlanGetADelivery() {
+		ProjectPlanEventStream eventStream = new ProjectPlanEventStream(10, Duration.ofMinutes(1), stalledExecutor);
+		eventStream.subscribe(1L);
+		eventStream.subscribe(2L);
+
+		eventStream.onProjectPlanChanged(new ProjectPlanChangedEvent(1L, List.of(ProjectPlanChange.projectPlanRetitled("new title"))));
+
+		assertThat(pendingDeliveries.size()).isEqualTo(1);
+	}
+
+	@Test
+	void eventsWithoutChangesAreNotSent() {
+		ProjectPlanEventStream eventStream = new ProjectPlanEventStream(10, Duration.ofMinutes(1), stalledExecutor);
+		eventStream.subscribe(1L);
+
+		eventStream.onProjectPlanChanged(new ProjectPlanChangedEvent(1L));
+
+		assertThat(pendingDeliveries).isEmpty();
+	}
+
+	@Test
+	void onlyOneDeliveryIsScheduledAtATimeForASubscriber() {
+		ProjectPlanEventStream eventStream = new ProjectPlanEventStream(10, Duration.ofMinutes(1), stalledExecutor);
+		eventStream.subscribe(1L);
+
+		for (int i = 0; i < 5; i++) {
+			eventStream.onProjectPlanChanged(new ProjectPlanChangedEvent(1L, List.of(ProjectPlanChange.projectPlanRetitled("title " + i))));
+		}
+
+		assertThat(pendingDeliveries.size()).isEqualTo(1);
+		assertThat(eventStream.subscriberCount(1L)).isEqualTo(1);
+	}
+
+	@Test
+	void aSubscriberThatFallsTooFarBehindIsDisconnected() {
+		ProjectPlanEventStream eventStream = new ProjectPlanEventStream(3, Duration.ofMinutes(1), stalledExecutor);
+		eventStream.subscribe(1L);
+
+		for (int i = 0; i < 4; i++) {
+			eventStream.onProjectPlanChanged(new ProjectPlanChangedEvent(1L, List.of(ProjectPlanChange.projectPlanRetitled("title " + i))));
+		}
+
+		assertThat(eventStream.subscriberCount(1L)).isEqualTo(0);
+	}
+
+	@Test
+	void shuttingDownCompletesEverySubscriptionAndStopsTheDeliveryThreads() throws Exception {
+		ExecutorService deliveryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+		ProjectPlanEventStream eventStream = new ProjectPlanEventStream(10, Duration.ofMinutes(1), deliveryExecutor);
+		SseEmitter emitter1 = eventStream.subscribe(1L);
+		SseEmitter emitter2 = eventStream.subscribe(2L);
+
+		eventStream.shutdown();
+
+		assertThat(eventStream.subscriberCount(1L)).isEqualTo(0);
+		assertThat(eventStream.subscriberCount(2L)).isEqualTo(0);
+		assertThrows(IllegalStateException.class, () -> emitter1.send("too late"));
+		assertThrows(IllegalStateException.class, () -> emitter2.send("too late"));
+		assertThat(deliveryExecutor.isTerminated()).isTrue();
+	}
+}
@@ -0,0 +1,282 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.poorknight.tpmtoolsbackend.api.ProjectPlanImporter.ProjectPlanImportException;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlan;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanImport;
+import com.poorknight.tpmtoolsbackend.api.entity.APIRow;
+import com.poorknight.tpmtoolsbackend.api.entity.APITask;
+import com.poorknight.tpmtoolsbackend.domain.BaseUnitTestWithDatabase;
+import com.poorknight.tpmtoolsbackend.domain.row.RowService;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProjectPlanImporterTest extends BaseUnitTestWithDatabase {
+
+	@Autowired
+	private ProjectPlanImporter projectPlanImporter;
+
+	@Autowired
+	private ProjectPlanExporter projectPlanExporter;
+
+	@Autowired
+	private ProjectPlanReadModel projectPlanReadModel;
+
+	@Autowired
+	private RowService rowService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void setUp() {
+		deleteAllTasksAndRowsAndProjectPlans();
+	}
+
+	@AfterEach
+	void tearDown() {
+		deleteAllTasksAndRowsAndProjectPlans();
+	}
+
+	@Test
+	void importsPlansRowsAndTasksUnderNewIds() throws Exception {
+		APIProjectPlanImport summary = projectPlanImporter.importProjectPlans(ndjson("""
+				{"type":"projectPlan","id":1,"title":"plan 1","version":4}
+				{"type":"row","id":10,"projectPlanId":1,"title":"row 1","version":2}
+				{"type":"task","id":100,"rowId":10,"title":"task 2","size":3,"position":4,"version":7}
+				{"type":"task","id":101,"rowId":10,"title":"task 1","size":3,"position":1,"version":7}
+				{"type":"row","id":11,"projectPlanId":1,"title":"row 2","version":2}
+				{"type":"projectPlan","id":2,"title":"plan 2","version":0}
+				"""));
+
+		assertThat(summary.getProjectPlanIds()).hasSize(2);
+		assertThat(summary.getRowCount()).isEqualTo(2);
+		assertThat(summary.getTaskCount()).isEqualTo(2);
+
+		APIProjectPlan plan1 = projectPlanReadModel.findProjectPlan(summary.getProjectPlanIds().get(0)).orElseThrow();
+		assertThat(plan1.getTitle()).isEqualTo("plan 1");
+		assertThat(plan1.getVersion()).isEqualTo(0L);
+		assertThat(plan1.getRows()).extracting(APIRow::getTitle).containsExactly("row 1", "row 2");
+		assertThat(plan1.getRows().get(0).getTasks()).extracting(APITask::getTitle, APITask::getSize, APITask::getPosition, APITask::getVersion)
+				.containsExactly(tuple("task 1", 3, 1, 0L), tuple("task 2", 3, 4, 0L));
+		assertThat(plan1.getRows().get(1).getTasks()).isEmpty();
+
+		APIProjectPlan plan2 = projectPlanReadModel.findProjectPlan(summary.getProjectPlanIds().get(1)).orElseThrow();
+		assertThat(plan2.getTitle()).isEqualTo("plan 2");
+		assertThat(plan2.getRows()).isEmpty();
+	}
+
+	@Test
+	void anExportCanBeImportedAgain() throws Exception {
+		Long projectPlanId = createProjectPlanWithSQLOnly("exported plan");
+		Long rowId = createRowWithSQLOnly(projectPlanId, "exported row");
+		createTaskWithSQLOnly(rowId, "exported task 1", 2, 1);
+		createTaskWithSQLOnly(rowId, "exported task 2", 1, 3);
+		createRowWithSQLOnly(projectPlanId, "empty row");
+		ByteArrayOutputStream export = new ByteArrayOutputStream();
+		projectPlanExporter.exportProjectPlan(projectPlanId, export);
+
+		APIProjectPlanImport summary = projectPlanImporter.importProjectPlans(new ByteArrayInputStream(export.toByteArray()));
+
+		APIProjectPlan original = projectPlanReadModel.findProjectPlan(projectPlanId).orElseThrow();
+		APIProjectPlan imported = projectPlanReadModel.findProjectPlan(summary.getProjectPlanIds().get(0)).orElseThrow();
+		assertThat(imported.getId()).isNotEqualTo(original.getId());
+		assertThat(imported.getTitle()).isEqualTo(original.getTitle());
+		assertThat(imported.getRows()).extracting(APIRow::getTitle).containsExactly("exported row", "empty row");
+		assertThat(imported.getRows().get(0).getTasks()).extracting(APITask::getTitle)
+				.containsExactly("exported task 1", "exported task 2");
+	}
+
+	@Test
+	void titlesWithCharactersCopyTreatsSpeciallySurviveTheImport() throws Exception {
+		APIProjectPlanImport summary = projectPlanImporter.importProjectPlans(ndjson("""
+				{"type":"projectPlan","id":1,"title":"tab\\there, back\\\\slash, new\\nline \\\\N"}
+				{"type":"row","id":10,"projectPlanId":1,"title":null}
+				"""));
+
+		APIProjectPlan imported = projectPlanReadModel.findProjectPlan(summary.getProjectPlanIds().get(0)).orElseThrow();
+		assertThat(imported.getTitle()).isEqualTo("tab\there, back\\slash, new\nline \\N");
+		assertThat(imported.getRows().get(0).getTitle()).isNull();
+	}
+
+	@Test
+	void importedIdsDoNotCollideWithTheIdsHibernateHandsOutLater() throws Exception {
+		StringBuilder records = new StringBuilder("{\"type\":\"projectPlan\",\"id\":1,\"title\":\"plan\"}\n");
+		for (int i = 0; i < 120; i++) {
+			records.append("{\"type\":\"row\",\"id\":").append(i).append(",\"projectPlanId\":1,\"title\":\"row ").append(i).append("\"}\n");
+		}
+		APIProjectPlanImport summary = projectPlanImporter.importProjectPlans(ndjson(records.toString()));
+		Long projectPlanId = summary.getProjectPlanIds().get(0);
+
+		List<Long> importedRowIds = jdbcTemplate.queryForList("SELECT id FROM p1_row WHERE p0_project_plan_fk = ?", Long.class, projectPlanId);
+		assertThat(importedRowIds).hasSize(120).doesNotHaveDuplicates();
+
+		List<Long> savedRowIds = new ArrayList<>();
+		for (int i = 0; i < 60; i++) {
+			savedRowIds.add(rowService.saveNewRow(new Row(projectPlanId, "saved row " + i, new ArrayList<>())).getId());
+		}
+		assertThat(savedRowIds).doesNotContainAnyElementsOf(importedRowIds);
+	}
+
+	@Test
+	void rejectsARowWhoseProjectPlanIsNotInTheImportAndImportsNothing() {
+		ProjectPlanImportException e = assertThrows(ProjectPlanImportException.class, () -> projectPlanImporter.importProjectPlans(ndjson("""
+				{"type":"projectPlan","id":1,"title":"plan"}
+				{"type":"row","id":10,"projectPlanId":1,"title":"row 1"}
+				{"type":"row","id":11,"projectPlanId":2,"title":"row 2"}
+				""")));
+
+		assertThat(e.getMessage()).isEqualTo("Line 3 of the import is not valid: the row's project plan is not part of the import.");
+		assertThat(countOf("p0_project_plan")).isEqualTo(0);
+		assertThat(countOf("p1_row")).isEqualTo(0);
+	}
+
+	@Test
+	void rejectsATaskWhoseRowIsNotInTheImport() {
+		ProjectPlanImportException e = assertThrows(ProjectPlanImportException.class, () -> projectPlanImporter.importProjectPlans(ndjson("""
+				{"type":"projectPlan","id":1,"title":"plan"}
+				{"type":"task","id":100,"rowId":10,"title":"task","size":1,"position":1}
+				""")));
+
+		assertThat(e.getMessage()).isEqualTo("Line 2 of the import is not valid: the task's row is not part of the import.");
+	}
+
+	@Test
+	void rejectsTwoRecordsOfTheSameTypeWithTheSameId() {
+		ProjectPlanImportException e = assertThrows(ProjectPlanImportException.class, () -> projectPlanImporter.importProjectPlans(ndjson("""
+				{"type":"projectPlan","id":1,"title":"plan"}
+				{"type":"row","id":1,"projectPlanId":1,"title":"row 1"}
+				{"type":"row","id":1,"projectPlanId":1,"title":"row 2"}
+				""")));
+
+		assertThat(e.getMessage()).isEqualTo("Line 2 of the import is not valid: another record of the same type has the same id.");
+	}
+
+	@Test
+	void rejectsTasksThatOccupyTheSameSpaceInARow() {
+		ProjectPlanImportException e = assertThrows(ProjectPlanImportException.class, () -> projectPlanImporter.importProjectPlans(ndjson("""
+				{"type":"projectPlan","id":1,"title":"plan"}
+				{"type":"row","id":10,"projectPlanId":1,"title":"row 1"}
+				{"type":"task","id":100,"rowId":10,"title":"task 1","size":3,"position":1}
+				{"type":"task","id":101,"rowId":10,"title":"task 2","size":1,"position":4}
+				{"type":"task","id":102,"rowId":10,"title":"task 3","size":1,"position":3}
+				""")));
+
+		assertThat(e.getMessage()).isEqualTo("Line 5 of the import is not valid: the task occupies the same space as another task in its row.");
+		assertThat(countOf("task")).isEqualTo(0);
+	}
+
+	@Test
+	void allowsTasksInDifferentRowsToShareAPosition() throws Exception {
+		APIProjectPlanImport summary = projectPlanImporter.importProjectPlans(ndjson("""
+				{"type":"projectPlan","id":1,"title":"plan"}
+				{"type":"row","id":10,"projectPlanId":1,"title":"row 1"}
+				{"type":"row","id":11,"projectPlanId":1,"title":"row 2"}
+				{"type":"task","id":100,"rowId":10,"title":"task 1","size":3,"position":1}
+				{"type":"task","id":101,"rowId":10,"title":"task 2","size":2,"position":5}
+				{"type":"task","id":102,"rowId":10,"title":"task 3","size":1,"position":4}
+				{"type":"task","id":103,"rowId":11,"title":"task 4","size":3,"position":1}
+				"""));
+
+		assertThat(summary.getTaskCount()).isEqualTo(4);
+		assertThat(countOf("task")).isEqualTo(4);
+	}
+
+	@Test
+	void rejectsRecordsThatAreNotValid() {
+		assertImportRejectedWith("{\"type\":\"projectPlan\",\"id\":1}\n{\"type\":\"column\",\"id\":1}\n",
+				"Line 2 of the import is not valid: \"type\" must be one of \"projectPlan\", \"row\" or \"task\".");
+		assertImportRejectedWith("{\"type\":\"projectPlan\",\"id\":1,\"colour\":\"red\"}\n",
+				"Line 1 of the import is not valid: unknown field \"colour\".");
+		assertImportRejectedWith("{\"type\":\"projectPlan\",\"id\":1}\n{\"type\":\"task\",\"id\":100,\"rowId\":10,\"size\":1}\n",
+				"Line 2 of the import is not valid: \"position\" is required.");
+		assertImportRejectedWith("{\"type\":\"projectPlan\",\"id\":1}\n{\"type\":\"task\",\"id\":100,\"rowId\":10,\"title\":\"task\",\"size\":0,\"position\":1}\n",
+				"Line 2 of the import is not valid: a task's size must be a positive integer.");
+		assertImportRejectedWith("{\"type\":\"projectPlan\",\"id\":1}\n{\"type\":\"task\",\"id\":100,\"rowId\":10,\"title\":\"task\",\"size\":1,\"position\":-1}\n",
+				"Line 2 of the import is not valid: a task's position must be a non-negative integer.");
+		assertImportRejectedWith("{\"type\":\"projectPlan\",\"id\":1}\n{\"type\":\"task\",\"id\":100,\"rowId\":10,\"size\":1,\"position\":1}\n",
+				"Line 2 of the import is not valid: a task's title is mandatory.  An empty string is valid.");
+		assertImportRejectedWith("{\"type\":\"projectPlan\",\"id\":\"one\"}\n",
+				"Line 1 of the import is not valid: \"id\" must be a whole number.");
+		assertImportRejectedWith("{\"type\":\"projectPlan\",\"id\":1} {\"type\":\"projectPlan\",\"id\":2}\n",
+				"Line 1 of the import is not valid: each line must hold one JSON object.");
+		assertImportRejectedWith("", "The import does not contain any project plans.");
+
+		ProjectPlanImportException e = assertThrows(ProjectPlanImportException.class,
+				() -> projectPlanImporter.importProjectPlans(ndjson("{\"type\":\"projectPlan\",\"id\":1}\n{\"type\":")));
+		assertThat(e.getMessage()).startsWith("Line 2 of the import is not valid: not valid JSON");
+	}
+
+	/*
+		Imports a million tasks (1k plans x 10 rows x 100 tasks) into the Testcontainers database and prints how long it took -
+		the time covers the whole import, from parsing to commit, but not writing the file.  Slow, so it only runs with
+		-Dtpm.loadtest=true:
+
+		./gradlew test --rerun-tasks --tests '*ProjectPlanImporterTest.reportsHowLongItTakesToImportOneMillionTasks' -Dtpm.loadtest=true | grep 'imported'
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "tpm.loadtest", matches = "true")
+	void reportsHowLongItTakesToImportOneMillionTasks() throws Exception {
+		Path importFile = Files.createTempFile("project-plan-import", ".ndjson");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(importFile)) {
+				long rowId = 0;
+				long taskId = 0;
+				for (int plan = 0; plan < 1_000; plan++) {
+					writer.write("{\"type\":\"projectPlan\",\"id\":" + plan + ",\"title\":\"plan " + plan + "\"}\n");
+					for (int row = 0; row < 10; row++, rowId++) {
+						writer.write("{\"type\":\"row\",\"id\":" + rowId + ",\"projectPlanId\":" + plan + ",\"title\":\"row " + row + "\"}\n");
+						for (int task = 0; task < 100; task++, taskId++) {
+							writer.write("{\"type\":\"task\",\"id\":" + taskId + ",\"rowId\":" + rowId + ",\"title\":\"task " + task
+									+ "\",\"size\":1,\"position\":" + task + "}\n");
+						}
+					}
+				}
+			}
+
+			long start = System.nanoTime();
+			APIProjectPlanImport summary;
+			try (InputStream inputStream = Files.newInputStream(importFile)) {
+				summary = projectPlanImporter.importProjectPlans(inputStream);
+			}
+			long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+			System.out.printf("imported %d plans, %d rows and %d tasks (%d MB) in %d ms%n", summary.getProjectPlanIds().size(),
+					summary.getRowCount(), summary.getTaskCount(), Files.size(importFile) / (1024 * 1024), elapsedMillis);
+			assertThat(summary.getTaskCount()).isEqualTo(1_000_000);
+		} finally {
+			Files.delete(importFile);
+		}
+	}
+
+	private void assertImportRejectedWith(String records, String expectedMessage) {
+		ProjectPlanImportException e = assertThrows(ProjectPlanImportException.class, () -> projectPlanImporter.importProjectPlans(ndjson(records)));
+		assertThat(e.getMessage()).isEqualTo(expectedMessage);
+	}
+
+	private int countOf(String table) {
+		return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Integer.class);
+	}
+
+	private static InputStream ndjson(String records) {
+		return new ByteArrayInputStream(records.getBytes(StandardCharsets.UTF_8));
+	}
+}
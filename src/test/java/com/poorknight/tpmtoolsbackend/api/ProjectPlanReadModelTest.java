@@ -0,0 +1,351 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlan;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanChange;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanDelta;
+import com.poorknight.tpmtoolsbackend.api.entity.APIProjectPlanView;
+import com.poorknight.tpmtoolsbackend.api.entity.APIRow;
+import com.poorknight.tpmtoolsbackend.api.entity.APITask;
+import com.poorknight.tpmtoolsbackend.domain.BaseUnitTestWithDatabase;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService;
+import com.poorknight.tpmtoolsbackend.domain.row.RowService;
+import com.poorknight.tpmtoolsbackend.domain.tasks.TaskService;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProjectPlanReadModelTest extends BaseUnitTestWithDatabase {
+
+	@Autowired
+	private ProjectPlanReadModel projectPlanReadModel;
+
+	@Autowired
+	private ProjectPlanService projectPlanService;
+
+	@Autowired
+	private RowService rowService;
+
+	@Autowired
+	private TaskService taskService;
+
+	private Long projectPlanId;
+
+	@BeforeEach
+	void setUp() {
+		deleteAllTasksAndRowsAndProjectPlans();
+		projectPlanId = createProjectPlanWithSQLOnly("read model plan");
+	}
+
+	@AfterEach
+	void tearDown() {
+		deleteAllTasksAndRowsAndProjectPlans();
+	}
+
+	@Test
+	void findProjectPlanMatchesWhatTheServiceReturns() {
+		Long rowId1 = createRowWithSQLOnly(projectPlanId, "row 1");
+		Long rowId2 = createRowWithSQLOnly(projectPlanId, "row 2");
+		createRowWithSQLOnly(projectPlanId, "empty row");
+		createTaskWithSQLOnly(rowId1, "task 1", 3, 2);
+		createTaskWithSQLOnly(rowId1, "task 2", 1, 1);
+		createTaskWithSQLOnly(rowId1, "task 3", 0, 1);
+		createTaskWithSQLOnly(rowId2, "task 4", 5, 4);
+
+		Optional<APIProjectPlan> projectPlan = projectPlanReadModel.findProjectPlan(projectPlanId);
+
+		assertThat(projectPlan).contains(APIProjectPlan.fromDomainObject(projectPlanService.getProjectPlan(projectPlanId)));
+		assertThat(projectPlan.get().getRows()).hasSize(3);
+	}
+
+	@Test
+	void findProjectPlanReturnsAPlanWithNoRows() {
+		Optional<APIProjectPlan> projectPlan = projectPlanReadModel.findProjectPlan(projectPlanId);
+
+		assertThat(projectPlan).contains(new APIProjectPlan(projectPlanId, "read model plan", List.of(), 0L));
+	}
+
+	@Test
+	void findProjectPlanReturnsEmptyIfThePlanDoesNotExist() {
+		assertThat(projectPlanReadModel.findProjectPlan(projectPlanId + 1)).isEmpty();
+	}
+
+	@Test
+	void findProjectPlanVersionFindsTheVersionOfAPlanThatExists() {
+		assertThat(projectPlanReadModel.findProjectPlanVersion(projectPlanId)).contains(0L);
+		assertThat(projectPlanReadModel.findProjectPlanVersion(projectPlanId + 1)).isEmpty();
+	}
+
+	@Test
+	void findRowsForProjectPlanMatchesWhatTheServiceReturns() {
+		Long rowId1 = createRowWithSQLOnly(projectPlanId, "row 1");
+		Long rowId2 = createRowWithSQLOnly(projectPlanId, "row 2");
+		createRowWithSQLOnly(projectPlanId, "empty row");
+		createTaskWithSQLOnly(rowId1, "task 1", 3, 2);
+		createTaskWithSQLOnly(rowId1, "task 2", 1, 1);
+		createTaskWithSQLOnly(rowId2, "task 3", 5, 4);
+
+		List<APIRow> rows = projectPlanReadModel.findRowsForProjectPlan(projectPlanId);
+
+		List<APIRow> rowsFromTheService = rowService.getAllRowsForProjectPlan(projectPlanId).stream()
+				.map(APIRow::fromDomainObject)
+				.toList();
+		assertThat(rows).containsExactlyInAnyOrderElementsOf(rowsFromTheService);
+		assertThat(rows).hasSize(3);
+	}
+
+	@Test
+	void findRowsForProjectPlanReturnsAnEmptyListIfThePlanHasNoRows() {
+		assertThat(projectPlanReadModel.findRowsForProjectPlan(projectPlanId)).isEmpty();
+	}
+
+	@Test
+	void findTasksForRowMatchesWhatTheServiceReturns() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		createTaskWithSQLOnly(rowId, "task 1", 3, 2);
+		createTaskWithSQLOnly(rowId, "task 2", 1, 1);
+
+		List<APITask> tasks = projectPlanReadModel.findTasksForRow(projectPlanId, rowId);
+
+		List<APITask> tasksFromTheService = taskService.getAllTasksForRow(rowId).stream()
+				.map(APITask::fromDomainObject)
+				.toList();
+		assertThat(tasks).containsExactlyInAnyOrderElementsOf(tasksFromTheService);
+		assertThat(tasks).hasSize(2);
+	}
+
+	@Test
+	void findTasksForRowOrdersTheTasksByPositionThenId() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		Long third = createTaskWithSQLOnly(rowId, "third", 1, 5);
+		Long first = createTaskWithSQLOnly(rowId, "first", 1, 0);
+		Long second = createTaskWithSQLOnly(rowId, "second", 0, 5);
+
+		assertThat(projectPlanReadModel.findTasksForRow(projectPlanId, rowId)).extracting(APITask::getId).containsExactly(first, second, third);
+	}
+
+	@Test
+	void findTasksForRowFindsNothingForARowOfAnotherPlan() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		createTaskWithSQLOnly(rowId, "task 1", 3, 2);
+		Long otherProjectPlanId = createProjectPlanWithSQLOnly("other plan");
+
+		assertThat(projectPlanReadModel.findTasksForRow(otherProjectPlanId, rowId)).isEmpty();
+	}
+
+	@Test
+	void findRowVersionAndFindTaskVersionOnlyFindWhatIsInThePlan() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		Long taskId = createTaskWithSQLOnly(rowId, "task 1", 3, 2);
+		Long otherProjectPlanId = createProjectPlanWithSQLOnly("other plan");
+
+		assertThat(projectPlanReadModel.findRowVersion(projectPlanId, rowId)).contains(0L);
+		assertThat(projectPlanReadModel.findTaskVersion(projectPlanId, taskId)).contains(0L);
+		assertThat(projectPlanReadModel.findRowVersion(otherProjectPlanId, rowId)).isEmpty();
+		assertThat(projectPlanReadModel.findTaskVersion(otherProjectPlanId, taskId)).isEmpty();
+	}
+
+	@Test
+	void findTasksForRowReturnsAnEmptyListIfTheRowHasNoTasks() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+
+		assertThat(projectPlanReadModel.findTasksForRow(projectPlanId, rowId)).isEmpty();
+	}
+
+	@Test
+	void findProjectPlanViewOnlyIncludesTheTasksThatReachIntoThePositionWindow() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		createTaskWithSQLOnly(rowId, "ends before the window", 2, 0);
+		Long startsBefore = createTaskWithSQLOnly(rowId, "starts before the window", 3, 3);
+		Long inside = createTaskWithSQLOnly(rowId, "inside the window", 2, 6);
+		Long endsAfter = createTaskWithSQLOnly(rowId, "ends after the window", 4, 8);
+		createTaskWithSQLOnly(rowId, "starts after the window", 1, 12);
+
+		APIProjectPlanView view = projectPlanReadModel.findProjectPlanView(projectPlanId, 0, 0, 10, 5, 10).orElseThrow();
+
+		assertThat(view.getRows()).hasSize(1);
+		assertThat(view.getRows().get(0).getTasks()).extracting(APITask::getId).containsExactly(startsBefore, inside, endsAfter);
+		assertThat(view.getNextPageToken()).isNull();
+	}
+
+	@Test
+	void findProjectPlanViewIncludesATaskThatStartsBeforeTheWindowEvenIfAZeroSizeTaskStartsAfterIt() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		Long longTask = createTaskWithSQLOnly(rowId, "reaches into the window", 10, 0);
+		createTaskWithSQLOnly(rowId, "takes up no space", 0, 5);
+
+		APIProjectPlanView view = projectPlanReadModel.findProjectPlanView(projectPlanId, 0, 0, 10, 7, 10).orElseThrow();
+
+		assertThat(view.getRows().get(0).getTasks()).extracting(APITask::getId).containsExactly(longTask);
+	}
+
+	@Test
+	void findProjectPlanViewPagesThroughTheRowsWithPageTokens() {
+		Long rowId1 = createRowWithSQLOnly(projectPlanId, "row 1");
+		Long rowId2 = createRowWithSQLOnly(projectPlanId, "row 2");
+		Long rowId3 = createRowWithSQLOnly(projectPlanId, "row 3");
+		createTaskWithSQLOnly(rowId3, "task in row 3", 1, 0);
+
+		APIProjectPlanView firstPage = projectPlanReadModel.findProjectPlanView(projectPlanId, 0, 0, 2, 0, 100).orElseThrow();
+		assertThat(firstPage.getRows()).extracting(APIRow::getId).containsExactly(rowId1, rowId2);
+		assertThat(firstPage.getNextPageToken()).isNotNull();
+
+		long afterRowId = ViewPageTokens.decodeAfterRowId(firstPage.getNextPageToken());
+		APIProjectPlanView secondPage = projectPlanReadModel.findProjectPlanView(projectPlanId, afterRowId, 0, 2, 0, 100).orElseThrow();
+		assertThat(secondPage.getRows()).extracting(APIRow::getId).containsExactly(rowId3);
+		assertThat(secondPage.getRows().get(0).getTasks()).hasSize(1);
+		assertThat(secondPage.getNextPageToken()).isNull();
+	}
+
+	@Test
+	void findProjectPlanViewCanSkipRowsByOffset() {
+		createRowWithSQLOnly(projectPlanId, "row 1");
+		Long rowId2 = createRowWithSQLOnly(projectPlanId, "row 2");
+
+		APIProjectPlanView view = projectPlanReadModel.findProjectPlanView(projectPlanId, 0, 1, 5, 0, 100).orElseThrow();
+
+		assertThat(view.getRows()).extracting(APIRow::getId).containsExactly(rowId2);
+		assertThat(view.getTitle()).isEqualTo("read model plan");
+	}
+
+	@Test
+	void findProjectPlanViewReturnsEmptyIfThePlanDoesNotExist() {
+		assertThat(projectPlanReadModel.findProjectPlanView(projectPlanId + 1, 0, 0, 10, 0, 10)).isEmpty();
+	}
+
+	@Test
+	void findChangesSinceReturnsTheChangesMadeAfterTheRevision() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		Task task = taskService.saveNewTask(new Task(rowId, "task title", 2, 3));
+		taskService.patchTask(new Task(task.getId(), rowId, "new task title", null, null));
+		taskService.deleteTask(task.getId());
+
+		APIProjectPlanDelta delta = projectPlanReadModel.findChangesSince(projectPlanId, 1).orElseThrow();
+
+		assertThat(delta).isEqualTo(new APIProjectPlanDelta(projectPlanId, 1L, 3L, false, List.of(
+				new APIProjectPlanChange("TASK_RETITLED", rowId, task.getId(), "new task title", 2, 3),
+				new APIProjectPlanChange("TASK_DELETED", rowId, task.getId(), "new task title", 2, 3))));
+	}
+
+	@Test
+	void findChangesSinceTheCurrentRevisionIsEmpty() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		taskService.saveNewTask(new Task(rowId, "task title", 1, 1));
+
+		APIProjectPlanDelta delta = projectPlanReadModel.findChangesSince(projectPlanId, 1).orElseThrow();
+
+		assertThat(delta).isEqualTo(new APIProjectPlanDelta(projectPlanId, 1L, 1L, false, List.of()));
+	}
+
+	@Test
+	void findChangesSinceAPrunedRevisionRequiresAFullFetch() throws Exception {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		taskService.saveNewTask(new Task(rowId, "task 1", 1, 1));
+		taskService.saveNewTask(new Task(rowId, "task 2", 1, 2));
+		try (Connection connection = getConnection();
+			 PreparedStatement statement = connection.prepareStatement("DELETE FROM p0_project_plan_change WHERE revision = 1")) {
+			statement.executeUpdate();
+		}
+
+		assertThat(projectPlanReadModel.findChangesSince(projectPlanId, 0)).contains(APIProjectPlanDelta.fullFetchRequired(projectPlanId, 0L, 2L));
+		assertThat(projectPlanReadModel.findChangesSince(projectPlanId, 1).orElseThrow().getChanges()).hasSize(1);
+	}
+
+	@Test
+	void findChangesSinceARevisionThePlanHasNotReachedRequiresAFullFetch() {
+		assertThat(projectPlanReadModel.findChangesSince(projectPlanId, 5)).contains(APIProjectPlanDelta.fullFetchRequired(projectPlanId, 5L, 0L));
+	}
+
+	@Test
+	void findChangesSinceRequiresAFullFetchWhenThereAreTooManyChanges() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1");
+		List<Task> newTasks = new ArrayList<>();
+		for (int i = 1; i <= 1_001; i++) {
+			newTasks.add(new Task(rowId, "task " + i, 1, i));
+		}
+		taskService.saveNewTasks(newTasks);
+
+		assertThat(projectPlanReadModel.findChangesSince(projectPlanId, 0)).contains(APIProjectPlanDelta.fullFetchRequired(projectPlanId, 0L, 1L));
+	}
+
+	@Test
+	void findChangesSinceReturnsEmptyIfThePlanDoesNotExist() {
+		assertThat(projectPlanReadModel.findChangesSince(projectPlanId + 1, 0)).isEmpty();
+	}
+
+	/*
+		Compares the entity path the GET endpoints used to take with the read model, on a 2k task plan.  Prints the p50 / p99
+		latency and the bytes allocated per call for each (after 50 warm-up calls, over 200 calls).  Slow, so it only runs with
+		-Dtpm.loadtest=true:
+
+		./gradlew test --rerun-tasks --tests '*ProjectPlanReadModelTest.reportsLatencyAndAllocation*' -Dtpm.loadtest=true | grep 'allocated per call'
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "tpm.loadtest", matches = "true")
+	void reportsLatencyAndAllocationForTheEntityPathAndTheReadModelOnATwoThousandTaskPlan() throws Exception {
+		createTwoThousandTasks();
+
+		report("rows via entities", () -> rowService.getAllRowsForProjectPlan(projectPlanId).stream().map(APIRow::fromDomainObject).toList());
+		report("rows via read model", () -> projectPlanReadModel.findRowsForProjectPlan(projectPlanId));
+		report("plan via service", () -> APIProjectPlan.fromDomainObject(projectPlanService.getProjectPlan(projectPlanId)));
+		report("plan via read model", () -> projectPlanReadModel.findProjectPlan(projectPlanId).orElseThrow());
+	}
+
+	private void createTwoThousandTasks() throws Exception {
+		try (Connection connection = getConnection();
+			 PreparedStatement statement = connection.prepareStatement("INSERT INTO task (p0_project_plan_fk, p1_row_fk, title, size, position) VALUES (?, ?, ?, ?, ?)")) {
+			for (int i = 0; i < 20; i++) {
+				Long rowId = createRowWithSQLOnly(projectPlanId, "row " + i);
+				for (int j = 0; j < 100; j++) {
+					statement.setLong(1, projectPlanId);
+					statement.setLong(2, rowId);
+					statement.setString(3, "task " + j);
+					statement.setInt(4, 1);
+					statement.setInt(5, j);
+					statement.addBatch();
+				}
+			}
+			statement.executeBatch();
+		}
+	}
+
+	private static void report(String name, Supplier<?> read) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().threadId();
+
+		for (int i = 0; i < 50; i++) {
+			read.get();
+		}
+
+		long[] latencies = new long[200];
+		long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < latencies.length; i++) {
+			long start = System.nanoTime();
+			read.get();
+			latencies[i] = System.nanoTime() - start;
+		}
+		long allocatedPerCall = (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / latencies.length;
+
+		Arrays.sort(latencies);
+		System.out.printf("%s: p50 %.2f ms, p99 %.2f ms, %d KB allocated per call%n", name,
+				percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.99), allocatedPerCall / 1024);
+	}
+
+	private static double percentileMillis(long[] sortedLatencies, double percentile) {
+		int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+		return sortedLatencies[Math.max(index, 0)] / 1_000_000.0;
+	}
+}
@@ -0,0 +1,66 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProjectPlanRevisionsTest {
+
+	@Test
+	void eachChangeMovesThePlansRevisionOn() {
+		ProjectPlanRevisions projectPlanRevisions = new ProjectPlanRevisions(10);
+
+		projectPlanRevisions.markChanged(1L);
+		projectPlanRevisions.markChanged(1L);
+
+		assertThat(projectPlanRevisions.currentRevision(1L)).isEqualTo(2);
+		assertThat(projectPlanRevisions.currentRevision(2L)).isEqualTo(0);
+	}
+
+	@Test
+	void onlyTheMaximumNumberOfPlansAreTracked() {
+		ProjectPlanRevisions projectPlanRevisions = new ProjectPlanRevisions(8);
+
+		for (long projectPlanId = 1; projectPlanId <= 100; projectPlanId++) {
+			projectPlanRevisions.markChanged(projectPlanId);
+		}
+
+		assertThat(projectPlanRevisions.trackedPlanCount()).isLessThanOrEqualTo(8);
+	}
+
+	@Test
+	void forgettingAPlanNeverTakesItsRevisionBackAndLeavesTheTrackedPlansAlone() {
+		ProjectPlanRevisions projectPlanRevisions = new ProjectPlanRevisions(4);
+		for (int i = 0; i < 5; i++) {
+			projectPlanRevisions.markChanged(1L);
+		}
+		for (int i = 0; i < 10; i++) {
+			projectPlanRevisions.markChanged(2L);
+		}
+		projectPlanRevisions.markChanged(3L);
+		projectPlanRevisions.markChanged(4L);
+		long revisionOfPlan1 = projectPlanRevisions.currentRevision(1L);
+
+		// a fifth plan is one too many - the plans with the lowest revisions are forgotten
+		projectPlanRevisions.markChanged(5L);
+
+		assertThat(projectPlanRevisions.trackedPlanCount()).isLessThan(5);
+		assertThat(projectPlanRevisions.currentRevision(1L)).isEqualTo(revisionOfPlan1);
+		assertThat(projectPlanRevisions.currentRevision(2L)).isEqualTo(10);
+		assertThat(projectPlanRevisions.currentRevision(3L)).isGreaterThanOrEqualTo(1);
+		assertThat(projectPlanRevisions.currentRevision(6L)).isGreaterThan(0);
+	}
+
+	@Test
+	void aForgottenPlanThatChangesAgainGetsANewRevision() {
+		ProjectPlanRevisions projectPlanRevisions = new ProjectPlanRevisions(1);
+		projectPlanRevisions.markChanged(1L);
+		projectPlanRevisions.markChanged(1L);
+		projectPlanRevisions.markChanged(2L);
+		long revisionOfPlan2 = projectPlanRevisions.currentRevision(2L);
+
+		projectPlanRevisions.markChanged(2L);
+
+		assertThat(projectPlanRevisions.currentRevision(2L)).isGreaterThan(revisionOfPlan2);
+	}
+}
@@ -0,0 +1,83 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.poorknight.tpmtoolsbackend.api.ResponseCompression.ContentCoding;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCompressionTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ResponseCompression responseCompression = new ResponseCompression(new ObjectMapper(), 100, meterRegistry);
+
+	@Test
+	void negotiatePrefersGzipUnlessDeflateHasAHigherQuality() {
+		assertThat(responseCompression.negotiate("gzip, deflate, br")).isEqualTo(ContentCoding.GZIP);
+		assertThat(responseCompression.negotiate("deflate")).isEqualTo(ContentCoding.DEFLATE);
+		assertThat(responseCompression.negotiate("gzip;q=0.5, deflate;q=0.8")).isEqualTo(ContentCoding.DEFLATE);
+		assertThat(responseCompression.negotiate("*")).isEqualTo(ContentCoding.GZIP);
+		assertThat(responseCompression.negotiate("gzip;q=0, *")).isEqualTo(ContentCoding.DEFLATE);
+	}
+
+	@Test
+	void negotiateReturnsNullWhenNeitherCodingIsAccepted() {
+		assertThat(responseCompression.negotiate(null)).isNull();
+		assertThat(responseCompression.negotiate("")).isNull();
+		assertThat(responseCompression.negotiate("br, identity")).isNull();
+		assertThat(responseCompression.negotiate("gzip;q=0, deflate;q=0")).isNull();
+	}
+
+	@Test
+	void compressesBodiesThatDecompressBackToTheSameJson() throws Exception {
+		Map<String, String> body = Map.of("title", "a title that repeats ".repeat(20));
+		byte[] json = new ObjectMapper().writeValueAsBytes(body);
+
+		byte[] gzipped = responseCompression.compressIfLargeEnough(body, ContentCoding.GZIP);
+		byte[] deflated = responseCompression.compressIfLargeEnough(body, ContentCoding.DEFLATE);
+
+		assertThat(gzipped.length).isLessThan(json.length);
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			assertThat(in.readAllBytes()).isEqualTo(json);
+		}
+		try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+			assertThat(in.readAllBytes()).isEqualTo(json);
+		}
+	}
+
+	@Test
+	void doesNotCompressBodiesUnderTheMinimumSize() {
+		assertThat(responseCompression.compressIfLargeEnough(Map.of("title", "short"), ContentCoding.GZIP)).isNull();
+		assertThat(meterRegistry.get("tpm.responses.compression.cpu").tag("coding", "gzip").timer().count()).isZero();
+	}
+
+	@Test
+	void recordsTheRatioAndCpuTimeOfEachCompression() {
+		responseCompression.compressIfLargeEnough(Map.of("title", "a title that repeats ".repeat(20)), ContentCoding.GZIP);
+
+		assertThat(meterRegistry.get("tpm.responses.compression.cpu").tag("coding", "gzip").timer().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("tpm.responses.compression.ratio").tag("coding", "gzip").summary().max()).isGreaterThan(1);
+	}
+
+	@Test
+	void writeCompressedJsonSetsTheHeadersAndBody() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		byte[] body = {1, 2, 3};
+
+		responseCompression.writeCompressedJson(response, body, ContentCoding.DEFLATE);
+
+		assertThat(response.getContentType()).isEqualTo("application/json");
+		assertThat(response.getHeader("Content-Encoding")).isEqualTo("deflate");
+		assertThat(response.getContentLength()).isEqualTo(3);
+		assertThat(response.getContentAsByteArray()).isEqualTo(body);
+		assertThat(meterRegistry.get("tpm.responses.compressed.served").tag("coding", "deflate").summary().count()).isEqualTo(1);
+	}
+}
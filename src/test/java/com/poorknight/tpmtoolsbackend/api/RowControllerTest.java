@@ -4,6 +4,7 @@ import com.poorknight.tpmtoolsbackend.api.entity.APIRow;
 import com.poorknight.tpmtoolsbackend.api.entity.APIRowPatch;
 import com.poorknight.tpmtoolsbackend.api.entity.APIRowPatchTask;
 import com.poorknight.tpmtoolsbackend.api.entity.APITask;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
 import com.poorknight.tpmtoolsbackend.domain.row.RowService;
 import com.poorknight.tpmtoolsbackend.domain.row.RowServiceValidator;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
@@ -15,12 +16,18 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator.RowUpdateConsistencyException;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -35,17 +42,23 @@ public class RowControllerTest {
 	@Mock
 	private RowService rowService;
 
+	@Mock
+	private ProjectPlanReadModel projectPlanReadModel;
+
+	@Spy
+	private ProjectPlanRevisions projectPlanRevisions = new ProjectPlanRevisions();
+
 	@Test
-	void getAllRowsReturnsResponseBasedOnServiceResults() {
+	void getAllRowsReturnsResponseBasedOnReadModelResults() {
 		Task task1 = new Task(1L, 5L, "hi", 7, 4);
 		Task task2 = new Task(2L, 5L, "oh", 8, 5);
 		Row row1 = new Row(5L, 33L,"the real title", List.of(task1, task2));
 
 		Row row2 = new Row(6L, 33L,"an imaginary title", new ArrayList<>());
 
-		Mockito.when(rowService.getAllRowsForProjectPlan(33L)).thenReturn(List.of(row1, row2));
+		Mockito.when(projectPlanReadModel.findRowsForProjectPlan(33L)).thenReturn(List.of(APIRow.fromDomainObject(row1), APIRow.fromDomainObject(row2)));
 
-		List<APIRow> response = api.getAllRows(33L);
+		List<APIRow> response = api.getAllRows(33L, aGetRequest());
 
 		assertThat(response.size()).isEqualTo(2);
 		APIRow first = response.get(0);
@@ -76,6 +89,33 @@ public class RowControllerTest {
 		assertThat(second.getTasks().size()).isEqualTo(0);
 	}
 
+	@Test
+	void getAllRowsAnswers304WithoutLoadingAnythingWhenThePlanHasNotChanged() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/project-plans/33/rows");
+		request.addHeader("If-None-Match", projectPlanRevisions.currentETag(33L));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		List<APIRow> rows = api.getAllRows(33L, new ServletWebRequest(request, response));
+
+		assertThat(rows).isNull();
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+		Mockito.verifyNoInteractions(rowService, projectPlanReadModel);
+	}
+
+	@Test
+	void getAllRowsIncludesAnETagThatChangesWhenThePlanChanges() {
+		MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+		api.getAllRows(33L, new ServletWebRequest(new MockHttpServletRequest("GET", "/api/v1/project-plans/33/rows"), firstResponse));
+
+		projectPlanRevisions.markChanged(33L);
+		MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+		api.getAllRows(33L, new ServletWebRequest(new MockHttpServletRequest("GET", "/api/v1/project-plans/33/rows"), secondResponse));
+
+		assertThat(firstResponse.getHeader("ETag")).isNotBlank();
+		assertThat(secondResponse.getHeader("ETag")).isNotBlank();
+		assertThat(secondResponse.getHeader("ETag")).isNotEqualTo(firstResponse.getHeader("ETag"));
+	}
+
 	@Test
 	void postNewRowCallsServiceAndReturnsResponseWithIdAdded() {
 		Row expectedInput = new Row(null,4L, "tittle", new ArrayList<>());
@@ -83,7 +123,7 @@ public class RowControllerTest {
 
 		Mockito.when(rowService.saveNewRow(expectedInput)).thenReturn(responseFromService);
 
-		APIRow row = new APIRow(null, 4L,"tittle", null);
+		APIRow row = new APIRow(null, 4L,"tittle", null, null);
 		APIRow response = api.postNewRow(4L, row);
 
 		assertThat(response.getId()).isEqualTo(1L);
@@ -95,7 +135,7 @@ public class RowControllerTest {
 	@Test
 	void postNewRowDoesNotAcceptTasksInTheRow() {
 		try {
-			api.postNewRow(33L, new APIRow(null, 33L, "ohai", List.of(new APITask(1L, 2L, "hi", 3, 4))));
+			api.postNewRow(33L, new APIRow(null, 33L, "ohai", List.of(new APITask(1L, 2L, "hi", 3, 4, null)), null));
 			fail("Expecting exception");
 		} catch (ResponseStatusException e) {
 			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
@@ -106,7 +146,7 @@ public class RowControllerTest {
 	@Test
 	void postNewRowErrorsIfProjectPlanPathMismatchesProjectPlanIdInBody() {
 		try {
-			api.postNewRow(12345L, new APIRow(null, 33L, "ohai", List.of(new APITask(1L, 2L, "hi", 3, 4))));
+			api.postNewRow(12345L, new APIRow(null, 33L, "ohai", List.of(new APITask(1L, 2L, "hi", 3, 4, null)), null));
 			fail("Expecting exception");
 		} catch (ResponseStatusException e) {
 			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
@@ -117,7 +157,7 @@ public class RowControllerTest {
 	@Test
 	void postNewRowDoesNotAcceptARowId() {
 		try {
-			api.postNewRow(33L, new APIRow(1L, 33L,"ohai", null));
+			api.postNewRow(33L, new APIRow(1L, 33L,"ohai", null, null));
 			fail("Expecting exception");
 		} catch (ResponseStatusException e) {
 			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
@@ -132,14 +172,14 @@ public class RowControllerTest {
 
 		Mockito.when(rowService.saveNewRow(expectedInput)).thenReturn(responseFromService);
 
-		APIRow response1 = api.postNewRow(33L, new APIRow(null, 33L,"tittle", null));
+		APIRow response1 = api.postNewRow(33L, new APIRow(null, 33L,"tittle", null, null));
 
 		assertThat(response1.getId()).isEqualTo(1L);
 		assertThat(response1.getProjectPlanId()).isEqualTo(33L);
 		assertThat(response1.getTitle()).isEqualTo("tittle");
 		assertThat(response1.getTasks().size()).isEqualTo(0);
 
-		APIRow response2 = api.postNewRow(33L, new APIRow(null, 33L,"tittle", null));
+		APIRow response2 = api.postNewRow(33L, new APIRow(null, 33L,"tittle", null, null));
 
 		assertThat(response2.getId()).isEqualTo(1L);
 		assertThat(response2.getProjectPlanId()).isEqualTo(33L);
@@ -152,16 +192,16 @@ public class RowControllerTest {
 		RowPatchTemplate expectedInput = new RowPatchTemplate(5L, "st", null);
 		Row responseFromService = new Row(6L, 33L, "ste", List.of(new Task(1L, 2L, "s", 4, 5)));
 
-		Mockito.when(rowService.patchRow(expectedInput)).thenReturn(responseFromService);
+		Mockito.when(rowService.patchRow(expectedInput, null)).thenReturn(responseFromService);
 
 		APIRowPatch row = new APIRowPatch("st", null);
-		APIRow response = api.patchRow(5L, row);
+		APIRow response = api.patchRow(1L, 5L, row, null, new MockHttpServletResponse());
 
 		assertThat(response.getId()).isEqualTo(6L);
 		assertThat(response.getProjectPlanId()).isEqualTo(33L);
 		assertThat(response.getTitle()).isEqualTo("ste");
 		assertThat(response.getTasks().size()).isEqualTo(1);
-		assertThat(response.getTasks().get(0)).isEqualTo(new APITask(1L, 2L, "s", 4, 5));
+		assertThat(response.getTasks().get(0)).isEqualTo(new APITask(1L, 2L, "s", 4, 5, null));
 	}
 
 	@Test
@@ -172,17 +212,17 @@ public class RowControllerTest {
 		Row responseFromService = new Row(5L, 33L, "ste", List.of(
 				new Task(1L, 5L, "s", 2, 3),
 				new Task(2L, 5L, "s", 3, 4)));
-		Mockito.when(rowService.patchRow(expectedInput)).thenReturn(responseFromService);
+		Mockito.when(rowService.patchRow(expectedInput, null)).thenReturn(responseFromService);
 
 		APIRowPatch row = new APIRowPatch("st", List.of(new APIRowPatchTask(1L, 2, 3), new APIRowPatchTask(2L, 3, 4)));
-		APIRow response = api.patchRow(5L, row);
+		APIRow response = api.patchRow(1L, 5L, row, null, new MockHttpServletResponse());
 
 		assertThat(response.getId()).isEqualTo(5L);
 		assertThat(response.getProjectPlanId()).isEqualTo(33L);
 		assertThat(response.getTitle()).isEqualTo("ste");
 		assertThat(response.getTasks().size()).isEqualTo(2);
-		assertThat(response.getTasks().get(0)).isEqualTo(new APITask(1L, 5L, "s", 2, 3));
-		assertThat(response.getTasks().get(1)).isEqualTo(new APITask(2L, 5L, "s", 3, 4));
+		assertThat(response.getTasks().get(0)).isEqualTo(new APITask(1L, 5L, "s", 2, 3, null));
+		assertThat(response.getTasks().get(1)).isEqualTo(new APITask(2L, 5L, "s", 3, 4, null));
 	}
 
 	@Test
@@ -193,25 +233,25 @@ public class RowControllerTest {
 		Row responseFromService = new Row(5L, 33L, "ste", List.of(
 				new Task(1L, 5L, "s", 2, 4),
 				new Task(2L, 5L, "s", 3, 3)));
-		Mockito.when(rowService.patchRow(expectedInput)).thenReturn(responseFromService);
+		Mockito.when(rowService.patchRow(expectedInput, null)).thenReturn(responseFromService);
 
 		APIRowPatch row = new APIRowPatch("st", List.of(new APIRowPatchTask(1L, 2, 3), new APIRowPatchTask(2L, 3, 4)));
-		APIRow response = api.patchRow(5L, row);
+		APIRow response = api.patchRow(1L, 5L, row, null, new MockHttpServletResponse());
 
 		assertThat(response.getId()).isEqualTo(5L);
 		assertThat(response.getProjectPlanId()).isEqualTo(33L);
 		assertThat(response.getTitle()).isEqualTo("ste");
 		assertThat(response.getTasks().size()).isEqualTo(2);
-		assertThat(response.getTasks().get(0)).isEqualTo(new APITask(2L, 5L, "s", 3, 3));
-		assertThat(response.getTasks().get(1)).isEqualTo(new APITask(1L, 5L, "s", 2, 4));
+		assertThat(response.getTasks().get(0)).isEqualTo(new APITask(2L, 5L, "s", 3, 3, null));
+		assertThat(response.getTasks().get(1)).isEqualTo(new APITask(1L, 5L, "s", 2, 4, null));
 	}
 
 	@Test
 	void patchThrows404StyleExceptionOnNotFoundRow() {
-		Mockito.when(rowService.patchRow(Mockito.any())).thenThrow(new RowServiceValidator.RowNotFoundException("no!"));
+		Mockito.when(rowService.patchRow(Mockito.any(), Mockito.any())).thenThrow(new RowServiceValidator.RowNotFoundException("no!"));
 
 		try {
-			api.patchRow(1L, new APIRowPatch("title", null));
+			api.patchRow(1L, 1L, new APIRowPatch("title", null), null, new MockHttpServletResponse());
 			fail("Expecting exception");
 
 		} catch (ResponseStatusException e) {
@@ -225,10 +265,10 @@ public class RowControllerTest {
 
 	@Test
 	void patchThrows400StyleExceptionIfValidationErrorIsReturnedFromService() {
-		Mockito.when(rowService.patchRow(Mockito.any())).thenThrow(new RowUpdateConsistencyException("no!"));
+		Mockito.when(rowService.patchRow(Mockito.any(), Mockito.any())).thenThrow(new RowUpdateConsistencyException("no!"));
 
 		try {
-			api.patchRow(1L, new APIRowPatch("title", null));
+			api.patchRow(1L, 1L, new APIRowPatch("title", null), null, new MockHttpServletResponse());
 			fail("Expecting exception");
 
 		} catch (ResponseStatusException e) {
@@ -240,6 +280,120 @@ public class RowControllerTest {
 		}
 	}
 
+	@Test
+	void patchPassesTheVersionFromTheIfMatchHeaderToTheService() {
+		APIRowPatch row = new APIRowPatch("title", null);
+		Mockito.when(rowService.patchRow(row.toDomainObject(5L), 7L)).thenReturn(new Row(5L, 1L, "title", List.of(), 8L));
+
+		APIRow response = api.patchRow(1L, 5L, row, "W/\"7\"", new MockHttpServletResponse());
+
+		assertThat(response.getVersion()).isEqualTo(8L);
+	}
+
+	@Test
+	void patchAcceptsTheCurrentETagOfThePlanAndRespondsWithItsNewETag() {
+		APIRowPatch row = new APIRowPatch("title", null);
+		Mockito.when(projectPlanReadModel.findRowVersion(1L, 5L)).thenReturn(Optional.of(7L));
+		// the patch commits one change to the plan
+		Mockito.when(rowService.patchRow(row.toDomainObject(5L), 7L)).thenAnswer(invocation -> {
+			projectPlanRevisions.onProjectPlanChanged(new ProjectPlanChangedEvent(1L));
+			return new Row(5L, 1L, "title", List.of(), 8L);
+		});
+		String eTagBefore = projectPlanRevisions.currentETag(1L);
+		MockHttpServletResponse httpResponse = new MockHttpServletResponse();
+
+		APIRow response = api.patchRow(1L, 5L, row, eTagBefore, httpResponse);
+
+		assertThat(response.getVersion()).isEqualTo(8L);
+		assertThat(httpResponse.getHeader("ETag")).isEqualTo(projectPlanRevisions.currentETag(1L));
+		assertThat(httpResponse.getHeader("ETag")).isNotEqualTo(eTagBefore);
+	}
+
+	@Test
+	void patchWithAnETagPassesTheVersionTheRowIsAtToTheServiceSoThatAConcurrentPatchWithTheSameETagFails() {
+		Mockito.when(projectPlanReadModel.findRowVersion(1L, 5L)).thenReturn(Optional.of(7L));
+		Mockito.when(rowService.patchRow(Mockito.any(), Mockito.eq(7L))).thenThrow(new RowServiceValidator.RowVersionMismatchException("no!"));
+
+		try {
+			api.patchRow(1L, 5L, new APIRowPatch("title", null), projectPlanRevisions.currentETag(1L), new MockHttpServletResponse());
+			fail("Expecting exception");
+
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+		} catch (Exception e) {
+			fail("Expecting ResponseStatusException, instead got " + e.getClass().getCanonicalName());
+		}
+	}
+
+	@Test
+	void patchWithAnETagThrows404StyleExceptionIfTheRowIsNotInThePlan() {
+		Mockito.when(projectPlanReadModel.findRowVersion(1L, 5L)).thenReturn(Optional.empty());
+
+		try {
+			api.patchRow(1L, 5L, new APIRowPatch("title", null), projectPlanRevisions.currentETag(1L), new MockHttpServletResponse());
+			fail("Expecting exception");
+
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+		} catch (Exception e) {
+			fail("Expecting ResponseStatusException, instead got " + e.getClass().getCanonicalName());
+		}
+		Mockito.verifyNoInteractions(rowService);
+	}
+
+	@Test
+	void patchThrows412StyleExceptionWithoutChangingAnythingIfThePlanChangedSinceTheETagInTheIfMatchHeader() {
+		String staleETag = projectPlanRevisions.currentETag(1L);
+		projectPlanRevisions.markChanged(1L);
+
+		try {
+			api.patchRow(1L, 5L, new APIRowPatch("title", null), staleETag, new MockHttpServletResponse());
+			fail("Expecting exception");
+
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+		} catch (Exception e) {
+			fail("Expecting ResponseStatusException, instead got " + e.getClass().getCanonicalName());
+		}
+		Mockito.verifyNoInteractions(rowService);
+	}
+
+	@Test
+	void patchThrows412StyleExceptionIfTheRowIsNotAtTheVersionInTheIfMatchHeader() {
+		Mockito.when(rowService.patchRow(Mockito.any(), Mockito.any())).thenThrow(new RowServiceValidator.RowVersionMismatchException("no!"));
+
+		try {
+			api.patchRow(1L, 1L, new APIRowPatch("title", null), "\"7\"", new MockHttpServletResponse());
+			fail("Expecting exception");
+
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+			assertThat(e.getMessage()).contains("no!");
+
+		} catch (Exception e) {
+			fail("Expecting ResponseStatusException, instead got " + e.getClass().getCanonicalName());
+		}
+	}
+
+	@Test
+	void patchThrows409StyleExceptionIfTheRowWasChangedConcurrently() {
+		Mockito.when(rowService.patchRow(Mockito.any(), Mockito.any())).thenThrow(new ObjectOptimisticLockingFailureException(Row.class, 1L));
+
+		try {
+			api.patchRow(1L, 1L, new APIRowPatch("title", null), null, new MockHttpServletResponse());
+			fail("Expecting exception");
+
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+
+		} catch (Exception e) {
+			fail("Expecting ResponseStatusException, instead got " + e.getClass().getCanonicalName());
+		}
+	}
+
 	@Test
 	void deleteRowCallsServiceAndReturnsTheDeletedRow() {
 		Mockito.when(rowService.deleteEmptyRowById(55L)).thenReturn(new Row(55L, 2L, "Hi i am a title"));
@@ -284,4 +438,8 @@ public class RowControllerTest {
 			fail("Expecting ResponseStatusException, instead got " + e.getClass().getCanonicalName());
 		}
 	}
+
+	private ServletWebRequest aGetRequest() {
+		return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/v1/project-plans/33/rows"), new MockHttpServletResponse());
+	}
 }
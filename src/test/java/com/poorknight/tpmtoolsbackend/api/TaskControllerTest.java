@@ -1,19 +1,30 @@
 package com.poorknight.tpmtoolsbackend.api;
 
 import com.poorknight.tpmtoolsbackend.api.entity.APITask;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
 import com.poorknight.tpmtoolsbackend.api.entity.APITaskPatch;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator.RowUpdateConsistencyException;
+import com.poorknight.tpmtoolsbackend.domain.row.RowService;
+import com.poorknight.tpmtoolsbackend.domain.row.RowServiceValidator;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
 import com.poorknight.tpmtoolsbackend.domain.tasks.TaskService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -28,6 +39,15 @@ public class TaskControllerTest {
 	@Mock
 	TaskService taskService;
 
+	@Mock
+	ProjectPlanReadModel projectPlanReadModel;
+
+	@Mock
+	RowService rowService;
+
+	@Spy
+	ProjectPlanRevisions projectPlanRevisions = new ProjectPlanRevisions();
+
 	@Test
 	void postTaskReturnsResponseFromTheServiceThatIncludesAnId() {
 		String taskTitle = "new task 1";
@@ -40,7 +60,7 @@ public class TaskControllerTest {
 		Task savedTask = new Task(idFromService, rowId, taskTitle, taskSize, taskPosition);
 		when(taskService.saveNewTask(inputTask)).thenReturn(savedTask);
 
-		APITask response = api.postTask(rowId, new APITask(null, rowId, taskTitle, taskSize, taskPosition));
+		APITask response = api.postTask(rowId, new APITask(null, rowId, taskTitle, taskSize, taskPosition, null));
 
 		assertThat(response.getId()).isEqualTo(idFromService);
 		assertThat(response.getRowId()).isEqualTo(rowId);
@@ -48,9 +68,22 @@ public class TaskControllerTest {
 		assertThat(response.getSize()).isEqualTo(taskSize);
 	}
 
+	@Test
+	void postTaskReturns400WhenTheTaskOverlapsAnotherTaskInTheRow() {
+		when(taskService.saveNewTask(any())).thenThrow(new RowUpdateConsistencyException("The proposed change results in more than one task occupying the same space."));
+
+		try {
+			api.postTask(55L, new APITask(null, 55L, "task", 1, 0, null));
+			fail("expecting exception");
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+			assertThat(e.getReason()).isEqualTo("The proposed change results in more than one task occupying the same space.");
+		}
+	}
+
 	@Test
 	void postTaskDoesNotAcceptAnId() {
-		APITask task = new APITask(3L, 55L, "something", 4, 3);
+		APITask task = new APITask(3L, 55L, "something", 4, 3, null);
 
 		try {
 			api.postTask(55L, task);
@@ -62,7 +95,7 @@ public class TaskControllerTest {
 
 	@Test
 	void postTaskRequiresRowId() {
-		APITask task = new APITask(null, null, "hi", 4, 3);
+		APITask task = new APITask(null, null, "hi", 4, 3, null);
 
 		try {
 			api.postTask(55L, task);
@@ -74,7 +107,7 @@ public class TaskControllerTest {
 
 	@Test
 	void postTaskRequiresTitle() {
-		APITask task = new APITask(null, 55L, null, 4, 3);
+		APITask task = new APITask(null, 55L, null, 4, 3, null);
 
 		try {
 			api.postTask(55L, task);
@@ -86,7 +119,7 @@ public class TaskControllerTest {
 
 	@Test
 	void postTaskRequiresSize() {
-		APITask task = new APITask(null, 55L, "something", null, 3);
+		APITask task = new APITask(null, 55L, "something", null, 3, null);
 
 		try {
 			api.postTask(55L, task);
@@ -98,7 +131,7 @@ public class TaskControllerTest {
 
 	@Test
 	void postTaskRequiresPosition() {
-		APITask task = new APITask(null, 55L, "something", 5, null);
+		APITask task = new APITask(null, 55L, "something", 5, null, null);
 
 		try {
 			api.postTask(55L, task);
@@ -110,7 +143,7 @@ public class TaskControllerTest {
 
 	@Test
 	void postTaskRequiresRowPathToBeTheSameAsBodyRowId() {
-		APITask task = new APITask(null, 55L, "something", 6, 5);
+		APITask task = new APITask(null, 55L, "something", 6, 5, null);
 
 		try {
 			api.postTask(1234L, task);
@@ -123,14 +156,14 @@ public class TaskControllerTest {
 	@Test
 	void postTaskRequiresAPositiveSize() {
 		try {
-			api.postTask(55L, new APITask(null, 55L, "something", 0, 5));
+			api.postTask(55L, new APITask(null, 55L, "something", 0, 5, null));
 			fail("expecting exception");
 		} catch (RuntimeException e) {
 			assertThat(e.getMessage()).isEqualTo("400 BAD_REQUEST \"When POSTing a new Task, a positive integer for size is mandatory.\"");
 		}
 
 		try {
-			api.postTask(55L, new APITask(null, 55L, "something", -1, 5));
+			api.postTask(55L, new APITask(null, 55L, "something", -1, 5, null));
 			fail("expecting exception");
 		} catch (RuntimeException e) {
 			assertThat(e.getMessage()).isEqualTo("400 BAD_REQUEST \"When POSTing a new Task, a positive integer for size is mandatory.\"");
@@ -141,24 +174,99 @@ public class TaskControllerTest {
 	@Test
 	void postTaskRequiresANonNegativePosition() {
 		when(taskService.saveNewTask(any())).thenReturn(new Task());
-		APITask savedTask = api.postTask(55L, new APITask(null, 55L, "something", 5, 0));
+		APITask savedTask = api.postTask(55L, new APITask(null, 55L, "something", 5, 0, null));
 		assertThat(savedTask).isNotNull(); // no error on zero position
 
 		try {
-			api.postTask(55L, new APITask(null, 55L, "something", 5, -1));
+			api.postTask(55L, new APITask(null, 55L, "something", 5, -1, null));
 			fail("expecting exception");
 		} catch (RuntimeException e) {
 			assertThat(e.getMessage()).isEqualTo("400 BAD_REQUEST \"When POSTing a new Task, a non-negative integer for position is mandatory.\"");
 		}
 	}
 
+	@Test
+	void postTasksReturnsEveryTaskFromTheServiceWithIdsInRequestOrder() {
+		when(rowService.addTasksToRow(55L, List.of(new Task(55L, "second", 1, 4), new Task(55L, "first", 2, 0))))
+				.thenReturn(List.of(new Task(8L, 55L, "second", 1, 4, 0L), new Task(9L, 55L, "first", 2, 0, 0L)));
+
+		List<APITask> response = api.postTasks(55L, List.of(
+				new APITask(null, 55L, "second", 1, 4, null),
+				new APITask(null, 55L, "first", 2, 0, null)));
+
+		assertThat(response).containsExactly(
+				new APITask(8L, 55L, "second", 1, 4, 0L),
+				new APITask(9L, 55L, "first", 2, 0, 0L));
+	}
+
+	@Test
+	void postTasksRequiresAtLeastOneTask() {
+		try {
+			api.postTasks(55L, List.of());
+			fail("expecting exception");
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		}
+		verifyNoInteractions(rowService);
+	}
+
+	@Test
+	void postTasksValidatesEveryTaskBeforeSavingAny() {
+		try {
+			api.postTasks(55L, List.of(
+					new APITask(null, 55L, "fine", 1, 0, null),
+					new APITask(null, 55L, "no size", null, 1, null)));
+			fail("expecting exception");
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage()).isEqualTo("400 BAD_REQUEST \"When POSTing a new Task, a positive integer for size is mandatory.\"");
+		}
+		verifyNoInteractions(rowService);
+	}
+
+	@Test
+	void postTasksReturns400WhenTheTasksOverlap() {
+		when(rowService.addTasksToRow(eq(55L), any())).thenThrow(new RowUpdateConsistencyException("The proposed change results in more than one task occupying the same space."));
+
+		try {
+			api.postTasks(55L, List.of(new APITask(null, 55L, "task", 1, 0, null)));
+			fail("expecting exception");
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+			assertThat(e.getReason()).isEqualTo("The proposed change results in more than one task occupying the same space.");
+		}
+	}
+
+	@Test
+	void postTasksReturns404WhenTheRowDoesNotExist() {
+		when(rowService.addTasksToRow(eq(55L), any())).thenThrow(new RowServiceValidator.RowNotFoundException("nope"));
+
+		try {
+			api.postTasks(55L, List.of(new APITask(null, 55L, "task", 1, 0, null)));
+			fail("expecting exception");
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		}
+	}
+
+	@Test
+	void postTasksReturns409WhenTheRowIsChangedAtTheSameTime() {
+		when(rowService.addTasksToRow(eq(55L), any())).thenThrow(new ObjectOptimisticLockingFailureException(Row.class, 55L));
+
+		try {
+			api.postTasks(55L, List.of(new APITask(null, 55L, "task", 1, 0, null)));
+			fail("expecting exception");
+		} catch (ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+		}
+	}
+
 	@Test
 	void patchTaskReturnsResponseFromServiceAfterCallingUpdate() {
 		Task inputTask = new Task(55L, null, "changed", null, null);
 		Task savedTask = new Task(55L, 27L, "changed", 4, 3);
-		when(taskService.patchTask(inputTask)).thenReturn(savedTask);
+		when(taskService.patchTask(inputTask, null)).thenReturn(savedTask);
 
-		APITask response = api.patchTask(55L, new APITaskPatch(55L, "changed"));
+		APITask response = api.patchTask(1L, 55L, new APITaskPatch(55L, "changed"), null, new MockHttpServletResponse());
 
 		assertThat(response.getId()).isEqualTo((Long)55L);
 		assertThat(response.getRowId()).isEqualTo((Long)27L);
@@ -172,7 +280,7 @@ public class TaskControllerTest {
 		APITaskPatch task = new APITaskPatch(null, "something");
 
 		try {
-			api.patchTask(1L, task);
+			api.patchTask(1L, 1L, task, null, new MockHttpServletResponse());
 			fail("expecting exception");
 		} catch (RuntimeException e) {
 			assertThat(e.getMessage()).isEqualTo("400 BAD_REQUEST \"When PATCHing a Task, make sure to provide an id in the request body.\"");
@@ -185,7 +293,7 @@ public class TaskControllerTest {
 		APITaskPatch task = new APITaskPatch(1L, null);
 
 		try {
-			api.patchTask(1L, task);
+			api.patchTask(1L, 1L, task, null, new MockHttpServletResponse());
 			fail("expecting exception");
 		} catch (RuntimeException e) {
 			assertThat(e.getMessage()).isEqualTo("400 BAD_REQUEST \"When PATCHing a Task, make sure to provide a title in the request body.  An empty string is valid.\"");
@@ -195,10 +303,10 @@ public class TaskControllerTest {
 	@Test
 	void patchTaskThrows404StyleExceptionIfDoesNotExist() {
 		APITaskPatch patchBody = new APITaskPatch(1L, "something");
-		when(taskService.patchTask(patchBody.toDomainObject())).thenThrow(new TaskService.TaskNotFoundException("st"));
+		when(taskService.patchTask(patchBody.toDomainObject(), null)).thenThrow(new TaskService.TaskNotFoundException("st"));
 
 		try {
-			api.patchTask(1L, patchBody);
+			api.patchTask(1L, 1L, patchBody, null, new MockHttpServletResponse());
 			fail("expecting exception");
 		} catch (ResponseStatusException e) {
 			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
@@ -209,10 +317,10 @@ public class TaskControllerTest {
 	@Test
 	void patchTaskThrows500StyleExceptionIfServiceThrowsUnexpectedException() {
 		APITaskPatch task = new APITaskPatch(1L, "something");
-		when(taskService.patchTask(task.toDomainObject())).thenThrow(new RuntimeException("st"));
+		when(taskService.patchTask(task.toDomainObject(), null)).thenThrow(new RuntimeException("st"));
 
 		try {
-			api.patchTask(1L, task);
+			api.patchTask(1L, 1L, task, null, new MockHttpServletResponse());
 			fail("expecting exception");
 		} catch(ResponseStatusException e) {
 			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -220,12 +328,113 @@ public class TaskControllerTest {
 		}
 	}
 
+	@Test
+	void patchTaskThrows412StyleExceptionIfTheTaskIsNotAtTheVersionInTheIfMatchHeader() {
+		APITaskPatch task = new APITaskPatch(1L, "something");
+		when(taskService.patchTask(task.toDomainObject(), 2L)).thenThrow(new TaskService.TaskVersionMismatchException("st"));
+
+		try {
+			api.patchTask(1L, 1L, task, "\"2\"", new MockHttpServletResponse());
+			fail("expecting exception");
+		} catch(ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+			assertThat(e.getMessage()).contains("st");
+		}
+	}
+
+	@Test
+	void patchTaskAcceptsTheCurrentETagOfThePlanAndRespondsWithItsNewETag() {
+		APITaskPatch task = new APITaskPatch(1L, "something");
+		when(projectPlanReadModel.findTaskVersion(1L, 1L)).thenReturn(Optional.of(3L));
+		// the patch commits one change to the plan
+		when(taskService.patchTask(task.toDomainObject(), 3L)).thenAnswer(invocation -> {
+			projectPlanRevisions.onProjectPlanChanged(new ProjectPlanChangedEvent(1L));
+			return new Task(1L, 5L, "something", 2, 3, 4L);
+		});
+		String eTagBefore = projectPlanRevisions.currentETag(1L);
+		MockHttpServletResponse httpResponse = new MockHttpServletResponse();
+
+		APITask response = api.patchTask(1L, 1L, task, eTagBefore, httpResponse);
+
+		assertThat(response.getVersion()).isEqualTo(4L);
+		assertThat(httpResponse.getHeader("ETag")).isEqualTo(projectPlanRevisions.currentETag(1L));
+		assertThat(httpResponse.getHeader("ETag")).isNotEqualTo(eTagBefore);
+	}
+
+	@Test
+	void patchTaskWithAnETagPassesTheVersionTheTaskIsAtToTheServiceSoThatAConcurrentPatchWithTheSameETagFails() {
+		APITaskPatch task = new APITaskPatch(1L, "something");
+		when(projectPlanReadModel.findTaskVersion(1L, 1L)).thenReturn(Optional.of(3L));
+		when(taskService.patchTask(task.toDomainObject(), 3L)).thenThrow(new TaskService.TaskVersionMismatchException("st"));
+
+		try {
+			api.patchTask(1L, 1L, task, projectPlanRevisions.currentETag(1L), new MockHttpServletResponse());
+			fail("expecting exception");
+		} catch(ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		}
+	}
+
+	@Test
+	void patchTaskWithAnETagThrows404StyleExceptionIfTheTaskIsNotInThePlan() {
+		when(projectPlanReadModel.findTaskVersion(1L, 1L)).thenReturn(Optional.empty());
+
+		try {
+			api.patchTask(1L, 1L, new APITaskPatch(1L, "something"), projectPlanRevisions.currentETag(1L), new MockHttpServletResponse());
+			fail("expecting exception");
+		} catch(ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		}
+		verifyNoInteractions(taskService);
+	}
+
+	@Test
+	void patchTaskThrows412StyleExceptionWithoutChangingAnythingIfThePlanChangedSinceTheETagInTheIfMatchHeader() {
+		String staleETag = projectPlanRevisions.currentETag(1L);
+		projectPlanRevisions.markChanged(1L);
+
+		try {
+			api.patchTask(1L, 1L, new APITaskPatch(1L, "something"), staleETag, new MockHttpServletResponse());
+			fail("expecting exception");
+		} catch(ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		}
+		verifyNoInteractions(taskService);
+	}
+
+	@Test
+	void patchTaskReturns400WhenTheMovedTaskOverlapsAnotherTaskInTheRow() {
+		APITaskPatch task = new APITaskPatch(1L, "something");
+		when(taskService.patchTask(task.toDomainObject(), null)).thenThrow(new RowUpdateConsistencyException("The proposed change results in more than one task occupying the same space."));
+
+		try {
+			api.patchTask(1L, 1L, task, null, new MockHttpServletResponse());
+			fail("expecting exception");
+		} catch(ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+			assertThat(e.getReason()).isEqualTo("The proposed change results in more than one task occupying the same space.");
+		}
+	}
+
+	@Test
+	void patchTaskThrows409StyleExceptionIfTheTaskWasChangedConcurrently() {
+		APITaskPatch task = new APITaskPatch(1L, "something");
+		when(taskService.patchTask(task.toDomainObject(), null)).thenThrow(new ObjectOptimisticLockingFailureException(Task.class, 1L));
+
+		try {
+			api.patchTask(1L, 1L, task, null, new MockHttpServletResponse());
+			fail("expecting exception");
+		} catch(ResponseStatusException e) {
+			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+		}
+	}
+
 	@Test
 	void patchTaskDoesNotAcceptMismatchedIdsInUrlAndBody() {
 		APITaskPatch task = new APITaskPatch(5L, "something");
 
 		try {
-			api.patchTask(7L, task);
+			api.patchTask(1L, 7L, task, null, new MockHttpServletResponse());
 			fail("expecting exception");
 		} catch (RuntimeException e) {
 			assertThat(e.getMessage()).isEqualTo("400 BAD_REQUEST \"When PATCHing a Task, the url id and request body id must match.\"");
@@ -233,25 +442,37 @@ public class TaskControllerTest {
 	}
 
 	@Test
-	void getTasksRetrievesAllTasksFromServiceAndIncludesIds() {
-		Task task1 = new Task(5L, 33L, "st", 4, 2);
-		Task task2 = new Task(6L, 33L,"st else", 7, 3);
-		List<Task> taskList = List.of(task1, task2);
-		when(taskService.getAllTasksForRow(33L)).thenReturn(taskList);
+	void getTasksRetrievesAllTasksFromTheReadModelAndIncludesIds() {
+		APITask task1 = new APITask(5L, 33L, "st", 4, 2, 0L);
+		APITask task2 = new APITask(6L, 33L,"st else", 7, 3, 1L);
+		when(projectPlanReadModel.findTasksForRow(1L, 33L)).thenReturn(List.of(task1, task2));
 
-		List<APITask> apiTasks = api.getTasks(33L);
+		List<APITask> apiTasks = api.getTasks(1L, 33L, aGetRequest());
 
 		assertThat(apiTasks.size()).isEqualTo(2);
-		assertThat(apiTasks.get(0)).isEqualTo(new APITask(5L, 33L, "st", 4, 2));
-		assertThat(apiTasks.get(1)).isEqualTo(new APITask(6L, 33L, "st else", 7, 3));
+		assertThat(apiTasks.get(0)).isEqualTo(new APITask(5L, 33L, "st", 4, 2, 0L));
+		assertThat(apiTasks.get(1)).isEqualTo(new APITask(6L, 33L, "st else", 7, 3, 1L));
+		verifyNoInteractions(taskService);
+	}
+
+	@Test
+	void getTasksAnswers304WithoutLoadingAnythingWhenThePlanHasNotChanged() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/project-plans/1/rows/33/tasks");
+		request.addHeader("If-None-Match", projectPlanRevisions.currentETag(1L));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		List<APITask> apiTasks = api.getTasks(1L, 33L, new ServletWebRequest(request, response));
+
+		assertThat(apiTasks).isNull();
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+		verifyNoInteractions(taskService, projectPlanReadModel);
 	}
 
 	@Test
 	void getTasksReturnsAnEmptyListIfNoTasksExist() {
-		List<Task> taskList = new LinkedList<>();
-		when(taskService.getAllTasksForRow(5L)).thenReturn(taskList);
+		when(projectPlanReadModel.findTasksForRow(1L, 5L)).thenReturn(new LinkedList<>());
 
-		List<APITask> apiTasks = api.getTasks(5L);
+		List<APITask> apiTasks = api.getTasks(1L, 5L, aGetRequest());
 
 		assertThat(apiTasks).isNotNull();
 		assertThat(apiTasks.size()).isEqualTo(0);
@@ -259,20 +480,19 @@ public class TaskControllerTest {
 
 	@Test
 	void deleteTaskCallsServiceDeleteAndReturnsDeletedTask() {
-		when(taskService.findTaskWithId(55L)).thenReturn(new Task(55L, 33L, "st", 7, 1));
-		when(taskService.deleteTask(55L)).thenReturn(new Task(55L, 33L,"st", 7, 1));
+		when(taskService.deleteTaskFromRow(55L, 33L)).thenReturn(new Task(55L, 33L,"st", 7, 1));
 
 		APITask deletedTask = api.deleteTask(33L, 55L);
 
 		assertThat(deletedTask.getId()).isEqualTo(55L);
 		assertThat(deletedTask.getTitle()).isEqualTo("st");
 		assertThat(deletedTask.getSize()).isEqualTo(7);
+		verify(taskService, never()).findTaskWithId(any());
 	}
 
 	@Test
 	void deleteTaskThrows404StyleExceptionIfServiceThrowsTaskNotFoundException() {
-		when(taskService.findTaskWithId(55L)).thenReturn(new Task(55L, 5L, "st", 1, 7));
-		when(taskService.deleteTask(55L)).thenThrow(new TaskService.TaskNotFoundException("message should be independent"));
+		when(taskService.deleteTaskFromRow(55L, 5L)).thenThrow(new TaskService.TaskNotFoundException("message should be independent"));
 
 		try {
 			api.deleteTask(5L, 55L);
@@ -285,8 +505,7 @@ public class TaskControllerTest {
 
 	@Test
 	void deleteTaskThrows500StyleExceptionIfServiceThrowsUnexpectedException() {
-		when(taskService.findTaskWithId(55L)).thenReturn(new Task(55L, 5L, "st", 1, 5));
-		when(taskService.deleteTask(55L)).thenThrow(new RuntimeException("st"));
+		when(taskService.deleteTaskFromRow(55L, 5L)).thenThrow(new RuntimeException("st"));
 
 		try {
 			api.deleteTask(5L,55L);
@@ -299,7 +518,7 @@ public class TaskControllerTest {
 
 	@Test
 	void deleteTaskRequiresPathRowIdToMatchWhatTheTaskHasSavedAsTheRowId() {
-		when(taskService.findTaskWithId(55L)).thenReturn(new Task(55L, 1L, "st", 1, 4));
+		when(taskService.deleteTaskFromRow(55L, 5L)).thenThrow(new TaskService.TaskNotInRowException("message should be independent"));
 
 		try {
 			api.deleteTask(5L,55L);
@@ -310,16 +529,7 @@ public class TaskControllerTest {
 		}
 	}
 
-	@Test
-	void deleteTaskThrows500StyleExceptionIfServiceThrowsUnexpectedExceptionDuringGet() {
-		when(taskService.findTaskWithId(55L)).thenThrow(new RuntimeException("st"));
-
-		try {
-			api.deleteTask(5L,55L);
-			fail("expecting exception");
-		} catch(ResponseStatusException e) {
-			assertThat(e.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
-			assertThat(e.getMessage()).contains("Unexpected error encountered while attempting to delete task with id 55.  Please try again, until a 404 message is returned.");
-		}
+	private ServletWebRequest aGetRequest() {
+		return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/v1/project-plans/1/rows/33/tasks"), new MockHttpServletResponse());
 	}
 }
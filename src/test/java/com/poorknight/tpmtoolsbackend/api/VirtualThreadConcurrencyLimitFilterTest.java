@@ -0,0 +1,73 @@
+package com.poorknight.tpmtoolsbackend.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualThreadConcurrencyLimitFilterTest {
+
+	private final VirtualThreadConcurrencyLimitFilter filter = new VirtualThreadConcurrencyLimitFilter(1, Duration.ofMillis(10));
+
+	@Test
+	void letsARequestThroughWhenAPermitIsFree() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain filterChain = new MockFilterChain();
+
+		filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/project-plans/1"), response, filterChain);
+
+		assertThat(filterChain.getRequest()).isNotNull();
+		assertThat(response.getStatus()).isEqualTo(200);
+	}
+
+	@Test
+	void turnsARequestAwayWith503WhileAllPermitsAreInUse() throws Exception {
+		MockHttpServletResponse innerResponse = new MockHttpServletResponse();
+		MockFilterChain innerFilterChain = new MockFilterChain();
+
+		// the outer request holds the only permit while the inner one arrives
+		filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/project-plans/1"), new MockHttpServletResponse(),
+				(request, response) -> filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/project-plans/2"), innerResponse, innerFilterChain));
+
+		assertThat(innerFilterChain.getRequest()).isNull();
+		assertThat(innerResponse.getStatus()).isEqualTo(503);
+		assertThat(innerResponse.getHeader("Retry-After")).isEqualTo("1");
+	}
+
+	@Test
+	void releasesThePermitEvenIfTheRequestFails() throws Exception {
+		AtomicInteger attempts = new AtomicInteger();
+		try {
+			filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/project-plans/1"), new MockHttpServletResponse(),
+					(request, response) -> {
+						attempts.incrementAndGet();
+						throw new RuntimeException("boom");
+					});
+		} catch (RuntimeException e) {
+			assertThat(e.getMessage()).isEqualTo("boom");
+		}
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/project-plans/1"), response, new MockFilterChain());
+
+		assertThat(attempts.get()).isEqualTo(1);
+		assertThat(response.getStatus()).isEqualTo(200);
+	}
+
+	@Test
+	void doesNotLimitRequestsOutsideOfTheAPI() throws Exception {
+		MockHttpServletResponse innerResponse = new MockHttpServletResponse();
+		MockFilterChain innerFilterChain = new MockFilterChain();
+
+		filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/project-plans/1"), new MockHttpServletResponse(),
+				(request, response) -> filter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), innerResponse, innerFilterChain));
+
+		assertThat(innerFilterChain.getRequest()).isNotNull();
+		assertThat(innerResponse.getStatus()).isEqualTo(200);
+	}
+}
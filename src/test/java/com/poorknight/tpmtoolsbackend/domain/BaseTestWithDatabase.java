@@ -102,7 +102,7 @@ public class BaseTestWithDatabase {
 		try {
 			Connection connection = getConnection();
 			Statement statement = connection.createStatement();
-			statement.executeUpdate("INSERT INTO TASK (P1_ROW_FK, TITLE, SIZE, POSITION) VALUES (" + rowId + ", '" + title + "', " + size + ", " + position + ")");
+			statement.executeUpdate("INSERT INTO TASK (P0_PROJECT_PLAN_FK, P1_ROW_FK, TITLE, SIZE, POSITION) SELECT P0_PROJECT_PLAN_FK, ID, '" + title + "', " + size + ", " + position + " FROM P1_ROW WHERE ID = " + rowId);
 			statement.close();
 
 			Statement taskQueryStatement = connection.createStatement();
@@ -0,0 +1,34 @@
+package com.poorknight.tpmtoolsbackend.domain;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+	Remembers every distinct SQL statement Hibernate prepares, so tests can check how the database will run them.
+ */
+public class RecordingStatementInspector implements StatementInspector {
+
+	private static final Set<String> recordedStatements = new LinkedHashSet<>();
+
+	@Override
+	public String inspect(String sql) {
+		synchronized (recordedStatements) {
+			recordedStatements.add(sql);
+		}
+		return sql;
+	}
+
+	public static Set<String> recordedStatements() {
+		synchronized (recordedStatements) {
+			return new LinkedHashSet<>(recordedStatements);
+		}
+	}
+
+	public static void clear() {
+		synchronized (recordedStatements) {
+			recordedStatements.clear();
+		}
+	}
+}
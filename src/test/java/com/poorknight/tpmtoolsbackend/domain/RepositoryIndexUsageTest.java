@@ -0,0 +1,165 @@
+package com.poorknight.tpmtoolsbackend.domain;
+
+import com.poorknight.tpmtoolsbackend.domain.hello.HelloMessage;
+import com.poorknight.tpmtoolsbackend.domain.hello.HelloService;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.row.RowService;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.tasks.TaskService;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+	Seeds a large data set, runs every repository query through the services, and then asks Postgres how it would plan
+	every statement that was issued - none of them should need a sequential scan.  The only statements left out are the
+	SELECTs with no WHERE clause at all (the hello message pool counting and loading the whole table), which read every
+	row on purpose.
+
+	Statements the read model and the exporter and importer run through a JdbcTemplate do not go through Hibernate, so
+	they are not recorded here.
+ */
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.poorknight.tpmtoolsbackend.domain.RecordingStatementInspector")
+class RepositoryIndexUsageTest extends BaseUnitTestWithDatabase {
+
+	private static final int PROJECT_PLANS = 2_000;
+	private static final int ROWS_PER_PROJECT_PLAN = 10;
+	private static final int TASKS_PER_ROW = 10;
+	// more than tpm.hello.max-pooled-messages, so that random messages are sampled in SQL
+	private static final int HELLO_MESSAGES = 20_000;
+	private static final Pattern WHERE_CLAUSE = Pattern.compile("\\bwhere\\b");
+
+	@Autowired
+	private ProjectPlanService projectPlanService;
+
+	@Autowired
+	private RowService rowService;
+
+	@Autowired
+	private TaskService taskService;
+
+	@Autowired
+	private HelloService helloService;
+
+	private Long lastHelloIdBeforeTheTest;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		deleteAllTasksAndRowsAndProjectPlans();
+		lastHelloIdBeforeTheTest = findSingleId("SELECT COALESCE(MAX(id), 0) FROM hello");
+		try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+			statement.executeUpdate("INSERT INTO p0_project_plan (title) SELECT 'plan ' || g FROM generate_series(1, " + PROJECT_PLANS + ") g");
+			statement.executeUpdate("INSERT INTO p1_row (p0_project_plan_fk, title) SELECT p.id, 'row ' || g FROM p0_project_plan p CROSS JOIN generate_series(1, " + ROWS_PER_PROJECT_PLAN + ") g");
+			statement.executeUpdate("INSERT INTO task (p0_project_plan_fk, p1_row_fk, title, size, position) SELECT r.p0_project_plan_fk, r.id, 'task ' || g, 1, g FROM p1_row r CROSS JOIN generate_series(1, " + TASKS_PER_ROW + ") g");
+			statement.executeUpdate("INSERT INTO hello (message) SELECT 'hello ' || g FROM generate_series(1, " + HELLO_MESSAGES + ") g");
+			statement.executeUpdate("ANALYZE p0_project_plan, p1_row, task, hello");
+		}
+		RecordingStatementInspector.clear();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		deleteAllTasksAndRowsAndProjectPlans();
+		try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+			statement.executeUpdate("DELETE FROM hello WHERE id > " + lastHelloIdBeforeTheTest);
+		}
+	}
+
+	@Test
+	void everyRepositoryStatementIsServedByAnIndex() throws Exception {
+		Long projectPlanId = findSingleId("SELECT MAX(id) FROM p0_project_plan");
+		Long rowId = findSingleId("SELECT MIN(id) FROM p1_row WHERE p0_project_plan_fk = " + projectPlanId);
+		Long firstTaskId = findSingleId("SELECT MIN(id) FROM task WHERE p1_row_fk = " + rowId);
+		Long lastTaskId = findSingleId("SELECT MAX(id) FROM task WHERE p1_row_fk = " + rowId);
+		Long secondTaskId = findSingleId("SELECT id FROM task WHERE p1_row_fk = " + rowId + " AND position = 2");
+
+		projectPlanService.getProjectPlan(projectPlanId);
+		rowService.getAllRowsForProjectPlan(projectPlanId);
+		taskService.getAllTasksForRow(rowId);
+		projectPlanService.updateProjectPlan(new ProjectPlanPatchTemplate(projectPlanId, "new title",
+				List.of(new RowPatchTemplate(rowId, null,
+						List.of(TaskPatchTemplate.builder().id(firstTaskId).rowId(rowId).position(TASKS_PER_ROW + 1).build())))));
+		projectPlanService.updateProjectPlan(new ProjectPlanPatchTemplate(projectPlanId, "newer title", null));
+		taskService.patchTask(new Task(firstTaskId, rowId, "renamed", null, null));
+		taskService.saveNewTask(new Task(rowId, "new task", 1, TASKS_PER_ROW + 2));
+		taskService.deleteTask(lastTaskId);
+
+		Long newRowId = rowService.saveNewRow(new Row(projectPlanId, "new row")).getId();
+		rowService.patchRow(new RowPatchTemplate(newRowId, "renamed row", null));
+		rowService.patchRow(new RowPatchTemplate(rowId, null, List.of(TaskPatchTemplate.builder().id(secondTaskId).rowId(rowId).position(TASKS_PER_ROW + 3).build())));
+		rowService.addTasksToRow(rowId, List.of(new Task(rowId, "added task", 1, TASKS_PER_ROW + 4)));
+		rowService.deleteEmptyRowById(newRowId);
+
+		HelloMessage helloMessage = helloService.saveNewMessage(new HelloMessage("new message"));
+		helloService.getRandomHelloMessage();
+		helloService.deleteMessageById(helloMessage.getId());
+
+		Set<String> statements = RecordingStatementInspector.recordedStatements();
+		assertThat(statements).isNotEmpty();
+
+		List<String> statementsWithSequentialScans = new ArrayList<>();
+		for (String sql : statements) {
+			if (readsTheWholeTable(sql)) {
+				continue;
+			}
+			String plan = explainGenericPlan(sql);
+			if (plan.contains("Seq Scan")) {
+				statementsWithSequentialScans.add(sql + "\n" + plan);
+			}
+		}
+		assertThat(statementsWithSequentialScans).isEmpty();
+	}
+
+	private static boolean readsTheWholeTable(String sql) {
+		String lowerCaseSql = sql.strip().toLowerCase();
+		return lowerCaseSql.startsWith("select") && !WHERE_CLAUSE.matcher(lowerCaseSql).find();
+	}
+
+	// GENERIC_PLAN lets Postgres plan a statement with $n placeholders without any parameter values
+	private String explainGenericPlan(String sql) throws Exception {
+		StringBuilder numberedSql = new StringBuilder();
+		int parameterNumber = 1;
+		for (char c : sql.toCharArray()) {
+			if (c == '?') {
+				numberedSql.append('$').append(parameterNumber++);
+			} else {
+				numberedSql.append(c);
+			}
+		}
+
+		StringBuilder plan = new StringBuilder();
+		try (Connection connection = getConnection();
+			 Statement statement = connection.createStatement();
+			 ResultSet resultSet = statement.executeQuery("EXPLAIN (GENERIC_PLAN) " + numberedSql)) {
+			while (resultSet.next()) {
+				plan.append(resultSet.getString(1)).append('\n');
+			}
+		}
+		return plan.toString();
+	}
+
+	private Long findSingleId(String sql) throws Exception {
+		try (Connection connection = getConnection();
+			 Statement statement = connection.createStatement();
+			 ResultSet resultSet = statement.executeQuery(sql)) {
+			resultSet.next();
+			return resultSet.getLong(1);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.poorknight.tpmtoolsbackend.domain.hello;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HelloMessagePoolTest {
+
+	@Mock
+	private HelloRepository helloRepository;
+
+	@Test
+	void loadsTheMessagesOnceAndThenPicksFromMemory() {
+		HelloMessage message1 = new HelloMessage("one");
+		HelloMessage message2 = new HelloMessage("two");
+		when(helloRepository.count()).thenReturn(2L);
+		when(helloRepository.findAll()).thenReturn(List.of(message1, message2));
+		HelloMessagePool pool = new HelloMessagePool(helloRepository, 10);
+
+		for (int i = 0; i < 100; i++) {
+			assertThat(pool.randomMessage()).isIn(message1, message2);
+		}
+
+		verify(helloRepository, times(1)).findAll();
+		verify(helloRepository, never()).findRandomMessage();
+	}
+
+	@Test
+	void aChangeToTheMessagesReloadsThePool() {
+		HelloMessage oldMessage = new HelloMessage("old");
+		HelloMessage newMessage = new HelloMessage("new");
+		when(helloRepository.count()).thenReturn(1L);
+		when(helloRepository.findAll()).thenReturn(List.of(oldMessage), List.of(newMessage));
+		HelloMessagePool pool = new HelloMessagePool(helloRepository, 10);
+		assertThat(pool.randomMessage()).isSameAs(oldMessage);
+
+		pool.onHelloMessagesChanged(new HelloMessagesChangedEvent());
+
+		assertThat(pool.randomMessage()).isSameAs(newMessage);
+	}
+
+	@Test
+	void aSlowRefreshThatStartedBeforeAChangeCannotPutTheOlderMessagesBack() throws Exception {
+		HelloMessage oldMessage = new HelloMessage("old");
+		HelloMessage newMessage = new HelloMessage("new");
+		CountDownLatch slowRefreshIsReading = new CountDownLatch(1);
+		CountDownLatch finishSlowRefresh = new CountDownLatch(1);
+		when(helloRepository.count()).thenReturn(1L);
+		when(helloRepository.findAll()).thenAnswer(invocation -> {
+			slowRefreshIsReading.countDown();
+			finishSlowRefresh.await();
+			return List.of(oldMessage);
+		}).thenReturn(List.of(newMessage));
+		HelloMessagePool pool = new HelloMessagePool(helloRepository, 10);
+
+		Thread periodicRefresh = Thread.ofVirtual().start(pool::refresh);
+		slowRefreshIsReading.await();
+		Thread refreshAfterChange = Thread.ofVirtual().start(() -> pool.onHelloMessagesChanged(new HelloMessagesChangedEvent()));
+		Thread.sleep(100);
+		verify(helloRepository, times(1)).findAll();
+
+		finishSlowRefresh.countDown();
+		periodicRefresh.join();
+		refreshAfterChange.join();
+
+		assertThat(pool.randomMessage()).isSameAs(newMessage);
+	}
+
+	@Test
+	void samplesInSQLInsteadWhenThereAreTooManyMessagesToKeepInMemory() {
+		HelloMessage sampledMessage = new HelloMessage("sampled");
+		when(helloRepository.count()).thenReturn(11L);
+		when(helloRepository.findRandomMessage()).thenReturn(Optional.of(sampledMessage));
+		HelloMessagePool pool = new HelloMessagePool(helloRepository, 10);
+
+		assertThat(pool.randomMessage()).isSameAs(sampledMessage);
+		assertThat(pool.randomMessage()).isSameAs(sampledMessage);
+
+		verify(helloRepository, never()).findAll();
+		verify(helloRepository, times(1)).count();
+	}
+
+	@Test
+	void goesBackToThePoolOnceTheTableIsSmallEnoughAgain() {
+		HelloMessage pooledMessage = new HelloMessage("pooled");
+		when(helloRepository.count()).thenReturn(11L, 3L);
+		when(helloRepository.findRandomMessage()).thenReturn(Optional.of(new HelloMessage("sampled")));
+		when(helloRepository.findAll()).thenReturn(List.of(pooledMessage));
+		HelloMessagePool pool = new HelloMessagePool(helloRepository, 10);
+		pool.randomMessage();
+
+		pool.refresh();
+
+		assertThat(pool.randomMessage()).isSameAs(pooledMessage);
+	}
+
+	@Test
+	void throwsIfThereAreNoMessages() {
+		when(helloRepository.count()).thenReturn(0L);
+		when(helloRepository.findAll()).thenReturn(List.of());
+		HelloMessagePool pool = new HelloMessagePool(helloRepository, 10);
+
+		assertThrows(NoSuchElementException.class, pool::randomMessage);
+	}
+}
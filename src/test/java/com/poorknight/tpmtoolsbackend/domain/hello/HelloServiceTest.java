@@ -92,6 +92,23 @@ class HelloServiceTest extends BaseUnitTestWithDatabase {
 
 	}
 
+	@Test
+	void randomMessagesIncludeSavedMessagesAndNeverDeletedOnes() {
+		HelloMessage savedMessage = helloService.saveNewMessage(new HelloMessage("pick me"));
+
+		boolean picked = false;
+		for (int i = 0; i < 1_000 && !picked; i++) {
+			picked = helloService.getRandomHelloMessage().getId().equals(savedMessage.getId());
+		}
+		assertTrue(picked);
+
+		helloService.deleteMessageById(savedMessage.getId());
+
+		for (int i = 0; i < 200; i++) {
+			assertThat(helloService.getRandomHelloMessage().getId()).isNotEqualTo(savedMessage.getId());
+		}
+	}
+
 	private int findTotalNumberOfHelloMessages() throws SQLException {
 		Connection connection = this.getConnection();
 		Statement statement = connection.createStatement();
@@ -275,4 +275,93 @@ class ProjectConsistencyValidatorTest {
 
 		assertThat(true).isTrue(); // validation should pass - nothing happens other than no exceptions are thrown
 	}
-}
\ No newline at end of file
+
+	@Test
+	void validateRowUpdateHandlesVeryLargeTasks() {
+		Row row = new Row(1L, 55L, "row title", List.of(
+				new Task(10L, 1L, "task 1", 500, 0),
+				new Task(11L, 1L, "task 2", 700, 500),
+				new Task(12L, 1L, "task 3", 1, 1300)
+		));
+
+		RowPatchTemplate validPatchTemplate = new RowPatchTemplate(1L, null, List.of(
+				TaskPatchTemplate.builder().id(11L).position(501).build()
+		));
+		new ProjectConsistencyValidator().validateRowChangeSetThrowingExceptions(row, validPatchTemplate);
+
+		RowPatchTemplate overlappingPatchTemplate = new RowPatchTemplate(1L, null, List.of(
+				TaskPatchTemplate.builder().id(12L).position(1199).build()
+		));
+		assertThatThrownBy(() ->
+				new ProjectConsistencyValidator().validateRowChangeSetThrowingExceptions(row, overlappingPatchTemplate))
+				.isOfAnyClassIn(RowUpdateConsistencyException.class)
+				.hasMessage("The proposed change results in more than one task occupying the same space.");
+	}
+
+	@Test
+	void validateRowUpdateFindsOverlapWithATaskThatIsNotTheDirectNeighbor() {
+		Row row = new Row(1L, 55L, "row title", List.of(
+				new Task(10L, 1L, "task 1", 10, 0),
+				new Task(11L, 1L, "task 2", 1, 20),
+				new Task(12L, 1L, "task 3", 1, 30)
+		));
+
+		RowPatchTemplate rowPatchTemplate = new RowPatchTemplate(1L, null, List.of(
+				TaskPatchTemplate.builder().id(11L).position(2).build(),
+				TaskPatchTemplate.builder().id(12L).position(9).build()
+		));
+
+		assertThatThrownBy(() ->
+				new ProjectConsistencyValidator().validateRowChangeSetThrowingExceptions(row, rowPatchTemplate))
+				.isOfAnyClassIn(RowUpdateConsistencyException.class)
+				.hasMessage("The proposed change results in more than one task occupying the same space.");
+	}
+
+	@Test
+	void wholeProjectValidatorFailsIfATaskIsMovedToARowOutsideOfThePlan() {
+		Row row1 = new Row(1L, 55L, "row 1", List.of(
+				new Task(10L, 1L, "task 1-1", 1, 0)
+		));
+		ProjectPlan projectPlan = new ProjectPlan(55L, "", List.of(row1));
+
+		RowPatchTemplate rowPatchTemplate = new RowPatchTemplate(1L, null, List.of(
+				TaskPatchTemplate.builder().id(10L).rowId(99L).build()
+		));
+		ProjectPlanPatchTemplate projectPlanPatchTemplate = new ProjectPlanPatchTemplate(55L, null, List.of(rowPatchTemplate));
+
+		assertThatThrownBy(() ->
+				new ProjectConsistencyValidator().validateProjectPlanChangeSetThrowingExceptions(projectPlan, projectPlanPatchTemplate))
+				.isOfAnyClassIn(ProjectPlanUpdateConsistencyException.class)
+				.hasMessage("The proposed change moves a task to a row that is not part of the change set: 99");
+	}
+
+	@Test
+	void newTasksThatFitAroundEachOtherAreValid() {
+		new ProjectConsistencyValidator().validateNewTasksForRowThrowingExceptions(1L, List.of(
+				new Task(1L, "new task 1", 3, 2),
+				new Task(1L, "new task 2", 1, 5),
+				new Task(1L, "new task 3", 0, 5)
+		));
+
+		assertThat(true).isTrue(); // validation should pass - nothing happens other than no exceptions are thrown
+	}
+
+	@Test
+	void newTasksThatOverlapEachOtherAreInvalid() {
+		assertThatThrownBy(() ->
+				new ProjectConsistencyValidator().validateNewTasksForRowThrowingExceptions(1L, List.of(
+						new Task(1L, "new task 1", 3, 0),
+						new Task(1L, "new task 2", 1, 2)
+				)))
+				.isOfAnyClassIn(RowUpdateConsistencyException.class)
+				.hasMessage("The proposed change results in more than one task occupying the same space.");
+	}
+
+	@Test
+	void newTasksForAnotherRowAreInvalid() {
+		assertThatThrownBy(() ->
+				new ProjectConsistencyValidator().validateNewTasksForRowThrowingExceptions(1L, List.of(new Task(2L, "new task", 1, 0))))
+				.isOfAnyClassIn(RowUpdateConsistencyException.class)
+				.hasMessage("Every new task must belong to row 1, but one belongs to row 2.");
+	}
+}
@@ -0,0 +1,192 @@
+package com.poorknight.tpmtoolsbackend.domain.projectplan;
+
+import com.poorknight.tpmtoolsbackend.domain.BaseUnitTestWithDatabase;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
+import com.poorknight.tpmtoolsbackend.domain.row.RowService;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
+import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.tasks.TaskService;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RecordApplicationEvents
+class ProjectPlanChangeLogTest extends BaseUnitTestWithDatabase {
+
+	@Autowired
+	private ProjectPlanChangeLog changeLog;
+
+	@Autowired
+	private RowService rowService;
+
+	@Autowired
+	private TaskService taskService;
+
+	@Autowired
+	private ProjectPlanService projectPlanService;
+
+	@Autowired
+	private ApplicationEvents applicationEvents;
+
+	private Long projectPlanId;
+	private Long rowId;
+
+	@BeforeEach
+	void setUp() {
+		deleteAllTasksAndRowsAndProjectPlans();
+		projectPlanId = createProjectPlanWithSQLOnly("change log plan");
+		rowId = createRowWithSQLOnly(projectPlanId, "row title");
+	}
+
+	@AfterEach
+	void tearDown() {
+		deleteAllTasksAndRowsAndProjectPlans();
+	}
+
+	@Test
+	void everyMutationMovesThePlansRevisionOnAndRecordsItsChanges() throws Exception {
+		Task task = taskService.saveNewTask(new Task(rowId, "task title", 1, 1));
+		taskService.patchTask(new Task(task.getId(), rowId, "new task title", null, null));
+		rowService.saveNewRow(new Row(projectPlanId, "new row", new ArrayList<>()));
+
+		assertThat(findRevision()).isEqualTo(3L);
+		assertThat(findRecordedChanges()).containsExactly(
+				"1/0 TASK_ADDED " + task.getId() + " task title",
+				"2/0 TASK_RETITLED " + task.getId() + " new task title",
+				"3/0 ROW_ADDED null new row");
+	}
+
+	@Test
+	void taskRowAndPlanPatchesThatMoveOrResizeTasksAreAllRecorded() throws Exception {
+		Long firstTaskId = createTaskWithSQLOnly(rowId, "first task", 1, 1);
+		Long secondTaskId = createTaskWithSQLOnly(rowId, "second task", 1, 3);
+
+		taskService.patchTask(new Task(firstTaskId, null, null, null, 10));
+		rowService.patchRow(new RowPatchTemplate(rowId, null, List.of(
+				TaskPatchTemplate.builder().id(firstTaskId).size(2).build(),
+				TaskPatchTemplate.builder().id(secondTaskId).position(5).build())));
+		projectPlanService.updateProjectPlan(new ProjectPlanPatchTemplate(projectPlanId, null, List.of(
+				new RowPatchTemplate(rowId, null, List.of(TaskPatchTemplate.builder().id(secondTaskId).position(20).build())))));
+
+		assertThat(findRevision()).isEqualTo(4L);
+		assertThat(findRecordedChanges()).containsExactly(
+				"1/0 TASK_MOVED " + firstTaskId + " first task",
+				"2/0 TASK_RESIZED " + firstTaskId + " first task",
+				"3/0 TASK_MOVED " + secondTaskId + " second task",
+				"4/0 TASK_MOVED " + secondTaskId + " second task");
+	}
+
+	@Test
+	void manyChangesFromOneMutationShareOneRevision() throws Exception {
+		List<Task> newTasks = new ArrayList<>();
+		for (int i = 1; i <= 5_000; i++) {
+			newTasks.add(new Task(rowId, "task " + i, 1, i));
+		}
+
+		taskService.saveNewTasks(newTasks);
+
+		assertThat(findRevision()).isEqualTo(1L);
+		List<String> changes = findRecordedChanges();
+		assertThat(changes).hasSize(5_000);
+		assertThat(changes.get(0)).startsWith("1/0 TASK_ADDED");
+		assertThat(changes.get(4_999)).startsWith("1/4999 TASK_ADDED").endsWith("task 5000");
+	}
+
+	@Test
+	void eventsWithoutChangesAreNotRecorded() throws Exception {
+		changeLog.onProjectPlanChanged(new ProjectPlanChangedEvent(projectPlanId));
+
+		assertThat(findRevision()).isEqualTo(0L);
+		assertThat(findRecordedChanges()).isEmpty();
+	}
+
+	@Test
+	void aTaskMovedToAnotherPlanIsDeletedFromTheOldPlanAndAddedToTheNewOne() throws Exception {
+		Long otherProjectPlanId = createProjectPlanWithSQLOnly("other plan");
+		Long otherPlansRowId = createRowWithSQLOnly(otherProjectPlanId, "other plan's row");
+		Task task = taskService.saveNewTask(new Task(rowId, "moving task", 1, 1));
+
+		taskService.patchTask(new Task(task.getId(), otherPlansRowId, null, null, null));
+
+		assertThat(findRecordedChanges()).containsExactly(
+				"1/0 TASK_ADDED " + task.getId() + " moving task",
+				"2/0 TASK_DELETED " + task.getId() + " moving task");
+		assertThat(findRecordedChanges(otherProjectPlanId)).containsExactly(
+				"1/0 TASK_ADDED " + task.getId() + " moving task");
+	}
+
+	// so that the change log locks the plans in the same order whichever way a task moves between them
+	@Test
+	void aTaskMovedToAnotherPlanHasItsChangesPublishedInPlanIdOrder() {
+		Long otherProjectPlanId = createProjectPlanWithSQLOnly("other plan");
+		Long otherPlansRowId = createRowWithSQLOnly(otherProjectPlanId, "other plan's row");
+		Task task = taskService.saveNewTask(new Task(otherPlansRowId, "moving task", 1, 1));
+
+		taskService.patchTask(new Task(task.getId(), rowId, null, null, null));
+
+		List<Long> projectPlanIds = applicationEvents.stream(ProjectPlanChangedEvent.class).map(ProjectPlanChangedEvent::getProjectPlanId).toList();
+		assertThat(projectPlanIds).containsExactly(otherProjectPlanId, projectPlanId, otherProjectPlanId);
+	}
+
+	@Test
+	void pruningDeletesOnlyTheOlderChangesAndKeepsTheRevision() throws Exception {
+		taskService.saveNewTask(new Task(rowId, "old task", 1, 1));
+		Instant cutoff = Instant.now();
+		Thread.sleep(10);
+		taskService.saveNewTask(new Task(rowId, "new task", 1, 2));
+
+		int prunedCount = changeLog.pruneChangesRecordedBefore(cutoff);
+
+		assertThat(prunedCount).isEqualTo(1);
+		assertThat(findRevision()).isEqualTo(2L);
+		assertThat(findRecordedChanges()).hasSize(1);
+		assertThat(findRecordedChanges().get(0)).startsWith("2/0 TASK_ADDED");
+	}
+
+	private Long findRevision() throws Exception {
+		try (Connection connection = getConnection();
+			 PreparedStatement statement = connection.prepareStatement("SELECT revision FROM p0_project_plan WHERE id = ?")) {
+			statement.setLong(1, projectPlanId);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+		}
+	}
+
+	private List<String> findRecordedChanges() throws Exception {
+		return findRecordedChanges(projectPlanId);
+	}
+
+	// "revision/change_index type task_id title", in the order the changes were made
+	private List<String> findRecordedChanges(Long projectPlanId) throws Exception {
+		List<String> changes = new ArrayList<>();
+		try (Connection connection = getConnection();
+			 PreparedStatement statement = connection.prepareStatement(
+					 "SELECT revision, change_index, type, task_id, title FROM p0_project_plan_change WHERE p0_project_plan_fk = ? ORDER BY revision, change_index")) {
+			statement.setLong(1, projectPlanId);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					changes.add(resultSet.getLong(1) + "/" + resultSet.getInt(2) + " " + resultSet.getString(3) + " "
+							+ resultSet.getObject(4) + " " + resultSet.getString(5));
+				}
+			}
+		}
+		return changes;
+	}
+}
@@ -4,23 +4,35 @@ import com.poorknight.tpmtoolsbackend.domain.BaseUnitTestWithDatabase;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService.InvalidProjectPlanUpdateTemplateException;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlan;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanPatchTemplate;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.entity.ProjectPlanUpdate;
 import com.poorknight.tpmtoolsbackend.domain.row.RowService;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.tasks.TaskService;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
 import static com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator.ProjectPlanUpdateConsistencyException;
 import static com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService.ProjectPlanNotFoundException;
+import static com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectPlanService.ProjectPlanVersionMismatchException;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
@@ -44,6 +56,12 @@ class ProjectPlanServiceTest extends BaseUnitTestWithDatabase {
 	@Autowired
 	private ProjectPlanRepository projectPlanRepository;
 
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@BeforeEach
 	void setUp() {
 		deleteAllTasksAndRowsAndProjectPlans();
@@ -60,7 +78,7 @@ class ProjectPlanServiceTest extends BaseUnitTestWithDatabase {
 		Long row2Id = createRowWithSQLOnly(projectPlanId, "row 2 title");
 		createTaskWithSQLOnly(row1Id, "row 1 task 1");
 		createTaskWithSQLOnly(row2Id, "row 2 task 1");
-		createTaskWithSQLOnly(row2Id, "row 2 task 2");
+		createTaskWithSQLOnly(row2Id, "row 2 task 2", 1, 2);
 
 		ProjectPlan projectPlan = service.getProjectPlan(projectPlanId);
 
@@ -88,6 +106,89 @@ class ProjectPlanServiceTest extends BaseUnitTestWithDatabase {
 		assertThat(row2Tasks.get(1).getTitle()).isEqualTo("row 2 task 2");
 	}
 
+	@Test
+	void canGetSavedProjectPlanThatHasNoRows() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("an empty plan");
+
+		ProjectPlan projectPlan = service.getProjectPlan(projectPlanId);
+
+		assertThat(projectPlan.getId()).isEqualTo(projectPlanId);
+		assertThat(projectPlan.getTitle()).isEqualTo("an empty plan");
+		assertThat(projectPlan.getRowList()).isEmpty();
+	}
+
+	@Test
+	void canGetSavedProjectPlanWithEmptyRowsMixedIn() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
+		Long row1Id = createRowWithSQLOnly(projectPlanId, "row 1 title");
+		Long row2Id = createRowWithSQLOnly(projectPlanId, "row 2 title");
+		Long row3Id = createRowWithSQLOnly(projectPlanId, "row 3 title");
+		createTaskWithSQLOnly(row2Id, "row 2 task 1");
+
+		ProjectPlan projectPlan = service.getProjectPlan(projectPlanId);
+
+		List<Row> rows = projectPlan.getRowList();
+		assertThat(rows.size()).isEqualTo(3);
+		assertThat(rows.get(0).getId()).isEqualTo(row1Id);
+		assertThat(rows.get(0).getTaskList()).isEmpty();
+		assertThat(rows.get(1).getId()).isEqualTo(row2Id);
+		assertThat(rows.get(1).getTaskList().size()).isEqualTo(1);
+		assertThat(rows.get(2).getId()).isEqualTo(row3Id);
+		assertThat(rows.get(2).getTaskList()).isEmpty();
+	}
+
+	@Test
+	void getProjectPlanLoadsALargePlanWithASingleSQLStatement() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("a big plan");
+		for (int i = 0; i < 200; i++) {
+			Long rowId = createRowWithSQLOnly(projectPlanId, "row " + i);
+			createTaskWithSQLOnly(rowId, "row " + i + " task 1", 1, 1);
+			createTaskWithSQLOnly(rowId, "row " + i + " task 2", 1, 2);
+		}
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+
+		ProjectPlan projectPlan = service.getProjectPlan(projectPlanId);
+
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		statistics.setStatisticsEnabled(false);
+
+		assertThat(projectPlan.getRowList().size()).isEqualTo(200);
+		for (Row row : projectPlan.getRowList()) {
+			assertThat(row.getTaskList().size()).isEqualTo(2);
+		}
+	}
+
+	@Test
+	void getProjectPlanIsTimedAndRecordsTheSizeOfThePlan() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
+		Long row1Id = createRowWithSQLOnly(projectPlanId, "row 1 title");
+		createRowWithSQLOnly(projectPlanId, "row 2 title");
+		createTaskWithSQLOnly(row1Id, "row 1 task 1", 1, 1);
+		createTaskWithSQLOnly(row1Id, "row 1 task 2", 1, 2);
+		long callsBefore = countCalls("getProjectPlan");
+		DistributionSummary loadedRows = meterRegistry.get("tpm.plans.loaded.rows").summary();
+		DistributionSummary loadedTasks = meterRegistry.get("tpm.plans.loaded.tasks").summary();
+		double rowsBefore = loadedRows.totalAmount();
+		double tasksBefore = loadedTasks.totalAmount();
+
+		service.getProjectPlan(projectPlanId);
+
+		assertThat(countCalls("getProjectPlan")).isEqualTo(callsBefore + 1);
+		assertThat(loadedRows.totalAmount()).isEqualTo(rowsBefore + 2);
+		assertThat(loadedTasks.totalAmount()).isEqualTo(tasksBefore + 2);
+	}
+
+	private long countCalls(String methodName) {
+		Timer timer = meterRegistry.find("tpm.domain.calls")
+				.tag("class", ProjectPlanService.class.getName())
+				.tag("method", methodName)
+				.timer();
+		return timer == null ? 0 : timer.count();
+	}
+
 	@Test
 	void getProjectPlanThrowsExceptionIfNoneIsFoundMatchingId() {
 		ProjectPlanNotFoundException e = assertThrows(ProjectPlanNotFoundException.class,
@@ -100,11 +201,13 @@ class ProjectPlanServiceTest extends BaseUnitTestWithDatabase {
 		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
 		Long row1Id = createRowWithSQLOnly(projectPlanId, "row 1 title");
 		Long row2Id = createRowWithSQLOnly(projectPlanId, "row 2 title");
-		createTaskWithSQLOnly(row1Id, "row 1 task 1");
+		Long taskId = createTaskWithSQLOnly(row1Id, "row 1 task 1");
 		createTaskWithSQLOnly(row2Id, "row 2 task 1");
-		createTaskWithSQLOnly(row2Id, "row 2 task 2");
+		createTaskWithSQLOnly(row2Id, "row 2 task 2", 1, 2);
 
-		ProjectPlanPatchTemplate patchTemplate = new ProjectPlanPatchTemplate(projectPlanId, "", List.of());
+		ProjectPlanPatchTemplate patchTemplate = new ProjectPlanPatchTemplate(projectPlanId, "",
+														List.of(new RowPatchTemplate(row1Id, null,
+															List.of(TaskPatchTemplate.builder().id(taskId).position(5).build()))));
 		Mockito.doThrow(new ProjectPlanUpdateConsistencyException("hi")).when(projectConsistencyValidator).validateProjectPlanChangeSetThrowingExceptions(any(), eq(patchTemplate));
 
 		ProjectPlanUpdateConsistencyException e = assertThrows(ProjectPlanUpdateConsistencyException.class,
@@ -126,11 +229,13 @@ class ProjectPlanServiceTest extends BaseUnitTestWithDatabase {
 														List.of(new RowPatchTemplate(row2Id, null,
 															List.of(TaskPatchTemplate.builder().id(taskId).position(5).build()))));
 
-		ProjectPlan projectPlan = service.updateProjectPlan(patchTemplate);
+		ProjectPlanUpdate update = service.updateProjectPlan(patchTemplate);
 
-		List<Row> updatedRows = projectPlan.getRowList();
-		assertThat(updatedRows.size()).isEqualTo(2);
-		List<Task> taskList2 = updatedRows.get(1).getTaskList();
+		// row 1 was not touched by the patch, so it is not loaded
+		List<Row> updatedRows = update.getChangedRows();
+		assertThat(updatedRows.size()).isEqualTo(1);
+		assertThat(updatedRows.get(0).getId()).isEqualTo(row2Id);
+		List<Task> taskList2 = updatedRows.get(0).getTaskList();
 		assertThat(taskList2.size()).isEqualTo(2);
 		boolean tested = false;
 		for (Task task : taskList2) {
@@ -158,9 +263,9 @@ class ProjectPlanServiceTest extends BaseUnitTestWithDatabase {
 																	.rowId(row1Id)
 																	.position(5).build()))));
 
-		ProjectPlan projectPlan = service.updateProjectPlan(patchTemplate);
+		ProjectPlanUpdate update = service.updateProjectPlan(patchTemplate);
 
-		List<Row> updatedRows = projectPlan.getRowList();
+		List<Row> updatedRows = update.getChangedRows();
 		assertThat(updatedRows.size()).isEqualTo(2);
 
 		assertThat(updatedRows.get(0).getId()).isEqualTo(row1Id);
@@ -203,9 +308,9 @@ class ProjectPlanServiceTest extends BaseUnitTestWithDatabase {
 																			.rowId(row1Id)
 																			.position(2).build()))));
 
-		ProjectPlan projectPlan = service.updateProjectPlan(patchTemplate);
+		ProjectPlanUpdate update = service.updateProjectPlan(patchTemplate);
 
-		List<Row> updatedRows = projectPlan.getRowList();
+		List<Row> updatedRows = update.getChangedRows();
 		assertThat(updatedRows.size()).isEqualTo(2);
 
 		assertThat(updatedRows.get(0).getId()).isEqualTo(row1Id);
@@ -235,6 +340,129 @@ class ProjectPlanServiceTest extends BaseUnitTestWithDatabase {
 		assertThat(tested2).isTrue();
  	}
 
+	@Test
+	void updateMovesThePlanAndTheMovedTasksOnToTheirNextVersion() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1 title");
+		Long movedTaskId = createTaskWithSQLOnly(rowId, "row 1 task 1", 1, 1);
+		Long untouchedTaskId = createTaskWithSQLOnly(rowId, "row 1 task 2", 1, 2);
+
+		ProjectPlanPatchTemplate patchTemplate = new ProjectPlanPatchTemplate(projectPlanId, "new title",
+														List.of(new RowPatchTemplate(rowId, null,
+															List.of(TaskPatchTemplate.builder().id(movedTaskId).position(5).build()))));
+
+		ProjectPlanUpdate update = service.updateProjectPlan(patchTemplate, 0L);
+
+		assertThat(update.getVersion()).isEqualTo(1L);
+		assertThat(update.getTitle()).isEqualTo("new title");
+		for (Task task : update.getChangedRows().get(0).getTaskList()) {
+			assertThat(task.getVersion()).isEqualTo(Objects.equals(task.getId(), movedTaskId) ? 1L : 0L);
+		}
+
+		// what was returned is what was written
+		ProjectPlan reloadedProjectPlan = service.getProjectPlan(projectPlanId);
+		assertThat(reloadedProjectPlan).isEqualTo(projectPlan);
+		assertThat(reloadedProjectPlan.getRowList().get(0).getTaskList().get(1).getId()).isEqualTo(untouchedTaskId);
+	}
+
+	@Test
+	void updateThrowsAndChangesNothingIfThePlanIsNotAtTheExpectedVersion() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1 title");
+		Long taskId = createTaskWithSQLOnly(rowId, "row 1 task 1", 1, 1);
+		service.updateProjectPlan(new ProjectPlanPatchTemplate(projectPlanId, "second title", null), 0L);
+
+		// a client that still thinks the plan is at version 0
+		ProjectPlanPatchTemplate stalePatchTemplate = new ProjectPlanPatchTemplate(projectPlanId, "third title",
+														List.of(new RowPatchTemplate(rowId, null,
+															List.of(TaskPatchTemplate.builder().id(taskId).position(5).build()))));
+		ProjectPlanVersionMismatchException e = assertThrows(ProjectPlanVersionMismatchException.class,
+				() -> service.updateProjectPlan(stalePatchTemplate, 0L));
+
+		assertThat(e.getMessage()).contains("is at version 1, not the expected version 0");
+		ProjectPlan projectPlan = service.getProjectPlan(projectPlanId);
+		assertThat(projectPlan.getTitle()).isEqualTo("second title");
+		assertThat(projectPlan.getVersion()).isEqualTo(1L);
+		assertThat(projectPlan.getRowList().get(0).getTaskList().get(0).getPosition()).isEqualTo(1);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {10, 100, 1000})
+	void updateMovesManyTasksWithAFixedNumberOfSQLStatements(int numberOfTasks) {
+		ProjectPlanPatchTemplate patchTemplate = createPlanWithTasksToMoveToItsSecondRow(numberOfTasks);
+		Long row2Id = patchTemplate.getRowList().get(0).getId();
+
+		Statistics statistics = startCountingStatements();
+		ProjectPlanUpdate update = service.updateProjectPlan(patchTemplate);
+		long statementCount = stopCountingStatements(statistics);
+
+		// load, move the plan's version on, read current tasks, update, record the changes under the next revision
+		assertThat(statementCount).isLessThanOrEqualTo(5);
+		assertThat(update.getChangedRows().get(0).getTaskList()).isEmpty();
+		List<Task> movedTasks = update.getChangedRows().get(1).getTaskList();
+		assertThat(movedTasks.size()).isEqualTo(numberOfTasks);
+		for (Task task : movedTasks) {
+			assertThat(task.getRowId()).isEqualTo(row2Id);
+			assertThat(task.getPosition()).isEqualTo(numberOfTasks + 1 - Integer.parseInt(task.getTitle().substring("task ".length())));
+		}
+	}
+
+	/*
+		Moves the same tasks as one patch, and then one task at a time through TaskService.patchTask (the way a plan patch
+		used to move them), and prints the statement count and time for each.  Slow, so it only runs with -Dtpm.loadtest=true
+	 */
+	@ParameterizedTest
+	@ValueSource(ints = {10, 100, 1000})
+	@EnabledIfSystemProperty(named = "tpm.loadtest", matches = "true")
+	void reportsStatementsAndTimeForMovingTasksInOnePatchAndOneAtATime(int numberOfTasks) {
+		ProjectPlanPatchTemplate patchTemplate = createPlanWithTasksToMoveToItsSecondRow(numberOfTasks);
+		Statistics statistics = startCountingStatements();
+		long start = System.nanoTime();
+		service.updateProjectPlan(patchTemplate);
+		long patchMillis = (System.nanoTime() - start) / 1_000_000;
+		long patchStatementCount = stopCountingStatements(statistics);
+
+		deleteAllTasksAndRowsAndProjectPlans();
+		patchTemplate = createPlanWithTasksToMoveToItsSecondRow(numberOfTasks);
+		Long row2Id = patchTemplate.getRowList().get(0).getId();
+		statistics = startCountingStatements();
+		start = System.nanoTime();
+		for (TaskPatchTemplate taskPatchTemplate : patchTemplate.getRowList().get(0).getTaskList()) {
+			taskService.patchTask(new Task(taskPatchTemplate.getId(), row2Id, null, null, taskPatchTemplate.getPosition()));
+		}
+		long oneAtATimeMillis = (System.nanoTime() - start) / 1_000_000;
+		long oneAtATimeStatementCount = stopCountingStatements(statistics);
+
+		System.out.printf("Moved %d tasks: %d statements in %d ms in one patch, %d statements in %d ms one at a time%n",
+				numberOfTasks, patchStatementCount, patchMillis, oneAtATimeStatementCount, oneAtATimeMillis);
+	}
+
+	// tasks 1..n in row 1 at positions 1..n, and a patch that moves them all to row 2 in reverse order
+	private ProjectPlanPatchTemplate createPlanWithTasksToMoveToItsSecondRow(int numberOfTasks) {
+		Long projectPlanId = createProjectPlanWithSQLOnly("a big plan");
+		Long row1Id = createRowWithSQLOnly(projectPlanId, "row 1 title");
+		Long row2Id = createRowWithSQLOnly(projectPlanId, "row 2 title");
+		List<TaskPatchTemplate> taskPatchTemplates = new ArrayList<>();
+		for (int i = 1; i <= numberOfTasks; i++) {
+			Long taskId = createTaskWithSQLOnly(row1Id, "task " + i, 1, i);
+			taskPatchTemplates.add(TaskPatchTemplate.builder().id(taskId).rowId(row2Id).position(numberOfTasks + 1 - i).build());
+		}
+		return new ProjectPlanPatchTemplate(projectPlanId, null, List.of(new RowPatchTemplate(row2Id, null, taskPatchTemplates)));
+	}
+
+	private Statistics startCountingStatements() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+		return statistics;
+	}
+
+	private static long stopCountingStatements(Statistics statistics) {
+		long statementCount = statistics.getPrepareStatementCount();
+		statistics.setStatisticsEnabled(false);
+		return statementCount;
+	}
+
 	@Test
 	void updateCanChangeJustTheProjectPlanTitle() {
 
@@ -244,16 +472,118 @@ class ProjectPlanServiceTest extends BaseUnitTestWithDatabase {
 
 		ProjectPlanPatchTemplate patchTemplate = new ProjectPlanPatchTemplate(projectPlanId, "new title", null);
 
-		ProjectPlan projectPlan = service.updateProjectPlan(patchTemplate);
+		ProjectPlanUpdate update = service.updateProjectPlan(patchTemplate);
 
-		assertThat(projectPlan.getTitle()).isEqualTo("new title");
+		assertThat(update.getTitle()).isEqualTo("new title");
+		assertThat(update.getVersion()).isEqualTo(1L);
+		assertThat(update.getChangedRows()).isEmpty();
 
-		List<Row> updatedRows = projectPlan.getRowList();
-		assertThat(updatedRows.size()).isEqualTo(1);
+		ProjectPlan reloadedProjectPlan = service.getProjectPlan(projectPlanId);
+		assertThat(reloadedProjectPlan.getTitle()).isEqualTo("new title");
+		assertThat(reloadedProjectPlan.getRowList().get(0).getTaskList().size()).isEqualTo(1);
+	}
 
-		assertThat(updatedRows.get(0).getId()).isEqualTo(row1Id);
-		List<Task> taskList1 = updatedRows.get(0).getTaskList();
-		assertThat(taskList1.size()).isEqualTo(1);
+	@Test
+	void updateChangesJustTheTitleWithASingleSQLStatement() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
+		for (int i = 0; i < 20; i++) {
+			Long rowId = createRowWithSQLOnly(projectPlanId, "row " + i);
+			createTaskWithSQLOnly(rowId, "row " + i + " task 1", 1, 1);
+		}
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+
+		service.updateProjectPlan(new ProjectPlanPatchTemplate(projectPlanId, "new title", null), 0L);
+
+		long statementCount = statistics.getPrepareStatementCount();
+		statistics.setStatisticsEnabled(false);
+
+		// the update, and then recording the change under the next revision
+		assertThat(statementCount).isLessThanOrEqualTo(2);
+		Mockito.verify(projectConsistencyValidator, Mockito.never()).validateProjectPlanChangeSetThrowingExceptions(any(), any());
+	}
+
+	@Test
+	void updateOfJustTheTitleThrowsAndChangesNothingIfThePlanIsNotAtTheExpectedVersion() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
+		service.updateProjectPlan(new ProjectPlanPatchTemplate(projectPlanId, "second title", null), 0L);
+
+		ProjectPlanVersionMismatchException e = assertThrows(ProjectPlanVersionMismatchException.class,
+				() -> service.updateProjectPlan(new ProjectPlanPatchTemplate(projectPlanId, "third title", null), 0L));
+
+		assertThat(e.getMessage()).contains("is at version 1, not the expected version 0");
+		assertThat(service.getProjectPlan(projectPlanId).getTitle()).isEqualTo("second title");
+	}
+
+	@Test
+	void updateOfJustTheTitleThrowsExceptionIfThePlanDoesNotExist() {
+		ProjectPlanNotFoundException e = assertThrows(ProjectPlanNotFoundException.class,
+				() -> service.updateProjectPlan(new ProjectPlanPatchTemplate(-1L, "new title", null)));
+
+		assertThat(e.getMessage()).contains("No project plan found for the given id: -1");
+	}
+
+	@Test
+	void updateRecordsHowManyTasksItMovedAndHowManyRowsItLoaded() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
+		Long row1Id = createRowWithSQLOnly(projectPlanId, "row 1 title");
+		Long row2Id = createRowWithSQLOnly(projectPlanId, "row 2 title");
+		createRowWithSQLOnly(projectPlanId, "row 3 title");
+		Long task1Id = createTaskWithSQLOnly(row1Id, "row 1 task 1", 1, 1);
+		Long task2Id = createTaskWithSQLOnly(row1Id, "row 1 task 2", 1, 2);
+		DistributionSummary patchedTasks = meterRegistry.get("tpm.plans.patch.tasks").summary();
+		DistributionSummary patchRows = meterRegistry.get("tpm.plans.patch.rows").summary();
+		long patchesBefore = patchedTasks.count();
+		double tasksBefore = patchedTasks.totalAmount();
+		double rowsBefore = patchRows.totalAmount();
+
+		service.updateProjectPlan(new ProjectPlanPatchTemplate(projectPlanId, null,
+				List.of(new RowPatchTemplate(row2Id, null,
+						List.of(TaskPatchTemplate.builder().id(task1Id).rowId(row2Id).position(1).build(),
+								TaskPatchTemplate.builder().id(task2Id).rowId(row2Id).position(2).build())))));
+
+		assertThat(patchedTasks.count()).isEqualTo(patchesBefore + 1);
+		assertThat(patchedTasks.totalAmount()).isEqualTo(tasksBefore + 2);
+		assertThat(patchRows.totalAmount()).isEqualTo(rowsBefore + 2);
+		assertThat(countCalls("updateProjectPlan")).isGreaterThan(0);
+	}
+
+	@Test
+	void updateOnlyLoadsTheRowsTheTasksAreMovedOutOfAndInto() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
+		Long row1Id = createRowWithSQLOnly(projectPlanId, "row 1 title");
+		Long row2Id = createRowWithSQLOnly(projectPlanId, "row 2 title");
+		Long row3Id = createRowWithSQLOnly(projectPlanId, "row 3 title");
+		Long taskId = createTaskWithSQLOnly(row1Id, "row 1 task 1", 1, 1);
+		createTaskWithSQLOnly(row3Id, "row 3 task 1", 1, 1);
+
+		ProjectPlanPatchTemplate patchTemplate = new ProjectPlanPatchTemplate(projectPlanId, null,
+														List.of(new RowPatchTemplate(row2Id, null,
+															List.of(TaskPatchTemplate.builder().id(taskId).rowId(row2Id).position(1).build()))));
+
+		ProjectPlanUpdate update = service.updateProjectPlan(patchTemplate);
+
+		assertThat(update.getChangedRows()).extracting(Row::getId).containsExactly(row1Id, row2Id);
+		assertThat(update.getChangedRows().get(0).getTaskList()).isEmpty();
+		assertThat(update.getChangedRows().get(1).getTaskList()).extracting(Task::getId).containsExactly(taskId);
+	}
+
+	@Test
+	void updateCannotMoveATaskIntoARowOfAnotherPlan() {
+		Long projectPlanId = createProjectPlanWithSQLOnly("project plan title");
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row 1 title");
+		Long taskId = createTaskWithSQLOnly(rowId, "row 1 task 1", 1, 1);
+		Long otherProjectPlanId = createProjectPlanWithSQLOnly("another plan");
+		Long otherPlansRowId = createRowWithSQLOnly(otherProjectPlanId, "another plan's row");
+
+		ProjectPlanPatchTemplate patchTemplate = new ProjectPlanPatchTemplate(projectPlanId, null,
+														List.of(new RowPatchTemplate(otherPlansRowId, null,
+															List.of(TaskPatchTemplate.builder().id(taskId).rowId(otherPlansRowId).position(1).build()))));
+
+		assertThrows(ProjectPlanUpdateConsistencyException.class, () -> service.updateProjectPlan(patchTemplate));
+		assertThat(service.getProjectPlan(projectPlanId).getRowList().get(0).getTaskList()).extracting(Task::getId).containsExactly(taskId);
 	}
 
 	@Test
@@ -2,6 +2,9 @@ package com.poorknight.tpmtoolsbackend.domain.row;
 
 import com.poorknight.tpmtoolsbackend.domain.BaseUnitTestWithDatabase;
 import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChange.Type;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.event.ProjectPlanChangedEvent;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.RowPatchTemplate;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.TaskPatchTemplate;
@@ -13,6 +16,8 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -29,6 +34,7 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 
 @SpyBean(classes = {RowRepository.class, TaskRepository.class, ProjectConsistencyValidator.class, RowServiceValidator.class})
+@RecordApplicationEvents
 class RowServiceTest extends BaseUnitTestWithDatabase {
 
 	@Autowired
@@ -46,6 +52,9 @@ class RowServiceTest extends BaseUnitTestWithDatabase {
 	@Autowired
 	private RowServiceValidator rowServiceValidator;
 
+	@Autowired
+	private ApplicationEvents applicationEvents;
+
 	private Long projectPlanId;
 
 	@BeforeEach
@@ -141,7 +150,7 @@ class RowServiceTest extends BaseUnitTestWithDatabase {
 
 		createTaskWithSQLOnly(id1, "first");
 		createTaskWithSQLOnly(id2, "second1");
-		createTaskWithSQLOnly(id2, "second2");
+		createTaskWithSQLOnly(id2, "second2", 1, 2);
 
 		List<Row> rows = rowService.getAllRowsForProjectPlan(projectPlanId);
 
@@ -188,6 +197,30 @@ class RowServiceTest extends BaseUnitTestWithDatabase {
 		}
 	}
 
+	@Test
+	void deletingARowWithTasksThrowsAndDeletesNothing() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "row title");
+		createTaskWithSQLOnly(rowId, "task 1", 1, 0);
+
+		try {
+			rowService.deleteEmptyRowById(rowId);
+			fail("expecting exception");
+		} catch (RowServiceValidator.CannotDeleteNonEmptyRowException e) {
+			assertThat(findCountOfRows()).isEqualTo(1);
+			assertThat(findTotalNumberOfTasks()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void deletingARowThatDoesNotExistThrowsRowNotFound() {
+		try {
+			rowService.deleteEmptyRowById(-1L);
+			fail("expecting exception");
+		} catch (RowServiceValidator.RowNotFoundException e) {
+			assertThat(e.getMessage()).contains("No row exists to be deleted");
+		}
+	}
+
 	@Test
 	void deleteReturnsTheObjectThatWasDeleted() {
 		Long rowId = createRowWithSQLOnly(projectPlanId, "new row");
@@ -240,6 +273,25 @@ class RowServiceTest extends BaseUnitTestWithDatabase {
 		assertThat(returnedTask.getPosition()).isEqualTo(5);
 	}
 
+	@Test
+	void rowPatchPublishesTheMoveAndTheResizeOfItsTasks() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "ohai");
+		Long resizedTaskId = createTaskWithSQLOnly(rowId, "task 1", 1, 1);
+		Long movedTaskId = createTaskWithSQLOnly(rowId, "task 2", 1, 3);
+
+		TaskPatchTemplate resize = TaskPatchTemplate.builder().id(resizedTaskId).size(2).build();
+		TaskPatchTemplate move = TaskPatchTemplate.builder().id(movedTaskId).position(6).build();
+		rowService.patchRow(new RowPatchTemplate(rowId, null, List.of(resize, move)));
+
+		List<ProjectPlanChange> changes = applicationEvents.stream(ProjectPlanChangedEvent.class)
+				.filter(event -> event.getProjectPlanId().equals(projectPlanId))
+				.flatMap(event -> event.getChanges().stream())
+				.toList();
+		assertThat(changes).containsExactly(
+				new ProjectPlanChange(Type.TASK_RESIZED, rowId, resizedTaskId, "task 1", 2, 1),
+				new ProjectPlanChange(Type.TASK_MOVED, rowId, movedTaskId, "task 2", 1, 6));
+	}
+
 	@Test
 	void nullTitleInPatchDoNotChangeTheTitle() {
 		Long rowId = createRowWithSQLOnly(projectPlanId, "ohai");
@@ -366,6 +418,42 @@ class RowServiceTest extends BaseUnitTestWithDatabase {
 		assertThat(returnedTask2.getPosition()).isEqualTo(5);
 	}
 
+	@Test
+	void patchCanSwapTheSpacesOfTwoTasksEvenThoughTheyOverlapHalfwayThrough() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "ohai");
+		Long task1Id = createTaskWithSQLOnly(rowId, "task 1", 2, 0);
+		Long task2Id = createTaskWithSQLOnly(rowId, "task 2", 2, 2);
+
+		TaskPatchTemplate task1Template = TaskPatchTemplate.builder().id(task1Id).position(2).build();
+		TaskPatchTemplate task2Template = TaskPatchTemplate.builder().id(task2Id).position(0).build();
+		rowService.patchRow(new RowPatchTemplate(rowId, null, List.of(task1Template, task2Template)));
+
+		List<Task> tasks = rowService.getAllRowsForProjectPlan(projectPlanId).get(0).getTaskList();
+		assertThat(tasks).filteredOn(task -> task.getId().equals(task1Id)).extracting(Task::getPosition).containsExactly(2);
+		assertThat(tasks).filteredOn(task -> task.getId().equals(task2Id)).extracting(Task::getPosition).containsExactly(0);
+	}
+
+	@Test
+	void patchThrowsAndChangesNothingIfTheTasksStillOverlapOnceTheyAreAllPatched() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "ohai");
+		Long task1Id = createTaskWithSQLOnly(rowId, "task 1", 2, 0);
+		createTaskWithSQLOnly(rowId, "task 2", 2, 2);
+
+		// the validator is what normally catches this - here it is the database
+		Mockito.doNothing().when(projectConsistencyValidator).validateRowChangeSetThrowingExceptions(any(), any());
+		TaskPatchTemplate task1Template = TaskPatchTemplate.builder().id(task1Id).position(1).build();
+
+		try {
+			rowService.patchRow(new RowPatchTemplate(rowId, null, List.of(task1Template)));
+			fail("expecting exception");
+		} catch (ProjectConsistencyValidator.RowUpdateConsistencyException e) {
+			assertThat(e.getMessage()).isEqualTo("The proposed change results in more than one task occupying the same space.");
+		}
+
+		List<Task> tasks = rowService.getAllRowsForProjectPlan(projectPlanId).get(0).getTaskList();
+		assertThat(tasks).filteredOn(task -> task.getId().equals(task1Id)).extracting(Task::getPosition).containsExactly(0);
+	}
+
 	@Test
 	void ifARowHasSeveralTasksButOnlySomeAreMentionedForPatchThenTheOthersRemainOk() {
 
@@ -577,4 +665,78 @@ class RowServiceTest extends BaseUnitTestWithDatabase {
 		return found;
 	}
 
-}
\ No newline at end of file
+	@Test
+	void patchingOnlyTheTasksOfARowStillMovesTheRowOnToItsNextVersion() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "ohai");
+		Long taskId = createTaskWithSQLOnly(rowId, "task 1", 1, 1);
+
+		TaskPatchTemplate taskTemplate = TaskPatchTemplate.builder().id(taskId).position(5).build();
+		Row returnedRow = rowService.patchRow(new RowPatchTemplate(rowId, null, List.of(taskTemplate)), 0L);
+
+		assertThat(returnedRow.getVersion()).isEqualTo(1L);
+		assertThat(rowService.getAllRowsForProjectPlan(projectPlanId).get(0).getVersion()).isEqualTo(1L);
+	}
+
+	@Test
+	void patchThrowsAndChangesNothingIfTheRowIsNotAtTheExpectedVersion() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "ohai");
+		rowService.patchRow(new RowPatchTemplate(rowId, "second title", null), 0L);
+
+		try {
+			rowService.patchRow(new RowPatchTemplate(rowId, "third title", null), 0L);
+			fail("expecting exception");
+		} catch (RowServiceValidator.RowVersionMismatchException e) {
+			assertThat(e.getMessage()).contains("is at version 1, not the expected version 0");
+		}
+
+		Row row = rowService.getAllRowsForProjectPlan(projectPlanId).get(0);
+		assertThat(row.getTitle()).isEqualTo("second title");
+		assertThat(row.getVersion()).isEqualTo(1L);
+	}
+
+	// ADD TASKS TO ROW TESTS
+
+	@Test
+	void addTasksToRowSavesEveryTaskAndReturnsThemWithIdsInTheOrderTheyWerePassed() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "ohai");
+		createTaskWithSQLOnly(rowId, "existing task", 2, 0);
+
+		List<Task> savedTasks = rowService.addTasksToRow(rowId, List.of(
+				new Task(rowId, "task at 5", 1, 5),
+				new Task(rowId, "task at 2", 3, 2),
+				new Task(rowId, "task at 6", 1, 6)
+		));
+
+		assertThat(savedTasks).extracting(Task::getTitle).containsExactly("task at 5", "task at 2", "task at 6");
+		assertThat(savedTasks).allSatisfy(task -> assertThat(task.getId()).isNotNull());
+		assertThat(rowService.getAllRowsForProjectPlan(projectPlanId).get(0).getTaskList()).hasSize(4);
+	}
+
+	@Test
+	void addTasksToRowSavesNothingIfAnyNewTaskOverlaps() {
+		Long rowId = createRowWithSQLOnly(projectPlanId, "ohai");
+		createTaskWithSQLOnly(rowId, "existing task", 2, 0);
+
+		try {
+			rowService.addTasksToRow(rowId, List.of(
+					new Task(rowId, "fits", 1, 5),
+					new Task(rowId, "overlaps the existing task", 1, 1)
+			));
+			fail("expecting exception");
+		} catch (ProjectConsistencyValidator.RowUpdateConsistencyException e) {
+			assertThat(e.getMessage()).contains("more than one task occupying the same space");
+		}
+
+		assertThat(findTotalNumberOfTasks()).isEqualTo(1);
+	}
+
+	@Test
+	void addTasksToRowThrowsIfTheRowDoesNotExist() {
+		try {
+			rowService.addTasksToRow(-1L, List.of(new Task(-1L, "task", 1, 0)));
+			fail("expecting exception");
+		} catch (RowServiceValidator.RowNotFoundException e) {
+			assertThat(e.getMessage()).contains("No row exists with id -1");
+		}
+	}
+}
@@ -1,17 +1,23 @@
 package com.poorknight.tpmtoolsbackend.domain.tasks;
 
 import com.poorknight.tpmtoolsbackend.domain.BaseUnitTestWithDatabase;
+import com.poorknight.tpmtoolsbackend.domain.projectplan.ProjectConsistencyValidator;
 import com.poorknight.tpmtoolsbackend.domain.row.entity.Row;
 import com.poorknight.tpmtoolsbackend.domain.row.RowService;
 import com.poorknight.tpmtoolsbackend.domain.tasks.entity.Task;
+import jakarta.persistence.EntityManagerFactory;
 import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -25,6 +31,9 @@ class TaskServiceTest extends BaseUnitTestWithDatabase {
 	@Autowired
 	private RowService rowService;
 
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
 	private Long projectPlanId;
 
 	@BeforeEach
@@ -147,6 +156,57 @@ class TaskServiceTest extends BaseUnitTestWithDatabase {
 		assertThat(savedTask.getTitle()).isEmpty();
 	}
 
+	@Test
+	void saveNewTasksSavesAllOfThemInBatches() throws Exception {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		List<Task> tasks = createTasksForRow(row.getId(), "task ", 0);
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+
+		List<Task> savedTasks = taskService.saveNewTasks(tasks);
+
+		long statementCount = statistics.getPrepareStatementCount();
+		statistics.setStatisticsEnabled(false);
+
+		assertThat(savedTasks.size()).isEqualTo(5_000);
+		assertThat(savedTasks).allMatch(task -> task.getId() != null);
+		assertThat(findTotalNumberOfTasks()).isEqualTo(5_000);
+		// 100 sequence calls (ids come 50 at a time), 50 insert batches of 100, and the project plan lookup
+		assertThat(statementCount).isLessThan(200);
+	}
+
+	/*
+		Saves 5,000 tasks batched, and then 5,000 more one at a time (the way they had to be before ids came in blocks), and
+		prints how long each took.  Slow, so it only runs with -Dtpm.loadtest=true
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "tpm.loadtest", matches = "true")
+	void reportsTheTimeToSaveTasksBatchedAndOneAtATime() throws Exception {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		List<Task> tasks = createTasksForRow(row.getId(), "task ", 0);
+		List<Task> moreTasks = createTasksForRow(row.getId(), "another task ", 5_000);
+
+		long start = System.nanoTime();
+		taskService.saveNewTasks(tasks);
+		long batchedMillis = (System.nanoTime() - start) / 1_000_000;
+
+		start = System.nanoTime();
+		moreTasks.forEach(taskService::saveNewTask);
+		long oneAtATimeMillis = (System.nanoTime() - start) / 1_000_000;
+
+		System.out.println("Saved 5000 tasks in " + batchedMillis + "ms batched, and in " + oneAtATimeMillis + "ms one at a time");
+	}
+
+	private static List<Task> createTasksForRow(Long rowId, String titlePrefix, int firstPosition) {
+		List<Task> tasks = new ArrayList<>();
+		for (int i = 0; i < 5_000; i++) {
+			tasks.add(new Task(rowId, titlePrefix + i, 1, firstPosition + i));
+		}
+		return tasks;
+	}
+
 	@Test
 	void canGetAllTasksForARow() throws Exception {
 		int originalCount = findTotalNumberOfTasks();
@@ -321,6 +381,34 @@ class TaskServiceTest extends BaseUnitTestWithDatabase {
 		assertThat(updatedTask.getId()).isEqualTo(savedTask.getId());
 	}
 
+	@Test
+	void patchTaskMovesTheTaskOnToItsNextVersion() throws Exception {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		Task savedTask = taskService.saveNewTask(new Task(row.getId(), "Work to do!", 1, 1));
+		assertThat(savedTask.getVersion()).isEqualTo(0L);
+
+		Task updatedTask = taskService.patchTask(new Task(savedTask.getId(), null, "new title", null, null), 0L);
+
+		assertThat(updatedTask.getVersion()).isEqualTo(1L);
+		assertThat(taskService.findTaskWithId(savedTask.getId()).getVersion()).isEqualTo(1L);
+	}
+
+	@Test
+	void patchTaskThrowsExceptionAndChangesNothingIfTheTaskIsNotAtTheExpectedVersion() throws Exception {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		Task savedTask = taskService.saveNewTask(new Task(row.getId(), "Work to do!", 1, 1));
+		taskService.patchTask(new Task(savedTask.getId(), null, "second title", null, null), 0L);
+
+		try {
+			taskService.patchTask(new Task(savedTask.getId(), null, "third title", null, null), 0L);
+			fail("expecting exception");
+		} catch (TaskService.TaskVersionMismatchException e) {
+			assertThat(e.getMessage()).contains("is at version 1, not the expected version 0");
+		}
+
+		assertThat(taskService.findTaskWithId(savedTask.getId()).getTitle()).isEqualTo("second title");
+	}
+
 	@Test
 	void patchTaskThrowsExceptionIfIdDoesNotExist() throws Exception {
 		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
@@ -336,6 +424,70 @@ class TaskServiceTest extends BaseUnitTestWithDatabase {
 		}
 	}
 
+	@Test
+	void saveNewTaskThrowsAndSavesNothingIfTheTaskOverlapsAnotherInItsRow() throws Exception {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		taskService.saveNewTask(new Task(row.getId(), "already there", 3, 2));
+
+		try {
+			taskService.saveNewTask(new Task(row.getId(), "overlaps", 1, 4));
+			fail("expecting exception");
+		} catch (ProjectConsistencyValidator.RowUpdateConsistencyException e) {
+			assertThat(e.getMessage()).isEqualTo("The proposed change results in more than one task occupying the same space.");
+		}
+
+		assertThat(findTotalNumberOfTasks()).isEqualTo(1);
+	}
+
+	@Test
+	void tasksWithNoSizeDoNotOverlapAnything() throws Exception {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		taskService.saveNewTask(new Task(row.getId(), "already there", 3, 2));
+		taskService.saveNewTask(new Task(row.getId(), "no size", 0, 3));
+
+		assertThat(findTotalNumberOfTasks()).isEqualTo(2);
+	}
+
+	@Test
+	void patchTaskThrowsAndChangesNothingIfTheTaskWouldOverlapAnotherInItsNewRow() throws Exception {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		Row row2 = rowService.saveNewRow(new Row(projectPlanId, "test yet another row"));
+		Task task = taskService.saveNewTask(new Task(row.getId(), "moving", 1, 1));
+		taskService.saveNewTask(new Task(row2.getId(), "already there", 2, 0));
+
+		try {
+			taskService.patchTask(new Task(task.getId(), row2.getId(), null, null, null));
+			fail("expecting exception");
+		} catch (ProjectConsistencyValidator.RowUpdateConsistencyException e) {
+			assertThat(e.getMessage()).isEqualTo("The proposed change results in more than one task occupying the same space.");
+		}
+
+		assertThat(taskService.findTaskWithId(task.getId()).getRowId()).isEqualTo(row.getId());
+	}
+
+	@Test
+	void saveNewTaskKeepsThePlanOfItsRowOnTheTask() {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		Task savedTask = taskService.saveNewTask(new Task(row.getId(), "Work to do!", 1, 1));
+
+		assertThat(savedTask.getProjectPlanId()).isEqualTo(projectPlanId);
+		assertThat(taskService.findTaskWithId(savedTask.getId()).getProjectPlanId()).isEqualTo(projectPlanId);
+	}
+
+	@Test
+	void patchTaskMovesTheTaskToThePlanOfItsNewRow() {
+		Long otherProjectPlanId = this.createProjectPlanWithSQLOnly("other plan");
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		Row otherPlansRow = rowService.saveNewRow(new Row(otherProjectPlanId, "other plan's row"));
+		Task task = taskService.saveNewTask(new Task(row.getId(), "moving", 1, 1));
+
+		taskService.patchTask(new Task(task.getId(), otherPlansRow.getId(), null, null, null));
+
+		Task movedTask = taskService.findTaskWithId(task.getId());
+		assertThat(movedTask.getRowId()).isEqualTo(otherPlansRow.getId());
+		assertThat(movedTask.getProjectPlanId()).isEqualTo(otherProjectPlanId);
+	}
+
 	@Test
 	void canDeleteATask() throws Exception {
 		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
@@ -375,6 +527,44 @@ class TaskServiceTest extends BaseUnitTestWithDatabase {
 		}
 	}
 
+	@Test
+	void deleteTaskFromRowDeletesTheTaskWhenItIsInThatRow() {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		Task savedTask = taskService.saveNewTask(new Task(row.getId(), "Work to do!", 3, 2));
+
+		Task deletedTask = taskService.deleteTaskFromRow(savedTask.getId(), row.getId());
+
+		assertThat(deletedTask).isEqualTo(savedTask);
+		assertThat(findTotalNumberOfTasks()).isEqualTo(0);
+	}
+
+	@Test
+	void deleteTaskFromRowDeletesNothingWhenTheTaskIsInAnotherRow() {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+		Row otherRow = rowService.saveNewRow(new Row(projectPlanId, "other row"));
+		Task savedTask = taskService.saveNewTask(new Task(row.getId(), "Work to do!", 3, 2));
+
+		try {
+			taskService.deleteTaskFromRow(savedTask.getId(), otherRow.getId());
+			fail("Expecting exception");
+		} catch (TaskService.TaskNotInRowException e) {
+			assertThat(e.getMessage()).contains("does not belong to row " + otherRow.getId());
+		}
+		assertThat(findTotalNumberOfTasks()).isEqualTo(1);
+	}
+
+	@Test
+	void deleteTaskFromRowThrowsTaskNotFoundForATaskThatDoesNotExist() {
+		Row row = rowService.saveNewRow(new Row(projectPlanId, "test row"));
+
+		try {
+			taskService.deleteTaskFromRow(55L, row.getId());
+			fail("Expecting exception");
+		} catch (TaskService.TaskNotFoundException e) {
+			assertThat(e.getMessage()).contains("Cannot delete task with id 55. It does not exist.");
+		}
+	}
+
 	@Test
 	void canFindASingleTaskById() {
 		Long rowId = this.createRowWithSQLOnly(projectPlanId, "row");
@@ -0,0 +1,107 @@
+package com.poorknight.tpmtoolsbackend.integrationtests;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+	Throws 1k concurrent clients at the row endpoint (which always goes to the database) and prints the throughput and
+	latency percentiles, so the platform thread and virtual thread modes can be compared.  Both modes run with the default
+	pool size (DB_POOL_SIZE, 10) and, for virtual threads, the default 20 permits - "busy" counts the 503s from running out of
+	permits.  Slow, so it only runs with -Dtpm.loadtest=true.  This runs both modes, one after the other:
+
+	./gradlew test --rerun-tasks --tests '*LoadIT' -Dtpm.loadtest=true | grep 'requests/sec'
+ */
+@EnabledIfSystemProperty(named = "tpm.loadtest", matches = "true")
+public abstract class BaseConcurrentClientsLoadIT extends BaseIntegrationTestWithDatabase {
+
+	private static final int CONCURRENT_CLIENTS = 1_000;
+	private static final int REQUESTS_PER_CLIENT = 20;
+
+	private Long projectPlanId;
+
+	protected abstract String modeName();
+
+	@BeforeEach
+	void setUpProjectPlan() {
+		deleteAllTasksAndRowsAndProjectPlans();
+		projectPlanId = createProjectPlanWithSQLOnly("load test plan");
+		for (int i = 0; i < 20; i++) {
+			Long rowId = createRowWithSQLOnly(projectPlanId, "row " + i);
+			for (int j = 0; j < 10; j++) {
+				createTaskWithSQLOnly(rowId, "task " + j, 1, j);
+			}
+		}
+	}
+
+	@AfterEach
+	void tearDownProjectPlan() {
+		deleteAllTasksAndRowsAndProjectPlans();
+	}
+
+	@Test
+	void reportsThroughputAndLatencyForOneThousandConcurrentClients() throws Exception {
+		HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		HttpRequest request = HttpRequest.newBuilder(URI.create(createURLWithPort("/api/v1/project-plans/" + projectPlanId + "/rows"))).GET().build();
+
+		long[] latencies = new long[CONCURRENT_CLIENTS * REQUESTS_PER_CLIENT];
+		AtomicInteger nextLatency = new AtomicInteger();
+		AtomicInteger okResponses = new AtomicInteger();
+		AtomicInteger busyResponses = new AtomicInteger();
+		AtomicInteger otherResponses = new AtomicInteger();
+
+		long start = System.nanoTime();
+		try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < CONCURRENT_CLIENTS; i++) {
+				results.add(clients.submit(() -> {
+					for (int j = 0; j < REQUESTS_PER_CLIENT; j++) {
+						long requestStart = System.nanoTime();
+						HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+						latencies[nextLatency.getAndIncrement()] = System.nanoTime() - requestStart;
+
+						switch (response.statusCode()) {
+							case 200 -> okResponses.incrementAndGet();
+							case 503 -> busyResponses.incrementAndGet();
+							default -> otherResponses.incrementAndGet();
+						}
+					}
+					return null;
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		}
+		long elapsedNanos = System.nanoTime() - start;
+
+		Arrays.sort(latencies);
+		System.out.printf("%s: %d requests (%d ok, %d busy) in %d ms -> %.0f requests/sec, p50 %d ms, p99 %d ms%n",
+				modeName(), latencies.length, okResponses.get(), busyResponses.get(), elapsedNanos / 1_000_000,
+				latencies.length / (elapsedNanos / 1_000_000_000.0),
+				percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.99));
+
+		assertThat(otherResponses.get()).isEqualTo(0);
+		assertThat(okResponses.get()).isGreaterThan(latencies.length / 2);
+	}
+
+	private static long percentileMillis(long[] sortedLatencies, double percentile) {
+		int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+		return sortedLatencies[Math.max(index, 0)] / 1_000_000;
+	}
+}
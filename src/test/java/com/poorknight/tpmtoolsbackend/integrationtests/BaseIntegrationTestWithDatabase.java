@@ -73,6 +73,17 @@ public class BaseIntegrationTestWithDatabase extends BaseTestWithDatabase {
 		return buildRequestForRestMethod(null, path, HttpMethod.GET);
 	}
 
+	protected ResponseEntity<String> makeConditionalGETRequest(String path, String ifNoneMatch) {
+		HttpHeaders conditionalHeaders = new HttpHeaders();
+		conditionalHeaders.setIfNoneMatch(ifNoneMatch);
+		try {
+			return this.restTemplate.exchange(createURLWithPort(path), HttpMethod.GET, new HttpEntity<>(conditionalHeaders), String.class);
+
+		} catch (HttpClientErrorException e) {
+			return new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
+		}
+	}
+
 	protected ResponseEntity<String> makeDELETERequest(String path) {
 		return buildRequestForRestMethod(null, path, HttpMethod.DELETE);
 	}
@@ -85,6 +96,18 @@ public class BaseIntegrationTestWithDatabase extends BaseTestWithDatabase {
 		return buildRequestForRestMethod(jsonRequestBodyString, path, HttpMethod.PATCH);
 	}
 
+	protected ResponseEntity<String> makeConditionalPATCHRequest(String jsonRequestBodyString, String path, String ifMatch) {
+		HttpHeaders conditionalHeaders = new HttpHeaders();
+		conditionalHeaders.setContentType(MediaType.APPLICATION_JSON);
+		conditionalHeaders.setIfMatch(ifMatch);
+		try {
+			return this.restTemplate.exchange(createURLWithPort(path), HttpMethod.PATCH, new HttpEntity<>(jsonRequestBodyString, conditionalHeaders), String.class);
+
+		} catch (HttpClientErrorException e) {
+			return new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
+		}
+	}
+
 	protected ResponseEntity<String> makePUTRequest(String jsonRequestBodyString, String path) {
 		return buildRequestForRestMethod(jsonRequestBodyString, path, HttpMethod.PUT);
 	}
@@ -0,0 +1,77 @@
+package com.poorknight.tpmtoolsbackend.integrationtests;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CrossReplicaInvalidationIT extends BaseIntegrationTestWithDatabase {
+
+	private Long projectPlanId;
+	private Long rowId;
+
+	@Override
+	@BeforeEach
+	void setUp() {
+		super.setUp();
+		deleteAllTasksAndRowsAndProjectPlans();
+		projectPlanId = this.createProjectPlanWithSQLOnly("Some kind of title");
+		rowId = this.createRowWithSQLOnly(projectPlanId, "row title");
+	}
+
+	@Test
+	void aChangeCommittedHereIsAnnouncedToTheOtherReplicas() throws Exception {
+		try (Connection otherReplica = getConnection()) {
+			try (Statement statement = otherReplica.createStatement()) {
+				statement.execute("LISTEN project_plan_changed");
+			}
+
+			postNewTask(projectPlanId, rowId, String.format("""
+					{
+						"rowId": %d,
+						"title": "a new task",
+						"size": 1,
+						"position": 1
+					}
+				""", rowId));
+
+			List<String> payloads = new ArrayList<>();
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (payloads.stream().noneMatch(payload -> payload.endsWith(":" + projectPlanId)) && System.currentTimeMillis() < deadline) {
+				PGNotification[] notifications = otherReplica.unwrap(PGConnection.class).getNotifications(1_000);
+				if (notifications != null) {
+					for (PGNotification notification : notifications) {
+						payloads.add(notification.getParameter());
+					}
+				}
+			}
+			assertThat(payloads).anyMatch(payload -> payload.endsWith(":" + projectPlanId));
+		}
+	}
+
+	@Test
+	void aChangeAnnouncedByAnotherReplicaChangesTheETagHere() throws Exception {
+		ResponseEntity<String> response = this.makeGETRequest("/api/v1/project-plans/" + projectPlanId);
+		String etag = response.getHeaders().getETag();
+
+		try (Connection otherReplica = getConnection(); Statement statement = otherReplica.createStatement()) {
+			statement.execute("NOTIFY project_plan_changed, 'someOtherReplica:" + projectPlanId + "'");
+		}
+
+		HttpStatus status = HttpStatus.NOT_MODIFIED;
+		for (int attempt = 0; attempt < 50 && status == HttpStatus.NOT_MODIFIED; attempt++) {
+			Thread.sleep(100);
+			status = HttpStatus.valueOf(this.makeConditionalGETRequest("/api/v1/project-plans/" + projectPlanId, etag).getStatusCode().value());
+		}
+		assertThat(status).isEqualTo(HttpStatus.OK);
+	}
+}
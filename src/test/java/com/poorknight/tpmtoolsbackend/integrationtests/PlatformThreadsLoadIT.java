@@ -0,0 +1,9 @@
+package com.poorknight.tpmtoolsbackend.integrationtests;
+
+public class PlatformThreadsLoadIT extends BaseConcurrentClientsLoadIT {
+
+	@Override
+	protected String modeName() {
+		return "platform threads";
+	}
+}
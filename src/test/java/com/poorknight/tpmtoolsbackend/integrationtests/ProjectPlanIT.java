@@ -1,12 +1,26 @@
 package com.poorknight.tpmtoolsbackend.integrationtests;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.json.JSONException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -36,15 +50,18 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                 {
                     "id": %d,
                     "title": "Some kind of title",
+                    "version": 0,
                     "rows": [
                         {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row1 title",
+                            "version": 0,
                             "tasks": [
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task title",
                                     "position": 1,
                                     "size": 1
@@ -55,6 +72,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row2 title",
+                            "version": 0,
                             "tasks": []
                         }
                     ]
@@ -71,6 +89,232 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
     }
 
+    @Test
+    void canPageThroughAWindowOfAProjectPlanWithPageTokens() {
+        Long row1Id = this.createRowWithSQLOnly(projectPlanId, "row1 title");
+        Long row2Id = this.createRowWithSQLOnly(projectPlanId, "row2 title");
+        this.createTaskWithSQLOnly(row1Id, "in the window", 2, 4);
+        this.createTaskWithSQLOnly(row1Id, "outside the window", 1, 20);
+        String viewPath = "/api/v1/project-plans/" + projectPlanId + "/view?rowLimit=1&fromPosition=5&toPosition=10";
+
+        JsonNode firstPage = getRootJsonNode(this.makeGETRequest(viewPath));
+        assertThat(firstPage.get("rows")).hasSize(1);
+        assertThat(firstPage.get("rows").get(0).get("id").asLong()).isEqualTo(row1Id);
+        assertThat(firstPage.get("rows").get(0).get("tasks")).hasSize(1);
+        assertThat(firstPage.get("rows").get(0).get("tasks").get(0).get("title").asText()).isEqualTo("in the window");
+
+        JsonNode secondPage = getRootJsonNode(this.makeGETRequest(viewPath + "&pageToken=" + firstPage.get("nextPageToken").asText()));
+        assertThat(secondPage.get("rows")).hasSize(1);
+        assertThat(secondPage.get("rows").get(0).get("id").asLong()).isEqualTo(row2Id);
+        assertThat(secondPage.get("nextPageToken").isNull()).isTrue();
+    }
+
+    @Test
+    void canExportAProjectPlanAsNewlineDelimitedJSON() throws JSONException {
+        Long row1Id = this.createRowWithSQLOnly(projectPlanId, "row1 title");
+        Long row2Id = this.createRowWithSQLOnly(projectPlanId, "row2 title");
+        Long task2Id = this.createTaskWithSQLOnly(row1Id, "task 2", 3, 2);
+        Long task1Id = this.createTaskWithSQLOnly(row1Id, "task 1", 1, 1);
+        Long otherProjectPlanId = this.createProjectPlanWithSQLOnly("Some other plan");
+        this.createRowWithSQLOnly(otherProjectPlanId, "other row");
+
+        ResponseEntity<String> response = this.makeGETRequest("/api/v1/project-plans/" + projectPlanId + "/export");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON);
+        assertThat(response.getBody()).endsWith("\n");
+
+        String[] lines = response.getBody().split("\n");
+        assertThat(lines).hasSize(5);
+        JSONAssert.assertEquals(String.format("""
+                {"type": "projectPlan", "id": %d, "title": "Some kind of title", "version": 0}
+            """, projectPlanId), lines[0], JSONCompareMode.STRICT);
+        JSONAssert.assertEquals(String.format("""
+                {"type": "row", "id": %d, "projectPlanId": %d, "title": "row1 title", "version": 0}
+            """, row1Id, projectPlanId), lines[1], JSONCompareMode.STRICT);
+        JSONAssert.assertEquals(String.format("""
+                {"type": "task", "id": %d, "rowId": %d, "title": "task 1", "size": 1, "position": 1, "version": 0}
+            """, task1Id, row1Id), lines[2], JSONCompareMode.STRICT);
+        JSONAssert.assertEquals(String.format("""
+                {"type": "task", "id": %d, "rowId": %d, "title": "task 2", "size": 3, "position": 2, "version": 0}
+            """, task2Id, row1Id), lines[3], JSONCompareMode.STRICT);
+        JSONAssert.assertEquals(String.format("""
+                {"type": "row", "id": %d, "projectPlanId": %d, "title": "row2 title", "version": 0}
+            """, row2Id, projectPlanId), lines[4], JSONCompareMode.STRICT);
+    }
+
+    @Test
+    void exportOfAllProjectPlansIncludesEveryPlan() {
+        Long otherProjectPlanId = this.createProjectPlanWithSQLOnly("Some other plan");
+
+        ResponseEntity<String> response = this.makeGETRequest("/api/v1/project-plans/export");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().split("\n")).containsExactly(
+                "{\"type\":\"projectPlan\",\"id\":" + projectPlanId + ",\"title\":\"Some kind of title\",\"version\":0}",
+                "{\"type\":\"projectPlan\",\"id\":" + otherProjectPlanId + ",\"title\":\"Some other plan\",\"version\":0}");
+    }
+
+    @Test
+    void exportReturns404IfNoProjectPlanWithIdExists() {
+        ResponseEntity<String> response = this.makeGETRequest("/api/v1/project-plans/555/export");
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void anExportedPlanCanBeImportedAsANewPlan() throws Exception {
+        Long rowId = this.createRowWithSQLOnly(projectPlanId, "row1 title");
+        this.createTaskWithSQLOnly(rowId, "task title", 2, 3);
+        String export = this.makeGETRequest("/api/v1/project-plans/" + projectPlanId + "/export").getBody();
+
+        ResponseEntity<String> response = makeImportRequest(export);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        JsonNode summary = getRootJsonNode(response);
+        assertThat(summary.get("rowCount").asLong()).isEqualTo(1);
+        assertThat(summary.get("taskCount").asLong()).isEqualTo(1);
+        long importedProjectPlanId = summary.get("projectPlanIds").get(0).asLong();
+        assertThat(importedProjectPlanId).isNotEqualTo(projectPlanId);
+
+        JsonNode importedPlan = getRootJsonNode(this.makeGETRequest("/api/v1/project-plans/" + importedProjectPlanId));
+        assertThat(importedPlan.get("title").asText()).isEqualTo("Some kind of title");
+        JsonNode importedTask = importedPlan.get("rows").get(0).get("tasks").get(0);
+        assertThat(importedTask.get("title").asText()).isEqualTo("task title");
+        assertThat(importedTask.get("size").asInt()).isEqualTo(2);
+        assertThat(importedTask.get("position").asInt()).isEqualTo(3);
+    }
+
+    @Test
+    void importReturns400ForAnImportThatIsNotValid() {
+        ResponseEntity<String> response = makeImportRequest("""
+                {"type":"projectPlan","id":1,"title":"plan"}
+                {"type":"row","id":10,"projectPlanId":2,"title":"row"}
+                """);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody()).contains("Line 2 of the import is not valid: the row's project plan is not part of the import.");
+    }
+
+    @Test
+    void getProjectPlanAnswers304UntilSomethingInThePlanChanges() throws Exception {
+        Long rowId = this.createRowWithSQLOnly(projectPlanId, "row1 title");
+        ResponseEntity<String> response = this.makeGETRequest("/api/v1/project-plans/" + projectPlanId);
+        String etag = response.getHeaders().getETag();
+        assertThat(etag).isNotBlank();
+
+        ResponseEntity<String> notModifiedResponse = this.makeConditionalGETRequest("/api/v1/project-plans/" + projectPlanId, etag);
+        assertThat(notModifiedResponse.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(notModifiedResponse.getBody()).isNull();
+
+        postNewTask(projectPlanId, rowId, String.format("""
+                {
+                    "rowId": %d,
+                    "title": "a new task",
+                    "size": 1,
+                    "position": 1
+                }
+            """, rowId));
+
+        ResponseEntity<String> changedResponse = this.makeConditionalGETRequest("/api/v1/project-plans/" + projectPlanId, etag);
+        assertThat(changedResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changedResponse.getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(getRootJsonNode(changedResponse).get("rows").get(0).get("tasks").size()).isEqualTo(1);
+    }
+
+    @Test
+    void changesSinceARevisionListsOnlyTheChangesMadeAfterIt() throws Exception {
+        Long rowId = this.createRowWithSQLOnly(projectPlanId, "row1 title");
+        ResponseEntity<String> initialResponse = this.makeGETRequest("/api/v1/project-plans/" + projectPlanId + "/changes?since=0");
+        assertThat(getRootJsonNode(initialResponse).get("revision").asLong()).isEqualTo(0);
+
+        postNewTask(projectPlanId, rowId, String.format("""
+                {
+                    "rowId": %d,
+                    "title": "first task",
+                    "size": 1,
+                    "position": 1
+                }
+            """, rowId));
+        Long taskId = getTaskIdFromPostResponse(postNewTask(projectPlanId, rowId, String.format("""
+                {
+                    "rowId": %d,
+                    "title": "second task",
+                    "size": 2,
+                    "position": 3
+                }
+            """, rowId)));
+
+        ResponseEntity<String> response = this.makeGETRequest("/api/v1/project-plans/" + projectPlanId + "/changes?since=1");
+
+        String expectedResponse = String.format("""
+                {
+                    "projectPlanId": %d,
+                    "sinceRevision": 1,
+                    "revision": 2,
+                    "fullFetchRequired": false,
+                    "changes": [
+                        {
+                            "type": "TASK_ADDED",
+                            "rowId": %d,
+                            "taskId": %d,
+                            "title": "second task",
+                            "size": 2,
+                            "position": 3
+                        }
+                    ]
+                }
+            """, projectPlanId, rowId, taskId);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        JSONAssert.assertEquals(expectedResponse, response.getBody(), JSONCompareMode.STRICT);
+
+        ResponseEntity<String> futureResponse = this.makeGETRequest("/api/v1/project-plans/" + projectPlanId + "/changes?since=7");
+        assertThat(getRootJsonNode(futureResponse).get("fullFetchRequired").asBoolean()).isTrue();
+    }
+
+    @Test
+    void eventStreamSendsTheChangesMadeToThePlan() throws Exception {
+        Long rowId = this.createRowWithSQLOnly(projectPlanId, "row1 title");
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest subscribeRequest = HttpRequest.newBuilder(URI.create(createURLWithPort("/api/v1/project-plans/" + projectPlanId + "/events")))
+                .header("Accept", "text/event-stream")
+                .GET().build();
+        HttpResponse<Stream<String>> eventResponse = client.sendAsync(subscribeRequest, HttpResponse.BodyHandlers.ofLines()).get(10, TimeUnit.SECONDS);
+        assertThat(eventResponse.statusCode()).isEqualTo(200);
+
+        ResponseEntity<String> postResponse = postNewTask(projectPlanId, rowId, String.format("""
+                {
+                    "rowId": %d,
+                    "title": "a new task",
+                    "size": 2,
+                    "position": 3
+                }
+            """, rowId));
+        Long taskId = getTaskIdFromPostResponse(postResponse);
+
+        CompletableFuture<String> firstData = CompletableFuture.supplyAsync(() -> eventResponse.body()
+                .filter(line -> line.startsWith("data:"))
+                .findFirst()
+                .orElseThrow()
+                .substring("data:".length()));
+
+        String expectedEvent = String.format("""
+                {
+                    "projectPlanId": %d,
+                    "changes": [
+                        {
+                            "type": "TASK_ADDED",
+                            "rowId": %d,
+                            "taskId": %d,
+                            "title": "a new task",
+                            "size": 2,
+                            "position": 3
+                        }
+                    ]
+                }
+            """, projectPlanId, rowId, taskId);
+        JSONAssert.assertEquals(expectedEvent, firstData.get(10, TimeUnit.SECONDS), JSONCompareMode.STRICT);
+    }
+
     @Test
     void patchProjectPlanCanMoveTasksWithinARow() throws JSONException {
 
@@ -85,15 +329,18 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                 {
                     "id": %d,
                     "title": "Some kind of title",
+                    "version": 0,
                     "rows": [
                         {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row1 title",
+                            "version": 0,
                             "tasks": [
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task1 title",
                                     "position": 1,
                                     "size": 1
@@ -101,6 +348,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task2 title",
                                     "position": 2,
                                     "size": 1
@@ -108,6 +356,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task3 title",
                                     "position": 3,
                                     "size": 2
@@ -118,6 +367,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row2 title",
+                            "version": 0,
                             "tasks": []
                         }
                     ]
@@ -164,15 +414,18 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                 {
                     "id": %d,
                     "title": "Some kind of title",
+                    "version": 1,
                     "rows": [
                         {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row1 title",
+                            "version": 0,
                             "tasks": [
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 1,
                                     "title": "task3 title",
                                     "position": 1,
                                     "size": 2
@@ -180,6 +433,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 1,
                                     "title": "task1 title",
                                     "position": 4,
                                     "size": 1
@@ -187,6 +441,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 1,
                                     "title": "task2 title",
                                     "position": 6,
                                     "size": 1
@@ -197,6 +452,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row2 title",
+                            "version": 0,
                             "tasks": []
                         }
                     ]
@@ -223,15 +479,18 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                 {
                     "id": %d,
                     "title": "Some kind of title",
+                    "version": 0,
                     "rows": [
                         {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row1 title",
+                            "version": 0,
                             "tasks": [
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task1 title",
                                     "position": 1,
                                     "size": 1
@@ -239,6 +498,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task2 title",
                                     "position": 2,
                                     "size": 1
@@ -246,6 +506,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task3 title",
                                     "position": 3,
                                     "size": 2
@@ -256,6 +517,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row2 title",
+                            "version": 0,
                             "tasks": []
                         }
                     ]
@@ -302,15 +564,18 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                 {
                     "id": %d,
                     "title": "Some kind of title",
+                    "version": 0,
                     "rows": [
                         {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row1 title",
+                            "version": 0,
                             "tasks": [
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task1 title",
                                     "position": 1,
                                     "size": 1
@@ -318,6 +583,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task2 title",
                                     "position": 2,
                                     "size": 1
@@ -328,10 +594,12 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row2 title",
+                            "version": 0,
                             "tasks": [
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task3 title",
                                     "position": 1,
                                     "size": 1
@@ -376,15 +644,18 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                 {
                     "id": %d,
                     "title": "Some kind of title",
+                    "version": 1,
                     "rows": [
                         {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row1 title",
+                            "version": 0,
                             "tasks": [
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 0,
                                     "title": "task2 title",
                                     "position": 2,
                                     "size": 1
@@ -395,10 +666,12 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                             "id": %d,
                             "projectPlanId": %d,
                             "title": "row2 title",
+                            "version": 0,
                             "tasks": [
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 1,
                                     "title": "task1 title",
                                     "position": 1,
                                     "size": 1
@@ -406,6 +679,7 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
                                 {
                                     "id": %d,
                                     "rowId": %d,
+                                    "version": 1,
                                     "title": "task3 title",
                                     "position": 2,
                                     "size": 1
@@ -427,4 +701,13 @@ public class ProjectPlanIT extends BaseIntegrationTestWithDatabase {
         JSONAssert.assertEquals(expectedNewProjectPlan, patchResponse.getBody(), JSONCompareMode.STRICT);
     }
 
+    private ResponseEntity<String> makeImportRequest(String records) {
+        HttpHeaders ndjsonHeaders = new HttpHeaders();
+        ndjsonHeaders.setContentType(MediaType.APPLICATION_NDJSON);
+        try {
+            return this.restTemplate.exchange(createURLWithPort("/api/v1/project-plans/import"), HttpMethod.POST, new HttpEntity<>(records, ndjsonHeaders), String.class);
+        } catch (HttpClientErrorException e) {
+            return new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
+        }
+    }
 }
@@ -39,7 +39,7 @@ public class RowIT extends BaseIntegrationTestWithDatabase {
 
 		JsonNode responseNode = getRootJsonNode(postResponse);
 		List<Map.Entry<String, JsonNode>> fieldList = getAllFieldsForNode(responseNode);
-		assertThat(fieldList.size()).isEqualTo(4);
+		assertThat(fieldList.size()).isEqualTo(5);
 
 		assertThat(fieldList.get(0).getKey()).isEqualTo("id");
 		assertThat(fieldList.get(0).getValue().asLong()).isGreaterThan(0);
@@ -57,6 +57,10 @@ public class RowIT extends BaseIntegrationTestWithDatabase {
 		assertThat(fieldList.get(3).getValue().isArray()).isTrue();
 		assertThat(fieldList.get(3).getValue().fields().hasNext()).isFalse();
 
+		assertThat(fieldList.get(4).getKey()).isEqualTo("version");
+		assertThat(fieldList.get(4).getValue().asLong()).isEqualTo(0);
+		assertThat(fieldList.get(4).getValue().fields().hasNext()).isFalse();
+
 		Long expectedId = fieldList.get(0).getValue().asLong();
 
 		ResponseEntity<String> getResponse = getAllRows(projectPlanId);
@@ -68,6 +72,7 @@ public class RowIT extends BaseIntegrationTestWithDatabase {
 						"id": %d,
 						"projectPlanId": %d,
 						"title": "first title",
+						"version": 0,
 						"tasks": []
 					}
 				]
@@ -107,6 +112,7 @@ public class RowIT extends BaseIntegrationTestWithDatabase {
 						"id": %d,
 						"projectPlanId": %d,
 						"title": "new title",
+						"version": 1,
 						"tasks": []
 					}
 				]
@@ -170,10 +176,12 @@ public class RowIT extends BaseIntegrationTestWithDatabase {
 						"id": %d,
 						"projectPlanId": %d,
 						"title": "original title",
+						"version": 1,
 						"tasks": [
 							{
 								"id": %d,
 								"rowId": %d,
+								"version": 1,
 								"title": "task 1",
 								"size": 2,
 								"position": 2
@@ -181,6 +189,7 @@ public class RowIT extends BaseIntegrationTestWithDatabase {
 							{
 								"id": %d,
 								"rowId": %d,
+								"version": 1,
 								"title": "task 2",
 								"size": 3,
 								"position": 4
@@ -280,10 +289,12 @@ public class RowIT extends BaseIntegrationTestWithDatabase {
 						"id": %d,
 						"projectPlanId": %d,
 						"title": "something awesome",
+						"version": 0,
 						"tasks": [
 							{
 								"id": %d,
 								"rowId": %d,
+								"version": 0,
 								"title": "a task!",
 								"size": 5,
 								"position": 3
@@ -312,6 +323,7 @@ public class RowIT extends BaseIntegrationTestWithDatabase {
 					"id": %d,
 					"projectPlanId": %d,
 					"title": "original title",
+					"version": 0,
 					"tasks": []
 				}
 				""", rowId, projectPlanId);
@@ -39,7 +39,7 @@ public class TaskIT extends BaseIntegrationTestWithDatabase {
 
 		JsonNode responseNode = getRootJsonNode(response);
 		List<Map.Entry<String, JsonNode>> fieldList = getAllFieldsForNode(responseNode);
-		assertThat(fieldList.size()).isEqualTo(5);
+		assertThat(fieldList.size()).isEqualTo(6);
 
 		assertThat(fieldList.get(0).getKey()).isEqualTo("id");
 		assertThat(fieldList.get(0).getValue().asLong()).isGreaterThan(0);
@@ -60,6 +60,10 @@ public class TaskIT extends BaseIntegrationTestWithDatabase {
 		assertThat(fieldList.get(4).getKey()).isEqualTo("position");
 		assertThat(fieldList.get(4).getValue().asInt()).isEqualTo(3);
 		assertThat(fieldList.get(4).getValue().fields().hasNext()).isFalse();
+
+		assertThat(fieldList.get(5).getKey()).isEqualTo("version");
+		assertThat(fieldList.get(5).getValue().asLong()).isEqualTo(0);
+		assertThat(fieldList.get(5).getValue().fields().hasNext()).isFalse();
 	}
 
 	@Test
@@ -104,7 +108,8 @@ public class TaskIT extends BaseIntegrationTestWithDatabase {
 					"rowId": %d,
 					"title": "a fine title",
 					"size": 5,
-					"position": 3
+					"position": 3,
+					"version": 1
 				}
 				""", taskId, rowId1);
 		assertThat(patchResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
@@ -119,6 +124,24 @@ public class TaskIT extends BaseIntegrationTestWithDatabase {
 		assertThat(taskList.get(0).get("position").asInt()).isEqualTo(3);
 	}
 
+	@Test
+	void patchTaskOnlyChangesTheTaskIfItIsStillAtTheVersionInTheIfMatchHeader() throws Exception {
+		ResponseEntity<String> postResponse = postNewTask(projectPlanId, rowId1, "{\"rowId\": " + rowId1 + ", \"title\": \"first title\", \"size\": 5, \"position\": 3}");
+		Long taskId = getTaskIdFromPostResponse(postResponse);
+		String version = getRootJsonNode(postResponse).get("version").asText();
+
+		ResponseEntity<String> firstPatchResponse = makeConditionalPATCHRequest("{\"id\": " + taskId + ", \"title\": \"second title\"}", buildPATCHPath(rowId1, taskId), "\"" + version + "\"");
+		assertThat(firstPatchResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(getRootJsonNode(firstPatchResponse).get("version").asText()).isNotEqualTo(version);
+
+		// a second client, still working from the version it read before the first patch
+		ResponseEntity<String> stalePatchResponse = makeConditionalPATCHRequest("{\"id\": " + taskId + ", \"title\": \"third title\"}", buildPATCHPath(rowId1, taskId), "\"" + version + "\"");
+		assertThat(stalePatchResponse.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+		List<JsonNode> taskList = buildTaskListFromGetResponse(makeGETRequest(buildGETAllPath(rowId1)));
+		assertThat(taskList.get(0).get("title").asText()).isEqualTo("second title");
+	}
+
 	@Test
 	public void patchTaskDoesNotAcceptExtraFields() throws Exception {
 		ResponseEntity<String> postResponse = postNewTask(projectPlanId, rowId1, "{\"rowId\": " + rowId1 + ", \"title\": \"first title\", \"size\": 5, \"position\": 3}");
@@ -225,7 +248,7 @@ public class TaskIT extends BaseIntegrationTestWithDatabase {
 	@Test
 	void getAllTasksReturnsAListOfTasksThatHaveBeenSavedToARow() throws Exception {
 		postNewTask(projectPlanId, rowId1,"{\"rowId\": " + rowId1 + ", \"title\": \"the best title\", \"size\": 5, \"position\": 3}");
-		postNewTask(projectPlanId, rowId1,"{\"rowId\": " + rowId1 + ", \"title\": \"the second best title\", \"size\": 6, \"position\": 4}");
+		postNewTask(projectPlanId, rowId1,"{\"rowId\": " + rowId1 + ", \"title\": \"the second best title\", \"size\": 6, \"position\": 8}");
 		postNewTask(projectPlanId, rowId2,"{\"rowId\": " + rowId2 + ", \"title\": \"the worst title\", \"size\": 7, \"position\": 5}");
 
 		ResponseEntity<String> response = makeGETRequest(buildGETAllPath(rowId1));
@@ -240,13 +263,13 @@ public class TaskIT extends BaseIntegrationTestWithDatabase {
 		assertThat(taskResponseList.size()).isEqualTo(2);
 
 		assertThatNodeIsWellFormedTaskWithFields(taskResponseList.get(0), rowId1,"the best title", 5, 3);
-		assertThatNodeIsWellFormedTaskWithFields(taskResponseList.get(1), rowId1,"the second best title", 6, 4);
+		assertThatNodeIsWellFormedTaskWithFields(taskResponseList.get(1), rowId1,"the second best title", 6, 8);
 	}
 
 	private void assertThatNodeIsWellFormedTaskWithFields(JsonNode nodeToCheck, Long rowId, String title, int size, int position) {
 		List<Map.Entry<String, JsonNode>> fieldList = getAllFieldsForNode(nodeToCheck);
 
-		assertThat(fieldList.size()).isEqualTo(5);
+		assertThat(fieldList.size()).isEqualTo(6);
 
 		assertThat(fieldList.get(0).getKey()).isEqualTo("id");
 		assertThat(fieldList.get(0).getValue().asLong()).isGreaterThan(0);
@@ -267,6 +290,47 @@ public class TaskIT extends BaseIntegrationTestWithDatabase {
 		assertThat(fieldList.get(4).getKey()).isEqualTo("position");
 		assertThat(fieldList.get(4).getValue().asInt()).isEqualTo(position);
 		assertThat(fieldList.get(4).getValue().fields().hasNext()).isFalse();
+
+		assertThat(fieldList.get(5).getKey()).isEqualTo("version");
+		assertThat(fieldList.get(5).getValue().isNumber()).isTrue();
+		assertThat(fieldList.get(5).getValue().fields().hasNext()).isFalse();
+	}
+
+	@Test
+	public void canPOSTABatchOfTasksAndGetThemBackWithIdsInRequestOrder() throws Exception {
+		String body = "[" +
+				"{\"rowId\": " + rowId1 + ", \"title\": \"third\", \"size\": 1, \"position\": 6}," +
+				"{\"rowId\": " + rowId1 + ", \"title\": \"first\", \"size\": 2, \"position\": 0}," +
+				"{\"rowId\": " + rowId1 + ", \"title\": \"second\", \"size\": 3, \"position\": 2}" +
+				"]";
+
+		ResponseEntity<String> response = makePOSTRequest(body, buildPOSTPath(rowId1) + ":batch");
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		JsonNode responseNode = getRootJsonNode(response);
+		assertThat(responseNode.size()).isEqualTo(3);
+		assertThat(responseNode.get(0).get("title").asText()).isEqualTo("third");
+		assertThat(responseNode.get(1).get("title").asText()).isEqualTo("first");
+		assertThat(responseNode.get(2).get("title").asText()).isEqualTo("second");
+		for (JsonNode task : responseNode) {
+			assertThat(task.get("id").asLong()).isGreaterThan(0);
+			assertThat(task.get("rowId").asLong()).isEqualTo(rowId1);
+		}
+		assertThat(getRootJsonNode(makeGETRequest(buildGETAllPath(rowId1))).size()).isEqualTo(3);
+	}
+
+	@Test
+	public void aBatchOfTasksThatOverlapsTheRowIsRejectedAndNothingIsSaved() throws Exception {
+		createTaskWithSQLOnly(rowId1, "already there", 2, 0);
+		String body = "[" +
+				"{\"rowId\": " + rowId1 + ", \"title\": \"fits\", \"size\": 1, \"position\": 4}," +
+				"{\"rowId\": " + rowId1 + ", \"title\": \"overlaps\", \"size\": 1, \"position\": 1}" +
+				"]";
+
+		ResponseEntity<String> response = makePOSTRequest(body, buildPOSTPath(rowId1) + ":batch");
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(getRootJsonNode(makeGETRequest(buildGETAllPath(rowId1))).size()).isEqualTo(1);
 	}
 
 	@NotNull
@@ -0,0 +1,12 @@
+package com.poorknight.tpmtoolsbackend.integrationtests;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "spring.threads.virtual.enabled=true")
+public class VirtualThreadsLoadIT extends BaseConcurrentClientsLoadIT {
+
+	@Override
+	protected String modeName() {
+		return "virtual threads";
+	}
+}